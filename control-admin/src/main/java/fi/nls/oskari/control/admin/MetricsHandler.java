@@ -12,7 +12,9 @@ import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.RequestTrace;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONObject;
 
@@ -46,6 +48,24 @@ public class MetricsHandler extends RestActionHandler {
             LOG.error(e, "Error writing metrics JSON");
         }
 
+        try {
+            // outbound http requests
+            StringWriter w = new StringWriter();
+            writer.writeValue(w, IOHelper.getMetrics());
+            JSONHelper.putValue(metricsJSON, "http", JSONHelper.createJSONObject(w.toString()));
+        } catch (Exception e) {
+            LOG.error(e, "Error writing http metrics JSON");
+        }
+
+        try {
+            // request trace spans (db, redis, http etc)
+            StringWriter w = new StringWriter();
+            writer.writeValue(w, RequestTrace.getMetrics());
+            JSONHelper.putValue(metricsJSON, "trace", JSONHelper.createJSONObject(w.toString()));
+        } catch (Exception e) {
+            LOG.error(e, "Error writing trace metrics JSON");
+        }
+
         try {
             StringWriter w = new StringWriter();
             writer.writeValue(w, new MemoryUsageGaugeSet());
@@ -1,15 +1,11 @@
 package fi.nls.oskari.control.data;
 
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -109,7 +105,7 @@ public class GetPrintHandler extends ActionHandler {
         }
     }
 
-    private PrintRequest createPrintRequest(ActionParameters params)
+    PrintRequest createPrintRequest(ActionParameters params)
             throws ActionException {
         PrintRequest request = new PrintRequest();
 
@@ -403,9 +399,8 @@ public class GetPrintHandler extends ActionHandler {
 
     private void handlePNG(PrintRequest pr, ActionParameters params) throws ActionException {
         try {
-            BufferedImage bi = printService.getPNG(pr);
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(bi, PrintFormat.PNG.fileExtension, baos);
+            printService.writePNG(pr, baos);
             ResponseHelper.writeResponse(params, 200, PrintFormat.PNG.contentType, baos);
         } catch (IOException | ServiceException e) {
             throw new ActionException("Failed to create PNG", e);
@@ -413,10 +408,9 @@ public class GetPrintHandler extends ActionHandler {
     }
 
     private void handlePDF(PrintRequest pr, ActionParameters params) throws ActionException {
-        try (PDDocument doc = new PDDocument()) {
-            printService.getPDF(pr, doc);
+        try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            doc.save(baos);
+            printService.writePDF(pr, baos);
             ResponseHelper.writeResponse(params, 200, PrintFormat.PDF.contentType, baos);
         } catch (IOException | ServiceException e) {
             throw new ActionException("Failed to create PDF", e);
@@ -0,0 +1,182 @@
+package fi.nls.oskari.control.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONObject;
+import org.oskari.print.PrintService;
+import org.oskari.print.job.PrintJob;
+import org.oskari.print.job.PrintJobRejectedException;
+import org.oskari.print.job.PrintJobService;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionControl;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.control.RestActionHandler;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.ResponseHelper;
+
+/**
+ * Asynchronous version of GetPrint for prints that take too long to render within a single request.
+ *
+ * - POST with the same parameters as GetPrint queues a print job and responds with its id
+ * - GET with id responds with the status and progress of the job
+ * - GET with id and result=true responds with the rendered PDF/PNG once the job is done
+ * - DELETE with id cancels the job
+ *
+ * Finished jobs are kept for oskari.print.jobs.ttlsec, see PrintJobService for the other limits.
+ */
+@OskariActionRoute("PrintJob")
+public class PrintJobHandler extends RestActionHandler {
+
+    private static final Logger LOG = LogFactory.getLogger(PrintJobHandler.class);
+
+    private static final String PARAM_ID = "id";
+    private static final String PARAM_RESULT = "result";
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private GetPrintHandler printRequestParser;
+    private PrintJobService jobService;
+
+    void setPrintRequestParser(GetPrintHandler printRequestParser) {
+        this.printRequestParser = printRequestParser;
+    }
+
+    void setJobService(PrintJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @Override
+    public void init() {
+        printRequestParser = new GetPrintHandler();
+        try {
+            jobService = new PrintJobService(new PrintService(), ActionControl.getMetrics());
+        } catch (IOException e) {
+            LOG.error(e, "Failed to initialize print jobs");
+        }
+    }
+
+    @Override
+    public void teardown() {
+        if (jobService != null) {
+            jobService.shutdown();
+        }
+    }
+
+    @Override
+    public void preProcess(ActionParameters params) throws ActionException {
+        if (jobService == null) {
+            throw new ActionException("Print jobs are not available");
+        }
+    }
+
+    @Override
+    public void handlePost(ActionParameters params) throws ActionException {
+        final PrintJob job;
+        try {
+            job = jobService.submit(getOwner(params), printRequestParser.createPrintRequest(params));
+        } catch (PrintJobRejectedException e) {
+            ResponseHelper.writeError(params, e.getMessage(), e.isUserLimit()
+                    ? SC_TOO_MANY_REQUESTS : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        ResponseHelper.writeResponse(params, HttpServletResponse.SC_ACCEPTED, toJSON(job));
+    }
+
+    @Override
+    public void handleGet(ActionParameters params) throws ActionException {
+        final PrintJob job = getJob(params);
+        if (!params.getHttpParam(PARAM_RESULT, false)) {
+            ResponseHelper.writeResponse(params, toJSON(job));
+            return;
+        }
+        if (job.getStatus() != PrintJob.Status.DONE) {
+            throw new ActionParamsException("Print job is " + job.getStatus());
+        }
+        writeResult(params, job);
+    }
+
+    @Override
+    public void handleDelete(ActionParameters params) throws ActionException {
+        final String id = params.getRequiredParam(PARAM_ID);
+        if (!jobService.cancel(getOwner(params), id)) {
+            throw new ActionParamsException("No such print job: " + id);
+        }
+        ResponseHelper.writeResponse(params, toJSON(id, PrintJob.Status.CANCELLED));
+    }
+
+    private PrintJob getJob(ActionParameters params) throws ActionException {
+        final String id = params.getRequiredParam(PARAM_ID);
+        final PrintJob job = jobService.getJob(getOwner(params), id);
+        if (job == null) {
+            throw new ActionParamsException("No such print job: " + id);
+        }
+        return job;
+    }
+
+    private static void writeResult(ActionParameters params, PrintJob job) throws ActionException {
+        final Path result = job.getResult();
+        final HttpServletResponse resp = params.getResponse();
+        try {
+            final long size = Files.size(result);
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentType(job.getFormat().contentType);
+            resp.setContentLength((int) size);
+            try (OutputStream out = resp.getOutputStream()) {
+                Files.copy(result, out);
+            }
+        } catch (NoSuchFileException e) {
+            throw new ActionParamsException("Print job has expired");
+        } catch (IOException e) {
+            throw new ActionException("Failed to write print result", e);
+        }
+    }
+
+    /**
+     * Jobs can only be accessed by the user who submitted them. Guests are identified by their
+     * HTTP session since the client address can be set by the client with X-Forwarded-For.
+     */
+    private static String getOwner(ActionParameters params) {
+        final User user = params.getUser();
+        if (user.isGuest()) {
+            return "guest:" + params.getRequest().getSession(true).getId();
+        }
+        return user.getUuid();
+    }
+
+    private static JSONObject toJSON(String id, PrintJob.Status status) {
+        final JSONObject json = new JSONObject();
+        JSONHelper.putValue(json, "id", id);
+        JSONHelper.putValue(json, "status", status.name());
+        return json;
+    }
+
+    private static JSONObject toJSON(PrintJob job) {
+        final JSONObject json = toJSON(job.getId(), job.getStatus());
+        JSONHelper.putValue(json, "format", job.getFormat().contentType);
+
+        final JSONObject progress = new JSONObject();
+        JSONHelper.putValue(progress, "layersLoaded", job.getLayersLoaded());
+        JSONHelper.putValue(progress, "layersTotal", job.getLayersTotal());
+        JSONHelper.putValue(progress, "bandsRendered", job.getBandsRendered());
+        JSONHelper.putValue(progress, "bandsTotal", job.getBandsTotal());
+        JSONHelper.putValue(json, "progress", progress);
+
+        if (job.getError() != null) {
+            JSONHelper.putValue(json, "error", job.getError());
+        }
+        return json;
+    }
+
+}
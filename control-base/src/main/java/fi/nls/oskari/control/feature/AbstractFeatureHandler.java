@@ -204,5 +204,7 @@ public abstract class AbstractFeatureHandler extends RestActionHandler {
         for (String key : keys) {
             JedisManager.delAll(key);
         }
+        // transport keeps persistent tiles in memory as well, drop the tiles of the layer
+        JedisManager.notifyKeyChanged(CACHKE_KEY_PREFIX + Integer.toString(layerId));
     }
 }
@@ -1,7 +1,5 @@
 package fi.nls.oskari.control.feature;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
@@ -30,7 +28,6 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
 
     protected static final String ERR_BBOX_INVALID = "Invalid bbox";
     protected static final String ERR_FAILED_TO_RETRIEVE_FEATURES = "Failed to retrieve features";
-    protected static final String ERR_GEOJSON_ENCODE_FAIL = "Failed to write GeoJSON";
 
     private static final String PARAM_BBOX = "bbox";
 
@@ -63,12 +60,7 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
         // If it does let the WFS service do the transformation
         ReferencedEnvelope bbox = parseBbox(bboxStr, targetCRS);
 
-        SimpleFeatureCollection fc;
-        try {
-            fc = featureClient.getFeatures(id, layer, bbox, targetCRS, contentProcessor);
-        } catch (ServiceRuntimeException e) {
-            throw new ActionCommonException(ERR_FAILED_TO_RETRIEVE_FEATURES, e);
-        }
+        final SimpleFeatureCollection fc = getFeatures(id, layer, bbox, targetCRS, contentProcessor);
 
         if (fc.isEmpty()) {
             ResponseHelper.writeResponse(params, 200,
@@ -76,14 +68,23 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
             return;
         }
 
+        // Write the GeoJSON directly to the response instead of buffering it in memory
+        int decimals = getNumDecimals(targetCRS);
+        FeatureJSON featureJSON = new FeatureJSON(new GeometryJSON(decimals));
+        ResponseHelper.writeStreamingResponse(params, 200, GEOJSON_CONTENT_TYPE, out -> {
+            OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            featureJSON.writeFeatureCollection(fc, writer);
+            writer.flush();
+        });
+    }
+
+    private SimpleFeatureCollection getFeatures(String id, OskariLayer layer, ReferencedEnvelope bbox,
+            CoordinateReferenceSystem targetCRS, Optional<UserLayerService> contentProcessor)
+            throws ActionException {
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            OutputStreamWriter writer = new OutputStreamWriter(baos, StandardCharsets.UTF_8);
-            int decimals = getNumDecimals(targetCRS);
-            new FeatureJSON(new GeometryJSON(decimals)).writeFeatureCollection(fc, writer);
-            ResponseHelper.writeResponse(params, 200, GEOJSON_CONTENT_TYPE, baos);
-        } catch (IOException e) {
-            throw new ActionCommonException(ERR_GEOJSON_ENCODE_FAIL, e);
+            return featureClient.getFeatures(id, layer, bbox, targetCRS, contentProcessor);
+        } catch (ServiceRuntimeException e) {
+            throw new ActionCommonException(ERR_FAILED_TO_RETRIEVE_FEATURES, e);
         }
     }
 
@@ -48,7 +48,9 @@ public class DeleteLayerHandler extends RestActionHandler {
                 wfsLayerService.delete(layer.getId());
                 //final String key[] = {WFSLayerConfiguration.KEY + Integer.toString(layer.getId())};
                 JedisManager.delAll(WFSLayerConfiguration.KEY + Integer.toString(layer.getId()));
+                JedisManager.notifyKeyChanged(WFSLayerConfiguration.KEY + Integer.toString(layer.getId()));
                 JedisManager.delAll(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(layer.getId()));
+                JedisManager.notifyKeyChanged(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(layer.getId()));
             }
         } catch (Exception e) {
             throw new ActionException("Couldn't delete map layer - id:" + layer.getId(), e);
@@ -12,7 +12,6 @@ import fi.nls.oskari.map.analysis.service.AnalysisDbServiceMybatisImpl;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.HashMap;
@@ -52,19 +51,20 @@ public class GetAnalysisDataHandler extends ActionHandler {
         String uid = params.getUser().getUuid();
         List<HashMap<String, Object>> list = findAnalysisData(id, uid, selectItems);
 
-        final JSONArray rows = new JSONArray();
-        for (HashMap<String, Object> analysisData : list) {
-            final JSONObject row = convertToOldResultJSON(analysisData, selectItems);
-            if (row != null) {
-                rows.put(row);
+        // rows are converted one by one while writing so the whole response is never in memory as JSON
+        ResponseHelper.writeStreamingJSONResponse(params, json -> {
+            json.writeStartObject();
+            json.writeArrayFieldStart(JSKEY_ANALYSISDATA);
+            for (HashMap<String, Object> analysisData : list) {
+                final JSONObject row = convertToOldResultJSON(analysisData, selectItems);
+                if (row != null) {
+                    ResponseHelper.writeJSONValue(json, row);
+                }
             }
-        }
-
-        final JSONObject response = new JSONObject();
-        JSONHelper.putValue(response, JSKEY_ANALYSISDATA, rows);
-        JSONHelper.putValue(response, ANALYSE_ID, id);
-
-        ResponseHelper.writeResponse(params, response);
+            json.writeEndArray();
+            json.writeNumberField(ANALYSE_ID, id);
+            json.writeEndObject();
+        });
     }
 
     private Analysis findAnalysis(long id) throws ActionException {
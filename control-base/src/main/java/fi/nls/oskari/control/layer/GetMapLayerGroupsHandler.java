@@ -7,35 +7,37 @@ import static fi.nls.oskari.control.ActionConstants.PARAM_SRS;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import fi.nls.oskari.util.JSONHelper;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import fi.mml.map.mapwindow.service.db.OskariMapLayerGroupService;
-import fi.mml.map.mapwindow.service.db.OskariMapLayerGroupServiceIbatisImpl;
 import fi.mml.map.mapwindow.util.OskariLayerWorker;
 import fi.mml.map.mapwindow.util.PermissionCollection;
-import fi.mml.portti.domain.permissions.Permissions;
+import fi.mml.portti.service.db.permissions.LayerPermissionIndex;
 import fi.mml.portti.service.db.permissions.PermissionsService;
 import fi.mml.portti.service.db.permissions.PermissionsServiceIbatisImpl;
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.domain.Role;
 import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.MaplayerGroup;
 import fi.nls.oskari.domain.map.OskariLayer;
-import fi.nls.oskari.map.layer.OskariLayerService;
-import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLink;
-import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLinkService;
-import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLinkServiceMybatisImpl;
+import fi.nls.oskari.util.CachedResponse;
 import fi.nls.oskari.util.EnvHelper;
 import fi.nls.oskari.util.ResponseHelper;
 
 /**
- * Get all map layer groups registered in Oskari database
+ * Get all map layer groups registered in Oskari database.
+ *
+ * The response is the same for all users with the same roles so responses are cached pre-serialized
+ * (and gzipped) and sent with an ETag. Cached responses are bound to the versions of the layer registry
+ * and the layer permission index so layer, group, link or permission changes are picked up immediately.
  */
 @OskariActionRoute("GetHierarchicalMapLayerGroups")
 public class GetMapLayerGroupsHandler extends ActionHandler {
@@ -50,42 +52,25 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
             OskariLayer.TYPE_WMTS,
             OskariLayer.TYPE_ARCGIS93);
 
-    private OskariLayerService layerService;
-    private PermissionsService permissionsService;
-    private OskariMapLayerGroupService groupService;
-    private OskariLayerGroupLinkService linkService;
+    private static final String CACHE_NAME = "GetHierarchicalMapLayerGroups";
+    // pre-serialized responses keyed by registry/permission versions, roles, language, srs and flags
+    private final Cache<CachedResponse> cache = CacheManager.getCache(CACHE_NAME);
+    private volatile String cachedVersion;
 
-    public void setLayerService(OskariLayerService layerService) {
-        this.layerService = layerService;
-    }
+    private PermissionsService permissionsService;
 
     public void setPermissionsService(PermissionsService permissionsService) {
         this.permissionsService = permissionsService;
     }
 
-    public void setGroupService(OskariMapLayerGroupService groupService) {
-        this.groupService = groupService;
-    }
-
-    public void setLinkService(OskariLayerGroupLinkService linkService) {
-        this.linkService = linkService;
-    }
-
     @Override
     public void init() {
+        // responses are large, configurable with oskari.cache.limit.GetHierarchicalMapLayerGroups
+        cache.setLimit(100);
         // setup services if they haven't been initialized
-        if (layerService == null) {
-            setLayerService(new OskariLayerServiceMybatisImpl());
-        }
         if (permissionsService == null) {
             setPermissionsService(new PermissionsServiceIbatisImpl());
         }
-        if (groupService == null) {
-            setGroupService(new OskariMapLayerGroupServiceIbatisImpl());
-        }
-        if (linkService == null) {
-            setLinkService(new OskariLayerGroupLinkServiceMybatisImpl());
-        }
     }
 
     @Override
@@ -95,21 +80,53 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
         final String crs = params.getHttpParam(PARAM_SRS);
         final boolean forceProxy = params.getHttpParam(PARAM_FORCE_PROXY, false);
         final boolean isSecure = EnvHelper.isSecure(params);
-        final boolean isPublished = false;
 
-        List<OskariLayer> layers = getLayersWithResources(user, isPublished);
+        // read the permissions version before the registry so a change while building is never cached as current
+        final long permissionsVersion = LayerPermissionIndex.getGeneration();
+        // layers, groups and links are shared with other requests so they must not be modified here
+        final OskariLayerRegistry.Snapshot registry = OskariLayerRegistry.getSnapshot();
+        final String version = registry.getVersion() + "|" + permissionsVersion;
+        if (!version.equals(cachedVersion)) {
+            // responses for previous versions can't be hit anymore so free the memory
+            cache.flush(true);
+            cachedVersion = version;
+        }
+        final String cacheKey = getCacheKey(version, user, lang, crs, forceProxy, isSecure);
+
+        CachedResponse response = cache.get(cacheKey);
+        if (response == null) {
+            response = CachedResponse.json(getResponse(registry, user, lang, crs, forceProxy, isSecure));
+            if (registry.isShared()) {
+                cache.put(cacheKey, response);
+            }
+        }
+        ResponseHelper.writeResponse(params, response);
+    }
+
+    /**
+     * The response depends only on the user's roles unless permissions have been granted to the user directly.
+     * Registry and permission versions are part of the key so responses built before a change are never returned.
+     */
+    private String getCacheKey(String version, User user, String lang, String crs, boolean forceProxy, boolean isSecure) {
+        final String roles = user.getRoles().stream()
+                .mapToLong(Role::getId)
+                .sorted()
+                .mapToObj(Long::toString)
+                .collect(Collectors.joining(","));
+        final String userKey = permissionsService.hasUserSpecificLayerPermissions(user) ? Long.toString(user.getId()) : "";
+        return String.join("|", version, roles, userKey, lang, String.valueOf(crs),
+                Boolean.toString(forceProxy), Boolean.toString(isSecure));
+    }
+
+    private JSONObject getResponse(OskariLayerRegistry.Snapshot registry, User user, String lang, String crs,
+            boolean forceProxy, boolean isSecure) throws ActionException {
+        final boolean isPublished = false;
+        List<OskariLayer> layers = getLayersWithResources(registry, user, isPublished);
 
         if (forceProxy) {
-            layers.forEach(lyr -> {
-                if (PROXY_LYR_TYPES.contains(lyr.getType())) {
-                    JSONObject attributes = lyr.getAttributes();
-                    if (attributes == null) {
-                        attributes = new JSONObject();
-                    }
-                    JSONHelper.putValue(attributes, "forceProxy",true);
-                    lyr.setAttributes(attributes);
-                }
-            });
+            layers = layers.stream()
+                    .map(lyr -> PROXY_LYR_TYPES.contains(lyr.getType()) ? OskariLayerWorker.forceProxy(lyr) : lyr)
+                    .collect(Collectors.toList());
         }
 
         PermissionCollection permissionCollection = OskariLayerWorker.getPermissionCollection(user);
@@ -117,57 +134,49 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
         int[] sortedLayerIds = layers.stream().mapToInt(OskariLayer::getId).toArray();
         Arrays.sort(sortedLayerIds);
 
-        Map<Integer, List<MaplayerGroup>> groupsByParentId = groupService.findAll().stream()
-                .collect(Collectors.groupingBy(MaplayerGroup::getParentId));
-
-        Map<Integer, List<OskariLayerGroupLink>> linksByGroupId = linkService.findAll().stream()
-                .collect(Collectors.groupingBy(OskariLayerGroupLink::getGroupId));
-
         try {
             JSONObject response = OskariLayerWorker.getListOfMapLayers(layers, user, lang, isSecure, crs, permissionCollection);
-            response.put(KEY_GROUPS, getGroupJSON(groupsByParentId, linksByGroupId, sortedLayerIds, -1));
-            ResponseHelper.writeResponse(params, response);
+            response.put(KEY_GROUPS, getGroupJSON(registry, sortedLayerIds, -1));
+            return response;
         } catch (JSONException e) {
             throw new ActionException("Failed to add groups", e);
         }
     }
 
-    private List<OskariLayer> getLayersWithResources(User user, boolean isPublished) {
+    private List<OskariLayer> getLayersWithResources(OskariLayerRegistry.Snapshot registry,
+            User user, boolean isPublished) {
         String permissionType = OskariLayerWorker.getPermissionType(isPublished);
-        Set<String> resources = permissionsService.getResourcesWithGrantedPermissions(
-                Permissions.RESOURCE_TYPE_MAP_LAYER, user, permissionType);
-        return OskariLayerWorker.filterLayersWithResources(layerService.findAll(), resources);
+        BitSet layerIds = permissionsService.getLayerIdsWithGrantedPermissions(user, permissionType);
+        return OskariLayerWorker.filterLayersWithPermissions(registry.getLayers(), layerIds);
     }
 
     /**
      * Get groups recursively
      */
-    private JSONArray getGroupJSON(final Map<Integer, List<MaplayerGroup>> groupsByParentId,
-            final Map<Integer, List<OskariLayerGroupLink>> linksByGroupId,
+    private JSONArray getGroupJSON(final OskariLayerRegistry.Snapshot registry,
             final int[] sortedLayerIds,
             final int parentGroupId) throws JSONException {
-        List<MaplayerGroup> groups = groupsByParentId.get(parentGroupId);
-        if (groups == null || groups.isEmpty()) {
+        // groups and links are already sorted by order number in the registry
+        List<MaplayerGroup> groups = registry.getGroupsByParentId(parentGroupId);
+        if (groups.isEmpty()) {
             return null;
         }
 
         JSONArray json = new JSONArray();
-        groups.sort(Comparator.comparing(MaplayerGroup::getOrderNumber));
         for (MaplayerGroup group : groups) {
             int groupId = group.getId();
             JSONObject groupAsJson = group.getAsJSON();
 
-            JSONArray subGroups = getGroupJSON(groupsByParentId, linksByGroupId, sortedLayerIds, groupId);
+            JSONArray subGroups = getGroupJSON(registry, sortedLayerIds, groupId);
             if (subGroups != null) {
                 groupAsJson.put(KEY_GROUPS, subGroups);
             }
 
-            List<OskariLayerGroupLink> groupLinks = linksByGroupId.get(groupId);
-            if (groupLinks != null && !groupLinks.isEmpty()) {
+            List<OskariLayerGroupLink> groupLinks = registry.getLinksByGroupId(groupId);
+            if (!groupLinks.isEmpty()) {
 
                 List<OskariLayerGroupLink> groupLayers = groupLinks.stream()
                         .filter(l -> contains(sortedLayerIds, l.getLayerId()))
-                        .sorted(Comparator.comparingInt(OskariLayerGroupLink::getOrderNumber))
                         .collect(Collectors.toList());
                 if (!groupLayers.isEmpty()) {
                     groupAsJson.put(KEY_LAYERS, getLayersJSON(groupLayers));
@@ -2,8 +2,6 @@ package fi.nls.oskari.control.layer;
 
 import fi.mml.portti.domain.permissions.Permissions;
 import fi.mml.portti.service.db.permissions.PermissionsService;
-import fi.nls.oskari.cache.Cache;
-import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.control.ActionDeniedException;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParamsException;
@@ -11,9 +9,8 @@ import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
-import fi.nls.oskari.map.data.domain.OskariLayerResource;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.map.layer.OskariLayerService;
-import fi.nls.oskari.permission.domain.Resource;
 
 /**
  * Created by SMAKINEN on 27.8.2015.
@@ -21,10 +18,6 @@ import fi.nls.oskari.permission.domain.Resource;
 public class PermissionHelper {
 
     private static final Logger LOG = LogFactory.getLogger(PermissionHelper.class);
-    private static final String RESOURCE_CACHE_NAME = "permission_resources";
-    private static final String LAYER_CACHE_NAME = "layer_resources";
-    private final Cache<Resource> resourceCache = CacheManager.getCache(PermissionHelper.class.getName() + RESOURCE_CACHE_NAME);
-    private final Cache<OskariLayer> layerCache = CacheManager.getCache(PermissionHelper.class.getName() + LAYER_CACHE_NAME);
     private OskariLayerService layerService;
     private PermissionsService permissionsService;
 
@@ -52,10 +45,9 @@ public class PermissionHelper {
         }
 
         // Check permissions
-        final Resource resource = getResource(layer);
         final boolean hasPermission =
-                resource.hasPermission(user, Permissions.PERMISSION_TYPE_VIEW_LAYER) ||
-                        resource.hasPermission(user, Permissions.PERMISSION_TYPE_VIEW_PUBLISHED);
+                permissionsService.hasLayerPermission(user, layerId, Permissions.PERMISSION_TYPE_VIEW_LAYER) ||
+                        permissionsService.hasLayerPermission(user, layerId, Permissions.PERMISSION_TYPE_VIEW_PUBLISHED);
 
         if (!hasPermission) {
             throw new ActionDeniedException("User doesn't have permissions for requested layer");
@@ -64,42 +56,11 @@ public class PermissionHelper {
     }
 
     /**
-     * Returns layer from cache
+     * Returns layer from the layer registry
      * @param id Layer id
      * @return layer
      */
     private OskariLayer getLayer(final int id) {
-        String cacheKey = Integer.toString(id);
-        OskariLayer layer = layerCache.get(cacheKey);
-        if (layer != null) {
-            return layer;
-        }
-        layer = layerService.find(id);
-        if (layer != null) {
-            LOG.debug("Caching a layer with id ", id);
-            layerCache.put(cacheKey, layer);
-        }
-        return layer;
-    }
-
-    /**
-     * Gets resource from cache
-     * @return resource
-     */
-    private Resource getResource(final OskariLayer layer) {
-
-        final Resource layerResource = new OskariLayerResource(layer);
-        Resource resource = resourceCache.get(layerResource.getMapping());
-        if (resource != null) {
-            return resource;
-        }
-        resource = permissionsService.findResource(layerResource);
-        if (resource != null && !resource.getPermissions().isEmpty()) {
-            LOG.debug("Caching a layer permission resource", resource, "Permissions", resource.getPermissions());
-            resourceCache.put(layerResource.getMapping(),resource);
-        } else {
-            LOG.warn("Trying to cache layer with no resources");
-        }
-        return resource;
+        return OskariLayerRegistry.find(id, layerService);
     }
 }
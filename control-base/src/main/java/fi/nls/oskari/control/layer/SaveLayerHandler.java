@@ -224,7 +224,9 @@ public class SaveLayerHandler extends RestActionHandler {
 
                     // Remove old redis data of WFSLayer_xx, new wfs conf data is inserted automatically
                     JedisManager.delAll(WFSLayerConfiguration.KEY + Integer.toString(ml.getId()));
+                    JedisManager.notifyKeyChanged(WFSLayerConfiguration.KEY + Integer.toString(ml.getId()));
                     JedisManager.delAll(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(ml.getId()));
+                    JedisManager.notifyKeyChanged(WFSLayerConfiguration.IMAGE_KEY + Integer.toString(ml.getId()));
                 }
 
                 LOG.debug(ml);
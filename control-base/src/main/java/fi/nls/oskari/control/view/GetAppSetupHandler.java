@@ -1,5 +1,6 @@
 package fi.nls.oskari.control.view;
 
+import fi.mml.portti.service.db.permissions.LayerPermissionIndex;
 import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.control.view.modifier.bundle.BundleHandler;
@@ -11,6 +12,7 @@ import fi.nls.oskari.domain.map.view.View;
 import fi.nls.oskari.domain.map.view.ViewTypes;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.map.view.*;
 import fi.nls.oskari.map.view.util.ViewHelper;
 import fi.nls.oskari.util.*;
@@ -24,6 +26,11 @@ import org.json.JSONObject;
 
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 @OskariActionRoute("GetAppSetup")
 public class GetAppSetupHandler extends ActionHandler {
@@ -46,6 +53,21 @@ public class GetAppSetupHandler extends ActionHandler {
 
     public static final String COOKIE_SAVED_STATE = "oskaristate";
 
+    private static final String TRACE_CATEGORY = "modifier";
+    private static final boolean PARALLEL_MODIFIERS =
+            PropertyUtil.getOptional("actionhandler.GetAppSetup.modifiers.parallel", true);
+    private static final ExecutorService MODIFIER_EXECUTOR = Executors.newFixedThreadPool(
+            PropertyUtil.getOptional("actionhandler.GetAppSetup.modifiers.threads", 8),
+            runnable -> {
+                Thread thread = new Thread(runnable, "GetAppSetup-modifier");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final boolean CACHE_ENABLED =
+            PropertyUtil.getOptional("actionhandler.GetAppSetup.cache", true);
+    // registry and permission versions the cached configurations were resolved with
+    private static volatile String cachedVersion;
+
     // for adding extra bundle(s) for users with specific roles
     private Map<String, List<Bundle>> bundlesForRole = new HashMap<String, List<Bundle>>();
 
@@ -123,6 +145,18 @@ public class GetAppSetupHandler extends ActionHandler {
         // oldId => support for migrated published maps
         final long oldId = params.getHttpParam(PARAM_OLD_ID, -1);
         final User user = params.getUser();
+        final String referer = RequestHelper.getDomainFromReferer(params
+                .getHttpHeader(IOHelper.HEADER_REFERER));
+        final String cacheKey = getCacheKey(params, oldId, referer);
+        final ViewConfigurationCache.Entry cached = cacheKey == null ? null : ViewConfigurationCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("Using cached configuration for view", cached.getView().getId());
+            final View view = cached.getView();
+            checkAccess(params, view, referer);
+            updateUsageData(view);
+            writeResponse(params, view, cached.getStartupSequence(), cached.getConfiguration());
+            return;
+        }
         final long defaultViewId = viewService.getDefaultViewId(user);
         final View view = getView(params, defaultViewId, oldId);
 
@@ -131,9 +165,6 @@ public class GetAppSetupHandler extends ActionHandler {
         }
         // Strictly necessary only if oldId used
         final long viewId = view.getId();
-        final String referer = RequestHelper.getDomainFromReferer(params
-                .getHttpHeader(IOHelper.HEADER_REFERER));
-
 
         // ignore saved state when loading:
         //   - views that are not system default views
@@ -150,34 +181,7 @@ public class GetAppSetupHandler extends ActionHandler {
         }
 
         // Check user/permission
-        final long creator = view.getCreator();
-        final long userId = params.getUser().getId();
-        if (view.isPublic()) {
-            log.info("View ID:", viewId, "created by user", creator,
-                    "is public, access granted for user with id", userId);
-        } else if (creator == userId) {
-            log.info("Creator", creator, "granted access to view with ID:",
-                    viewId);
-        } else {
-            throw new ActionDeniedException("Denied access to view with ID: "
-                    + viewId + " for user with id " + userId
-                    + " - View created by user " + creator);
-        }
-
-        if (view.getType().equals(ViewTypes.PUBLISHED)) {
-            // Check referrer
-            final String pubDomain = view.getPubDomain();
-            if(ViewHelper.isRefererDomain(referer, pubDomain)) {
-                log.info("Granted access to published view in domain:",
-                        pubDomain, "for referer", referer);
-            } else {
-                log.error("Referer: ", params.getHttpHeader("Referer"), " -> ",
-                        referer);
-                throw new ActionDeniedException(
-                        "Denied access to published view in domain: "
-                                + pubDomain + " for referer " + referer);
-            }
-        }
+        checkAccess(params, view, referer);
 
         // Update view for latest usage timestamp and opened count number
         updateUsageData(view);
@@ -243,20 +247,17 @@ public class GetAppSetupHandler extends ActionHandler {
         modifierParams.setLocationModified(locationModified > 0);
         // TODO: if we have modified location more than once, user gave
         // conflicting params, maybe notify about it?
-        for (int i = 0; i < startupSequence.length(); i++) {
-            final JSONObject bundle = (JSONObject) startupSequence.opt(i);
-            final String bundleid = bundle.optString("bundlename");
-            if (bundleHandlers.containsKey(bundleid)) {
-                log.debug("Modifying bundle", bundleid);
-                try {
-                    bundleHandlers.get(bundleid).modifyBundle(modifierParams);
-                } catch (ModifierException e) {
-                    log.error(e, "Unable to modify bundle:", bundle);
-                }
-            }
+        modifyBundles(startupSequence, configuration, modifierParams);
+
+        if (cacheKey != null && ViewTypes.PUBLISHED.equals(view.getType())) {
+            ViewConfigurationCache.put(cacheKey, view, startupSequence, configuration);
         }
+        writeResponse(params, view, startupSequence, configuration);
+    }
 
-        // write response
+    private void writeResponse(final ActionParameters params, final View view,
+                               final JSONArray startupSequence, final JSONObject configuration)
+            throws ActionException {
         try {
             JSONObject appSetup = new JSONObject();
             appSetup.put(KEY_ENV, EnvHelper.getEnvironmentJSON(params, view));
@@ -268,6 +269,163 @@ public class GetAppSetupHandler extends ActionHandler {
         }
     }
 
+    private void checkAccess(final ActionParameters params, final View view, final String referer)
+            throws ActionDeniedException {
+        final long viewId = view.getId();
+        final long creator = view.getCreator();
+        final long userId = params.getUser().getId();
+        if (view.isPublic()) {
+            log.info("View ID:", viewId, "created by user", creator,
+                    "is public, access granted for user with id", userId);
+        } else if (creator == userId) {
+            log.info("Creator", creator, "granted access to view with ID:",
+                    viewId);
+        } else {
+            throw new ActionDeniedException("Denied access to view with ID: "
+                    + viewId + " for user with id " + userId
+                    + " - View created by user " + creator);
+        }
+
+        if (view.getType().equals(ViewTypes.PUBLISHED)) {
+            // Check referrer
+            final String pubDomain = view.getPubDomain();
+            if(ViewHelper.isRefererDomain(referer, pubDomain)) {
+                log.info("Granted access to published view in domain:",
+                        pubDomain, "for referer", referer);
+            } else {
+                log.error("Referer: ", params.getHttpHeader("Referer"), " -> ",
+                        referer);
+                throw new ActionDeniedException(
+                        "Denied access to published view in domain: "
+                                + pubDomain + " for referer " + referer);
+            }
+        }
+    }
+
+    /**
+     * Resolved configurations are cached only for guests loading a view by uuid without any parameters
+     * that modify the view. Only published views are stored (see handleAction()) since other view types
+     * can be modified by saved state, role based bundles etc. Bundle modifiers add layers so the layer registry
+     * and permission versions are part of the key and the cache is flushed when either changes.
+     * @return cache key or null if the response shouldn't be cached
+     */
+    private String getCacheKey(final ActionParameters params, final long oldId, final String referer) {
+        final String uuid = params.getHttpParam(ActionConstants.PARAM_UUID);
+        if (!CACHE_ENABLED || uuid == null || oldId != -1 || !params.getUser().isGuest()) {
+            return null;
+        }
+        for (String paramKey : paramHandlers) {
+            if (params.getHttpParam(paramKey) != null) {
+                return null;
+            }
+        }
+        // read permissions first so a change during loading the registry results in a new version
+        final long permissionsVersion = LayerPermissionIndex.getGeneration();
+        final OskariLayerRegistry.Snapshot registry = OskariLayerRegistry.getSnapshot();
+        if (!registry.isShared()) {
+            return null;
+        }
+        final String version = registry.getVersion() + "|" + permissionsVersion;
+        if (!version.equals(cachedVersion)) {
+            ViewConfigurationCache.clear();
+            cachedVersion = version;
+        }
+        final String roles = params.getUser().getRoles().stream()
+                .mapToLong(Role::getId)
+                .sorted()
+                .mapToObj(Long::toString)
+                .collect(Collectors.joining(","));
+        return String.join("|", version, uuid, params.getLocale().getLanguage(), roles,
+                Boolean.toString(EnvHelper.isSecure(params)), EnvHelper.getAPIurl(params), String.valueOf(referer));
+    }
+
+    /**
+     * Runs the bundle handlers for bundles in the startup sequence. Handlers are run concurrently
+     * unless actionhandler.GetAppSetup.modifiers.parallel=false.
+     */
+    private void modifyBundles(final JSONArray startupSequence, final JSONObject configuration,
+                               final ModifierParams modifierParams) {
+        final Map<String, BundleHandler> handlers = new LinkedHashMap<>();
+        for (int i = 0; i < startupSequence.length(); i++) {
+            final JSONObject bundle = (JSONObject) startupSequence.opt(i);
+            final String bundleid = bundle.optString("bundlename");
+            if (bundleHandlers.containsKey(bundleid)) {
+                handlers.put(bundleid, bundleHandlers.get(bundleid));
+            }
+        }
+        modifyBundles(handlers, configuration, modifierParams, PARALLEL_MODIFIERS);
+    }
+
+    /**
+     * Runs the given bundle handlers in order. With parallel=true handlers that only modify the
+     * configuration of their own bundle are run concurrently and handlers that modify other
+     * bundles (BundleHandler.modifiesOtherBundles()) are run sequentially once they are done.
+     * Running them last is fine as long as they only add missing values to the other bundles
+     * so the result doesn't depend on the order.
+     */
+    static void modifyBundles(final Map<String, BundleHandler> handlers, final JSONObject configuration,
+                              final ModifierParams modifierParams, final boolean parallel) {
+        if (!parallel || handlers.size() < 2) {
+            handlers.forEach((bundleid, handler) -> modifyBundle(bundleid, handler, modifierParams));
+            return;
+        }
+        final Map<String, BundleHandler> concurrent = new LinkedHashMap<>();
+        final Map<String, BundleHandler> sequential = new LinkedHashMap<>();
+        handlers.forEach((bundleid, handler) ->
+                (handler.modifiesOtherBundles() ? sequential : concurrent).put(bundleid, handler));
+        if (!modifyBundlesConcurrently(concurrent, configuration, modifierParams)) {
+            return;
+        }
+        sequential.forEach((bundleid, handler) -> modifyBundle(bundleid, handler, modifierParams));
+    }
+
+    /**
+     * @return false if interrupted while waiting for the handlers
+     */
+    private static boolean modifyBundlesConcurrently(final Map<String, BundleHandler> handlers,
+                                                     final JSONObject configuration,
+                                                     final ModifierParams modifierParams) {
+        if (handlers.size() < 2) {
+            handlers.forEach((bundleid, handler) -> modifyBundle(bundleid, handler, modifierParams));
+            return true;
+        }
+        // handlers create their bundle node if it's missing, do it beforehand so the
+        // configuration itself isn't modified concurrently
+        for (String bundleid : handlers.keySet()) {
+            if (!configuration.has(bundleid)) {
+                JSONHelper.putValue(configuration, bundleid, new JSONObject());
+            }
+        }
+        final RequestTrace.Span trace = RequestTrace.current();
+        final List<Future<?>> tasks = new ArrayList<>(handlers.size());
+        handlers.forEach((bundleid, handler) -> tasks.add(MODIFIER_EXECUTOR.submit(() -> {
+            try (RequestTrace.Span span = RequestTrace.span(trace, TRACE_CATEGORY, bundleid)) {
+                modifyBundle(bundleid, handler, modifierParams);
+            }
+        })));
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                log.error(e.getCause(), "Unable to modify bundle");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while modifying bundles");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void modifyBundle(final String bundleid, final BundleHandler handler, final ModifierParams modifierParams) {
+        log.debug("Modifying bundle", bundleid);
+        try {
+            handler.modifyBundle(modifierParams);
+        } catch (ModifierException e) {
+            log.error(e, "Unable to modify bundle:", bundleid);
+        }
+    }
+
     /**
      * Check whether cookie srs matches the view's native srs
      * @return
@@ -14,4 +14,14 @@ public abstract class BundleHandler extends ViewModifier {
      */
     public abstract boolean modifyBundle(final ModifierParams params) throws ModifierException;
 
+    /**
+     * Handlers that only modify the configuration of their own bundle can be run concurrently
+     * (actionhandler.GetAppSetup.modifiers.parallel=true). Handlers modifying the configuration
+     * of other bundles are run sequentially after the others.
+     * @return true if the handler modifies the configuration of other bundles than its own
+     */
+    public boolean modifiesOtherBundles() {
+        return false;
+    }
+
 }
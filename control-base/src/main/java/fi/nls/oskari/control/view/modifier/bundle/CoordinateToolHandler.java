@@ -20,6 +20,14 @@ public class CoordinateToolHandler extends MapfullHandler {
         epsgInit();
     }
 
+    /**
+     * Adds projection definitions to the mapfull bundle's configuration
+     */
+    @Override
+    public boolean modifiesOtherBundles() {
+        return true;
+    }
+
     public boolean modifyBundle(final ModifierParams params) throws ModifierException {
         final JSONObject toolConfig = getBundleConfig(params.getConfig());
         if(!toolConfig.has(KEY_PROJECTIONS)) {
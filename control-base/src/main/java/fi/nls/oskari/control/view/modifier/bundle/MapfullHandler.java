@@ -17,6 +17,7 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.analysis.domain.AnalysisLayer;
 import fi.nls.oskari.map.analysis.service.AnalysisDbService;
 import fi.nls.oskari.map.analysis.service.AnalysisDbServiceMybatisImpl;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.myplaces.MyPlacesService;
 import fi.nls.oskari.service.OskariComponentManager;
@@ -36,8 +37,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @OskariViewModifier("mapfull")
 public class MapfullHandler extends BundleHandler {
@@ -258,6 +263,7 @@ public class MapfullHandler extends BundleHandler {
                                                final boolean forceProxy) {
 
         // Create a list of layer ids
+        final Set<String> handledIds = new HashSet<>();
         final List<Integer> layerIdList = new ArrayList<>();
         final List<Long> publishedMyPlaces = new ArrayList<Long>();
         final List<Long> publishedAnalysis = new ArrayList<Long>();
@@ -268,7 +274,7 @@ public class MapfullHandler extends BundleHandler {
             try {
                 final JSONObject layer = layersArray.getJSONObject(i);
                 layerId = layer.getString(KEY_ID);
-                if (layerId == null || layerIdList.contains(layerId)) {
+                if (layerId == null || !handledIds.add(layerId)) {
                     continue;
                 }
                 // special handling for myplaces and analysis layers
@@ -307,20 +313,14 @@ public class MapfullHandler extends BundleHandler {
             }
         }
 
-        final List<OskariLayer> layers = mapLayerService.findByIdList(layerIdList);
+        // all layers and their permissions are resolved with one lookup each
+        List<OskariLayer> layers = OskariLayerRegistry.findByIdList(layerIdList, mapLayerService);
         if (forceProxy) {
-            layers.forEach(lyr -> {
-                if (lyr.getType().equals(OskariLayer.TYPE_3DTILES)) {
+            // layers from the registry are shared so proxy copies of them
+            layers = layers.stream()
                     // Proxy is not supported for 3D layers
-                    return;
-                }
-                JSONObject attributes = lyr.getAttributes();
-                if (attributes == null) {
-                    attributes = new JSONObject();
-                }
-                JSONHelper.putValue(attributes, "forceProxy", forceProxy);
-                lyr.setAttributes(attributes);
-            });
+                    .map(lyr -> lyr.getType().equals(OskariLayer.TYPE_3DTILES) ? lyr : OskariLayerWorker.forceProxy(lyr))
+                    .collect(Collectors.toList());
         }
 
         final JSONObject struct = OskariLayerWorker.getListOfMapLayers(
@@ -348,13 +348,18 @@ public class MapfullHandler extends BundleHandler {
                                              final boolean useDirectURL,
                                              final boolean modifyURLs) {
 
+        if (publishedAnalysis.isEmpty()) {
+            return;
+        }
         final boolean analyseBundlePresent = bundleIds.contains(BUNDLE_ANALYSE);
         final Set<String> permissions = permissionsService.getResourcesWithGrantedPermissions(
                 AnalysisLayer.TYPE, user, Permissions.PERMISSION_TYPE_VIEW_PUBLISHED);
         LOGGER.debug("Analysis layer permissions for published view", permissions);
 
+        final Map<Long, Analysis> analysisById = analysisService.getAnalysisById(publishedAnalysis).stream()
+                .collect(Collectors.toMap(Analysis::getId, Function.identity(), (a, b) -> a));
         for (Long id : publishedAnalysis) {
-            final Analysis analysis = analysisService.getAnalysisById(id);
+            final Analysis analysis = analysisById.get(id);
             if(analysis == null){
                 continue;
             }
@@ -430,10 +435,15 @@ public class MapfullHandler extends BundleHandler {
                                          final long viewID,
                                          final Set<String> bundleIds,
                                          final String mapSrs) {
+        if (publishedUserLayers.isEmpty()) {
+            return;
+        }
         final boolean userLayersBundlePresent = bundleIds.contains(BUNDLE_MYPLACESIMPORT);
         final OskariLayer baseLayer = userLayerDataService.getBaseLayer();
+        final Map<Long, UserLayer> userLayersById = userLayerService.getUserLayersByIds(publishedUserLayers).stream()
+                .collect(Collectors.toMap(UserLayer::getId, Function.identity(), (a, b) -> a));
         for (Long id : publishedUserLayers) {
-            final UserLayer userLayer = userLayerService.getUserLayerById(id);
+            final UserLayer userLayer = userLayersById.get(id);
 
             if (userLayer == null) {
                 LOGGER.warn("Unable to find published user layer with id", id);
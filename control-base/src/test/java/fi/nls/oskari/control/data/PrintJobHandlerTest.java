@@ -0,0 +1,144 @@
+package fi.nls.oskari.control.data;
+
+import com.codahale.metrics.MetricRegistry;
+import fi.nls.oskari.control.ActionConstants;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.ActionParamsException;
+import fi.nls.oskari.domain.User;
+import fi.nls.test.control.JSONActionRouteTest;
+import fi.nls.test.control.MockServletOutputStream;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oskari.print.PrintService;
+import org.oskari.print.job.PrintJobService;
+import org.oskari.print.request.PrintFormat;
+import org.oskari.print.request.PrintRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class PrintJobHandlerTest extends JSONActionRouteTest {
+
+    private final PrintJobHandler handler = new PrintJobHandler();
+    // keeps the jobs running so they count against the per-user limit (2 by default)
+    private final CountDownLatch rendering = new CountDownLatch(1);
+    private PrintJobService jobService;
+    // POST responses of the latest ActionParameters, others are written to getResponseJSON()
+    private ByteArrayOutputStream output;
+
+    @Before
+    public void setUp() throws Exception {
+        final PrintService printService = mock(PrintService.class);
+        doAnswer(invocation -> {
+            rendering.await();
+            return null;
+        }).when(printService).writePDF(any(PrintRequest.class), any(), any());
+        jobService = new PrintJobService(printService, new MetricRegistry());
+
+        final PrintRequest request = new PrintRequest();
+        request.setFormat(PrintFormat.PDF);
+        final GetPrintHandler parser = mock(GetPrintHandler.class);
+        doReturn(request).when(parser).createPrintRequest(any(ActionParameters.class));
+
+        handler.setPrintRequestParser(parser);
+        handler.setJobService(jobService);
+    }
+
+    @After
+    public void tearDown() {
+        rendering.countDown();
+        jobService.shutdown();
+    }
+
+    @Test
+    public void testGuestLimitIsPerSession() throws Exception {
+        submit(getGuestUser(), "session1", "10.0.0.1");
+        submit(getGuestUser(), "session1", "10.0.0.2");
+
+        // Changing X-Forwarded-For doesn't make the guest someone else
+        final ActionParameters params = createActionParams("session1", "10.0.0.3", getGuestUser(), null);
+        handler.handlePost(params);
+        verify(params.getResponse()).setStatus(429);
+        jsonActionRouteSetUp();
+
+        // Guests in other sessions have their own limit
+        submit(getGuestUser(), "session2", "10.0.0.1");
+    }
+
+    @Test
+    public void testJobsCanOnlyBeAccessedByOwner() throws Exception {
+        final String guestJob = submit(getGuestUser(), "session1", "10.0.0.1");
+        final String userJob = submit(getLoggedInUser(), "session1", "10.0.0.1");
+
+        assertNoSuchJob(getGuestUser(), "session2", "10.0.0.1", guestJob);
+        assertNoSuchJob(getGuestUser(), "session1", "10.0.0.1", userJob);
+        assertNoSuchJob(getNotAdminUser(), "session1", "10.0.0.1", userJob);
+
+        final ActionParameters status = createActionParams("session1", "10.0.0.2", getGuestUser(), guestJob);
+        handler.handleGet(status);
+        assertEquals(guestJob, getResponseJSON().getString("id"));
+        jsonActionRouteSetUp();
+
+        final ActionParameters cancel = createActionParams("session3", "10.0.0.3", getLoggedInUser(), userJob);
+        handler.handleDelete(cancel);
+        assertEquals("CANCELLED", getResponseJSON().getString("status"));
+    }
+
+    private void assertNoSuchJob(User user, String session, String ip, String id) throws Exception {
+        try {
+            handler.handleGet(createActionParams(session, ip, user, id));
+            fail("Job should not be found");
+        } catch (ActionParamsException expected) {
+        }
+        try {
+            handler.handleDelete(createActionParams(session, ip, user, id));
+            fail("Job should not be cancelled");
+        } catch (ActionParamsException expected) {
+        }
+    }
+
+    private String submit(User user, String session, String ip) throws Exception {
+        final ActionParameters params = createActionParams(session, ip, user, null);
+        handler.handlePost(params);
+        verify(params.getResponse(), never()).setStatus(429);
+        verify(params.getResponse()).setStatus(HttpServletResponse.SC_ACCEPTED);
+        return readResponse().getString("id");
+    }
+
+    private ActionParameters createActionParams(String sessionId, String ip, User user, String id) throws Exception {
+        final Map<String, String> httpParams = new HashMap<>();
+        if (id != null) {
+            httpParams.put(ActionConstants.PARAM_ID, id);
+        }
+        final ActionParameters params = createActionParams(httpParams, user);
+        final HttpSession session = mock(HttpSession.class);
+        doReturn(sessionId).when(session).getId();
+        doReturn(session).when(params.getRequest()).getSession();
+        doReturn(session).when(params.getRequest()).getSession(true);
+        doReturn(ip).when(params.getRequest()).getHeader("x-forwarded-for");
+
+        output = new ByteArrayOutputStream();
+        doReturn(new MockServletOutputStream(output)).when(params.getResponse()).getOutputStream();
+        return params;
+    }
+
+    private JSONObject readResponse() throws Exception {
+        return new JSONObject(new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
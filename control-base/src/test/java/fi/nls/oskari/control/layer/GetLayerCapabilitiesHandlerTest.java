@@ -7,11 +7,10 @@ import fi.nls.oskari.control.ActionConstants;
 import fi.nls.oskari.control.ActionDeniedException;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
-import fi.nls.oskari.permission.domain.Permission;
-import fi.nls.oskari.permission.domain.Resource;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.capabilities.CapabilitiesCacheService;
 import fi.nls.oskari.util.PropertyUtil;
@@ -29,6 +28,9 @@ import java.util.Map;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
@@ -110,13 +112,14 @@ public class GetLayerCapabilitiesHandlerTest extends JSONActionRouteTest {
 
         PermissionsService service = mock(PermissionsServiceIbatisImpl.class);
 
-        Resource res = new Resource();
-        Permission p = new Permission();
-        p.setType(Permissions.PERMISSION_TYPE_VIEW_LAYER);
-        p.setExternalType(Permissions.EXTERNAL_TYPE_ROLE);
-        p.setExternalId("" + getLoggedInUser().getRoles().iterator().next().getId());
-        res.addPermission(p);
-        doReturn(res).when(service).findResource(any(Resource.class));
+        final long roleId = getLoggedInUser().getRoles().iterator().next().getId();
+        // only the logged in user role has view permission
+        doAnswer(invocation -> {
+            User user = (User) invocation.getArguments()[0];
+            String type = (String) invocation.getArguments()[2];
+            return Permissions.PERMISSION_TYPE_VIEW_LAYER.equals(type) &&
+                    user.getRoles().stream().anyMatch(role -> role.getId() == roleId);
+        }).when(service).hasLayerPermission(any(User.class), anyInt(), anyString());
         return service;
     }
 
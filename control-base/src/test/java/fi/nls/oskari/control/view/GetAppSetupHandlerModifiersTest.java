@@ -0,0 +1,161 @@
+package fi.nls.oskari.control.view;
+
+import fi.mml.map.mapwindow.util.OskariLayerWorker;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.control.view.modifier.bundle.BundleHandler;
+import fi.nls.oskari.control.view.modifier.bundle.CoordinateToolHandler;
+import fi.nls.oskari.control.view.modifier.bundle.MapfullHandler;
+import fi.nls.oskari.domain.GuestUser;
+import fi.nls.oskari.domain.map.view.View;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
+import fi.nls.oskari.map.layer.OskariLayerService;
+import fi.nls.oskari.myplaces.MyPlacesService;
+import fi.nls.oskari.service.OskariComponentManager;
+import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.view.modifier.ModifierParams;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.oskari.map.userlayer.service.UserLayerDbService;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * CoordinateToolHandler writes to the mapfull bundle's configuration so it must not be run
+ * concurrently with MapfullHandler.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(value = {OskariLayerRegistry.class, OskariLayerWorker.class})
+@PowerMockIgnore({"com.sun.org.apache.xalan.*", "com.sun.org.apache.xerces.*", "javax.xml.*", "org.w3c.dom.*", "org.xml.*", "com.sun.org.apache.xml.*"})
+public class GetAppSetupHandlerModifiersTest {
+
+    private static final int ROUNDS = 200;
+
+    private final MapfullHandler mapfull = new MapfullHandler();
+    private final CoordinateToolHandler coordinatetool = new CoordinateToolHandler();
+
+    @BeforeClass
+    public static void addComponents() {
+        OskariComponentManager.addComponent(mock(MyPlacesService.class));
+        OskariComponentManager.addComponent(mock(UserLayerDbService.class));
+        OskariComponentManager.addComponent(mock(OskariLayerService.class));
+    }
+
+    @AfterClass
+    public static void removeComponents() {
+        OskariComponentManager.removeComponentsOfType(MyPlacesService.class);
+        OskariComponentManager.removeComponentsOfType(UserLayerDbService.class);
+        OskariComponentManager.removeComponentsOfType(OskariLayerService.class);
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(OskariLayerRegistry.class);
+        when(OskariLayerRegistry.findByIdList(anyList(), any(OskariLayerService.class)))
+                .thenReturn(Collections.emptyList());
+        mockStatic(OskariLayerWorker.class);
+        when(OskariLayerWorker.getListOfMapLayers(anyList(), any(), anyString(), anyString(), anyBoolean(), anyBoolean()))
+                .thenReturn(JSONHelper.createJSONObject("layers", new JSONArray()));
+
+        mapfull.init();
+        coordinatetool.init();
+    }
+
+    @Test
+    public void testCrossBundleHandlerIsNotRunConcurrently() {
+        assertTrue("CoordinateToolHandler writes to mapfull", coordinatetool.modifiesOtherBundles());
+        assertTrue("MapfullHandler only writes its own bundle", !mapfull.modifiesOtherBundles());
+    }
+
+    @Test
+    public void testMapfullAndCoordinateToolSequential() throws Exception {
+        for (int i = 0; i < ROUNDS; i++) {
+            assertConfig(run(false));
+        }
+    }
+
+    @Test
+    public void testMapfullAndCoordinateToolParallel() throws Exception {
+        for (int i = 0; i < ROUNDS; i++) {
+            assertConfig(run(true));
+        }
+    }
+
+    /**
+     * In parallel mode CoordinateToolHandler is run after the other handlers regardless of the
+     * startup sequence so the result must not depend on the order.
+     */
+    @Test
+    public void testResultDoesntDependOnOrder() throws Exception {
+        final JSONObject expected = run(false);
+        assertTrue(JSONHelper.isEqual(expected, run(false, "coordinatetool", "mapfull")));
+        for (int i = 0; i < ROUNDS; i++) {
+            assertTrue(JSONHelper.isEqual(expected, run(true)));
+            assertTrue(JSONHelper.isEqual(expected, run(true, "coordinatetool", "mapfull")));
+        }
+    }
+
+    private JSONObject run(boolean parallel) throws Exception {
+        return run(parallel, "mapfull", "coordinatetool");
+    }
+
+    private JSONObject run(boolean parallel, String... order) throws Exception {
+        final JSONObject config = new JSONObject();
+        config.put("mapfull", new JSONObject("{\"conf\":{\"mapOptions\":{\"srsName\":\"EPSG:3067\"},\"layers\":[]},\"state\":{}}"));
+        config.put("coordinatetool", new JSONObject("{\"conf\":{\"supportedProjections\":[\"EPSG:4326\",\"EPSG:3857\"]}}"));
+        final JSONArray startup = new JSONArray();
+        for (String bundle : order) {
+            startup.put(JSONHelper.createJSONObject("bundlename", bundle));
+        }
+
+        final ActionParameters actionParams = new ActionParameters();
+        actionParams.setUser(new GuestUser());
+        actionParams.setLocale(new Locale("en"));
+        final View view = new View();
+        view.setId(1);
+        final ModifierParams params = new ModifierParams();
+        params.setActionParams(actionParams);
+        params.setView(view);
+        params.setConfig(config);
+        params.setStartupSequence(startup);
+
+        final Map<String, BundleHandler> handlers = new LinkedHashMap<>();
+        for (String bundle : order) {
+            handlers.put(bundle, "mapfull".equals(bundle) ? mapfull : coordinatetool);
+        }
+        GetAppSetupHandler.modifyBundles(handlers, config, params, parallel);
+        return config;
+    }
+
+    private void assertConfig(JSONObject config) {
+        final JSONObject mapfullConf = config.optJSONObject("mapfull").optJSONObject("conf");
+        assertNotNull("Layers should be written by mapfull", mapfullConf.optJSONArray("layers"));
+        final JSONObject defs = mapfullConf.optJSONObject("projectionDefs");
+        assertNotNull("Projection defs should be written", defs);
+        assertEquals("Map projection and coordinatetool projections should all be defined", 3, defs.length());
+        assertTrue(defs.has("EPSG:3067"));
+        assertTrue(defs.has("EPSG:4326"));
+        assertTrue(defs.has("EPSG:3857"));
+    }
+}
@@ -14,11 +14,13 @@ import fi.nls.oskari.domain.map.view.View;
 import fi.nls.oskari.domain.map.view.ViewTypes;
 import fi.nls.oskari.map.layer.DataProviderService;
 import fi.nls.oskari.map.layer.DataProviderServiceMybatisImpl;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 import fi.nls.oskari.map.view.BundleService;
 import fi.nls.oskari.map.view.BundleServiceMybatisImpl;
 import fi.nls.oskari.map.view.ViewService;
 import fi.nls.oskari.map.view.AppSetupServiceMybatisImpl;
+import fi.nls.oskari.map.view.ViewConfigurationCache;
 import fi.nls.oskari.util.DuplicateException;
 import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.view.modifier.ViewModifier;
@@ -46,9 +48,11 @@ import java.util.Properties;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static org.powermock.api.support.membermodification.MemberMatcher.constructor;
 import static org.powermock.api.support.membermodification.MemberModifier.suppress;
@@ -61,7 +65,7 @@ import static org.powermock.api.support.membermodification.MemberModifier.suppre
  * To change this template use File | Settings | File Templates.
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest(value = {WFSHighlightParamHandler.class, OskariLayerWorker.class, PropertyUtil.class, MapfullHandler.class})
+@PrepareForTest(value = {WFSHighlightParamHandler.class, OskariLayerWorker.class, PropertyUtil.class, MapfullHandler.class, OskariLayerRegistry.class})
 @PowerMockIgnore({"com.sun.org.apache.xalan.*", "com.sun.org.apache.xerces.*", "javax.xml.*", "org.w3c.dom.*", "org.xml.*", "com.sun.org.apache.xml.*"})
 public class GetAppSetupHandlerTest extends JSONActionRouteTest {
 
@@ -201,6 +205,86 @@ public class GetAppSetupHandlerTest extends JSONActionRouteTest {
         verify(viewService, never()).getViewWithConf(anyLong());
         verify(viewService, times(1)).getViewWithConfByOldId(123);
     }
+
+    @Test
+    public void testPublishedViewConfigurationIsCached() throws Exception {
+        final OskariLayerRegistry.Snapshot registry = mockLayerRegistry();
+        final View published = mockPublishedView("published-uuid");
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(ActionConstants.PARAM_UUID, "published-uuid");
+        ViewConfigurationCache.clear();
+        try {
+            handler.handleAction(createActionParams(parameters));
+            final JSONObject expected = getResponseJSON();
+
+            jsonActionRouteSetUp();
+            handler.handleAction(createActionParams(parameters));
+            verify(viewService, times(1)).getViewWithConfByUuId("published-uuid");
+            verifyResponseContent(expected);
+            // usage is still updated for cached responses
+            verify(viewService, times(2)).updateViewUsage(published);
+
+            // view modified through ViewService
+            ViewConfigurationCache.invalidate(published.getId());
+            jsonActionRouteSetUp();
+            handler.handleAction(createActionParams(parameters));
+            verify(viewService, times(2)).getViewWithConfByUuId("published-uuid");
+
+            // layers or permissions modified
+            doReturn("2").when(registry).getVersion();
+            jsonActionRouteSetUp();
+            handler.handleAction(createActionParams(parameters));
+            verify(viewService, times(3)).getViewWithConfByUuId("published-uuid");
+            verifyResponseContent(expected);
+        } finally {
+            ViewConfigurationCache.clear();
+        }
+    }
+
+    @Test
+    public void testUserSpecificConfigurationIsNotCached() throws Exception {
+        mockLayerRegistry();
+        mockPublishedView("published-uuid");
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(ActionConstants.PARAM_UUID, "published-uuid");
+        // the dummy view is a user view
+        final Map<String, String> userView = new HashMap<String, String>();
+        userView.put(ActionConstants.PARAM_UUID, "user-uuid");
+        ViewConfigurationCache.clear();
+        try {
+            for (int i = 0; i < 2; i++) {
+                jsonActionRouteSetUp();
+                handler.handleAction(createActionParams(parameters, getLoggedInUser()));
+                jsonActionRouteSetUp();
+                handler.handleAction(createActionParams(userView));
+            }
+            verify(viewService, times(2)).getViewWithConfByUuId("published-uuid");
+            verify(viewService, times(2)).getViewWithConfByUuId("user-uuid");
+        } finally {
+            ViewConfigurationCache.clear();
+        }
+    }
+
+    private View mockPublishedView(String uuid) {
+        final View view = ViewTestHelper.createMockView("framework.mapfull");
+        view.setType(ViewTypes.PUBLISHED);
+        view.setUuid(uuid);
+        doReturn(view).when(viewService).getViewWithConfByUuId(uuid);
+        return view;
+    }
+
+    /**
+     * Cached configurations are used only when the layer registry is shared between requests
+     */
+    private OskariLayerRegistry.Snapshot mockLayerRegistry() {
+        final OskariLayerRegistry.Snapshot registry = mock(OskariLayerRegistry.Snapshot.class);
+        doReturn(true).when(registry).isShared();
+        doReturn("1").when(registry).getVersion();
+        mockStatic(OskariLayerRegistry.class);
+        when(OskariLayerRegistry.getSnapshot()).thenReturn(registry);
+        when(OskariLayerRegistry.findByIdList(anyList(), any())).thenReturn(Collections.emptyList());
+        return registry;
+    }
     /* *********************************************
      * Service mocks
      * ********************************************
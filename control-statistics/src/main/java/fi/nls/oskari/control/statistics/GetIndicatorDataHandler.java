@@ -50,7 +50,7 @@ public class GetIndicatorDataHandler extends ActionHandler {
         }
         JSONObject response = getIndicatorDataJSON(params.getUser(),
                 pluginId, indicatorId, layerId, selectorsJSON);
-        ResponseHelper.writeResponse(params, response);
+        ResponseHelper.writeStreamingResponse(params, response);
     }
 
     private JSONObject getIndicatorDataJSON(User user, long pluginId, String indicatorId,
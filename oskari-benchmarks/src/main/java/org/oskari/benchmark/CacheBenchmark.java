@@ -0,0 +1,74 @@
+package org.oskari.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.ComputeOnceCache;
+
+/**
+ * Cache lookups from several threads. Keys are picked from twice the cache limit
+ * so about half of the lookups miss and cause an insert (and eviction).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+public class CacheBenchmark {
+
+    private static final int LIMIT = 1000;
+
+    private String[] keys;
+    private Cache<String> cache;
+    private ComputeOnceCache<String> computeOnceCache;
+
+    @Setup
+    public void setup() {
+        keys = new String[LIMIT * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "layer_" + i + "_EPSG:3067";
+        }
+        cache = new Cache<>();
+        cache.setLimit(LIMIT);
+        computeOnceCache = new ComputeOnceCache<>(LIMIT);
+        for (int i = 0; i < LIMIT; i++) {
+            cache.put(keys[i], keys[i]);
+            computeOnceCache.put(keys[i], keys[i]);
+        }
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    public String getOrPut() {
+        String key = randomKey();
+        String value = cache.get(key);
+        if (value == null) {
+            value = key;
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    @Benchmark
+    public String computeOnce() {
+        return computeOnceCache.get(randomKey(), key -> key);
+    }
+}
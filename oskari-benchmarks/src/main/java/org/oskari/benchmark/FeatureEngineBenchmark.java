@@ -0,0 +1,113 @@
+package org.oskari.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.nls.oskari.eu.elf.recipe.universal.ELF_path_parse_worker;
+import fi.nls.oskari.eu.elf.recipe.universal.ELF_wfs_CompiledParser;
+import fi.nls.oskari.eu.elf.recipe.universal.ELF_wfs_Parser;
+import fi.nls.oskari.fe.engine.BasicFeatureEngine;
+import fi.nls.oskari.fe.input.XMLInputProcessor;
+import fi.nls.oskari.fe.input.format.gml.StaxGMLInputProcessor;
+import fi.nls.oskari.fe.input.format.gml.recipe.ParserRecipe;
+import fi.nls.oskari.fe.output.OutputStreamProcessor;
+import fi.nls.oskari.fe.output.format.json.JsonOutputProcessor;
+import fi.nls.oskari.fi.rysp.generic.RYSP_wfs_CompiledParser;
+import fi.nls.oskari.fi.rysp.generic.RYSP_wfs_Parser;
+import fi.nls.oskari.fi.rysp.generic.WFS11_path_parse_worker;
+import fi.nls.oskari.util.JSONHelper;
+
+/**
+ * GML GetFeature responses parsed with the feature engine parse config recipes
+ * (path and compiled variants). See OskariGMLBenchmark for the GeoTools based parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FeatureEngineBenchmark {
+
+    private static final String RYSP_CONF = "{\"paths\":[" +
+            "{\"path\":\"/kanta:Kiinteisto/@gml:id\",\"label\":\"id\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:kiinteistotunnus\",\"label\":\"Kiinteistotunnus\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:rekisteriyksikkolaji\",\"label\":\"Laji\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:alkuPvm\",\"label\":\"LuontiPvm\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:sijainnit/kanta:Sijainti/kanta:alue\",\"label\":\"geom\",\"type\":\"Geometry\"}]," +
+            "\"root\":{\"rootNS\":\"http://www.paikkatietopalvelu.fi/gml/kantakartta\",\"name\":\"Kiinteisto\"}," +
+            "\"scan\":{\"scanNS\":\"http://www.opengis.net/gml\",\"name\":\"featureMember\"}}";
+
+    private static final String ELF_CONF = "{\"scan\":{\"scanNS\":\"http://www.opengis.net/wfs/2.0\",\"name\":\"member\"}," +
+            "\"root\":{\"rootNS\":\"http://www.locationframework.eu/schemas/Addresses/MasterLoD0/1.0\",\"name\":\"Address\"}," +
+            "\"paths\":[" +
+            "{\"path\":\"/elf-lod0ad:Address/@gml:id\",\"type\":\"String\",\"label\":\"id\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:inspireId/base:Identifier/base:localId\",\"type\":\"String\",\"label\":\"InspireLocalId\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:position/ad:GeographicPosition/ad:geometry\",\"type\":\"Geometry\",\"label\":\"geom\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:locator/ad:AddressLocator/ad:designator/ad:LocatorDesignator\",\"type\":\"Object\",\"label\":\"addressLocatorDesignators\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:beginLifespanVersion\",\"type\":\"String\",\"label\":\"beginLifespanVersion\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:component/@xlink:href\",\"type\":\"Href\",\"label\":\"components\",\"hrefPath\":[" +
+            "{\"path\":\"/wfs:SimpleFeatureCollection/wfs:member/elf-lod0ad:ThoroughfareName/@gml:id\",\"type\":\"String\",\"label\":\"id\"}," +
+            "{\"path\":\"/wfs:SimpleFeatureCollection/wfs:member/elf-lod0ad:ThoroughfareName/ad:name/gn:GeographicalName/gn:spelling/gn:SpellingOfName/gn:text\",\"type\":\"String\",\"label\":\"name\"}" +
+            "]}" +
+            "]}";
+
+    @Param({ "path", "compiled" })
+    public String recipe;
+
+    private byte[] wfs11;
+    private byte[] wfs20;
+    private JSONObject ryspConf;
+    private JSONObject elfConf;
+
+    @Setup
+    public void setup() {
+        wfs11 = Fixtures.bytes(Fixtures.GML_WFS11);
+        wfs20 = Fixtures.bytes(Fixtures.GML_WFS20);
+        ryspConf = JSONHelper.createJSONObject(RYSP_CONF);
+        elfConf = JSONHelper.createJSONObject(ELF_CONF);
+    }
+
+    @Benchmark
+    public byte[] featureEngineWFS11() throws Exception {
+        ParserRecipe parser = "compiled".equals(recipe) ? new RYSP_wfs_CompiledParser() : new RYSP_wfs_Parser();
+        parser.setWFS11ParseWorker(new WFS11_path_parse_worker(ryspConf));
+        return parse(parser, wfs11);
+    }
+
+    @Benchmark
+    public byte[] featureEngineWFS20() throws Exception {
+        ParserRecipe parser = "compiled".equals(recipe) ? new ELF_wfs_CompiledParser() : new ELF_wfs_Parser();
+        parser.setParseWorker(new ELF_path_parse_worker(elfConf));
+        return parse(parser, wfs20);
+    }
+
+    private byte[] parse(ParserRecipe recipe, byte[] gml) throws Exception {
+        BasicFeatureEngine engine = new BasicFeatureEngine();
+        XMLInputProcessor inputProcessor = new StaxGMLInputProcessor();
+        OutputStreamProcessor outputProcessor = new JsonOutputProcessor();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        inputProcessor.setInput(new ByteArrayInputStream(gml));
+        outputProcessor.setOutput(out);
+        engine.setRecipe(recipe);
+        engine.setInputProcessor(inputProcessor);
+        engine.setOutputProcessor(outputProcessor);
+        engine.process();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package org.oskari.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.geojson.GeoJSONReader2;
+import org.oskari.geojson.GeoJSONSchemaDetector;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.nls.test.util.ResourceHelper;
+
+/**
+ * Benchmark inputs from shared-test-resources (src/main/resources/benchmark)
+ */
+public class Fixtures {
+
+    /** 500 polygons with properties in EPSG:3067 */
+    public static final String GEOJSON_3067 = "/benchmark/features-3067.geojson";
+    /** WFS 1.1.0 GetFeature response (GML 3.1.1, featureMember) */
+    public static final String GML_WFS11 = "/benchmark/wfs11-rysp-kiinteisto.xml";
+    /** WFS 2.0.0 GetFeature response (GML 3.2.1, member) with local href links */
+    public static final String GML_WFS20 = "/benchmark/wfs20-elf-addresses.xml";
+    /** 128x128 Float32 TIFF with 8 strips */
+    public static final String TIFF_FLOAT32 = "/benchmark/elevation-float32.tif";
+
+    public static final String SRS = "EPSG:3067";
+    /** Extent of the features in GEOJSON_3067 */
+    public static final double[] EXTENT = { 384800, 6669800, 405200, 6690200 };
+
+    public static byte[] bytes(String resource) {
+        byte[] b = ResourceHelper.readBytesResource(resource);
+        if (b == null) {
+            throw new IllegalArgumentException("Fixture not found: " + resource);
+        }
+        return b;
+    }
+
+    public static String string(String resource) {
+        return ResourceHelper.readStringResource(resource);
+    }
+
+    public static Map<String, Object> json(String resource) throws IOException {
+        return new ObjectMapper().readValue(bytes(resource), new TypeReference<Map<String, Object>>() {});
+    }
+
+    public static SimpleFeatureCollection features(String resource) throws Exception {
+        Map<String, Object> json = json(resource);
+        CoordinateReferenceSystem crs = CRS.decode(SRS);
+        SimpleFeatureType schema = GeoJSONSchemaDetector.getSchema(json, crs);
+        return GeoJSONReader2.toFeatureCollection(json, schema);
+    }
+}
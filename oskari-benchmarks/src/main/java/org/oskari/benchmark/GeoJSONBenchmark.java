@@ -0,0 +1,63 @@
+package org.oskari.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.referencing.CRS;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.oskari.geojson.GeoJSONReader2;
+import org.oskari.geojson.GeoJSONSchemaDetector;
+import org.oskari.geojson.GeoJSONWriter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GeoJSONBenchmark {
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final TypeReference<Map<String, Object>> typeRef = new TypeReference<Map<String, Object>>() {};
+
+    private byte[] geojson;
+    private SimpleFeatureType schema;
+    private SimpleFeatureCollection features;
+
+    @Setup
+    public void setup() throws Exception {
+        geojson = Fixtures.bytes(Fixtures.GEOJSON_3067);
+        Map<String, Object> json = om.readValue(geojson, typeRef);
+        schema = GeoJSONSchemaDetector.getSchema(json, CRS.decode(Fixtures.SRS));
+        features = GeoJSONReader2.toFeatureCollection(json, schema);
+    }
+
+    @Benchmark
+    public JSONObject write() throws Exception {
+        return new GeoJSONWriter().writeFeatureCollection(features);
+    }
+
+    /**
+     * Parses the JSON and reads the features with a known schema
+     */
+    @Benchmark
+    public SimpleFeatureCollection read() throws Exception {
+        Map<String, Object> json = om.readValue(geojson, typeRef);
+        return GeoJSONReader2.toFeatureCollection(json, schema);
+    }
+}
@@ -0,0 +1,74 @@
+package org.oskari.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.map.layer.formatters.LayerJSONFormatter;
+import fi.nls.oskari.util.JSONHelper;
+
+/**
+ * Formats a layer listing of WMS layers with capabilities and coverage
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LayerJSONFormatterBenchmark {
+
+    private static final int LAYER_COUNT = 200;
+    private static final String COVERAGE_WGS84 = "POLYGON((19 59, 32 59, 32 70, 19 70, 19 59))";
+
+    private final LayerJSONFormatter formatter = new LayerJSONFormatter();
+    private final List<OskariLayer> layers = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            OskariLayer layer = new OskariLayer();
+            layer.setId(i + 1);
+            layer.setType(OskariLayer.TYPE_WMS);
+            layer.setName("layer_" + i);
+            layer.setUrl("https://example.com/wms");
+            layer.setVersion("1.3.0");
+            layer.setOpacity(80);
+            layer.setMinScale(5000000d);
+            layer.setMaxScale(1d);
+            layer.setStyle("default");
+            layer.setGeometry(COVERAGE_WGS84);
+            layer.setLocale(JSONHelper.createJSONObject("{\"fi\":{\"name\":\"Taso " + i + "\",\"subtitle\":\"\"},"
+                    + "\"en\":{\"name\":\"Layer " + i + "\",\"subtitle\":\"\"}}"));
+            layer.setParams(JSONHelper.createJSONObject("{\"format\":\"image/png\"}"));
+            layer.setOptions(JSONHelper.createJSONObject("{\"singleTile\":false}"));
+            layer.setAttributes(JSONHelper.createJSONObject("{\"forcedSRS\":[\"EPSG:3067\"]}"));
+            layer.setCapabilities(JSONHelper.createJSONObject("{\"isQueryable\":true,\"srs\":[\"EPSG:3067\",\"EPSG:4326\"],"
+                    + "\"styles\":[{\"name\":\"default\",\"title\":\"Default\",\"legend\":\"https://example.com/legend.png\"}],"
+                    + "\"formats\":{\"available\":[\"text/html\",\"application/json\"],\"value\":\"text/html\"}}"));
+            layers.add(layer);
+        }
+    }
+
+    @Benchmark
+    public JSONArray layerListing() {
+        JSONArray list = new JSONArray();
+        for (OskariLayer layer : layers) {
+            list.put(formatter.getJSON(layer, "fi", true, "EPSG:3067"));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,47 @@
+package org.oskari.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MVTEncoderBenchmark {
+
+    /** Tile covers 1/(tiles*tiles) of the fixture extent */
+    @Param({ "1", "4" })
+    public int tiles;
+
+    private SimpleFeatureCollection features;
+    private double[] bbox;
+
+    @Setup
+    public void setup() throws Exception {
+        features = Fixtures.features(Fixtures.GEOJSON_3067);
+        double[] extent = Fixtures.EXTENT;
+        double w = (extent[2] - extent[0]) / tiles;
+        double h = (extent[3] - extent[1]) / tiles;
+        bbox = new double[] { extent[0], extent[1], extent[0] + w, extent[1] + h };
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return SimpleFeaturesMVTEncoder.encodeToByteArray(features, "features", bbox, 4096, 256);
+    }
+}
@@ -0,0 +1,42 @@
+package org.oskari.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oskari.service.wfs.client.OskariGML;
+
+/**
+ * WFS 1.1.0 GetFeature response parsed with OskariGML (GeoTools)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OskariGMLBenchmark {
+
+    private final OskariGML gml = new OskariGML();
+    private byte[] wfs11;
+
+    @Setup
+    public void setup() {
+        wfs11 = Fixtures.bytes(Fixtures.GML_WFS11);
+    }
+
+    @Benchmark
+    public SimpleFeatureCollection decode() throws Exception {
+        return gml.decodeFeatureCollection(new ByteArrayInputStream(wfs11), null, null);
+    }
+}
@@ -0,0 +1,78 @@
+package org.oskari.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oskari.print.PNG;
+import org.oskari.print.request.PrintLayer;
+
+/**
+ * Composes loaded layer images of an A4 300 dpi print (with opacity) and scales the result
+ * like PNG print does, without loading the images
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PrintComposeBenchmark {
+
+    private static final int WIDTH = 2480;
+    private static final int HEIGHT = 3508;
+    private static final int[] OPACITIES = { 100, 80, 50 };
+
+    private final List<PrintLayer> layers = new ArrayList<>();
+    private final List<BufferedImage> images = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < OPACITIES.length; i++) {
+            PrintLayer layer = new PrintLayer();
+            layer.setId(i + 1);
+            layer.setOpacity(OPACITIES[i]);
+            layers.add(layer);
+            images.add(createImage(i));
+        }
+    }
+
+    private static BufferedImage createImage(int seed) {
+        BufferedImage bi = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int y = 0; y < HEIGHT; y += 64) {
+            for (int x = 0; x < WIDTH; x += 64) {
+                g.setColor(new Color((x * 31 + seed * 97) % 256, (y * 17 + seed * 13) % 256, (x + y) % 256, 200));
+                g.fillOval(x, y, 48, 48);
+            }
+        }
+        g.dispose();
+        return bi;
+    }
+
+    @Benchmark
+    public BufferedImage compose() {
+        return PNG.compose(WIDTH, HEIGHT, layers, images);
+    }
+
+    @Benchmark
+    public BufferedImage composeAndScale() {
+        BufferedImage canvas = PNG.compose(WIDTH, HEIGHT, layers, images);
+        return PNG.scale(canvas, WIDTH / 2, HEIGHT / 2, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+}
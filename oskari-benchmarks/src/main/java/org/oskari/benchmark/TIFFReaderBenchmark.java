@@ -0,0 +1,47 @@
+package org.oskari.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oskari.wcs.geotiff.IFD;
+import org.oskari.wcs.geotiff.TIFFReader;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TIFFReaderBenchmark {
+
+    private byte[] tiff;
+
+    @Setup
+    public void setup() {
+        tiff = Fixtures.bytes(Fixtures.TIFF_FLOAT32);
+    }
+
+    /**
+     * Parses the header and reads all strips of the first image
+     */
+    @Benchmark
+    public float[] readStrips() {
+        TIFFReader reader = new TIFFReader(tiff);
+        IFD ifd = reader.getIFD(0);
+        int strips = ifd.getStripOffsets().length;
+        float[] data = new float[ifd.getWidth() * ifd.getRowsPerStrip()];
+        for (int i = 0; i < strips; i++) {
+            reader.readStrip(0, i, data);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,85 @@
+package org.oskari.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.nls.oskari.pojo.Location;
+import fi.nls.oskari.pojo.Tile;
+import fi.nls.oskari.wfs.WFSImage;
+import fi.nls.oskari.wfs.pojo.WFSLayerStore;
+
+/**
+ * Renders a 256x256 WFS tile with an SLD polygon style
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WFSImageBenchmark {
+
+    private static final String SLD = "<?xml version=\\\"1.0\\\" encoding=\\\"UTF-8\\\"?>"
+            + "<StyledLayerDescriptor version=\\\"1.0.0\\\" xmlns=\\\"http://www.opengis.net/sld\\\" xmlns:ogc=\\\"http://www.opengis.net/ogc\\\">"
+            + "<NamedLayer><Name>features</Name><UserStyle><FeatureTypeStyle><Rule><PolygonSymbolizer>"
+            + "<Fill><CssParameter name=\\\"fill\\\">#3388FF</CssParameter><CssParameter name=\\\"fill-opacity\\\">0.5</CssParameter></Fill>"
+            + "<Stroke><CssParameter name=\\\"stroke\\\">#000000</CssParameter><CssParameter name=\\\"stroke-width\\\">1</CssParameter></Stroke>"
+            + "</PolygonSymbolizer></Rule></FeatureTypeStyle></UserStyle></NamedLayer></StyledLayerDescriptor>";
+
+    private static final String LAYER_JSON = "{\"layerId\":1,\"username\":\"\",\"password\":\"\",\"maxFeatures\":1000,"
+            + "\"featureNamespace\":\"bench\",\"featureNamespaceURI\":\"http://oskari.org/benchmark\",\"featureElement\":\"features\","
+            + "\"featureType\":\"\",\"selectedFeatureParams\":[],\"featureParamsLocales\":{},\"geometryType\":\"2d\","
+            + "\"getMapTiles\":true,\"getFeatureInfo\":true,\"tileRequest\":false,\"minScale\":50000.0,\"maxScale\":1.0,"
+            + "\"templateName\":null,\"templateDescription\":null,\"templateType\":null,\"requestTemplate\":null,\"responseTemplate\":null,"
+            + "\"selectionSLDStyle\":null,\"styles\":{\"default\":{\"id\":\"1\",\"name\":\"default\",\"SLDStyle\":\"" + SLD + "\"}},"
+            + "\"URL\":\"https://example.com/wfs\",\"GMLGeometryProperty\":\"geometry\",\"SRSName\":\"EPSG:3067\","
+            + "\"GMLVersion\":\"3.1.1\",\"WFSVersion\":\"1.1.0\",\"WMSLayerId\":null}";
+
+    /** Tile covers 1/(tiles*tiles) of the fixture extent */
+    @Param({ "1", "4" })
+    public int tiles;
+
+    private SimpleFeatureCollection features;
+    private WFSImage image;
+    private Tile tile;
+    private Location location;
+    private List<Double> bounds;
+
+    @Setup
+    public void setup() throws Exception {
+        features = Fixtures.features(Fixtures.GEOJSON_3067);
+        WFSLayerStore layer = WFSLayerStore.setJSON(LAYER_JSON);
+        image = new WFSImage(layer, null, "default", null);
+
+        tile = new Tile();
+        tile.setWidth(256);
+        tile.setHeight(256);
+
+        double[] extent = Fixtures.EXTENT;
+        double w = (extent[2] - extent[0]) / tiles;
+        double h = (extent[3] - extent[1]) / tiles;
+        bounds = Arrays.asList(extent[0], extent[1], extent[0] + w, extent[1] + h);
+        location = new Location(Fixtures.SRS);
+        location.setBbox(bounds);
+    }
+
+    @Benchmark
+    public BufferedImage draw() {
+        return image.draw(tile, location, bounds, features);
+    }
+}
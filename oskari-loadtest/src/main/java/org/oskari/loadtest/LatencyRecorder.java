@@ -0,0 +1,88 @@
+package org.oskari.loadtest;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-thread recorder so the workers don't contend on shared state. Merged after the run.
+ */
+public class LatencyRecorder {
+
+    /**
+     * Results of one request type
+     */
+    public static class Series {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+        private long bytes;
+        private final Map<String, Long> failures = new TreeMap<>();
+
+        void add(long latencyMicros, boolean ok, long responseBytes, String failure) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyMicros;
+            bytes += responseBytes;
+            if (!ok) {
+                errors++;
+                failures.merge(failure, 1L, Long::sum);
+            }
+        }
+
+        void addAll(Series other) {
+            if (count + other.count > latencies.length) {
+                latencies = Arrays.copyOf(latencies, count + other.count);
+            }
+            System.arraycopy(other.latencies, 0, latencies, count, other.count);
+            count += other.count;
+            errors += other.errors;
+            bytes += other.bytes;
+            other.failures.forEach((k, v) -> failures.merge(k, v, Long::sum));
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return failure reason (HTTP status or exception) -> count
+         */
+        public Map<String, Long> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return latencies in microseconds, sorted
+         */
+        public long[] getSortedLatencies() {
+            final long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private final Map<RequestType, Series> series = new EnumMap<>(RequestType.class);
+
+    public void record(RequestType type, long latencyMicros, boolean ok, long responseBytes, String failure) {
+        series.computeIfAbsent(type, t -> new Series()).add(latencyMicros, ok, responseBytes, failure);
+    }
+
+    public void merge(LatencyRecorder other) {
+        other.series.forEach((type, s) -> series.computeIfAbsent(type, t -> new Series()).addAll(s));
+    }
+
+    public Map<RequestType, Series> getSeries() {
+        return series;
+    }
+}
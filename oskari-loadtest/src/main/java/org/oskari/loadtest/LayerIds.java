@@ -0,0 +1,40 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.sql.SQLException;
+
+/**
+ * Ids of the stub layers. Taken from layer.&lt;service&gt; or looked up from the database by the stub url.
+ */
+public class LayerIds {
+
+    private static final Logger LOG = LogFactory.getLogger(LayerIds.class);
+
+    public final int wms;
+    public final int wmts;
+    public final int wfs;
+    public final int wfs3;
+
+    public LayerIds(LoadTestConfig config, StubServer stubs, TestDatabase db) throws SQLException {
+        wms = resolve(config, "wms", stubs, db);
+        wmts = resolve(config, "wmts", stubs, db);
+        wfs = resolve(config, "wfs", stubs, db);
+        wfs3 = resolve(config, "wfs3", stubs, db);
+    }
+
+    private static int resolve(LoadTestConfig config, String service, StubServer stubs, TestDatabase db)
+            throws SQLException {
+        int id = config.getInt("layer." + service, -1);
+        if (id == -1 && stubs != null && db != null) {
+            id = db.findLayerId(stubs.getServiceUrl(service));
+        }
+        if (id == -1) {
+            LOG.warn("No layer id for", service, "- requests for it will fail");
+        } else {
+            LOG.info("Using layer", id, "for", service);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,166 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed loop load: each thread sends the next request from the mix as soon as the previous one
+ * completes (optionally after think time). Requests completing during warmup are not recorded.
+ */
+public class LoadDriver {
+
+    private static final Logger LOG = LogFactory.getLogger(LoadDriver.class);
+
+    private final String baseUrl;
+    private final LayerIds layers;
+    private final RequestMix mix;
+    private final int threads;
+    private final long warmupMs;
+    private final long durationMs;
+    private final int timeoutMs;
+    private final int thinkMs;
+
+    private long measuredMs;
+
+    public LoadDriver(LoadTestConfig config, String baseUrl, LayerIds layers) {
+        this.baseUrl = baseUrl;
+        this.layers = layers;
+        this.mix = new RequestMix(config.get("mix"));
+        this.threads = config.getInt("threads", 16);
+        this.warmupMs = TimeUnit.SECONDS.toMillis(config.getInt("warmup.seconds", 30));
+        this.durationMs = TimeUnit.SECONDS.toMillis(config.getInt("duration.seconds", 120));
+        this.timeoutMs = config.getInt("timeout.ms", 30000);
+        this.thinkMs = config.getInt("think.ms", 0);
+    }
+
+    public RequestMix getMix() {
+        return mix;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return length of the measured period in milliseconds
+     */
+    public long getMeasuredMs() {
+        return measuredMs;
+    }
+
+    public LatencyRecorder run() throws InterruptedException {
+        LOG.info("Running", threads, "threads against", baseUrl, "- warmup", warmupMs, "ms, measure", durationMs, "ms");
+        LOG.info("Request mix:", mix);
+        final long start = System.currentTimeMillis();
+        final long measureStart = start + warmupMs;
+        final long end = measureStart + durationMs;
+
+        final List<Worker> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            final Worker worker = new Worker(measureStart, end);
+            final Thread t = new Thread(worker, "loadtest-" + i);
+            t.setDaemon(true);
+            worker.thread = t;
+            workers.add(worker);
+            t.start();
+        }
+        final LatencyRecorder result = new LatencyRecorder();
+        for (Worker worker : workers) {
+            worker.thread.join();
+            result.merge(worker.recorder);
+        }
+        measuredMs = Math.max(1, Math.min(System.currentTimeMillis(), end) - measureStart);
+        return result;
+    }
+
+    private class Worker implements Runnable {
+        private final long measureStart;
+        private final long end;
+        private final LatencyRecorder recorder = new LatencyRecorder();
+        private final byte[] buffer = new byte[16 * 1024];
+        private Thread thread;
+
+        Worker(long measureStart, long end) {
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            while (System.currentTimeMillis() < end) {
+                final LoadRequest request = mix.next().create(baseUrl, layers);
+                final long t0 = System.nanoTime();
+                int status = -1;
+                long bytes = 0;
+                String failure = null;
+                try {
+                    final HttpURLConnection conn = send(request);
+                    status = conn.getResponseCode();
+                    bytes = drain(status < 400 ? conn.getInputStream() : conn.getErrorStream());
+                    if (status >= 400) {
+                        failure = "HTTP " + status;
+                    }
+                } catch (IOException e) {
+                    failure = e.getClass().getSimpleName();
+                }
+                final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - t0);
+                final long now = System.currentTimeMillis();
+                if (now >= measureStart && now <= end) {
+                    recorder.record(request.getType(), micros, failure == null, bytes, failure);
+                }
+                if (thinkMs > 0) {
+                    try {
+                        Thread.sleep(thinkMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private HttpURLConnection send(LoadRequest request) throws IOException {
+            final HttpURLConnection conn = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+            conn.setConnectTimeout(timeoutMs);
+            conn.setReadTimeout(timeoutMs);
+            conn.setUseCaches(false);
+            // GetWFSVectorTile responds gzipped, accept it like browsers do
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            if (request.isPost()) {
+                conn.setRequestMethod("POST");
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(request.getPostBody().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return conn;
+        }
+
+        /**
+         * Reads the whole response so the connection can be reused (keep-alive)
+         */
+        private long drain(InputStream in) throws IOException {
+            if (in == null) {
+                return 0;
+            }
+            long total = 0;
+            try (InputStream is = in) {
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    total += n;
+                }
+            }
+            return total;
+        }
+    }
+}
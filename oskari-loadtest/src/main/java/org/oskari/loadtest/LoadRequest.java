@@ -0,0 +1,40 @@
+package org.oskari.loadtest;
+
+/**
+ * Single HTTP request against Oskari
+ */
+public class LoadRequest {
+
+    private final RequestType type;
+    private final String url;
+    private final String postBody;
+
+    public LoadRequest(RequestType type, String url) {
+        this(type, url, null);
+    }
+
+    /**
+     * @param postBody form encoded body, null for GET
+     */
+    public LoadRequest(RequestType type, String url, String postBody) {
+        this.type = type;
+        this.url = url;
+        this.postBody = postBody;
+    }
+
+    public RequestType getType() {
+        return type;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getPostBody() {
+        return postBody;
+    }
+
+    public boolean isPost() {
+        return postBody != null;
+    }
+}
@@ -0,0 +1,86 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test entry point.
+ * <pre>
+ * java -jar oskari-loadtest/target/loadtest.jar [loadtest.properties] [--stubs-only]
+ * </pre>
+ * Starts the stub services and, if webapp.war is configured, oskari-map in-process against a throwaway
+ * database. Then drives the request mix against it and prints throughput and latency percentiles.
+ * Without webapp.war the load goes to an already running instance at target.url.
+ * With --stubs-only only the stub services are started and kept running.
+ */
+public class LoadTest {
+
+    private static final Logger LOG = LogFactory.getLogger(LoadTest.class);
+    private static final String STUBS_ONLY = "--stubs-only";
+
+    public static void main(String[] args) throws Exception {
+        String file = null;
+        boolean stubsOnly = false;
+        for (String arg : args) {
+            if (STUBS_ONLY.equals(arg)) {
+                stubsOnly = true;
+            } else {
+                file = arg;
+            }
+        }
+        final LoadTestConfig config = new LoadTestConfig(file);
+
+        final StubServer stubs = new StubServer(config);
+        stubs.start();
+        if (stubsOnly) {
+            for (String service : StubServer.SERVICES) {
+                System.out.println(service + ": " + stubs.getServiceUrl(service));
+            }
+            Thread.currentThread().join();
+            return;
+        }
+
+        final TestDatabase db = config.get("db.url") == null ? null : new TestDatabase(config);
+        WebappServer webapp = null;
+        try {
+            final String targetUrl;
+            if (config.get("webapp.war") != null) {
+                if (db == null) {
+                    throw new IllegalArgumentException("db.url is required to run the webapp");
+                }
+                if (config.getBoolean("db.create", false)) {
+                    db.recreate();
+                }
+                webapp = new WebappServer(config, stubs, db);
+                webapp.start();
+                targetUrl = webapp.getUrl();
+            } else {
+                targetUrl = config.get("target.url");
+            }
+            final LayerIds layers = new LayerIds(config, stubs, db);
+            final LoadDriver driver = new LoadDriver(config, targetUrl, layers);
+            final LatencyRecorder results = driver.run();
+
+            final Map<String, long[]> stubCounts = new LinkedHashMap<>();
+            for (StubHandler handler : stubs.getHandlers()) {
+                stubCounts.put(handler.getName(), new long[] { handler.getRequestCount(), handler.getErrorCount() });
+            }
+            final Report report = new Report(results, driver.getMeasuredMs(), driver.getThreads(),
+                    driver.getMix().toString(), stubCounts);
+            report.print(System.out);
+            final String reportFile = config.get("report.file");
+            if (reportFile != null) {
+                report.write(reportFile);
+                LOG.info("Report written to", reportFile);
+            }
+        } finally {
+            if (webapp != null) {
+                webapp.stop();
+            }
+            stubs.stop();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.util.ConversionHelper;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Harness configuration. Defaults are read from /loadtest.properties, then from an optional
+ * properties file and finally from system properties prefixed with "loadtest.".
+ */
+public class LoadTestConfig {
+
+    private static final String SYSTEM_PROPERTY_PREFIX = "loadtest.";
+
+    private final Properties props = new Properties();
+
+    public LoadTestConfig(String file) throws IOException {
+        try (InputStream in = LoadTestConfig.class.getResourceAsStream("/loadtest.properties")) {
+            props.load(in);
+        }
+        if (file != null) {
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+                props.setProperty(key.substring(SYSTEM_PROPERTY_PREFIX.length()), System.getProperty(key));
+            }
+        }
+    }
+
+    public String get(String key) {
+        final String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    public String get(String key, String defaultValue) {
+        final String value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return ConversionHelper.getInt(get(key), defaultValue);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return ConversionHelper.getDouble(get(key), defaultValue);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return ConversionHelper.getBoolean(get(key), defaultValue);
+    }
+
+    public List<String> getKeysStartingWith(String prefix) {
+        final List<String> keys = new ArrayList<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+}
@@ -0,0 +1,146 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Throughput and latency percentiles per request type and in total
+ */
+public class Report {
+
+    private static final double[] PERCENTILES = { 50, 90, 95, 99, 99.9 };
+    private static final String TOTAL = "TOTAL";
+
+    private final LatencyRecorder results;
+    private final long measuredMs;
+    private final int threads;
+    private final String mix;
+    private final Map<String, long[]> stubCounts;
+
+    /**
+     * @param stubCounts stub service -> [requests, injected errors], may be empty when driving an external instance
+     */
+    public Report(LatencyRecorder results, long measuredMs, int threads, String mix, Map<String, long[]> stubCounts) {
+        this.results = results;
+        this.measuredMs = measuredMs;
+        this.threads = threads;
+        this.mix = mix;
+        this.stubCounts = stubCounts;
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.printf("Threads: %d, measured: %.1f s, mix: %s%n", threads, measuredMs / 1000.0, mix);
+        out.printf("%-30s %8s %7s %9s %9s %9s %9s %9s %9s %9s %9s%n",
+                "request", "count", "errors", "req/s", "mean ms", "p50", "p90", "p95", "p99", "p99.9", "max");
+        final LatencyRecorder.Series total = new LatencyRecorder.Series();
+        for (Map.Entry<RequestType, LatencyRecorder.Series> entry : results.getSeries().entrySet()) {
+            printRow(out, entry.getKey().name(), entry.getValue());
+            total.addAll(entry.getValue());
+        }
+        printRow(out, TOTAL, total);
+        for (Map.Entry<RequestType, LatencyRecorder.Series> entry : results.getSeries().entrySet()) {
+            if (!entry.getValue().getFailures().isEmpty()) {
+                out.println(entry.getKey() + " failures: " + entry.getValue().getFailures());
+            }
+        }
+        if (!stubCounts.isEmpty()) {
+            out.println();
+            out.println("Stub services (requests / injected errors):");
+            stubCounts.forEach((service, counts) ->
+                    out.printf("  %-6s %8d / %d%n", service, counts[0], counts[1]));
+        }
+    }
+
+    public void write(String file) throws IOException {
+        final JSONObject json = new JSONObject();
+        JSONHelper.putValue(json, "threads", threads);
+        JSONHelper.putValue(json, "measuredMs", measuredMs);
+        JSONHelper.putValue(json, "mix", mix);
+        final JSONArray requests = new JSONArray();
+        final LatencyRecorder.Series total = new LatencyRecorder.Series();
+        for (Map.Entry<RequestType, LatencyRecorder.Series> entry : results.getSeries().entrySet()) {
+            requests.put(toJSON(entry.getKey().name(), entry.getValue()));
+            total.addAll(entry.getValue());
+        }
+        requests.put(toJSON(TOTAL, total));
+        JSONHelper.putValue(json, "requests", requests);
+        final JSONObject stubs = new JSONObject();
+        stubCounts.forEach((service, counts) -> {
+            final JSONObject s = new JSONObject();
+            JSONHelper.putValue(s, "requests", counts[0]);
+            JSONHelper.putValue(s, "errors", counts[1]);
+            JSONHelper.putValue(stubs, service, s);
+        });
+        JSONHelper.putValue(json, "stubs", stubs);
+        Files.write(Paths.get(file), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void printRow(PrintStream out, String name, LatencyRecorder.Series series) {
+        final long[] sorted = series.getSortedLatencies();
+        out.printf("%-30s %8d %7d %9.1f %9.1f", name, series.getCount(), series.getErrors(),
+                throughput(series), mean(sorted) / 1000.0);
+        for (double p : PERCENTILES) {
+            out.printf(" %9.1f", percentile(sorted, p) / 1000.0);
+        }
+        out.printf(" %9.1f%n", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private JSONObject toJSON(String name, LatencyRecorder.Series series) {
+        final long[] sorted = series.getSortedLatencies();
+        final JSONObject json = new JSONObject();
+        JSONHelper.putValue(json, "name", name);
+        JSONHelper.putValue(json, "count", series.getCount());
+        JSONHelper.putValue(json, "errors", series.getErrors());
+        JSONHelper.putValue(json, "bytes", series.getBytes());
+        JSONHelper.putValue(json, "throughput", throughput(series));
+        JSONHelper.putValue(json, "meanMs", mean(sorted) / 1000.0);
+        final JSONObject percentiles = new JSONObject();
+        for (double p : PERCENTILES) {
+            JSONHelper.putValue(percentiles, "p" + (p == Math.rint(p) ? Long.toString((long) p) : Double.toString(p)),
+                    percentile(sorted, p) / 1000.0);
+        }
+        JSONHelper.putValue(json, "percentilesMs", percentiles);
+        JSONHelper.putValue(json, "maxMs", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000.0);
+        if (!series.getFailures().isEmpty()) {
+            final JSONObject failures = new JSONObject();
+            series.getFailures().forEach((k, v) -> JSONHelper.putValue(failures, k, (long) v));
+            JSONHelper.putValue(json, "failures", failures);
+        }
+        return json;
+    }
+
+    private double throughput(LatencyRecorder.Series series) {
+        return series.getCount() * 1000.0 / measuredMs;
+    }
+
+    private static double mean(long[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (long v : values) {
+            sum += v;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * Nearest-rank percentile
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
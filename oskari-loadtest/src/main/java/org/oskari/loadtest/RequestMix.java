@@ -0,0 +1,74 @@
+package org.oskari.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted request mix parsed from "GetAppSetup:5,GetLayerTile:45,..."
+ */
+public class RequestMix {
+
+    private final List<RequestType> types = new ArrayList<>();
+    private final int[] cumulative;
+    private final int total;
+
+    public RequestMix(String mix) {
+        if (mix == null || mix.trim().isEmpty()) {
+            throw new IllegalArgumentException("Request mix is empty");
+        }
+        final List<Integer> weights = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            final String[] kv = part.trim().split(":");
+            final RequestType type = RequestType.valueOf(kv[0].trim());
+            final int weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + type);
+            }
+            if (weight > 0) {
+                types.add(type);
+                weights.add(weight);
+            }
+        }
+        if (types.isEmpty()) {
+            throw new IllegalArgumentException("Request mix has no requests with weight: " + mix);
+        }
+        cumulative = new int[weights.size()];
+        int sum = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            sum += weights.get(i);
+            cumulative[i] = sum;
+        }
+        total = sum;
+    }
+
+    public RequestType next() {
+        final int r = ThreadLocalRandom.current().nextInt(total);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (r < cumulative[i]) {
+                return types.get(i);
+            }
+        }
+        return types.get(types.size() - 1);
+    }
+
+    public List<RequestType> getTypes() {
+        return Collections.unmodifiableList(types);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        int previous = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(types.get(i)).append(' ')
+                    .append(Math.round(100.0 * (cumulative[i] - previous) / total)).append('%');
+            previous = cumulative[i];
+        }
+        return sb.toString();
+    }
+}
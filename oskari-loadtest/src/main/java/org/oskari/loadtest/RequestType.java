@@ -0,0 +1,156 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.util.IOHelper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Requests in the mix. Map requests target the Helsinki area where the stub features are
+ * so tiles have content, like a user panning around the map.
+ */
+public enum RequestType {
+
+    GetAppSetup {
+        @Override
+        public LoadRequest create(String baseUrl, LayerIds layers) {
+            return new LoadRequest(this, action(baseUrl, name(), params()));
+        }
+    },
+    GetHierarchicalMapLayerGroups {
+        @Override
+        public LoadRequest create(String baseUrl, LayerIds layers) {
+            final Map<String, String> params = params();
+            params.put("srs", SRS);
+            params.put("lang", "fi");
+            return new LoadRequest(this, action(baseUrl, name(), params));
+        }
+    },
+    /** WMS GetMap and WMTS GetTile proxied through Oskari, half each */
+    GetLayerTile {
+        @Override
+        public LoadRequest create(String baseUrl, LayerIds layers) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int z = MIN_Z + random.nextInt(MAX_Z - MIN_Z + 1);
+            final int[] xy = randomTile(z);
+            final Map<String, String> params = params();
+            if (random.nextBoolean()) {
+                final double[] bbox = tileExtent(z, xy[0], xy[1]);
+                params.put("id", Integer.toString(layers.wms));
+                params.put("SERVICE", "WMS");
+                params.put("VERSION", "1.3.0");
+                params.put("REQUEST", "GetMap");
+                params.put("LAYERS", "loadtest");
+                params.put("STYLES", "");
+                params.put("FORMAT", "image/png");
+                params.put("TRANSPARENT", "true");
+                params.put("CRS", SRS);
+                params.put("WIDTH", Integer.toString(TILE_SIZE));
+                params.put("HEIGHT", Integer.toString(TILE_SIZE));
+                params.put("BBOX", bbox[0] + "," + bbox[1] + "," + bbox[2] + "," + bbox[3]);
+            } else {
+                params.put("id", Integer.toString(layers.wmts));
+                params.put("SERVICE", "WMTS");
+                params.put("VERSION", "1.0.0");
+                params.put("REQUEST", "GetTile");
+                params.put("LAYER", "loadtest");
+                params.put("STYLE", "default");
+                params.put("FORMAT", "image/png");
+                params.put("TILEMATRIXSET", "ETRS-TM35FIN");
+                params.put("TILEMATRIX", Integer.toString(z));
+                params.put("TILEROW", Integer.toString(xy[1]));
+                params.put("TILECOL", Integer.toString(xy[0]));
+            }
+            return new LoadRequest(this, action(baseUrl, name(), params));
+        }
+    },
+    /** WFS 1.1 and WFS3 layers as vector tiles, half each */
+    GetWFSVectorTile {
+        @Override
+        public LoadRequest create(String baseUrl, LayerIds layers) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            // Oskari requests features with the cache zoom level (8 for EPSG:3067) and accepts one level below it
+            final int z = 7 + random.nextInt(4);
+            final int[] xy = randomTile(z);
+            final Map<String, String> params = params();
+            params.put("id", Integer.toString(random.nextBoolean() ? layers.wfs : layers.wfs3));
+            params.put("srs", SRS);
+            params.put("z", Integer.toString(z));
+            params.put("x", Integer.toString(xy[0]));
+            params.put("y", Integer.toString(xy[1]));
+            return new LoadRequest(this, action(baseUrl, name(), params));
+        }
+    },
+    /** Metadata search, goes to the stub CSW */
+    GetMetadataSearch {
+        @Override
+        public LoadRequest create(String baseUrl, LayerIds layers) {
+            final String term = SEARCH_TERMS[ThreadLocalRandom.current().nextInt(SEARCH_TERMS.length)];
+            final Map<String, String> body = params();
+            body.put("search", term);
+            body.put("srs", SRS);
+            return new LoadRequest(this, action(baseUrl, name(), params()), IOHelper.getParams(body));
+        }
+    },
+    /** A4 print of the WMS layer, PDF and PNG */
+    GetPrint {
+        @Override
+        public LoadRequest create(String baseUrl, LayerIds layers) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final Map<String, String> params = params();
+            params.put("format", random.nextBoolean() ? "application/pdf" : "image/png");
+            params.put("pageSize", "A4");
+            params.put("srs", SRS);
+            params.put("resolution", "4");
+            params.put("coord", (int) (CENTER[0] + random.nextInt(2000) - 1000) + "_" + (int) (CENTER[1] + random.nextInt(2000) - 1000));
+            params.put("mapLayers", layers.wms + " 100");
+            params.put("pageTitle", "Load test");
+            return new LoadRequest(this, action(baseUrl, name(), params));
+        }
+    };
+
+    private static final String SRS = "EPSG:3067";
+    // same as WFSTileGrid for EPSG:3067 in GetWFSVectorTileHandler
+    private static final double ORIGIN_X = -548576;
+    private static final double ORIGIN_Y = 6291456 + 8192 * 256;
+    private static final double Z0_TILE_SIZE = 8192 * 256;
+    private static final int TILE_SIZE = 256;
+    private static final int MIN_Z = 8;
+    private static final int MAX_Z = 12;
+    // extent of the stub features
+    private static final double[] EXTENT = { 384800, 6669800, 405200, 6690200 };
+    private static final double[] CENTER = { (EXTENT[0] + EXTENT[2]) / 2, (EXTENT[1] + EXTENT[3]) / 2 };
+    private static final String[] SEARCH_TERMS = { "maasto", "kiinteistö", "osoite", "vesi", "rakennus", "tie" };
+
+    public abstract LoadRequest create(String baseUrl, LayerIds layers);
+
+    private static Map<String, String> params() {
+        return new LinkedHashMap<>();
+    }
+
+    private static String action(String baseUrl, String route, Map<String, String> params) {
+        final Map<String, String> all = params();
+        all.put("action_route", route);
+        all.putAll(params);
+        return IOHelper.constructUrl(baseUrl + "/action", all);
+    }
+
+    /**
+     * @return random tile [x, y] that intersects the feature extent
+     */
+    private static int[] randomTile(int z) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final double size = Z0_TILE_SIZE / (1 << z);
+        final double e = EXTENT[0] + random.nextDouble() * (EXTENT[2] - EXTENT[0]);
+        final double n = EXTENT[1] + random.nextDouble() * (EXTENT[3] - EXTENT[1]);
+        return new int[] { (int) ((e - ORIGIN_X) / size), (int) ((ORIGIN_Y - n) / size) };
+    }
+
+    private static double[] tileExtent(int z, int x, int y) {
+        final double size = Z0_TILE_SIZE / (1 << z);
+        final double minX = ORIGIN_X + x * size;
+        final double maxY = ORIGIN_Y - y * size;
+        return new double[] { minX, maxY - size, minX + size, maxY };
+    }
+}
@@ -0,0 +1,89 @@
+package org.oskari.loadtest;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a stub service with configured latency and error rate.
+ * Latency is added with a sleep so slow services tie up Oskari's connections like real ones do.
+ */
+public class StubHandler extends AbstractHandler {
+
+    /**
+     * Writes the actual response
+     */
+    @FunctionalInterface
+    public interface Responder {
+        void respond(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    private final String name;
+    private final int latencyMs;
+    private final int jitterMs;
+    private final double errorRate;
+    private final Responder responder;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public StubHandler(String name, LoadTestConfig config, Responder responder) {
+        this.name = name;
+        this.latencyMs = Math.max(0, config.getInt("stub." + name + ".latency.ms", config.getInt("stub.latency.ms", 0)));
+        this.jitterMs = Math.max(0, config.getInt("stub." + name + ".latency.jitter.ms", config.getInt("stub.latency.jitter.ms", 0)));
+        this.errorRate = config.getDouble("stub." + name + ".error.rate", config.getDouble("stub.error.rate", 0));
+        this.responder = responder;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        baseRequest.setHandled(true);
+        requests.incrementAndGet();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long sleep = latencyMs + (jitterMs > 0 ? random.nextInt(jitterMs + 1) : 0);
+        if (sleep > 0) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            // half as HTTP errors, half as OGC exceptions with 200 OK like many services do
+            if (random.nextBoolean()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Stub error");
+            } else {
+                write(response, "application/xml", StubResponses.getExceptionReport("Stub error"));
+            }
+            return;
+        }
+        responder.respond(request, response);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public static void write(HttpServletResponse response, String contentType, byte[] body) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
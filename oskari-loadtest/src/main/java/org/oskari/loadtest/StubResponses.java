@@ -0,0 +1,187 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.test.util.ResourceHelper;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canned responses of the stub services. Feature responses are built from the 500 polygon
+ * benchmark fixture (EPSG:3067, Helsinki area) so WFS 1.1 and WFS3 return the same features.
+ */
+public class StubResponses {
+
+    public static final String FEATURE_TYPE = "features";
+    public static final String FEATURE_NS_PREFIX = "bench";
+    public static final String FEATURE_NS_URI = "http://oskari.org/loadtest";
+
+    private static final String FEATURES_RESOURCE = "/benchmark/features-3067.geojson";
+    private static final int MAX_IMAGE_SIZE = 4096;
+
+    private final String baseUrl;
+    private final byte[] featuresGeoJSON;
+    private final byte[] featuresGML;
+    private final Map<String, byte[]> capabilities = new ConcurrentHashMap<>();
+    private final byte[] cswRecords;
+    private final Map<Long, byte[]> images = new ConcurrentHashMap<>();
+
+    public StubResponses(String baseUrl) throws IOException {
+        this.baseUrl = baseUrl;
+        final String geojson = ResourceHelper.readStringResource(FEATURES_RESOURCE);
+        featuresGeoJSON = geojson.getBytes(StandardCharsets.UTF_8);
+        try {
+            featuresGML = toGML(new JSONObject(geojson)).getBytes(StandardCharsets.UTF_8);
+        } catch (JSONException e) {
+            throw new IOException("Failed to convert " + FEATURES_RESOURCE + " to GML", e);
+        }
+        cswRecords = readResource("/stub/csw-getrecords.xml");
+    }
+
+    /**
+     * @param service wms, wmts or wfs
+     */
+    public byte[] getCapabilities(String service) {
+        return capabilities.computeIfAbsent(service, s -> {
+            try {
+                final String xml = new String(readResource("/stub/" + s + "-capabilities.xml"), StandardCharsets.UTF_8);
+                return xml.replace("${url}", baseUrl + "/" + s).getBytes(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException("Missing capabilities for " + s, e);
+            }
+        });
+    }
+
+    public byte[] getFeaturesGML() {
+        return featuresGML;
+    }
+
+    public byte[] getFeaturesGeoJSON() {
+        return featuresGeoJSON;
+    }
+
+    public byte[] getCSWRecords() {
+        return cswRecords;
+    }
+
+    /**
+     * @return PNG image of the requested size, images are generated once per size
+     */
+    public byte[] getImage(int width, int height) {
+        final int w = Math.max(1, Math.min(width, MAX_IMAGE_SIZE));
+        final int h = Math.max(1, Math.min(height, MAX_IMAGE_SIZE));
+        return images.computeIfAbsent(((long) w << 32) | h, key -> createImage(w, h));
+    }
+
+    public static byte[] getExceptionReport(String message) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\" version=\"1.0.0\">"
+                + "<ows:Exception exceptionCode=\"NoApplicableCode\"><ows:ExceptionText>" + message
+                + "</ows:ExceptionText></ows:Exception></ows:ExceptionReport>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = StubResponses.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + name);
+            }
+            return IOHelper.readBytes(in);
+        }
+    }
+
+    /**
+     * Image with some structure so it doesn't compress to nothing like a real map tile wouldn't
+     */
+    private static byte[] createImage(int width, int height) {
+        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(230, 230, 220, 200));
+        g.fillRect(0, 0, width, height);
+        final Random random = new Random(width * 31L + height);
+        final int lines = Math.max(20, width * height / 2000);
+        for (int i = 0; i < lines; i++) {
+            g.setColor(new Color(random.nextInt(200), random.nextInt(200), random.nextInt(200)));
+            g.setStroke(new BasicStroke(1 + random.nextInt(3)));
+            g.drawLine(random.nextInt(width), random.nextInt(height), random.nextInt(width), random.nextInt(height));
+        }
+        g.dispose();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(img, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode PNG", e);
+        }
+    }
+
+    private static String toGML(JSONObject collection) throws JSONException {
+        final JSONArray features = collection.getJSONArray("features");
+        final StringBuilder sb = new StringBuilder(1024 * 1024);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\"")
+                .append(" xmlns:gml=\"http://www.opengis.net/gml\"")
+                .append(" xmlns:").append(FEATURE_NS_PREFIX).append("=\"").append(FEATURE_NS_URI).append('"')
+                .append(" numberOfFeatures=\"").append(features.length()).append("\">");
+        for (int i = 0; i < features.length(); i++) {
+            final JSONObject feature = features.getJSONObject(i);
+            final String element = FEATURE_NS_PREFIX + ":" + FEATURE_TYPE;
+            sb.append("<gml:featureMember><").append(element)
+                    .append(" gml:id=\"").append(feature.optString("id", FEATURE_TYPE + "." + i)).append("\">");
+            final JSONObject properties = feature.optJSONObject("properties");
+            if (properties != null) {
+                final Iterator<?> keys = properties.keys();
+                while (keys.hasNext()) {
+                    final String key = (String) keys.next();
+                    final String tag = FEATURE_NS_PREFIX + ":" + key;
+                    sb.append('<').append(tag).append('>')
+                            .append(escape(String.valueOf(properties.get(key))))
+                            .append("</").append(tag).append('>');
+                }
+            }
+            sb.append('<').append(FEATURE_NS_PREFIX).append(":geometry>");
+            appendPolygon(sb, feature.getJSONObject("geometry").getJSONArray("coordinates"));
+            sb.append("</").append(FEATURE_NS_PREFIX).append(":geometry>");
+            sb.append("</").append(element).append("></gml:featureMember>");
+        }
+        sb.append("</wfs:FeatureCollection>");
+        return sb.toString();
+    }
+
+    private static void appendPolygon(StringBuilder sb, JSONArray rings) throws JSONException {
+        sb.append("<gml:Polygon srsName=\"urn:ogc:def:crs:EPSG::3067\">");
+        for (int r = 0; r < rings.length(); r++) {
+            final String boundary = r == 0 ? "gml:exterior" : "gml:interior";
+            sb.append('<').append(boundary).append("><gml:LinearRing><gml:posList srsDimension=\"2\">");
+            final JSONArray ring = rings.getJSONArray(r);
+            for (int p = 0; p < ring.length(); p++) {
+                final JSONArray xy = ring.getJSONArray(p);
+                if (p > 0) {
+                    sb.append(' ');
+                }
+                sb.append(xy.getDouble(0)).append(' ').append(xy.getDouble(1));
+            }
+            sb.append("</gml:posList></gml:LinearRing></").append(boundary).append('>');
+        }
+        sb.append("</gml:Polygon>");
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
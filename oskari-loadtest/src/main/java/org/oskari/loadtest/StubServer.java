@@ -0,0 +1,151 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.ConversionHelper;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Embedded stub OGC services:
+ * <ul>
+ *     <li>/wms WMS 1.3.0 GetCapabilities and GetMap</li>
+ *     <li>/wmts WMTS 1.0.0 GetCapabilities and KVP GetTile</li>
+ *     <li>/wfs WFS 1.1.0 GetCapabilities and GetFeature (GML 3.1.1)</li>
+ *     <li>/wfs3 WFS 3 /collections/features/items (GeoJSON)</li>
+ *     <li>/csw CSW 2.0.2 GetRecords</li>
+ * </ul>
+ * Responses are canned, see StubResponses, and don't depend on the requested bbox.
+ */
+public class StubServer {
+
+    private static final Logger LOG = LogFactory.getLogger(StubServer.class);
+
+    public static final String[] SERVICES = { "wms", "wmts", "wfs", "wfs3", "csw" };
+
+    private static final String CONTENT_TYPE_XML = "application/xml";
+    private static final String CONTENT_TYPE_GML = "text/xml; subtype=gml/3.1.1";
+    private static final String CONTENT_TYPE_GEOJSON = "application/geo+json";
+    private static final String CONTENT_TYPE_PNG = "image/png";
+    private static final int DEFAULT_TILE_SIZE = 256;
+
+    private final LoadTestConfig config;
+    private final List<StubHandler> handlers = new ArrayList<>();
+    private Server server;
+    private String baseUrl;
+
+    public StubServer(LoadTestConfig config) {
+        this.config = config;
+    }
+
+    public void start() throws Exception {
+        final QueuedThreadPool pool = new QueuedThreadPool(config.getInt("stub.threads", 200));
+        pool.setName("stub");
+        server = new Server(pool);
+        final ServerConnector connector = new ServerConnector(server);
+        connector.setPort(config.getInt("stub.port", 0));
+        server.addConnector(connector);
+        // port is known after the connector is opened, responses refer to the base url
+        connector.open();
+        baseUrl = "http://localhost:" + connector.getLocalPort();
+
+        final StubResponses responses = new StubResponses(baseUrl);
+        handlers.add(new StubHandler("wms", config, (req, resp) -> {
+            if (isRequest(req, "GetCapabilities")) {
+                StubHandler.write(resp, CONTENT_TYPE_XML, responses.getCapabilities("wms"));
+            } else {
+                writeImage(req, resp, responses);
+            }
+        }));
+        handlers.add(new StubHandler("wmts", config, (req, resp) -> {
+            if (isRequest(req, "GetCapabilities")) {
+                StubHandler.write(resp, CONTENT_TYPE_XML, responses.getCapabilities("wmts"));
+            } else {
+                writeImage(req, resp, responses);
+            }
+        }));
+        handlers.add(new StubHandler("wfs", config, (req, resp) -> {
+            if (isRequest(req, "GetCapabilities")) {
+                StubHandler.write(resp, CONTENT_TYPE_XML, responses.getCapabilities("wfs"));
+            } else {
+                // GET with KVP or POST with a GetFeature document, the answer is the same
+                StubHandler.write(resp, CONTENT_TYPE_GML, responses.getFeaturesGML());
+            }
+        }));
+        handlers.add(new StubHandler("wfs3", config, (req, resp) -> {
+            final String path = req.getPathInfo();
+            if (path != null && path.endsWith("/items")) {
+                StubHandler.write(resp, CONTENT_TYPE_GEOJSON, responses.getFeaturesGeoJSON());
+            } else {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        }));
+        handlers.add(new StubHandler("csw", config, (req, resp) ->
+                StubHandler.write(resp, CONTENT_TYPE_XML, responses.getCSWRecords())));
+
+        final ContextHandlerCollection contexts = new ContextHandlerCollection();
+        for (StubHandler handler : handlers) {
+            final ContextHandler context = new ContextHandler("/" + handler.getName());
+            context.setHandler(handler);
+            contexts.addHandler(context);
+        }
+        server.setHandler(contexts);
+        server.start();
+        LOG.info("Stub services started at", baseUrl);
+    }
+
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * @return like http://localhost:12345, services are at /wms, /wmts etc
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getServiceUrl(String service) {
+        return baseUrl + "/" + service;
+    }
+
+    public List<StubHandler> getHandlers() {
+        return Collections.unmodifiableList(handlers);
+    }
+
+    private static boolean isRequest(HttpServletRequest req, String request) {
+        return request.equalsIgnoreCase(getParam(req, "REQUEST"));
+    }
+
+    /**
+     * OGC parameter names are case-insensitive
+     */
+    private static String getParam(HttpServletRequest req, String name) {
+        for (String key : Collections.list(req.getParameterNames())) {
+            if (name.equalsIgnoreCase(key)) {
+                return req.getParameter(key);
+            }
+        }
+        return null;
+    }
+
+    private static void writeImage(HttpServletRequest req, HttpServletResponse resp, StubResponses responses)
+            throws IOException {
+        final int width = ConversionHelper.getInt(getParam(req, "WIDTH"), DEFAULT_TILE_SIZE);
+        final int height = ConversionHelper.getInt(getParam(req, "HEIGHT"), DEFAULT_TILE_SIZE);
+        StubHandler.write(resp, CONTENT_TYPE_PNG, responses.getImage(width, height));
+    }
+}
@@ -0,0 +1,95 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Throwaway database for the in-process webapp. Oskari schema and content is created by the webapp itself
+ * (oskari.init.db + flyway), this only provides an empty PostGIS enabled database.
+ */
+public class TestDatabase {
+
+    private static final Logger LOG = LogFactory.getLogger(TestDatabase.class);
+
+    // jdbc:postgresql://host:port/dbname?params
+    private static final Pattern URL_PATTERN = Pattern.compile("^(jdbc:postgresql://[^/]+/)([A-Za-z0-9_]+)(\\?.*)?$");
+    private static final String MAINTENANCE_DB = "postgres";
+    // only databases named like this are dropped so db.create can't wipe out a real database
+    private static final String REQUIRED_NAME_PART = "loadtest";
+
+    private final String url;
+    private final String user;
+    private final String pass;
+
+    public TestDatabase(LoadTestConfig config) {
+        url = config.get("db.url");
+        user = config.get("db.username");
+        pass = config.get("db.password");
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return pass;
+    }
+
+    /**
+     * Drops and creates the database and enables PostGIS
+     * @throws IllegalArgumentException if the database name doesn't contain "loadtest"
+     */
+    public void recreate() throws SQLException {
+        final Matcher m = URL_PATTERN.matcher(url);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Can't parse database name from " + url);
+        }
+        final String dbName = m.group(2);
+        if (!dbName.toLowerCase().contains(REQUIRED_NAME_PART)) {
+            throw new IllegalArgumentException("Refusing to drop database " + dbName
+                    + ", only databases with '" + REQUIRED_NAME_PART + "' in the name are recreated");
+        }
+        final String params = m.group(3) == null ? "" : m.group(3);
+        LOG.info("Recreating database", dbName);
+        try (Connection conn = DriverManager.getConnection(m.group(1) + MAINTENANCE_DB + params, user, pass);
+             Statement st = conn.createStatement()) {
+            // the name is validated by the pattern
+            st.execute("DROP DATABASE IF EXISTS " + dbName);
+            st.execute("CREATE DATABASE " + dbName);
+        }
+        try (Connection conn = getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE EXTENSION IF NOT EXISTS postgis");
+        }
+    }
+
+    /**
+     * @return id of the layer with given url or -1 if not found
+     */
+    public int findLayerId(String layerUrl) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT id FROM oskari_maplayer WHERE url = ? ORDER BY id")) {
+            ps.setString(1, layerUrl);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url, user, pass);
+    }
+}
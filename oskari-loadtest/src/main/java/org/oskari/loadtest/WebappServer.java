@@ -0,0 +1,157 @@
+package org.oskari.loadtest;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.IOHelper;
+import org.eclipse.jetty.annotations.AnnotationConfiguration;
+import org.eclipse.jetty.plus.webapp.EnvConfiguration;
+import org.eclipse.jetty.plus.webapp.PlusConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.webapp.Configuration;
+import org.eclipse.jetty.webapp.FragmentConfiguration;
+import org.eclipse.jetty.webapp.JettyWebXmlConfiguration;
+import org.eclipse.jetty.webapp.MetaInfConfiguration;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.eclipse.jetty.webapp.WebInfConfiguration;
+import org.eclipse.jetty.webapp.WebXmlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Runs the oskari-map war in-process against the stub services.
+ *
+ * Initial content is created with the normal setup mechanism: oskari.setup points to the
+ * app-loadtest setup that is written to oskari.resourceOverlayDir with the stub urls filled in.
+ * Properties are given to the webapp as oskari-ext.properties on an extra classpath entry.
+ */
+public class WebappServer {
+
+    private static final Logger LOG = LogFactory.getLogger(WebappServer.class);
+
+    private static final String SETUP = "app-loadtest";
+    private static final String WEBAPP_PROPERTY_PREFIX = "webapp.property.";
+    private static final String[] OVERLAY_FILES = {
+            "setup/app-loadtest.json",
+            "json/views/loadtest-view.json",
+            "json/layers/loadtest-wms.json",
+            "json/layers/loadtest-wmts.json",
+            "json/layers/loadtest-wfs.json",
+            "json/layers/loadtest-wfs3.json"
+    };
+
+    private final LoadTestConfig config;
+    private final StubServer stubs;
+    private final TestDatabase db;
+    private Server server;
+    private String url;
+
+    public WebappServer(LoadTestConfig config, StubServer stubs, TestDatabase db) {
+        this.config = config;
+        this.stubs = stubs;
+        this.db = db;
+    }
+
+    public void start() throws Exception {
+        final File war = new File(config.get("webapp.war"));
+        if (!war.exists()) {
+            throw new IllegalArgumentException("War not found: " + war.getAbsolutePath() + " (build webapp-map first)");
+        }
+        final Path work = Files.createTempDirectory("oskari-loadtest");
+        final Path overlay = writeOverlay(work.resolve("overlay"));
+        final Path classes = writeProperties(work.resolve("classes"));
+        // read by DBHandler when the webapp creates the initial content
+        System.setProperty("oskari.setup", SETUP);
+        System.setProperty("oskari.resourceOverlayDir", overlay.toString());
+
+        final QueuedThreadPool pool = new QueuedThreadPool(config.getInt("webapp.threads", 200));
+        pool.setName("webapp");
+        server = new Server(pool);
+        final ServerConnector connector = new ServerConnector(server);
+        connector.setPort(config.getInt("webapp.port", 8080));
+        server.addConnector(connector);
+
+        final WebAppContext context = new WebAppContext();
+        context.setContextPath("/");
+        context.setWar(war.getAbsolutePath());
+        context.setTempDirectory(work.resolve("jetty").toFile());
+        String extraClasspath = classes.toString();
+        final String extra = config.get("webapp.extraClasspath");
+        if (extra != null) {
+            extraClasspath += ";" + extra;
+        }
+        context.setExtraClasspath(extraClasspath);
+        context.setConfigurations(new Configuration[] {
+                new AnnotationConfiguration(),
+                new WebInfConfiguration(),
+                new WebXmlConfiguration(),
+                new MetaInfConfiguration(),
+                new FragmentConfiguration(),
+                new EnvConfiguration(),
+                new PlusConfiguration(),
+                new JettyWebXmlConfiguration()
+        });
+        // scan only Oskari jars for initializers to keep startup time sane
+        context.setAttribute("org.eclipse.jetty.server.webapp.WebInfIncludeJarPattern",
+                ".*/(servlet-map|spring-web)[^/]*\\.jar$");
+        server.setHandler(context);
+        server.start();
+        if (context.getUnavailableException() != null) {
+            throw new IllegalStateException("Webapp failed to start", context.getUnavailableException());
+        }
+        url = "http://localhost:" + connector.getLocalPort();
+        LOG.info("Webapp started at", url);
+    }
+
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private Path writeOverlay(Path dir) throws IOException {
+        for (String file : OVERLAY_FILES) {
+            final String template;
+            try (InputStream in = WebappServer.class.getResourceAsStream("/overlay/" + file)) {
+                template = new String(IOHelper.readBytes(in), StandardCharsets.UTF_8);
+            }
+            final Path target = dir.resolve(file);
+            Files.createDirectories(target.getParent());
+            Files.write(target, template.replace("${stub}", stubs.getBaseUrl()).getBytes(StandardCharsets.UTF_8));
+        }
+        return dir;
+    }
+
+    private Path writeProperties(Path dir) throws IOException {
+        final Properties props = new Properties();
+        props.setProperty("db.url", db.getUrl());
+        props.setProperty("db.username", db.getUser());
+        props.setProperty("db.password", db.getPassword());
+        props.setProperty("oskari.init.db", "true");
+        props.setProperty("redis.hostname", config.get("redis.hostname", "localhost"));
+        props.setProperty("redis.port", config.get("redis.port", "6379"));
+        props.setProperty("search.channel.METADATA_CATALOGUE_CHANNEL.metadata.catalogue.server", stubs.getBaseUrl());
+        props.setProperty("search.channel.METADATA_CATALOGUE_CHANNEL.metadata.catalogue.path", "/csw");
+        // anything prefixed with webapp.property. is passed as is, for example pool sizes and timeouts under test
+        for (String key : config.getKeysStartingWith(WEBAPP_PROPERTY_PREFIX)) {
+            props.setProperty(key.substring(WEBAPP_PROPERTY_PREFIX.length()), config.get(key, ""));
+        }
+        Files.createDirectories(dir);
+        try (OutputStream out = Files.newOutputStream(dir.resolve("oskari-ext.properties"))) {
+            props.store(out, "Generated by oskari-loadtest");
+        }
+        return dir;
+    }
+}
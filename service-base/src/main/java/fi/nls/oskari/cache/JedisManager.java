@@ -3,6 +3,7 @@ package fi.nls.oskari.cache;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.RequestTrace;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
@@ -25,6 +26,14 @@ public class JedisManager {
 
     public static final int EXPIRY_TIME_DAY = 86400;
 
+    private static final String TRACE_CATEGORY = "redis";
+
+    /**
+     * Channel for telling in-process caches (like the near-cache in transport) that a value in Redis
+     * has been modified or removed. The message is the Redis key.
+     */
+    public static final String CHANNEL_KEY_CHANGED = "oskari_key_changed";
+
     /**
      * Blocking construction of instances from other classes by making constructor private
      */
@@ -130,6 +139,7 @@ public class JedisManager {
     public static String get(String key, boolean throwException) {
         Jedis jedis = instance.getJedis(throwException);
         if (jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "get");
 
         try {
             return jedis.get(key);
@@ -150,6 +160,7 @@ public class JedisManager {
             }
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -163,6 +174,7 @@ public class JedisManager {
 	public static byte[] get(byte[] key) {
 		Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "get");
 
         try {
 			return jedis.get(key);
@@ -175,6 +187,7 @@ public class JedisManager {
             log.error("Getting", key, "from Redis failed:", e.getMessage());
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
 	}
@@ -190,6 +203,7 @@ public class JedisManager {
     public static String setex(String key, int seconds, String value) {
         Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "setex");
 
         try {
             return jedis.setex(key, seconds, value);
@@ -202,6 +216,7 @@ public class JedisManager {
             log.error("Setting", key, "to Redis failed:", e.getMessage());
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -217,6 +232,7 @@ public class JedisManager {
     public static String setex(byte[] key, int seconds, byte[] value) {
         Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "setex");
 
         try {
             return jedis.setex(key, seconds, value);
@@ -229,6 +245,7 @@ public class JedisManager {
             log.error("Setting", key, "to Redis failed:", e.getMessage());
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -242,6 +259,7 @@ public class JedisManager {
     public static Set<String> keys(String pattern) {
         Jedis jedis = instance.getJedis();
         if(jedis == null) return Collections.emptySet();
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "keys");
 
         try {
             return jedis.keys(pattern + "*");
@@ -254,6 +272,7 @@ public class JedisManager {
             log.error("Running KEYS", pattern + "on Redis failed:", e.getMessage());
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -267,6 +286,7 @@ public class JedisManager {
 	public static Set<String> hkeys(String key) {
 		Jedis jedis = instance.getJedis();
         if(jedis == null) return Collections.emptySet();
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "hkeys");
 
         try {
 			return jedis.hkeys(key);
@@ -279,6 +299,7 @@ public class JedisManager {
             log.error("Getting HKEYS", key + "on Redis failed:", e.getMessage());
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
 	}
@@ -293,6 +314,7 @@ public class JedisManager {
 	public static String hget(String key, String field) {
 		Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "hget");
 
         try {
 			return jedis.hget(key, field);
@@ -305,6 +327,7 @@ public class JedisManager {
             log.error("Getting HGET", key + "on Redis failed:", e.getMessage());
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
 	}
@@ -319,6 +342,7 @@ public class JedisManager {
     public static Long hset(String key, String field, String value) {
         Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "hset");
 
         try {
             return jedis.hset(key, field, value);
@@ -331,6 +355,7 @@ public class JedisManager {
             log.error("Getting", key, "failed miserably");
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -344,6 +369,7 @@ public class JedisManager {
     public static Long del(String... keys) {
         Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "del");
 
         try {
             return jedis.del(keys);
@@ -356,6 +382,7 @@ public class JedisManager {
             log.error("Deleting", keys, "failed miserably");
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -369,6 +396,7 @@ public class JedisManager {
     public static Long delAll(String key) {
         Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "delAll");
 
         try {
             Set<String> keys = jedis.keys(key + "*");
@@ -385,6 +413,7 @@ public class JedisManager {
             log.error("Deleting", key + "* failed miserably");
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
@@ -400,6 +429,7 @@ public class JedisManager {
         if(jedis == null) {
             return -1;
         }
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "getValueStringLength");
 
         try {
             return jedis.strlen(key);
@@ -410,6 +440,7 @@ public class JedisManager {
         } catch (Exception e) {
             log.error("Getting key length", key + " failed miserably");
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
         return -1;
@@ -426,6 +457,7 @@ public class JedisManager {
         if(jedis == null) {
             return -1;
         }
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "pushToList");
 
         try {
             return jedis.rpush(key, values);
@@ -436,6 +468,7 @@ public class JedisManager {
         } catch (Exception e) {
             log.error("Adding to list", key + " failed miserably");
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
         return -1;
@@ -462,6 +495,7 @@ public class JedisManager {
         if(jedis == null) {
             return null;
         }
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "popList");
 
         try {
             String value;
@@ -482,6 +516,7 @@ public class JedisManager {
         } catch (Exception e) {
             log.error("Popping from list", key + " failed miserably");
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
         return null;
@@ -497,6 +532,7 @@ public class JedisManager {
     public static Long publish(final String channel, final String message) {
         final Jedis jedis = instance.getJedis();
         if(jedis == null) return null;
+        final RequestTrace.Span span = RequestTrace.span(TRACE_CATEGORY, "publish");
 
         try {
             return jedis.publish(channel, message);
@@ -509,10 +545,19 @@ public class JedisManager {
             log.error("Publishing on:", channel, "failed miserably");
             return null;
         } finally {
+            span.close();
             instance.returnJedis(jedis);
         }
     }
 
+    /**
+     * Notifies in-process caches that the value of the key has been modified or removed
+     * @param key Redis key
+     */
+    public static void notifyKeyChanged(final String key) {
+        publish(CHANNEL_KEY_CHANGED, key);
+    }
+
     /**
      * Thread-safe SUBSCRIBE
      *
@@ -525,21 +570,37 @@ public class JedisManager {
 
         new Thread(new Runnable() {
             public void run() {
-                try {
-                    log.warn("Subscribing on", channel);
-                    jedis.subscribe(subscriber, channel);
-                } catch(JedisConnectionException e) {
-                    log.error("Failed to subscribe on:", channel, "returning broken connection...");
-                    pool.returnBrokenResource(jedis);
-                    log.error("Broken connection closed");
-                } catch (Exception e) {
-                    log.error("Subscribing on:", channel, "failed miserably");
-                } finally {
-                    log.warn("Unsubscribing on:", channel);
-                    subscriber.unsubscribe();
-                    instance.returnJedis(jedis);
-                }
+                subscribe(jedis, subscriber, channel);
             }
         }).start();
     }
+
+    /**
+     * Subscribes to the channel in the calling thread. Blocks until the subscriber unsubscribes
+     * or the connection fails.
+     * @return false if a connection couldn't be obtained
+     */
+    public static boolean subscribeAndWait(final JedisSubscriber subscriber, final String channel) {
+        final Jedis jedis = instance.getJedis();
+        if(jedis == null) return false;
+        subscribe(jedis, subscriber, channel);
+        return true;
+    }
+
+    private static void subscribe(final Jedis jedis, final JedisSubscriber subscriber, final String channel) {
+        try {
+            log.warn("Subscribing on", channel);
+            jedis.subscribe(subscriber, channel);
+            log.warn("Unsubscribed on:", channel);
+            instance.returnJedis(jedis);
+        } catch(JedisConnectionException e) {
+            log.error("Failed to subscribe on:", channel, "returning broken connection...");
+            pool.returnBrokenResource(jedis);
+            log.error("Broken connection closed");
+        } catch (Exception e) {
+            // closing the connection ends the subscription
+            log.error("Subscribing on:", channel, "failed miserably");
+            pool.returnBrokenResource(jedis);
+        }
+    }
 }
@@ -6,7 +6,7 @@ import org.json.JSONObject;
 
 import java.util.*;
 
-public class OskariLayer extends JSONLocalizedNameAndTitle implements Comparable<OskariLayer> {
+public class OskariLayer extends JSONLocalizedNameAndTitle implements Comparable<OskariLayer>, Cloneable {
 
     public static final String PROPERTY_AJAXURL = "oskari.ajax.url.prefix";
 
@@ -73,6 +73,20 @@ public class OskariLayer extends JSONLocalizedNameAndTitle implements Comparable
     private Date capabilitiesLastUpdated;
     private int capabilitiesUpdateRateSec;
 
+    /**
+     * Returns a shallow copy of the layer. JSON configurations, dataproviders and sublayers
+     * are shared with the original so replace them with setters instead of modifying them.
+     * Useful for tweaking layers that are shared between requests (see OskariLayerRegistry).
+     * @return copy of the layer
+     */
+    public OskariLayer copy() {
+        try {
+            return (OskariLayer) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public boolean isCollection() {
         return TYPE_COLLECTION.equals(type);
     }
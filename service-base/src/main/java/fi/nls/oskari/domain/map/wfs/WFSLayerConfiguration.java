@@ -694,12 +694,22 @@ public class WFSLayerConfiguration {
         final String json = getAsJSON();
         log.debug("Writing WFS to Redis:", key, "->", json);
 		JedisManager.setex(key, JedisManager.EXPIRY_TIME_DAY, json); // expire in 1 day
+        JedisManager.notifyKeyChanged(key);
 	}
 
 	public void destroy() {
-		JedisManager.del(KEY + this.layerId);
+		destroy(this.layerId);
 	}
 
+    /**
+     * Removes cached configuration of the layer from Redis and from transport near-caches
+     * @param layerId
+     */
+    public static void destroy(String layerId) {
+        JedisManager.del(KEY + layerId);
+        JedisManager.notifyKeyChanged(KEY + layerId);
+    }
+
     private String getLayerFriendlyName() {
         if(this.getNameLocales() == null) return "";
         final JSONObject loc = JSONHelper.createJSONObject(this.getNameLocales());
@@ -0,0 +1,215 @@
+package fi.nls.oskari.util;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings and limits for outbound HTTP requests to a single host. Configured with properties:
+ * - oskari.http.host.[host].timeout.connect=[ms] (optional, defaults to oskari.connection.timeout)
+ * - oskari.http.host.[host].timeout.read=[ms] (optional, defaults to oskari.read.timeout)
+ * - oskari.http.host.[host].maxConcurrent=[number of simultaneous requests] (optional, defaults to unlimited)
+ * - oskari.http.host.[host].rateLimit=[requests per second] (optional, defaults to unlimited)
+ *
+ * Values for any host can be given with "*" as host name (oskari.http.host.*.rateLimit=10).
+ */
+class HttpHostSettings {
+
+    private static final Logger LOG = LogFactory.getLogger(HttpHostSettings.class);
+
+    private static final String PROP_PREFIX = "oskari.http.host.";
+    private static final String ANY_HOST = "*";
+
+    private static final ConcurrentMap<String, HttpHostSettings> SETTINGS = new ConcurrentHashMap<>();
+
+    private final String host;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final Semaphore concurrent;
+    private final long rateIntervalNanos;
+    private final AtomicLong nextAllowed = new AtomicLong();
+    // permits with an owner are kept here until released so they are enqueued if the owner is collected
+    private final Set<Permit> permits = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Object> leaked = new ReferenceQueue<>();
+
+    HttpHostSettings(String host, int connectTimeoutMs, int readTimeoutMs, int maxConcurrent, double rateLimit) {
+        this.host = host;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.concurrent = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+        this.rateIntervalNanos = rateLimit > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rateLimit) : 0L;
+    }
+
+    static HttpHostSettings forHost(String host) {
+        return SETTINGS.computeIfAbsent(host, HttpHostSettings::fromProperties);
+    }
+
+    /**
+     * Drops cached settings so they are read again from properties
+     */
+    static void reset() {
+        SETTINGS.clear();
+    }
+
+    private static HttpHostSettings fromProperties(String host) {
+        int connectTimeout = getInt(host, "timeout.connect", IOHelper.getConnectionTimeoutMs());
+        int readTimeout = getInt(host, "timeout.read", IOHelper.getReadTimeoutMs());
+        int maxConcurrent = getInt(host, "maxConcurrent", 0);
+        double rateLimit = ConversionHelper.getDouble(getProperty(host, "rateLimit"), 0);
+        return new HttpHostSettings(host, connectTimeout, readTimeout, maxConcurrent, rateLimit);
+    }
+
+    private static int getInt(String host, String key, int defaultValue) {
+        return ConversionHelper.getInt(getProperty(host, key), defaultValue);
+    }
+
+    private static String getProperty(String host, String key) {
+        String value = PropertyUtil.getOptional(PROP_PREFIX + host + "." + key);
+        if (value == null) {
+            value = PropertyUtil.getOptional(PROP_PREFIX + ANY_HOST + "." + key);
+        }
+        return value;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    /**
+     * Waits for the rate limit and a free request slot for the host.
+     * @throws IOException if the host is saturated for longer than the connection timeout
+     */
+    void acquire() throws IOException {
+        waitForRateLimit();
+        if (concurrent == null) {
+            return;
+        }
+        reclaimLeaked();
+        boolean acquired;
+        try {
+            acquired = concurrent.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + host);
+        }
+        if (!acquired && reclaimLeaked()) {
+            acquired = concurrent.tryAcquire();
+        }
+        if (!acquired) {
+            throw new IOException("Too many concurrent requests to " + host);
+        }
+    }
+
+    /**
+     * Like acquire() but as a fallback the slot is also freed once the owner has been garbage collected
+     * without releasing it (like a connection that is dropped after reading just the response code).
+     * @param owner object whose lifetime limits the slot
+     * @return permit to free the slot with
+     */
+    Permit acquire(Object owner) throws IOException {
+        acquire();
+        if (concurrent == null) {
+            // nothing to free
+            return new Permit(null);
+        }
+        final Permit permit = new Permit(owner);
+        permits.add(permit);
+        return permit;
+    }
+
+    /**
+     * Frees a request slot reserved with acquire()
+     */
+    void release() {
+        if (concurrent != null) {
+            concurrent.release();
+        }
+    }
+
+    /**
+     * Frees the slots of permits whose owner has been garbage collected
+     * @return true if any slots were freed
+     */
+    private boolean reclaimLeaked() {
+        boolean reclaimed = false;
+        Reference<?> ref;
+        while ((ref = leaked.poll()) != null) {
+            if (((Permit) ref).release()) {
+                LOG.warn("Request to", host, "wasn't closed or disconnected, freed its slot");
+                reclaimed = true;
+            }
+        }
+        return reclaimed;
+    }
+
+    private void waitForRateLimit() throws IOException {
+        if (rateIntervalNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot;
+        while (true) {
+            long next = nextAllowed.get();
+            slot = Math.max(now, next);
+            // rejected requests don't reserve a slot so they don't delay the following ones
+            if (slot - now > TimeUnit.MILLISECONDS.toNanos(connectTimeoutMs)) {
+                throw new IOException("Rate limit exceeded for " + host);
+            }
+            if (nextAllowed.compareAndSet(next, slot + rateIntervalNanos)) {
+                break;
+            }
+        }
+        long waitNanos = slot - now;
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for rate limit of " + host);
+        }
+    }
+
+    /**
+     * Request slot that is freed only once
+     */
+    class Permit extends PhantomReference<Object> {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Object owner) {
+            super(owner, leaked);
+        }
+
+        /**
+         * @return false if the slot was already freed
+         */
+        boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            permits.remove(this);
+            HttpHostSettings.this.release();
+            return true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package fi.nls.oskari.util;
 
+import com.codahale.metrics.MetricRegistry;
 import com.github.kevinsawicki.http.HttpRequest;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
@@ -45,6 +46,9 @@ public class IOHelper {
     public static final String CONTENT_TYPE_XML = "application/xml";
     private static final Logger log = LogFactory.getLogger(IOHelper.class);
 
+    static final String METRICS_PREFIX = "Oskari.IOHelper";
+    private static final MetricRegistry METRIC_REGISTRY = new MetricRegistry();
+
     private static SSLSocketFactory TRUSTED_FACTORY;
     private static HostnameVerifier TRUSTED_VERIFIER;
 
@@ -54,6 +58,7 @@ public class IOHelper {
 
     private static boolean trustAllCerts = false;
     private static boolean trustAllHosts = false;
+    private static boolean requestCompression = true;
 
     static {
         CONNECTION_TIMEOUT_MS = PropertyUtil.getOptional("oskari.connection.timeout", CONNECTION_TIMEOUT_MS);
@@ -61,6 +66,12 @@ public class IOHelper {
         trustAllCerts = "true".equals(PropertyUtil.getOptional("oskari.trustAllCerts"));
         trustAllHosts = "true".equals(PropertyUtil.getOptional("oskari.trustAllHosts"));
         MY_DOMAIN = PropertyUtil.get("oskari.domain", MY_DOMAIN);
+        requestCompression = PropertyUtil.getOptional("oskari.http.compression", requestCompression);
+        // size of the JVM keep-alive pool (idle connections kept per host), must be set before first request
+        String keepAlivePoolSize = PropertyUtil.getOptional("oskari.http.keepAlive.maxConnections");
+        if (keepAlivePoolSize != null) {
+            System.setProperty("http.maxConnections", keepAlivePoolSize);
+        }
     }
 
     public static int getConnectionTimeoutMs() {
@@ -72,6 +83,16 @@ public class IOHelper {
     public static String getMyDomain() {
         return MY_DOMAIN;
     }
+
+    /**
+     * Metrics for outbound requests made with connections from getConnection(). Recorded per host:
+     * - Oskari.IOHelper.[host].latency (timer from connecting to receiving the response)
+     * - Oskari.IOHelper.[host].bytes (meter for bytes received before decompression)
+     * - Oskari.IOHelper.[host].errors (meter for failed requests and HTTP error statuses)
+     */
+    public static MetricRegistry getMetrics() {
+        return METRIC_REGISTRY;
+    }
     /**
      * Reads the given input stream and converts its contents to a string using #DEFAULT_CHARSET
      * @param is
@@ -269,13 +290,14 @@ public class IOHelper {
             throws IOException {
         log.debug("Opening connection to", pUrl);
         final URL url = new URL(pUrl);
+        final HttpHostSettings settings = HttpHostSettings.forHost(url.getHost());
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setConnectTimeout(CONNECTION_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setConnectTimeout(settings.getConnectTimeoutMs());
+        conn.setReadTimeout(settings.getReadTimeoutMs());
         conn.setRequestProperty(HEADER_ACCEPT_CHARSET, CHARSET_UTF8);
         if(trustAllCerts) trustAllCerts(conn);
         if(trustAllHosts) trustAllHosts(conn);
-        return conn;
+        return new TrackedHttpURLConnection(conn, settings, METRIC_REGISTRY, requestCompression);
     }
 
     /**
@@ -888,14 +910,22 @@ public class IOHelper {
 
 
     public static void trustAllCerts(final HttpURLConnection connection) throws IOException {
-        if (connection instanceof HttpsURLConnection) {
-            ((HttpsURLConnection) connection).setSSLSocketFactory(getTrustedFactory());
+        final HttpURLConnection conn = unwrap(connection);
+        if (conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(getTrustedFactory());
         }
     }
     public static void trustAllHosts(final HttpURLConnection connection) {
-        if (connection instanceof HttpsURLConnection) {
-            ((HttpsURLConnection) connection).setHostnameVerifier(getTrustedVerifier());
+        final HttpURLConnection conn = unwrap(connection);
+        if (conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setHostnameVerifier(getTrustedVerifier());
+        }
+    }
+    private static HttpURLConnection unwrap(final HttpURLConnection connection) {
+        if (connection instanceof TrackedHttpURLConnection) {
+            return ((TrackedHttpURLConnection) connection).getDelegate();
         }
+        return connection;
     }
     private static SSLSocketFactory getTrustedFactory() throws IOException {
         if (TRUSTED_FACTORY == null) {
@@ -461,6 +461,57 @@ public class JSONHelper {
         return true;
     }
 
+    /**
+     * Returns a deep copy of the given object without serializing it to a String and back like merge() does.
+     * Nested JSONObjects and JSONArrays are copied, other values are immutable and shared.
+     * @param json object to copy
+     * @return copy or null if json is null
+     */
+    public static JSONObject copy(final JSONObject json) {
+        if (json == null) {
+            return null;
+        }
+        final JSONObject result = new JSONObject();
+        final Iterator keys = json.keys();
+        try {
+            while (keys.hasNext()) {
+                final String key = keys.next().toString();
+                result.put(key, copyValue(json.opt(key)));
+            }
+        } catch (JSONException ex) {
+            // values are already valid since they come from another JSONObject
+            log.warn(ex, "Error copying JSONObject");
+        }
+        return result;
+    }
+
+    /**
+     * Returns a deep copy of the given array. See copy(JSONObject).
+     * @param json array to copy
+     * @return copy or null if json is null
+     */
+    public static JSONArray copy(final JSONArray json) {
+        if (json == null) {
+            return null;
+        }
+        final JSONArray result = new JSONArray();
+        final int len = json.length();
+        for (int i = 0; i < len; i++) {
+            result.put(copyValue(json.opt(i)));
+        }
+        return result;
+    }
+
+    private static Object copyValue(final Object value) {
+        if (value instanceof JSONObject) {
+            return copy((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            return copy((JSONArray) value);
+        }
+        return value;
+    }
+
     /**
      * Overrides values in base data and returns a new object as the merged result.
      * @param baseData
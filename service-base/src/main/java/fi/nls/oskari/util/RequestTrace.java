@@ -0,0 +1,215 @@
+package fi.nls.oskari.util;
+
+import com.codahale.metrics.MetricRegistry;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lightweight per-request tracing. A trace is started for each request (see ActionControl.routeAction())
+ * and services record nested timed spans for database queries, Redis calls, outbound HTTP requests etc.
+ *
+ * Usage:
+ *   try (RequestTrace.Span span = RequestTrace.span("redis", "get")) {
+ *       // timed operation
+ *   }
+ *
+ * Span durations are always aggregated to getMetrics() as Oskari.Trace.[category].[name] timers.
+ * Requests that take longer than oskari.trace.slowRequestMs (default 5000) have their span tree logged.
+ * Tracing can be disabled with oskari.trace.enabled=false.
+ */
+public class RequestTrace {
+
+    private static final Logger LOG = LogFactory.getLogger(RequestTrace.class);
+
+    private static final String METRICS_PREFIX = "Oskari.Trace";
+    private static final MetricRegistry METRIC_REGISTRY = new MetricRegistry();
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    // limit memory used by a single trace with lots of spans (like a query per layer)
+    private static final int MAX_SPANS = 500;
+    private static final Span NOOP = new Span(null, null, null, null);
+
+    private static boolean enabled = true;
+    private static long slowRequestMs = 5000;
+
+    static {
+        enabled = PropertyUtil.getOptional("oskari.trace.enabled", enabled);
+        slowRequestMs = PropertyUtil.getOptional("oskari.trace.slowRequestMs", (int) slowRequestMs);
+    }
+
+    private final AtomicInteger spanCount = new AtomicInteger();
+
+    private RequestTrace() {}
+
+    public static MetricRegistry getMetrics() {
+        return METRIC_REGISTRY;
+    }
+
+    public static void setSlowRequestThreshold(long ms) {
+        slowRequestMs = ms;
+    }
+
+    /**
+     * Starts a new trace for current thread. The returned span must be closed when the request is done.
+     * @param name for example the action route
+     * @return root span of the trace
+     */
+    public static Span start(String name) {
+        if (!enabled) {
+            return NOOP;
+        }
+        Span root = new Span(new RequestTrace(), null, "request", name);
+        CURRENT.set(root);
+        return root;
+    }
+
+    /**
+     * Returns the span currently open on this thread so it can be passed to another thread
+     * (see span(Span, String, String)). Returns null if there's no trace in progress.
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Opens a span as a child of the currently open span on this thread
+     * @param category type of the operation like "mybatis", "redis", "http"
+     * @param name of the operation
+     * @return span to close when the operation is done
+     */
+    public static Span span(String category, String name) {
+        return span(CURRENT.get(), category, name);
+    }
+
+    /**
+     * Opens a span as a child of the given parent. Can be used to continue a trace on another thread.
+     * @param parent span from current() on the originating thread, null to only gather metrics
+     * @param category type of the operation like "mybatis", "redis", "http"
+     * @param name of the operation
+     * @return span to close when the operation is done
+     */
+    public static Span span(Span parent, String category, String name) {
+        if (!enabled) {
+            return NOOP;
+        }
+        RequestTrace trace = parent == null ? null : parent.trace;
+        Span span = new Span(trace, parent, category, name);
+        span.previous = CURRENT.get();
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Records an already completed operation as a child of currently open span
+     */
+    public static void record(String category, String name, long durationNanos) {
+        record(CURRENT.get(), category, name, durationNanos);
+    }
+
+    /**
+     * Records an already completed operation as a child of the given span
+     */
+    public static void record(Span parent, String category, String name, long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        long end = System.nanoTime();
+        Span span = new Span(parent == null ? null : parent.trace, parent, category, name, end - durationNanos);
+        span.end(end);
+    }
+
+    private boolean reserveSpan() {
+        return spanCount.incrementAndGet() <= MAX_SPANS;
+    }
+
+    public static class Span implements AutoCloseable {
+        private final RequestTrace trace;
+        private final Span parent;
+        private final String category;
+        private final String name;
+        private final long start;
+        private final List<Span> children = new ArrayList<>();
+        private Span previous;
+        private volatile long duration = -1;
+
+        private Span(RequestTrace trace, Span parent, String category, String name) {
+            this(trace, parent, category, name, System.nanoTime());
+        }
+
+        private Span(RequestTrace trace, Span parent, String category, String name, long start) {
+            this.trace = trace;
+            this.parent = parent;
+            this.category = category;
+            this.name = name;
+            this.start = start;
+            if (parent != null && trace != null && trace.reserveSpan()) {
+                synchronized (parent.children) {
+                    parent.children.add(this);
+                }
+            }
+        }
+
+        public long getDurationMs() {
+            return TimeUnit.NANOSECONDS.toMillis(duration);
+        }
+
+        @Override
+        public void close() {
+            if (this == NOOP || duration >= 0) {
+                return;
+            }
+            end(System.nanoTime());
+            if (parent == null && trace != null) {
+                // root span
+                CURRENT.remove();
+                if (getDurationMs() >= slowRequestMs) {
+                    LOG.warn(describe());
+                }
+            } else if (CURRENT.get() == this) {
+                CURRENT.set(previous);
+            }
+        }
+
+        private void end(long end) {
+            duration = end - start;
+            METRIC_REGISTRY.timer(MetricRegistry.name(METRICS_PREFIX, category, name))
+                    .update(duration, TimeUnit.NANOSECONDS);
+        }
+
+        private String describe() {
+            StringBuilder sb = new StringBuilder("Slow request ")
+                    .append(name).append(": ").append(getDurationMs()).append(" ms");
+            appendChildren(sb, 1);
+            int dropped = trace.spanCount.get() - MAX_SPANS;
+            if (dropped > 0) {
+                sb.append("\n  (").append(dropped).append(" spans not recorded)");
+            }
+            return sb.toString();
+        }
+
+        private void appendChildren(StringBuilder sb, int depth) {
+            List<Span> copy;
+            synchronized (children) {
+                copy = new ArrayList<>(children);
+            }
+            for (Span child : copy) {
+                sb.append('\n');
+                for (int i = 0; i < depth; i++) {
+                    sb.append("  ");
+                }
+                sb.append(child.category).append(' ').append(child.name).append(": ");
+                if (child.duration < 0) {
+                    sb.append("unfinished");
+                } else {
+                    sb.append(child.getDurationMs()).append(" ms");
+                }
+                child.appendChildren(sb, depth + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package fi.nls.oskari.util;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HttpURLConnection wrapper used for outbound requests made with IOHelper.
+ * - Decodes gzip/deflate compressed responses transparently if compression was requested by IOHelper
+ * - Enforces the per host limits from HttpHostSettings
+ * - Records latency, received bytes and errors per host to IOHelper.getMetrics()
+ *
+ * A request slot reserved for the host is freed when the response stream is closed, the response
+ * turns out to have no body or the request fails. Callers that don't read the response body
+ * should call disconnect() so the slot is freed right away. As a fallback the slot of a dropped
+ * connection is freed once it has been garbage collected.
+ */
+class TrackedHttpURLConnection extends HttpURLConnection {
+
+    static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    static final String ACCEPT_COMPRESSED = "gzip, deflate";
+
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+    private static final String TRACE_CATEGORY = "http";
+
+    private final HttpURLConnection delegate;
+    private final HttpHostSettings settings;
+    private final MetricRegistry metrics;
+    private final String metricsPrefix;
+
+    private boolean decodeResponse;
+    private boolean started;
+    private long startTime;
+    private final AtomicBoolean responseRecorded = new AtomicBoolean();
+    private volatile HttpHostSettings.Permit permit;
+
+    TrackedHttpURLConnection(HttpURLConnection delegate, HttpHostSettings settings,
+                             MetricRegistry metrics, boolean requestCompression) {
+        super(delegate.getURL());
+        this.delegate = delegate;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.metricsPrefix = IOHelper.METRICS_PREFIX + "." + settings.getHost();
+        if (requestCompression) {
+            delegate.setRequestProperty(HEADER_ACCEPT_ENCODING, ACCEPT_COMPRESSED);
+            decodeResponse = true;
+        }
+    }
+
+    HttpURLConnection getDelegate() {
+        return delegate;
+    }
+
+    private void start() throws IOException {
+        if (started) {
+            return;
+        }
+        started = true;
+        permit = settings.acquire(this);
+        startTime = System.nanoTime();
+    }
+
+    private void responseReceived() {
+        if (!responseRecorded.compareAndSet(false, true)) {
+            return;
+        }
+        long duration = System.nanoTime() - startTime;
+        metrics.timer(metricsPrefix + ".latency").update(duration, TimeUnit.NANOSECONDS);
+        RequestTrace.record(TRACE_CATEGORY, settings.getHost(), duration);
+        try {
+            int code = delegate.getResponseCode();
+            if (code >= HTTP_BAD_REQUEST) {
+                metrics.meter(metricsPrefix + ".errors").mark();
+            }
+            if (!hasBody(code)) {
+                // nothing to close
+                release();
+            }
+        } catch (IOException ignored) {
+            // response code already read successfully if we got here
+        }
+    }
+
+    private boolean hasBody(int code) {
+        if ("HEAD".equals(delegate.getRequestMethod())) {
+            return false;
+        }
+        if (code < HTTP_OK || code == HTTP_NO_CONTENT || code == HTTP_NOT_MODIFIED) {
+            return false;
+        }
+        return delegate.getContentLengthLong() != 0;
+    }
+
+    private IOException failed(IOException e) {
+        if (!responseRecorded.get()) {
+            // HTTP error statuses are already counted when the response was received
+            metrics.meter(metricsPrefix + ".errors").mark();
+        }
+        release();
+        return e;
+    }
+
+    private void release() {
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private boolean isHiddenHeader(String name) {
+        return isDecoded() && (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)
+                || HEADER_CONTENT_LENGTH.equalsIgnoreCase(name));
+    }
+
+    /**
+     * Maps the index of a header to the index in the delegate skipping the headers hidden by decoding
+     */
+    private int getDelegateHeaderIndex(int n) {
+        if (!isDecoded() || n < 0) {
+            return n;
+        }
+        int visible = -1;
+        for (int i = 0; ; i++) {
+            String key = delegate.getHeaderFieldKey(i);
+            if (key == null && delegate.getHeaderField(i) == null) {
+                // past the last header
+                return i;
+            }
+            if (!isHiddenHeader(key) && ++visible == n) {
+                return i;
+            }
+        }
+    }
+
+    private boolean isDecoded() {
+        if (!decodeResponse) {
+            return false;
+        }
+        String encoding = delegate.getContentEncoding();
+        return ENCODING_GZIP.equalsIgnoreCase(encoding) || ENCODING_DEFLATE.equalsIgnoreCase(encoding);
+    }
+
+    private InputStream wrap(InputStream in) throws IOException {
+        if (in == null) {
+            return null;
+        }
+        InputStream counted = new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    metrics.meter(metricsPrefix + ".bytes").mark();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    metrics.meter(metricsPrefix + ".bytes").mark(n);
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release();
+                }
+            }
+        };
+        if (!isDecoded()) {
+            return counted;
+        }
+        if (ENCODING_GZIP.equalsIgnoreCase(delegate.getContentEncoding())) {
+            return new GZIPInputStream(counted);
+        }
+        return new InflaterInputStream(counted);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        start();
+        try {
+            delegate.connect();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+        release();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return delegate.usingProxy();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        start();
+        try {
+            InputStream in = delegate.getInputStream();
+            responseReceived();
+            return wrap(in);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        try {
+            InputStream in = wrap(delegate.getErrorStream());
+            if (in == null && responseRecorded.get()) {
+                // no error body to close
+                release();
+            }
+            return in;
+        } catch (IOException e) {
+            release();
+            return null;
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        start();
+        try {
+            return delegate.getOutputStream();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        start();
+        try {
+            int code = delegate.getResponseCode();
+            responseReceived();
+            return code;
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        start();
+        try {
+            String msg = delegate.getResponseMessage();
+            responseReceived();
+            return msg;
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return isDecoded() ? null : delegate.getContentEncoding();
+    }
+
+    @Override
+    public int getContentLength() {
+        return isDecoded() ? -1 : delegate.getContentLength();
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return isDecoded() ? -1L : delegate.getContentLengthLong();
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        if (isHiddenHeader(name)) {
+            return null;
+        }
+        return delegate.getHeaderField(name);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        Map<String, List<String>> headers = delegate.getHeaderFields();
+        if (!isDecoded()) {
+            return headers;
+        }
+        Map<String, List<String>> filtered = new LinkedHashMap<>();
+        headers.forEach((key, value) -> {
+            if (!isHiddenHeader(key)) {
+                filtered.put(key, value);
+            }
+        });
+        return filtered;
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        return delegate.getHeaderFieldKey(getDelegateHeaderIndex(n));
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        return delegate.getHeaderField(getDelegateHeaderIndex(n));
+    }
+
+    @Override
+    public int getHeaderFieldInt(String name, int defaultValue) {
+        String value = getHeaderField(name);
+        return value == null ? defaultValue : ConversionHelper.getInt(value, defaultValue);
+    }
+
+    @Override
+    public long getHeaderFieldLong(String name, long defaultValue) {
+        String value = getHeaderField(name);
+        return value == null ? defaultValue : ConversionHelper.getLong(value, defaultValue);
+    }
+
+    @Override
+    public long getHeaderFieldDate(String name, long defaultValue) {
+        return delegate.getHeaderFieldDate(name, defaultValue);
+    }
+
+    @Override
+    public String getContentType() {
+        return delegate.getContentType();
+    }
+
+    @Override
+    public long getExpiration() {
+        return delegate.getExpiration();
+    }
+
+    @Override
+    public long getDate() {
+        return delegate.getDate();
+    }
+
+    @Override
+    public long getLastModified() {
+        return delegate.getLastModified();
+    }
+
+    @Override
+    public URL getURL() {
+        return delegate.getURL();
+    }
+
+    @Override
+    public Permission getPermission() throws IOException {
+        return delegate.getPermission();
+    }
+
+    @Override
+    public void setRequestMethod(String method) throws ProtocolException {
+        delegate.setRequestMethod(method);
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return delegate.getRequestMethod();
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        if (HEADER_ACCEPT_ENCODING.equalsIgnoreCase(key)) {
+            // caller handles encoding by itself
+            decodeResponse = false;
+        }
+        delegate.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value) {
+        if (HEADER_ACCEPT_ENCODING.equalsIgnoreCase(key)) {
+            decodeResponse = false;
+        }
+        delegate.addRequestProperty(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(String key) {
+        return delegate.getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties() {
+        return delegate.getRequestProperties();
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        delegate.setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects() {
+        return delegate.getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength) {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunklen) {
+        delegate.setChunkedStreamingMode(chunklen);
+    }
+
+    @Override
+    public void setConnectTimeout(int timeout) {
+        delegate.setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return delegate.getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) {
+        delegate.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return delegate.getReadTimeout();
+    }
+
+    @Override
+    public void setDoInput(boolean doinput) {
+        delegate.setDoInput(doinput);
+    }
+
+    @Override
+    public boolean getDoInput() {
+        return delegate.getDoInput();
+    }
+
+    @Override
+    public void setDoOutput(boolean dooutput) {
+        delegate.setDoOutput(dooutput);
+    }
+
+    @Override
+    public boolean getDoOutput() {
+        return delegate.getDoOutput();
+    }
+
+    @Override
+    public void setAllowUserInteraction(boolean allowuserinteraction) {
+        delegate.setAllowUserInteraction(allowuserinteraction);
+    }
+
+    @Override
+    public boolean getAllowUserInteraction() {
+        return delegate.getAllowUserInteraction();
+    }
+
+    @Override
+    public void setUseCaches(boolean usecaches) {
+        delegate.setUseCaches(usecaches);
+    }
+
+    @Override
+    public boolean getUseCaches() {
+        return delegate.getUseCaches();
+    }
+
+    @Override
+    public void setIfModifiedSince(long ifmodifiedsince) {
+        delegate.setIfModifiedSince(ifmodifiedsince);
+    }
+
+    @Override
+    public long getIfModifiedSince() {
+        return delegate.getIfModifiedSince();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
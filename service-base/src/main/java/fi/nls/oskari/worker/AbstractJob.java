@@ -21,6 +21,14 @@ public abstract class AbstractJob<T> implements Job<T> {
 	 */
     public final void terminate() {
     	running = false;
+        onTerminate();
+    }
+
+    /**
+     * Called when the job is terminated, possibly from another thread while the job is running.
+     * Can be used to abort blocking operations like requests to external services.
+     */
+    protected void onTerminate() {
     }
 
     /**
@@ -2,148 +2,260 @@ package fi.nls.oskari.worker;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages workers for different kind of jobs
+ *
+ * Jobs are run by a fixed size thread pool. Jobs are indexed by key so adding a job replaces
+ * (terminates) a previous job with the same key in constant time: a replaced job that hasn't started yet
+ * is skipped by the workers and a running job is asked to stop with terminate().
+ *
+ * The number of queued jobs is limited by the capacity (oskari.worker.queue.capacity, default 10000).
+ * When the queue is full new jobs are rejected, see onJobRejected(). A rejected job doesn't affect
+ * a previous job with the same key.
  */
 public class JobQueue
 {
 	private static final Logger log = LogFactory.getLogger(JobQueue.class);
-			
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
     private final int nWorkers;
-    private final Worker[] workers;
-    private final Map<String, Job> jobs;
-    private final LinkedList<Job> queue;
-
-    private long maxQueueLength = 0;
-    private long maxJobLength = 0;
-    private long minJobLength = Long.MAX_VALUE;
-    private long jobCount = 0;
-    private long avgRuntime = 0;
-    private String firstCrashedJob = null;
-    private long crashedJobCount = 0;
+    private final int capacity;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, QueuedJob> jobs = new ConcurrentHashMap<>();
+    // jobs that are waiting for a worker, replaced jobs are not counted even if they are still in the executor
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicLong maxQueueLength = new AtomicLong();
+    private final AtomicLong maxJobLength = new AtomicLong();
+    private final AtomicLong minJobLength = new AtomicLong(Long.MAX_VALUE);
+    private final LongAdder jobCount = new LongAdder();
+    private final LongAdder timedJobCount = new LongAdder();
+    private final LongAdder totalRuntime = new LongAdder();
+    private final AtomicReference<String> firstCrashedJob = new AtomicReference<>();
+    private final LongAdder crashedJobCount = new LongAdder();
+    private final LongAdder rejectedJobCount = new LongAdder();
 
     /**
      * Initializes a queue and workers
-     * 
+     *
      * @param nWorkers
      */
     public JobQueue(int nWorkers)
+    {
+        this(nWorkers, PropertyUtil.getOptional("oskari.worker.queue.capacity", DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Initializes a queue and workers
+     *
+     * @param nWorkers number of worker threads
+     * @param capacity max number of jobs waiting for a worker
+     */
+    public JobQueue(int nWorkers, int capacity)
     {
         this.nWorkers = nWorkers;
-        queue = new LinkedList<Job>();
-        workers = new Worker[this.nWorkers];
-        jobs = new HashMap<String, Job>();
+        this.capacity = capacity;
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(nWorkers, nWorkers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "JobQueue-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.prestartAllCoreThreads();
+    }
 
-        for (int i = 0; i < this.nWorkers; i++) {
-        	workers[i] = new Worker();
-        	workers[i].start();
-        }
+    public int getWorkerCount() {
+        return nWorkers;
     }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
     public long getMaxQueueLength() {
-        return maxQueueLength;
+        return maxQueueLength.get();
     }
 
     public long getMaxJobLength() {
-        return maxJobLength;
+        return maxJobLength.get();
     }
 
     public long getMinJobLength() {
-        return minJobLength;
+        return minJobLength.get();
     }
 
     public long getJobCount() {
-        return jobCount;
+        return jobCount.sum();
     }
 
     public long getAvgRuntime() {
-        return avgRuntime;
+        final long count = timedJobCount.sum();
+        return count == 0 ? 0 : totalRuntime.sum() / count;
     }
+
     public long getQueueSize() {
-        return queue.size();
+        return queued.get();
+    }
+
+    public long getRunningJobCount() {
+        return running.get();
     }
 
     public String getFirstCrashedJob() {
-        return firstCrashedJob;
+        return firstCrashedJob.get();
     }
 
     public long getCrashedJobCount() {
-        return crashedJobCount;
+        return crashedJobCount.sum();
+    }
+
+    public long getRejectedJobCount() {
+        return rejectedJobCount.sum();
+    }
+
+    /**
+     * @return number of jobs in the executor including replaced jobs that the workers haven't skipped yet
+     */
+    int getExecutorQueueSize() {
+        return executor.getQueue().size();
     }
 
     public List<String> getQueuedJobNames() {
-        List<String> names = new ArrayList<String>(queue.size());
-        for(Job j : queue) {
-            names.add(j.getKey());
+        List<String> names = new ArrayList<String>();
+        for(QueuedJob j : jobs.values()) {
+            if(j.isQueued()) {
+                names.add(j.job.getKey());
+            }
         }
         return names;
     }
 
+    /**
+     * Removes all jobs that are waiting for a worker
+     * @param force nothing is done if false
+     */
     public void cleanup(boolean force) {
-        for(Job j : queue) {
-            if(force) {
-                remove(j);
+        if(!force) {
+            return;
+        }
+        for(QueuedJob j : jobs.values()) {
+            if(j.isQueued() && jobs.remove(j.job.getKey(), j)) {
+                j.cancel();
             }
         }
     }
 
     /**
-     * Adds a new job into queue and notifies workers
-     * 
+     * Adds a new job into queue and notifies workers.
+     * A previous job with the same key is terminated once the new job is accepted.
+     * When the queue is full the new job can only replace a previous job that is still queued.
+     *
      * @param job
      */
     public void add(Job job) {
-        // removed previous job with same key
-        remove(job);
-    	String key = job.getKey();
-    	jobs.put(key, job);
-        synchronized(queue) {
-            queue.addLast(job);
-            queue.notify();
+        if(job == null) {
+            return;
+        }
+        final String key = job.getKey();
+        final QueuedJob entry = new QueuedJob(job);
+        final QueuedJob previous;
+        if(queued.incrementAndGet() <= capacity) {
+            previous = jobs.put(key, entry);
+        } else {
+            // full, but replacing a queued job frees the slot it takes
+            previous = jobs.get(key);
+            if(previous == null || !previous.isQueued() || !jobs.replace(key, previous, entry)) {
+                queued.decrementAndGet();
+                rejectedJobCount.increment();
+                onJobRejected(job);
+                return;
+            }
+        }
+        if(previous != null) {
+            // frees the slot of the previous job if it was still queued
+            previous.cancel();
+        }
+        maxQueueLength.accumulateAndGet(queued.get(), Math::max);
+        try {
+            executor.execute(entry);
+        } catch (RejectedExecutionException e) {
+            // executor has been shut down
+            jobs.remove(key, entry);
+            entry.cancel();
+            rejectedJobCount.increment();
+            onJobRejected(job);
+            return;
         }
-        if(maxQueueLength < queue.size()) {
-            maxQueueLength = queue.size();
+        if(executor.getQueue().size() - queued.get() > capacity) {
+            purgeCancelled();
         }
         log.debug("Added", key);
     }
 
+    /**
+     * Replaced and removed jobs are skipped by the workers instead of being searched from the executor.
+     * Drop them from the executor when there are more of them than the queue capacity so that
+     * frequently replaced jobs don't pile up while the workers are busy.
+     */
+    private synchronized void purgeCancelled() {
+        final BlockingQueue<Runnable> pending = executor.getQueue();
+        if(pending.size() - queued.get() > capacity) {
+            pending.removeIf(r -> ((QueuedJob) r).isCancelled());
+        }
+    }
+
     public void addJobCount() {
-        jobCount++;
+        jobCount.increment();
     }
 
     public void setupTimingStatistics(long runTimeMS) {
-        if(runTimeMS > maxJobLength) {
-            maxJobLength = runTimeMS;
-        }
-        if(runTimeMS < minJobLength) {
-            minJobLength = runTimeMS;
-        }
-        if(avgRuntime == 0) {
-            avgRuntime = runTimeMS;
-        }
-        else {
-            avgRuntime = ((avgRuntime * (jobCount -1)) + runTimeMS) / jobCount;
-        }
+        maxJobLength.accumulateAndGet(runTimeMS, Math::max);
+        minJobLength.accumulateAndGet(runTimeMS, Math::min);
+        totalRuntime.add(runTimeMS);
+        timedJobCount.increment();
     }
 
     /**
      * Removes a job from queue and terminates a running job
-     * 
+     *
      * @param job
      */
     public void remove(Job job) {
+        if(job == null) {
+            return;
+        }
     	String key = job.getKey();
-    	Job processedJob = jobs.get(key);
-		if(processedJob != null)
-			processedJob.terminate();
-        synchronized(queue) {
-        	queue.remove(job);
+        QueuedJob processedJob = jobs.remove(key);
+        if(processedJob != null) {
+            processedJob.cancel();
         }
         log.debug("Removed", key);
     }
 
+    /**
+     * Stops the workers. Running jobs are terminated and queued jobs are discarded.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        for(QueuedJob j : jobs.values()) {
+            j.cancel();
+        }
+        jobs.clear();
+    }
+
     public void onJobSuccess(final Job job, final Object value) {
         // convenience method for extension hooks
         log.debug("Job success");
@@ -162,63 +274,94 @@ public class JobQueue
             log.debug(value, "Stacktrace");
         }
     }
-    
+
+    /**
+     * Called when a job can't be added because the queue is full. The job is terminated and never run.
+     * @param job
+     */
+    public void onJobRejected(final Job job) {
+        // convenience method for extension hooks
+        log.warn("Queue is full, rejected job:", job.getKey(), "- queue capacity", capacity);
+        job.terminate();
+    }
+
+    private void runJob(final Job r) {
+        final long startTime = System.nanoTime();
+        addJobCount();
+        boolean notified = false;
+        try {
+            final Object o = r.run();
+            onJobSuccess(r, o);
+            notified = true;
+        } catch (Exception e) {
+            onJobFailed(r, e);
+            notified = true;
+        }
+        catch (OutOfMemoryError e) {
+            crashedJobCount.increment();
+            log.error("OutOfMemory while running job:", r.getKey(), "- message", e.getMessage());
+            firstCrashedJob.compareAndSet(null, r.getKey());
+            onJobFailed(r, e);
+            notified = true;
+            throw e;
+        }
+        finally {
+            if(!notified) {
+                onJobFailed(r, null);
+            }
+            r.teardown();
+            log.debug("Finished", r.getKey());
+            final long runTimeMS = (System.nanoTime() - startTime) / 1000000L;
+            setupTimingStatistics(runTimeMS);
+        }
+    }
+
     /**
-     * Defines a worker thread for queue's job
+     * Job waiting in the executor. Replacing a job only flips the state so the
+     * worker skips it instead of searching it from the executor's queue.
      */
-    private class Worker extends Thread { 
-    	
-    	/**
-    	 * Processes queues jobs
-    	 * 
-    	 * Waits for the queue to have some jobs.
-    	 * Always takes the first job available, runs it and removes it from queue.
-    	 * 
-    	 */
+    private class QueuedJob implements Runnable {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+
+        private final Job job;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        QueuedJob(Job job) {
+            this.job = job;
+        }
+
+        boolean isQueued() {
+            return state.get() == QUEUED;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        void cancel() {
+            job.terminate();
+            if(state.compareAndSet(QUEUED, CANCELLED)) {
+                queued.decrementAndGet();
+            }
+        }
+
         public void run() {
-            Job r;
-
-            while (true) {
-                synchronized(queue) {
-                    while (queue.isEmpty()) {
-                        try {
-                            queue.wait();
-                        } catch (InterruptedException ignored) { }
-                    }
-                    r = queue.removeFirst();
-                }
-                final long startTime = System.nanoTime();
-                addJobCount();
-                boolean notified = false;
-                try {
-                    final Object o = r.run();
-                    onJobSuccess(r, o);
-                    notified = true;
-                } catch (Exception e) {
-                    onJobFailed(r, e);
-                    notified = true;
-                }
-                catch (OutOfMemoryError e) {
-                    crashedJobCount++;
-                    log.error("OutOfMemory while running job:", r.getKey(), "- message", e.getMessage());
-                    if(firstCrashedJob == null) {
-                        firstCrashedJob = r.getKey();
-                    }
-                    onJobFailed(r, e);
-                    notified = true;
-                    throw e;
-                }
-                finally {
-                    if(!notified) {
-                        onJobFailed(r, null);
-                    }
-                    r.teardown();
-                    jobs.remove(r.getKey());
-                    log.debug("Finished", r.getKey());
-                    final long runTimeMS = (System.nanoTime() - startTime) / 1000000L;
-                    setupTimingStatistics(runTimeMS);
-                }
+            if(!state.compareAndSet(QUEUED, RUNNING)) {
+                // replaced or removed before a worker got to it
+                return;
+            }
+            // counted as running before it's no longer queued so it's always visible in one of them
+            running.incrementAndGet();
+            queued.decrementAndGet();
+            try {
+                runJob(job);
+            } finally {
+                // don't remove a newer job with the same key
+                jobs.remove(job.getKey(), this);
+                running.decrementAndGet();
             }
         }
     }
-}
\ No newline at end of file
+}
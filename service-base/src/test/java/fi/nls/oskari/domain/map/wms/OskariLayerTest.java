@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * @author SMAKINEN
@@ -84,4 +85,22 @@ public class OskariLayerTest {
         assertEquals("Secure url should be '" + proxyUrl + "' if url is '" + url + "'", proxyUrl, layer.getUrl(true));
 
     }
+
+    @Test
+    public void testCopy() {
+        OskariLayer layer = new OskariLayer();
+        layer.setId(37);
+        layer.setName("layer");
+        layer.setUrl("http://oskari.org");
+        layer.setName("en", "English name");
+
+        OskariLayer copy = layer.copy();
+        assertEquals("Copy should have same id", 37, copy.getId());
+        assertEquals("Copy should have same localized name", "English name", copy.getName("en"));
+        assertEquals("Copy should have same url", "http://oskari.org", copy.getUrl());
+
+        copy.setUrl("http://example.com");
+        assertEquals("Changing copy shouldn't modify the original", "http://oskari.org", layer.getUrl());
+        assertFalse("Copy should be a different instance", layer == copy);
+    }
 }
@@ -0,0 +1,42 @@
+package fi.nls.oskari.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpHostSettingsTest {
+
+    @Test
+    public void testRateLimitWaits() throws IOException {
+        // 10 requests per second
+        HttpHostSettings settings = new HttpHostSettings("limited", 500, 1000, 0, 10);
+        long start = System.nanoTime();
+        settings.acquire();
+        settings.acquire();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Second request should wait for the rate limit: " + elapsedMs, elapsedMs >= 90);
+    }
+
+    @Test
+    public void testRejectedRequestsDontDelayNextOnes() throws Exception {
+        // 10 requests per second, waiting over 50ms is rejected
+        HttpHostSettings settings = new HttpHostSettings("limited", 50, 1000, 0, 10);
+        settings.acquire();
+        for (int i = 0; i < 100; i++) {
+            try {
+                settings.acquire();
+                fail("Request should be rejected");
+            } catch (IOException expected) {}
+        }
+        // load has stopped
+        Thread.sleep(150);
+        long start = System.nanoTime();
+        settings.acquire();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Request should go through without waiting: " + elapsedMs, elapsedMs < 50);
+    }
+}
@@ -1,5 +1,6 @@
 package fi.nls.oskari.util;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 
@@ -183,4 +184,27 @@ public class JSONHelperTest {
         assertTrue("Result should have key 'test'", JSONHelper.getStringFromJSON(result, "test", "").equals("jee"));
         assertTrue("Result should have key 'moi'", JSONHelper.getStringFromJSON(result, "moi", "").equals("moi"));
     }
+
+    @Test
+    public void testCopy() throws Exception {
+        JSONObject inner = JSONHelper.createJSONObject("innerkey", "innervalue");
+        JSONArray arr = new JSONArray();
+        arr.put(inner);
+        arr.put(1);
+        JSONObject obj = JSONHelper.createJSONObject("key", "value");
+        obj.put("inner", inner);
+        obj.put("arr", arr);
+        obj.put("null", JSONObject.NULL);
+
+        JSONObject copy = JSONHelper.copy(obj);
+        assertTrue("Copy should equal original", JSONHelper.isEqual(obj, copy));
+
+        copy.getJSONObject("inner").put("innerkey", "modified");
+        copy.getJSONArray("arr").getJSONObject(0).put("added", true);
+        copy.put("key", "modified");
+        assertEquals("Original nested object should not change", "innervalue", inner.getString("innerkey"));
+        assertFalse("Original object in array should not change", arr.getJSONObject(0).has("added"));
+        assertEquals("Original should not change", "value", obj.getString("key"));
+        assertNull("Copy of null is null", JSONHelper.copy((JSONObject) null));
+    }
 }
@@ -0,0 +1,52 @@
+package fi.nls.oskari.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RequestTraceTest {
+
+    @Test
+    public void testNestedSpans() {
+        RequestTrace.Span root = RequestTrace.start("TestRoute");
+        assertSame("Root should be current span", root, RequestTrace.current());
+        try (RequestTrace.Span outer = RequestTrace.span("test", "outer")) {
+            assertSame("Outer should be current span", outer, RequestTrace.current());
+            try (RequestTrace.Span inner = RequestTrace.span("test", "inner")) {
+                assertSame("Inner should be current span", inner, RequestTrace.current());
+            }
+            assertSame("Outer should be restored as current span", outer, RequestTrace.current());
+        }
+        assertSame("Root should be restored as current span", root, RequestTrace.current());
+        root.close();
+        assertNull("Trace should be cleared after request", RequestTrace.current());
+    }
+
+    @Test
+    public void testMetricsWithoutTrace() {
+        long before = RequestTrace.getMetrics().timer("Oskari.Trace.test.record").getCount();
+        RequestTrace.record("test", "record", TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals("Span should be aggregated to metrics even without a trace",
+                before + 1, RequestTrace.getMetrics().timer("Oskari.Trace.test.record").getCount());
+        assertNull("Recording shouldn't start a trace", RequestTrace.current());
+    }
+
+    @Test
+    public void testSpanOnAnotherThread() throws Exception {
+        RequestTrace.Span root = RequestTrace.start("TestRoute");
+        Thread t = new Thread(() -> {
+            try (RequestTrace.Span span = RequestTrace.span(root, "test", "thread")) {
+                assertSame(span, RequestTrace.current());
+            }
+            assertNull("Thread shouldn't keep the span", RequestTrace.current());
+        });
+        t.start();
+        t.join();
+        assertSame("Root should still be current span", root, RequestTrace.current());
+        root.close();
+    }
+}
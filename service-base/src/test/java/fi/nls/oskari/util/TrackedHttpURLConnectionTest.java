@@ -0,0 +1,180 @@
+package fi.nls.oskari.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests transparent decompression and metrics for connections returned by IOHelper
+ */
+public class TrackedHttpURLConnectionTest {
+
+    private static final String RESPONSE = "Lorem ipsum dolor sit amet, consectetur adipiscing elit";
+    private static HttpServer server;
+    private static String baseUrl;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data", exchange -> {
+            byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+                    gzip.write(body);
+                }
+                body = baos.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/empty", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCompressedResponseIsDecoded() throws IOException {
+        HttpURLConnection conn = IOHelper.getConnection(baseUrl + "/data");
+        assertEquals("Compression should be requested", TrackedHttpURLConnection.ACCEPT_COMPRESSED,
+                conn.getRequestProperty("Accept-Encoding"));
+        assertEquals("Response should be decoded", RESPONSE, IOHelper.readString(conn));
+        assertNull("Decoded response shouldn't report content encoding", conn.getContentEncoding());
+
+        String prefix = IOHelper.METRICS_PREFIX + ".127.0.0.1";
+        assertTrue("Latency should be recorded", IOHelper.getMetrics().timer(prefix + ".latency").getCount() > 0);
+        assertTrue("Bytes should be recorded", IOHelper.getMetrics().meter(prefix + ".bytes").getCount() > 0);
+    }
+
+    @Test
+    public void testCallerHandlesEncoding() throws IOException {
+        HttpURLConnection conn = IOHelper.getConnection(baseUrl + "/data");
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        assertEquals("Response should be plain", RESPONSE, IOHelper.readString(conn));
+    }
+
+    @Test
+    public void testErrorsAreCounted() throws IOException {
+        String errors = IOHelper.METRICS_PREFIX + ".127.0.0.1.errors";
+        long before = IOHelper.getMetrics().meter(errors).getCount();
+        HttpURLConnection conn = IOHelper.getConnection(baseUrl + "/missing");
+        assertEquals(404, conn.getResponseCode());
+        assertEquals("Error status should be counted once", before + 1, IOHelper.getMetrics().meter(errors).getCount());
+    }
+
+    @Test
+    public void testDecodedHeadersByIndex() throws IOException {
+        HttpURLConnection conn = IOHelper.getConnection(baseUrl + "/data");
+        IOHelper.readString(conn);
+        boolean date = false;
+        for (int i = 1; conn.getHeaderField(i) != null; i++) {
+            String key = conn.getHeaderFieldKey(i);
+            assertNotEquals("Content-Encoding", key);
+            assertNotEquals("Content-Length", key);
+            assertEquals(conn.getHeaderFields().get(key).get(0), conn.getHeaderField(i));
+            date |= "Date".equalsIgnoreCase(key);
+        }
+        assertTrue("Other headers should be listed", date);
+    }
+
+    @Test
+    public void testSlotIsReleasedWithoutBody() throws IOException {
+        HttpHostSettings settings = new HttpHostSettings("limited", 100, 1000, 1, 0);
+        for (int i = 0; i < 3; i++) {
+            HttpURLConnection conn = getLimitedConnection("/empty", settings);
+            // response has no body so the stream is never closed
+            assertEquals(204, conn.getResponseCode());
+        }
+        for (int i = 0; i < 3; i++) {
+            HttpURLConnection conn = getLimitedConnection("/missing", settings);
+            assertEquals(404, conn.getResponseCode());
+            assertNull(conn.getErrorStream());
+        }
+        for (int i = 0; i < 3; i++) {
+            HttpURLConnection conn = getLimitedConnection("/data", settings);
+            conn.setRequestMethod("HEAD");
+            assertEquals(200, conn.getResponseCode());
+        }
+        // would time out if any of the slots was still reserved
+        settings.acquire();
+    }
+
+    @Test
+    public void testSlotIsReleasedOnDisconnect() throws IOException {
+        HttpHostSettings settings = new HttpHostSettings("limited", 100, 1000, 1, 0);
+        HttpURLConnection conn = getLimitedConnection("/data", settings);
+        assertEquals(200, conn.getResponseCode());
+        // body is not read
+        conn.disconnect();
+        conn = getLimitedConnection("/data", settings);
+        assertEquals(RESPONSE, IOHelper.readString(conn));
+        settings.acquire();
+    }
+
+    @Test
+    public void testSlotOfDroppedConnectionIsReleased() throws IOException {
+        HttpHostSettings settings = new HttpHostSettings("limited", 100, 1000, 1, 0);
+        readResponseCodeOnly(settings);
+        // the dropped connection is found once it has been garbage collected
+        for (int i = 0; ; i++) {
+            System.gc();
+            try {
+                settings.acquire();
+                return;
+            } catch (IOException e) {
+                if (i == 20) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void readResponseCodeOnly(HttpHostSettings settings) throws IOException {
+        HttpURLConnection conn = getLimitedConnection("/data", settings);
+        // the body is never read or closed and the connection isn't disconnected
+        assertEquals(200, conn.getResponseCode());
+    }
+
+    private HttpURLConnection getLimitedConnection(String path, HttpHostSettings settings) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        return new TrackedHttpURLConnection(conn, settings, IOHelper.getMetrics(), true);
+    }
+
+    @Test(expected = IOException.class)
+    public void testConcurrencyLimit() throws IOException {
+        HttpHostSettings settings = new HttpHostSettings("limited", 10, 10, 1, 0);
+        settings.acquire();
+        settings.acquire();
+    }
+}
@@ -0,0 +1,94 @@
+package fi.nls.oskari.worker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Throughput benchmark for JobQueue. Skipped by default, run with:
+ *   mvn test -Dtest=JobQueueBenchmarkTest -Doskari.benchmark=true
+ */
+public class JobQueueBenchmarkTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int JOBS_PER_PRODUCER = 200000;
+    // number of distinct keys, smaller values mean more superseded jobs
+    private static final int KEYS = 1000;
+
+    private static class NoopJob extends AbstractJob<String> {
+        private final String key;
+        private final LongAdder runs;
+
+        NoopJob(String key, LongAdder runs) {
+            this.key = key;
+            this.runs = runs;
+        }
+
+        @Override
+        public String run() {
+            runs.increment();
+            return null;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("oskari.benchmark"));
+        // warm up
+        run(Runtime.getRuntime().availableProcessors());
+        for (int workers : new int[] {1, 4, 16}) {
+            run(workers);
+        }
+    }
+
+    private void run(int workers) throws Exception {
+        final JobQueue queue = new JobQueue(workers, Integer.MAX_VALUE);
+        final LongAdder runs = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        final List<Future<?>> tasks = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            tasks.add(producers.submit(() -> {
+                start.await();
+                for (int i = 0; i < JOBS_PER_PRODUCER; i++) {
+                    queue.add(new NoopJob("key" + ((i + producer) % KEYS), runs));
+                }
+                return null;
+            }));
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        final long added = System.nanoTime();
+        while (queue.getQueueSize() > 0 || queue.getRunningJobCount() > 0) {
+            Thread.sleep(1);
+        }
+        final long done = System.nanoTime();
+        producers.shutdown();
+        queue.shutdown();
+
+        final long total = (long) PRODUCERS * JOBS_PER_PRODUCER;
+        System.out.println(String.format("workers: %d, adds/s: %d, drained in %d ms, jobs run: %d/%d, max queue: %d",
+                workers,
+                total * TimeUnit.SECONDS.toNanos(1) / (added - begin),
+                TimeUnit.NANOSECONDS.toMillis(done - begin),
+                runs.sum(), total, queue.getMaxQueueLength()));
+    }
+}
@@ -2,6 +2,14 @@ package fi.nls.oskari.worker;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class JobQueueTest {
@@ -58,4 +66,237 @@ public class JobQueueTest {
 		assertTrue("Should run", job3.isStarted() == true);
 	}
 
+	/**
+	 * Blocks the worker until released
+	 */
+	private class BlockingJob extends AbstractJob<String> {
+		private final String key;
+		private final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		BlockingJob(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String run() throws InterruptedException {
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return null;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private class CountingJob extends AbstractJob<String> {
+		private final String key;
+		private final AtomicInteger runs;
+
+		CountingJob(String key, AtomicInteger runs) {
+			this.key = key;
+			this.runs = runs;
+		}
+
+		@Override
+		public String run() {
+			if(goNext()) {
+				runs.incrementAndGet();
+			}
+			return null;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+	}
+
+	@Test
+	public void testReplaceQueuedJob() throws InterruptedException {
+		JobQueue jobs = new JobQueue(1);
+		BlockingJob blocker = new BlockingJob("blocker");
+		jobs.add(blocker);
+		assertTrue("Should start", blocker.started.await(5, TimeUnit.SECONDS));
+
+		AtomicInteger firstRuns = new AtomicInteger();
+		AtomicInteger secondRuns = new AtomicInteger();
+		CountingJob first = new CountingJob("same", firstRuns);
+		jobs.add(first);
+		jobs.add(new CountingJob("same", secondRuns));
+		assertEquals("Replaced job shouldn't be counted", 1, jobs.getQueueSize());
+		assertFalse("Replaced job should be terminated", first.goNext());
+		assertEquals(Collections.singletonList("same"), jobs.getQueuedJobNames());
+
+		blocker.release.countDown();
+		waitUntilEmpty(jobs);
+		assertEquals("Replaced job shouldn't run", 0, firstRuns.get());
+		assertEquals("Latest job should run", 1, secondRuns.get());
+		jobs.shutdown();
+	}
+
+	@Test
+	public void testReplaceRunningJobAborts() throws InterruptedException {
+		JobQueue jobs = new JobQueue(1);
+		// simulates a job waiting for a response that is aborted on terminate
+		BlockingJob running = new BlockingJob("same") {
+			@Override
+			protected void onTerminate() {
+				release.countDown();
+			}
+		};
+		jobs.add(running);
+		assertTrue("Should start", running.started.await(5, TimeUnit.SECONDS));
+
+		AtomicInteger runs = new AtomicInteger();
+		jobs.add(new CountingJob("same", runs));
+		assertFalse("Replaced job should be terminated", running.goNext());
+		assertEquals("Blocking call should be aborted", 0, running.release.getCount());
+
+		waitUntilEmpty(jobs);
+		assertEquals("Latest job should run", 1, runs.get());
+		jobs.shutdown();
+	}
+
+	@Test
+	public void testCapacity() throws InterruptedException {
+		JobQueue jobs = new JobQueue(1, 2);
+		BlockingJob blocker = new BlockingJob("blocker");
+		jobs.add(blocker);
+		assertTrue("Should start", blocker.started.await(5, TimeUnit.SECONDS));
+
+		AtomicInteger runs = new AtomicInteger();
+		jobs.add(new CountingJob("1", runs));
+		jobs.add(new CountingJob("2", runs));
+		CountingJob rejected = new CountingJob("3", runs);
+		jobs.add(rejected);
+		assertEquals(1, jobs.getRejectedJobCount());
+		assertFalse("Rejected job should be terminated", rejected.goNext());
+		// replacing a queued job doesn't need more room
+		jobs.add(new CountingJob("2", runs));
+		assertEquals(1, jobs.getRejectedJobCount());
+		assertEquals(2, jobs.getMaxQueueLength());
+
+		blocker.release.countDown();
+		waitUntilEmpty(jobs);
+		assertEquals(2, runs.get());
+		jobs.shutdown();
+	}
+
+	@Test
+	public void testRejectedJobDoesntReplaceRunningJob() throws InterruptedException {
+		JobQueue jobs = new JobQueue(1, 1);
+		BlockingJob running = new BlockingJob("same");
+		jobs.add(running);
+		assertTrue("Should start", running.started.await(5, TimeUnit.SECONDS));
+		AtomicInteger runs = new AtomicInteger();
+		jobs.add(new CountingJob("other", runs));
+
+		CountingJob rejected = new CountingJob("same", runs);
+		jobs.add(rejected);
+		assertEquals(1, jobs.getRejectedJobCount());
+		assertFalse("Rejected job should be terminated", rejected.goNext());
+		assertTrue("Running job should be kept", running.goNext());
+
+		running.release.countDown();
+		waitUntilEmpty(jobs);
+		assertEquals("Only the queued job should run", 1, runs.get());
+		jobs.shutdown();
+	}
+
+	@Test
+	public void testReplacedJobsArePurged() throws InterruptedException {
+		final int capacity = 10;
+		JobQueue jobs = new JobQueue(1, capacity);
+		BlockingJob blocker = new BlockingJob("blocker");
+		jobs.add(blocker);
+		assertTrue("Should start", blocker.started.await(5, TimeUnit.SECONDS));
+
+		AtomicInteger runs = new AtomicInteger();
+		for (int i = 0; i < 1000; i++) {
+			jobs.add(new CountingJob("same", runs));
+			assertTrue("Replaced jobs should be dropped from the executor",
+					jobs.getExecutorQueueSize() <= jobs.getQueueSize() + capacity);
+		}
+		assertEquals(1, jobs.getQueueSize());
+		assertEquals(0, jobs.getRejectedJobCount());
+
+		blocker.release.countDown();
+		waitUntilEmpty(jobs);
+		assertEquals("Latest job should run", 1, runs.get());
+		jobs.shutdown();
+	}
+
+	@Test
+	public void testTimingStatistics() throws InterruptedException {
+		final JobQueue jobs = new JobQueue(1);
+		final int threads = 8;
+		final int perThread = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for (int i = 1; i <= perThread; i++) {
+					jobs.setupTimingStatistics(i);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(1, jobs.getMinJobLength());
+		assertEquals(perThread, jobs.getMaxJobLength());
+		assertEquals((perThread + 1) / 2, jobs.getAvgRuntime());
+		jobs.shutdown();
+	}
+
+	/**
+	 * Adds jobs with overlapping keys from several threads and checks that every job
+	 * is either run or replaced and nothing is left in the queue.
+	 */
+	@Test
+	public void testConcurrentAddAndRemove() throws Exception {
+		final JobQueue jobs = new JobQueue(4, Integer.MAX_VALUE);
+		final int threads = 8;
+		final int perThread = 5000;
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger added = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			tasks.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < perThread; i++) {
+					CountingJob job = new CountingJob("key" + (i % 50), runs);
+					jobs.add(job);
+					added.incrementAndGet();
+					if ((i + thread) % 7 == 0) {
+						jobs.remove(job);
+					}
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> task : tasks) {
+			task.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		waitUntilEmpty(jobs);
+		assertEquals(0, jobs.getQueueSize());
+		assertTrue("Queued job names should be empty", jobs.getQueuedJobNames().isEmpty());
+		assertTrue("Some jobs should run", runs.get() > 0);
+		assertTrue("Run at most once per job", runs.get() <= added.get());
+		assertEquals(0, jobs.getRejectedJobCount());
+		jobs.shutdown();
+	}
+
+	private void waitUntilEmpty(JobQueue jobs) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while ((jobs.getQueueSize() > 0 || jobs.getRunningJobCount() > 0) && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+	}
 }
@@ -6,6 +6,7 @@ import com.codahale.metrics.Timer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.util.RequestTrace;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -128,6 +129,7 @@ public class ActionControl {
                 actionTimer = timer.time();
             }
 
+            final RequestTrace.Span trace = RequestTrace.start(action);
             try {
                 actions.get(action).handleAction(params);
             } catch (Exception ex) {
@@ -138,6 +140,7 @@ public class ActionControl {
                     throw new ActionException("Unhandled exception occured", ex);
                 }
             } finally {
+                trace.close();
                 if(actionTimer != null) {
                     actionTimer.stop();
                 }
@@ -0,0 +1,102 @@
+package fi.nls.oskari.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pre-serialized response body that can be cached and written out with
+ * ResponseHelper.writeResponse(ActionParameters, CachedResponse) any number of times.
+ * - Bodies larger than GZIP_THRESHOLD are gzipped once on creation
+ * - ETag is calculated from the uncompressed body so it's the same on all nodes
+ */
+public class CachedResponse {
+
+    // small responses don't benefit from compression
+    static final int GZIP_THRESHOLD = 1024;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String contentType;
+    private final byte[] body;
+    private final byte[] gzipped;
+    private final String etag;
+
+    public CachedResponse(String contentType, byte[] body) {
+        this.contentType = contentType;
+        this.body = body;
+        this.gzipped = body.length > GZIP_THRESHOLD ? gzip(body) : null;
+        this.etag = "\"" + digest(body) + "\"";
+    }
+
+    /**
+     * Serializes an org.json value (see ResponseHelper.writeJSONValue())
+     * @param json JSONObject or JSONArray
+     * @return cacheable JSON response
+     */
+    public static CachedResponse json(Object json) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(baos, JsonEncoding.UTF8)) {
+            ResponseHelper.writeJSONValue(gen, json);
+        } catch (IOException e) {
+            // writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return new CachedResponse(ResponseHelper.CONTENT_TYPE_JSON_UTF8, baos.toByteArray());
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return gzipped body or null if the body is too small to compress
+     */
+    public byte[] getGzippedBody() {
+        return gzipped;
+    }
+
+    /**
+     * @return quoted strong ETag value
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static String digest(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(body);
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
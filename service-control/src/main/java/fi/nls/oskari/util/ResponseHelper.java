@@ -2,15 +2,29 @@ package fi.nls.oskari.util;
 
 import java.io.ByteArrayOutputStream;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceRuntimeException;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONString;
+
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Convenience methods for writing a response.
@@ -21,6 +35,34 @@ public class ResponseHelper {
 
     private static final Logger LOG = LogFactory.getLogger(ResponseHelper.class);
 
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VARY = "Vary";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_X_GZIP = "x-gzip";
+    private static final String ENCODING_ANY = "*";
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Writes the response body directly to the response OutputStream
+     */
+    @FunctionalInterface
+    public interface ResponseBodyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the response body as JSON using the given generator
+     */
+    @FunctionalInterface
+    public interface JSONResponseWriter {
+        void write(JsonGenerator json) throws IOException;
+    }
+
     /**
      * Writes out the given response
      *
@@ -109,6 +151,282 @@ public class ResponseHelper {
         writeResponse(params, sc, contentType, content.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * Writes out a pre-serialized response. Responds with 304 Not Modified if the request
+     * has a matching If-None-Match header. The pre-gzipped body is used if the client accepts it.
+     *
+     * @param params reference to ActionParams
+     * @param cached response to send
+     */
+    public static final void writeResponse(ActionParameters params, CachedResponse cached) {
+        final HttpServletRequest req = params.getRequest();
+        final HttpServletResponse resp = params.getResponse();
+        resp.setHeader(HEADER_ETAG, cached.getETag());
+        resp.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        if (req != null && matchesETag(req.getHeader(HEADER_IF_NONE_MATCH), cached.getETag())) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (cached.getGzippedBody() != null && acceptsGzip(req)) {
+            resp.setHeader(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+            writeResponse(params, HttpServletResponse.SC_OK, cached.getContentType(), cached.getGzippedBody());
+        } else {
+            writeResponse(params, HttpServletResponse.SC_OK, cached.getContentType(), cached.getBody());
+        }
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String value : ifNoneMatch.split(",")) {
+            value = value.trim();
+            // If-None-Match uses weak comparison
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes out the given JSONObject or JSONArray without serializing it to a String first.
+     * The response is gzipped if the client accepts it.
+     *
+     * @param params reference to ActionParams
+     * @param json JSONObject or JSONArray to send
+     * @throws ActionException see writeStreamingResponse(ActionParameters, int, String, ResponseBodyWriter)
+     */
+    public static final void writeStreamingResponse(ActionParameters params, final Object json)
+            throws ActionException {
+        writeStreamingJSONResponse(params, gen -> writeJSONValue(gen, json));
+    }
+
+    /**
+     * Writes out a JSON response using a JsonGenerator that writes directly to the
+     * response OutputStream so the response is never held in memory as a whole.
+     * The response is gzipped if the client accepts it.
+     *
+     * @param params reference to ActionParams
+     * @param writer callback that writes the response content with the given generator
+     * @throws ActionException see writeStreamingResponse(ActionParameters, int, String, ResponseBodyWriter)
+     */
+    public static final void writeStreamingJSONResponse(ActionParameters params, JSONResponseWriter writer)
+            throws ActionException {
+        writeStreamingResponse(params, HttpServletResponse.SC_OK, CONTENT_TYPE_JSON_UTF8, out -> {
+            JsonGenerator gen = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            writer.write(gen);
+            // closes the output stream as well
+            gen.close();
+        });
+    }
+
+    /**
+     * Writes out a response directly to the response OutputStream. Content length is not
+     * known beforehand so the response is sent using chunked transfer encoding.
+     * The response is gzipped if the client accepts it.
+     *
+     * If writing fails before anything has been sent the response is reset and ActionException is thrown
+     * so an error can be sent instead. If the status has already been sent the response is left incomplete:
+     * a failure to write to the client (usually the client closing the connection) is only logged while
+     * a failure of the writer itself throws ServiceRuntimeException so the container aborts the response
+     * instead of finishing it as if it was successful.
+     *
+     * @param params reference to ActionParams
+     * @param sc HTTP Status Code to send
+     * @param contentType of the response
+     * @param writer callback that writes the response body
+     * @throws ActionException if writing failed before the response was committed
+     */
+    public static final void writeStreamingResponse(ActionParameters params, int sc, String contentType,
+                                                    ResponseBodyWriter writer) throws ActionException {
+        final HttpServletResponse resp = params.getResponse();
+        final boolean gzip = acceptsGzip(params.getRequest());
+        resp.setStatus(sc);
+        resp.setContentType(contentType);
+        resp.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        if (gzip) {
+            resp.setHeader(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+        }
+        ClientOutputStream client = null;
+        try {
+            // not closed on failure, closing would end the response normally
+            client = new ClientOutputStream(resp.getOutputStream());
+            OutputStream out = client;
+            if (gzip) {
+                out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            }
+            writer.write(out);
+            out.close();
+        } catch (IOException e) {
+            if (resp.isCommitted()) {
+                if (client != null && client.failed) {
+                    LOG.debug(e, "Client aborted the response");
+                    return;
+                }
+                throw new ServiceRuntimeException("Failed to write streaming response", e);
+            }
+            resp.reset();
+            throw new ActionException("Failed to write response", e);
+        }
+    }
+
+    /**
+     * Keeps track of whether writing to the client has failed to tell it apart from failures of the writer
+     */
+    private static class ClientOutputStream extends FilterOutputStream {
+        private boolean failed;
+
+        ClientOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes an org.json value (JSONObject, JSONArray, Map, Collection, Number etc) with the given generator.
+     * The output matches the serialization of org.json.
+     *
+     * @param gen generator to write to
+     * @param value to write
+     * @throws IOException
+     */
+    public static void writeJSONValue(JsonGenerator gen, Object value) throws IOException {
+        if (value == null || value.equals(null)) {
+            gen.writeNull();
+        } else if (value instanceof JSONObject) {
+            writeJSONObject(gen, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeJSONArray(gen, (JSONArray) value);
+        } else if (value instanceof String) {
+            gen.writeString((String) value);
+        } else if (value instanceof Number) {
+            try {
+                gen.writeNumber(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else if (value instanceof JSONString) {
+            gen.writeRawValue(((JSONString) value).toJSONString());
+        } else if (value instanceof Map) {
+            writeJSONObject(gen, new JSONObject((Map) value));
+        } else if (value instanceof Collection) {
+            writeJSONArray(gen, new JSONArray((Collection) value));
+        } else if (value.getClass().isArray()) {
+            try {
+                writeJSONArray(gen, new JSONArray(value));
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        } else {
+            gen.writeString(value.toString());
+        }
+    }
+
+    private static void writeJSONObject(JsonGenerator gen, JSONObject json) throws IOException {
+        gen.writeStartObject();
+        Iterator keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next().toString();
+            gen.writeFieldName(key);
+            writeJSONValue(gen, json.opt(key));
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeJSONArray(JsonGenerator gen, JSONArray json) throws IOException {
+        gen.writeStartArray();
+        int len = json.length();
+        for (int i = 0; i < len; i++) {
+            writeJSONValue(gen, json.opt(i));
+        }
+        gen.writeEndArray();
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest req) {
+        if (req == null) {
+            return false;
+        }
+        return acceptsGzip(req.getHeader(HEADER_ACCEPT_ENCODING));
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding header value like "gzip, deflate" or "gzip;q=0, *"
+     * @return true if gzip is accepted with a non-zero quality, explicit gzip overrides "*"
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzip = -1;
+        double any = -1;
+        for (String value : acceptEncoding.split(",")) {
+            final String[] parts = value.split(";");
+            final String coding = parts[0].trim().toLowerCase();
+            if (coding.equals(ENCODING_GZIP) || coding.equals(ENCODING_X_GZIP)) {
+                gzip = Math.max(gzip, getQuality(parts));
+            } else if (coding.equals(ENCODING_ANY)) {
+                any = getQuality(parts);
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    private static double getQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            final String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                // invalid value -> not accepted
+                return ConversionHelper.getDouble(param.substring(2).trim(), 0);
+            }
+        }
+        return 1;
+    }
+
     /**
      * Writes a generic error message as response with error code 500
      *
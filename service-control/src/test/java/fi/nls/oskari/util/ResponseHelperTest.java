@@ -0,0 +1,240 @@
+package fi.nls.oskari.util;
+
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for streaming and cached JSON responses
+ */
+public class ResponseHelperTest {
+
+    private JSONObject getTestJSON() throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("str", "quoted \"value\" with ä");
+        json.put("int", 42);
+        json.put("double", 1.0);
+        json.put("decimal", 24.5d);
+        json.put("bool", true);
+        json.put("null", JSONObject.NULL);
+        JSONArray arr = new JSONArray();
+        arr.put(1);
+        arr.put("two");
+        arr.put(new JSONObject().put("three", 3));
+        json.put("arr", arr);
+        return json;
+    }
+
+    @Test
+    public void testStreamingResponseMatchesToString() throws Exception {
+        JSONObject json = getTestJSON();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams(null, baos);
+
+        ResponseHelper.writeStreamingResponse(params, json);
+
+        String written = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("Streamed JSON should match org.json serialization", json.toString(), written);
+        verify(params.getResponse()).setContentType(ResponseHelper.CONTENT_TYPE_JSON_UTF8);
+    }
+
+    @Test
+    public void testStreamingResponseGzip() throws Exception {
+        JSONObject json = getTestJSON();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams("gzip, deflate", baos);
+
+        ResponseHelper.writeStreamingResponse(params, json);
+
+        verify(params.getResponse()).setHeader("Content-Encoding", "gzip");
+        ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            IOHelper.copy(in, unzipped);
+        }
+        String written = new String(unzipped.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("Gzipped JSON should match org.json serialization", json.toString(), written);
+    }
+
+    @Test
+    public void testStreamingResponseFailsBeforeCommit() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams(null, baos);
+        try {
+            ResponseHelper.writeStreamingResponse(params, 200, "text/plain", out -> {
+                throw new IOException("Failed to encode");
+            });
+            fail("Should have thrown ActionException");
+        } catch (ActionException expected) {
+            // reset so an error response can be written instead
+            verify(params.getResponse()).reset();
+        }
+    }
+
+    @Test
+    public void testStreamingResponseFailsAfterCommit() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams(null, baos);
+        doReturn(true).when(params.getResponse()).isCommitted();
+        try {
+            ResponseHelper.writeStreamingResponse(params, 200, "text/plain", out -> {
+                out.write("partial".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("Failed to encode");
+            });
+            fail("Should have thrown ServiceRuntimeException");
+        } catch (ServiceRuntimeException expected) {
+            // status is already sent, the container needs to abort the response
+            verify(params.getResponse(), never()).reset();
+        }
+    }
+
+    @Test
+    public void testStreamingResponseClientAbortAfterCommit() throws Exception {
+        ActionParameters params = getParams(null, new ByteArrayOutputStream());
+        ServletOutputStream aborted = mock(ServletOutputStream.class);
+        doThrow(new IOException("Broken pipe")).when(aborted).write(any(byte[].class), anyInt(), anyInt());
+        doReturn(aborted).when(params.getResponse()).getOutputStream();
+        doReturn(true).when(params.getResponse()).isCommitted();
+
+        // the client is gone so there's nothing to abort
+        ResponseHelper.writeStreamingResponse(params, 200, "text/plain",
+                out -> out.write("partial".getBytes(StandardCharsets.UTF_8)));
+        verify(params.getResponse(), never()).reset();
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(ResponseHelper.acceptsGzip("gzip"));
+        assertTrue(ResponseHelper.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(ResponseHelper.acceptsGzip("x-gzip"));
+        assertTrue(ResponseHelper.acceptsGzip("*"));
+        assertFalse(ResponseHelper.acceptsGzip(null));
+        assertFalse(ResponseHelper.acceptsGzip("deflate, br"));
+        assertFalse(ResponseHelper.acceptsGzip("gzip;q=0"));
+        assertFalse(ResponseHelper.acceptsGzip("gzip; q=0.0, deflate"));
+        assertFalse("Explicit gzip should override *", ResponseHelper.acceptsGzip("gzip;q=0, *"));
+        assertFalse(ResponseHelper.acceptsGzip("*;q=0"));
+        assertFalse("Coding name should match exactly", ResponseHelper.acceptsGzip("notgzip"));
+    }
+
+    @Test
+    public void testStreamingResponseGzipRefused() throws Exception {
+        JSONObject json = getTestJSON();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams("gzip;q=0, deflate", baos);
+
+        ResponseHelper.writeStreamingResponse(params, json);
+
+        verify(params.getResponse(), never()).setHeader(eq("Content-Encoding"), anyString());
+        assertEquals(json.toString(), new String(baos.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCachedResponse() throws Exception {
+        JSONObject json = getTestJSON();
+        CachedResponse cached = CachedResponse.json(json);
+        assertEquals("Cached JSON should match org.json serialization",
+                json.toString(), new String(cached.getBody(), StandardCharsets.UTF_8));
+        assertNull("Small response shouldn't be gzipped", cached.getGzippedBody());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams("gzip", baos);
+        ResponseHelper.writeResponse(params, cached);
+        verify(params.getResponse()).setHeader("ETag", cached.getETag());
+        verify(params.getResponse(), never()).setHeader(eq("Content-Encoding"), anyString());
+        assertArrayEquals(cached.getBody(), baos.toByteArray());
+    }
+
+    @Test
+    public void testCachedResponseGzip() throws Exception {
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < 200; i++) {
+            arr.put(getTestJSON());
+        }
+        CachedResponse cached = CachedResponse.json(arr);
+        assertNotNull("Large response should be gzipped", cached.getGzippedBody());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams("gzip, deflate", baos);
+        ResponseHelper.writeResponse(params, cached);
+        verify(params.getResponse()).setHeader("Content-Encoding", "gzip");
+        ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            IOHelper.copy(in, unzipped);
+        }
+        assertEquals(arr.toString(), new String(unzipped.toByteArray(), StandardCharsets.UTF_8));
+
+        baos.reset();
+        params = getParams(null, baos);
+        ResponseHelper.writeResponse(params, cached);
+        assertArrayEquals("Plain body should be sent if client doesn't accept gzip", cached.getBody(), baos.toByteArray());
+    }
+
+    @Test
+    public void testCachedResponseNotModified() throws Exception {
+        CachedResponse cached = CachedResponse.json(getTestJSON());
+        assertEquals("ETag should depend only on content", cached.getETag(), CachedResponse.json(getTestJSON()).getETag());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ActionParameters params = getParams(null, baos);
+        doReturn("W/" + cached.getETag()).when(params.getRequest()).getHeader("If-None-Match");
+        ResponseHelper.writeResponse(params, cached);
+        verify(params.getResponse()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals("Body shouldn't be written for 304", 0, baos.size());
+    }
+
+    private ActionParameters getParams(String acceptEncoding, ByteArrayOutputStream baos) throws IOException {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        doReturn(acceptEncoding).when(req).getHeader("Accept-Encoding");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        doReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                baos.write(b);
+            }
+        }).when(resp).getOutputStream();
+
+        ActionParameters params = new ActionParameters();
+        params.setRequest(req);
+        params.setResponse(resp);
+        return params;
+    }
+}
@@ -0,0 +1,23 @@
+package fi.nls.oskari.eu.elf.recipe.universal;
+
+/**
+ * Generic parser for WFS 2.0.0 FeatureCollection using a compiled parse config
+ * - same configs (oskari_wfs_parser_config db table) and output as ELF_wfs_Parser
+ * - element paths are followed with a compiled PathMapping instead of path strings
+ * */
+
+import fi.nls.oskari.fe.input.format.gml.recipe.JacksonParserRecipe.GML32;
+import fi.nls.oskari.fe.input.format.gml.recipe.PathMapping;
+import fi.nls.oskari.fe.input.format.gml.recipe.PathMappingParser;
+
+import java.io.IOException;
+
+public class ELF_wfs_CompiledParser extends GML32 {
+
+    public void parse() throws IOException {
+        new PathMappingParser(this, PathMapping.compile(parseWorker.parseConfig))
+                .setEqualizeArrays(true)
+                .parse();
+    }
+
+}
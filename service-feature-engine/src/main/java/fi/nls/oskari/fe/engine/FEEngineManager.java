@@ -1,100 +1,291 @@
 package fi.nls.oskari.fe.engine;
 
+import fi.nls.oskari.fe.input.InputProcessor;
 import fi.nls.oskari.fe.input.format.gml.recipe.GroovyParserRecipe;
 import fi.nls.oskari.fe.input.format.gml.recipe.ParserRecipe;
+import fi.nls.oskari.fe.output.OutputProcessor;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyCodeSource;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Creates feature engines for recipes. Recipe classes are loaded (Groovy recipes compiled) once and
+ * engines are pooled per recipe so the recipe instances (and their parsers/mappers) are reused.
+ *
+ * An engine is thread-confined: get one with getEngineForRecipe(), use it in one thread and hand it
+ * back with releaseEngine() after a successful parse. Engines that are not released are simply
+ * garbage collected. The pool size per recipe is limited by oskari.fe.recipe.pool.size
+ * (default 2 * available processors).
+ *
+ * Recipes can be compiled and validated in the background at startup with precompile().
+ * Compile and parse times are collected per recipe, see getRecipeStats().
+ */
 public class FEEngineManager {
 
     protected static final Logger log = LogFactory
             .getLogger(FEEngineManager.class);
     /*
-     * 
+     *
      * WFSLayerStore
-     * 
+     *
      * "customParser" : "oskari-feature-engine", "requestTemplate" :
      * "/resource/path/to/request/template.xml", "responseTemplate" :
      * "/resource/path/to/response/groovy.groovy"1
      */
 
-    static Map<String, Class<GroovyParserRecipe>> recipeClazzes = new ConcurrentHashMap<String, Class<GroovyParserRecipe>>();
+    private static final int POOL_SIZE = PropertyUtil.getOptional("oskari.fe.recipe.pool.size",
+            2 * Runtime.getRuntime().availableProcessors());
 
-    static GroovyClassLoader gcl = new GroovyClassLoader();
+    static Map<String, Class<?>> recipeClazzes = new ConcurrentHashMap<String, Class<?>>();
+
+    private static final Map<String, Queue<FeatureEngine>> pools = new ConcurrentHashMap<String, Queue<FeatureEngine>>();
+    private static final Map<String, RecipeStats> stats = new ConcurrentHashMap<String, RecipeStats>();
 
     public static FeatureEngine getEngineForRecipe(String recipePath)
             throws InstantiationException, IllegalAccessException,
             ClassNotFoundException {
 
-        if (recipePath.endsWith(".groovy")) {
-            return getGroovyEngineForRecipe(recipePath);
-        } else {
-            return getBasicEngineForRecipe(recipePath);
+        final FeatureEngine pooled = getPool(recipePath).poll();
+        if (pooled != null) {
+            getStats(recipePath).reused.increment();
+            return pooled;
+        }
+        return createEngine(recipePath);
+    }
+
+    /**
+     * Returns an engine to the pool for reuse. Call only after the engine has successfully processed
+     * a response, an engine left in an unknown state should just be dropped.
+     * @param engine engine from getEngineForRecipe()
+     */
+    public static void releaseEngine(FeatureEngine engine) {
+        if (!(engine instanceof PooledFeatureEngine)) {
+            return;
+        }
+        final PooledFeatureEngine pooled = (PooledFeatureEngine) engine;
+        pooled.reset();
+        final Queue<FeatureEngine> pool = getPool(pooled.recipePath);
+        // size() is only a hint for concurrent queues, the pool may slightly exceed the limit
+        if (pool.size() < POOL_SIZE) {
+            pool.offer(pooled);
+        }
+    }
+
+    /**
+     * Loads/compiles the recipes and creates an engine for each in the background so the first
+     * requests don't have to wait for it. Invalid recipes are logged.
+     * @param recipePaths Java recipe class names or Groovy recipe resource paths
+     * @return completed when all recipes have been processed
+     */
+    public static CompletableFuture<Void> precompile(Collection<String> recipePaths) {
+        if (recipePaths == null || recipePaths.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(recipePaths.size(), Runtime.getRuntime().availableProcessors()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "FERecipe-compiler-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        final CompletableFuture<?>[] tasks = recipePaths.stream()
+                .map(path -> CompletableFuture.runAsync(() -> precompile(path), executor))
+                .toArray(CompletableFuture[]::new);
+        final CompletableFuture<Void> all = CompletableFuture.allOf(tasks);
+        all.whenComplete((ignored, error) -> executor.shutdown());
+        return all;
+    }
+
+    private static void precompile(String recipePath) {
+        try {
+            releaseEngine(createEngine(recipePath));
+            log.info("[fe] Recipe ready", recipePath, "- load time ms:", getStats(recipePath).getLoadTimeMs());
+        } catch (Throwable t) {
+            log.warn(t, "[fe] Invalid recipe", recipePath);
         }
     }
 
-    private static FeatureEngine getBasicEngineForRecipe(String recipePath)
-            throws IllegalAccessException, InstantiationException,
+    /**
+     * @return statistics per recipe path
+     */
+    public static Map<String, RecipeStats> getRecipeStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private static Queue<FeatureEngine> getPool(String recipePath) {
+        return pools.computeIfAbsent(recipePath, path -> new ConcurrentLinkedQueue<FeatureEngine>());
+    }
+
+    private static RecipeStats getStats(String recipePath) {
+        return stats.computeIfAbsent(recipePath, path -> new RecipeStats());
+    }
+
+    private static FeatureEngine createEngine(String recipePath)
+            throws InstantiationException, IllegalAccessException,
             ClassNotFoundException {
 
+        final Class<?> recipeClazz = getRecipeClass(recipePath);
+        final Object instance = recipeClazz.newInstance();
+        log.debug("[fe] recipe instance " + instance);
+        getStats(recipePath).created.increment();
+
+        if (instance instanceof GroovyParserRecipe) {
+            GroovyFeatureEngine engine = new GroovyFeatureEngine();
+            engine.setRecipe((GroovyParserRecipe) instance);
+            return new PooledFeatureEngine(recipePath, engine);
+        }
+        if (!(instance instanceof ParserRecipe)) {
+            throw new InstantiationException("Not a ParserRecipe: " + recipePath);
+        }
         BasicFeatureEngine engine = new BasicFeatureEngine();
-        Class<ParserRecipe> recipeClazz = (Class<ParserRecipe>) Class
-                .forName(recipePath);
-        log.debug("[fe] Java recipe Lookup " + recipePath + " / " + recipeClazz);
-        ParserRecipe instance = recipeClazz.newInstance();
-        log.debug("[fe] Java recipe instance " + instance);
-        engine.setRecipe(instance);
-        return engine;
+        engine.setRecipe((ParserRecipe) instance);
+        return new PooledFeatureEngine(recipePath, engine);
     }
 
-    static FeatureEngine getGroovyEngineForRecipe(String recipePath)
-            throws InstantiationException, IllegalAccessException {
+    private static Class<?> getRecipeClass(String recipePath) throws ClassNotFoundException {
+        Class<?> recipeClazz = recipeClazzes.get(recipePath);
+        if (recipeClazz != null) {
+            return recipeClazz;
+        }
+        // only the same recipe is loaded once, different recipes can be loaded in parallel
+        synchronized (getStats(recipePath)) {
+            recipeClazz = recipeClazzes.get(recipePath);
+            if (recipeClazz == null) {
+                final long start = System.nanoTime();
+                recipeClazz = recipePath.endsWith(".groovy")
+                        ? compileGroovyRecipe(recipePath)
+                        : Class.forName(recipePath);
+                getStats(recipePath).loadTimeMs.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                log.debug("[fe] recipe lookup " + recipePath + " / " + recipeClazz);
+                recipeClazzes.put(recipePath, recipeClazz);
+            }
+        }
+        return recipeClazz;
+    }
+
+    static Class<?> compileGroovyRecipe(String recipePath) throws ClassNotFoundException {
+        final InputStream in = FEEngineManager.class.getResourceAsStream(recipePath);
+        if (in == null) {
+            throw new ClassNotFoundException("Groovy recipe not found: " + recipePath);
+        }
+        log.debug("[fe] Groovy recipe compiling " + recipePath);
+        // own class loader per recipe so recipes can be compiled in parallel
+        try (InputStreamReader reader = new InputStreamReader(in, "UTF-8")) {
+            GroovyClassLoader gcl = new GroovyClassLoader(FEEngineManager.class.getClassLoader());
+            GroovyCodeSource codeSource = new GroovyCodeSource(reader, recipePath, ".");
+            return gcl.parseClass(codeSource, true);
+        } catch (IOException | RuntimeException e) {
+            throw new ClassNotFoundException("Groovy recipe setup FAILURE: " + recipePath, e);
+        }
+    }
 
-        Class<GroovyParserRecipe> recipeClazz = recipeClazzes.get(recipePath);
-        if (recipeClazzes.get(recipePath) == null) {
+    /**
+     * Compile/load and parse statistics for a recipe
+     */
+    public static class RecipeStats {
+        private final AtomicLong loadTimeMs = new AtomicLong(-1);
+        private final LongAdder created = new LongAdder();
+        private final LongAdder reused = new LongAdder();
+        private final LongAdder parseCount = new LongAdder();
+        private final LongAdder parseTimeMs = new LongAdder();
+        private final AtomicLong maxParseTimeMs = new AtomicLong();
 
-            synchronized (gcl) {
-                try {
-                    log.debug("[fe] Groovy recipe compiling " + recipePath
-                            + " / " + recipePath);
+        void addParse(long timeMs) {
+            parseCount.increment();
+            parseTimeMs.add(timeMs);
+            maxParseTimeMs.accumulateAndGet(timeMs, Math::max);
+        }
 
-                    InputStreamReader reader = new InputStreamReader(
-                            FEEngineManager.class
-                                    .getResourceAsStream(recipePath));
+        /**
+         * @return time to load (or compile) the recipe class in ms or -1 if not loaded
+         */
+        public long getLoadTimeMs() {
+            return loadTimeMs.get();
+        }
 
-                    GroovyCodeSource codeSource = new GroovyCodeSource(reader,
-                            recipePath, ".");
+        public long getCreatedCount() {
+            return created.sum();
+        }
 
-                    recipeClazz = (Class<GroovyParserRecipe>) gcl.parseClass(
-                            codeSource, true);
+        public long getReusedCount() {
+            return reused.sum();
+        }
 
-                    recipeClazzes.put(recipePath, recipeClazz);
+        public long getParseCount() {
+            return parseCount.sum();
+        }
 
-                    log.debug("[fe] Groovy caching recipe", recipePath);
+        public long getAvgParseTimeMs() {
+            final long count = parseCount.sum();
+            return count == 0 ? 0 : parseTimeMs.sum() / count;
+        }
 
-                } catch (RuntimeException e) {
+        public long getMaxParseTimeMs() {
+            return maxParseTimeMs.get();
+        }
+    }
 
-                    log.debug(e, "[fe] Groovy recipe setup FAILURE");
+    /**
+     * Remembers the recipe of the engine for the pool and times the parsing
+     */
+    static class PooledFeatureEngine implements FeatureEngine {
+        private final String recipePath;
+        private final FeatureEngine engine;
 
-                } finally {
+        PooledFeatureEngine(String recipePath, FeatureEngine engine) {
+            this.recipePath = recipePath;
+            this.engine = engine;
+        }
 
-                    log.debug("[fe] Groovy recipe setup finalized");
+        public void setInputProcessor(InputProcessor inputProcessor) {
+            engine.setInputProcessor(inputProcessor);
+        }
 
-                }
-            }
+        public void setOutputProcessor(OutputProcessor outputProcessor) {
+            engine.setOutputProcessor(outputProcessor);
         }
 
-        GroovyFeatureEngine engine = new GroovyFeatureEngine();
-        engine.setRecipe(recipeClazz.newInstance());
+        public ParserRecipe getRecipe() {
+            return engine.getRecipe();
+        }
 
-        return engine;
+        public void process() throws IOException, XMLStreamException {
+            final long start = System.nanoTime();
+            engine.process();
+            getStats(recipePath).addParse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
 
+        /**
+         * Drops references to the previous request
+         */
+        void reset() {
+            engine.setInputProcessor(null);
+            engine.setOutputProcessor(null);
+            final ParserRecipe recipe = engine.getRecipe();
+            recipe.setInputOutput(null, null);
+            recipe.setParseWorker(null);
+            recipe.setWFS11ParseWorker(null);
+        }
     }
-
 }
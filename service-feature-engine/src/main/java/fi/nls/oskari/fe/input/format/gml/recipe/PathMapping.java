@@ -0,0 +1,291 @@
+package fi.nls.oskari.fe.input.format.gml.recipe;
+
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Parse config (oskari_wfs_parser_config) compiled into a tree of element states so the parser can follow
+ * the element path with one map lookup per element instead of building and looking up path strings.
+ *
+ * The config format is the one used by ELF_wfs_Parser and RYSP_wfs_Parser:
+ * <pre>
+ * {
+ *   "scan": { "scanNS": "http://www.opengis.net/wfs/2.0", "name": "member" },
+ *   "root": { "rootNS": "...", "name": "Address" },
+ *   "paths": [
+ *     { "path": "/ad:Address/@gml:id", "type": "String", "label": "id" },
+ *     { "path": "/ad:Address/ad:position/ad:GeographicPosition/ad:geometry", "type": "Geometry", "label": "geom" },
+ *     { "path": "/ad:Address/ad:component/@xlink:href", "type": "Href", "label": "components", "hrefPath": [...] }
+ *   ]
+ * }
+ * </pre>
+ * Paths are matched with the element prefixes used in the response, like the path workers do.
+ *
+ * Compiled mappings are immutable and shared between parsers, see compile().
+ */
+public class PathMapping {
+
+    public static final String KEY_PATHS = "paths";
+    public static final String KEY_HREF_PATHS = "hrefPath";
+    public static final String KEY_PATH = "path";
+    public static final String KEY_LABEL = "label";
+    public static final String KEY_TYPE = "type";
+    public static final String KEY_ID = "id";
+
+    public static final String TYPE_STRING = "String";
+    public static final String TYPE_HREF = "Href";
+    public static final String TYPE_OBJECT = "Object";
+    public static final String TYPE_GEOMETRY = "Geometry";
+
+    private static final String VALUE_UNKNOWN = "unknown";
+
+    // configs are usually shared through the layer so they are compiled once
+    private static final Map<JSONObject, PathMapping> COMPILED = Collections.synchronizedMap(new WeakHashMap<JSONObject, PathMapping>());
+
+    /**
+     * State for an element path
+     */
+    public static final class Node {
+        // prefix -> local name -> child
+        private final Map<String, Map<String, Node>> children = new HashMap<String, Map<String, Node>>();
+        // prefix -> local name -> label
+        private final Map<String, Map<String, String>> attributes = new HashMap<String, Map<String, String>>();
+        private String label;
+        private String type;
+
+        /**
+         * @return state for a child element or null if nothing is mapped under it
+         */
+        public Node child(String prefix, String localName) {
+            final Map<String, Node> byName = children.get(prefix);
+            return byName == null ? null : byName.get(localName);
+        }
+
+        /**
+         * @param prefix attribute prefix, null if not prefixed
+         * @return label for an attribute of this element or null if not mapped
+         */
+        public String attribute(String prefix, String localName) {
+            if (attributes.isEmpty()) {
+                return null;
+            }
+            final Map<String, String> byName = attributes.get(String.valueOf(prefix));
+            return byName == null ? null : byName.get(localName);
+        }
+
+        public boolean hasAttributes() {
+            return !attributes.isEmpty();
+        }
+
+        /**
+         * @return label of the element value or null if the element isn't mapped
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isType(String t) {
+            return label != null && t.equals(type);
+        }
+
+        private Node getOrAddChild(String prefix, String localName) {
+            Map<String, Node> byName = children.get(prefix);
+            if (byName == null) {
+                byName = new HashMap<String, Node>();
+                children.put(prefix, byName);
+            }
+            Node child = byName.get(localName);
+            if (child == null) {
+                child = new Node();
+                byName.put(localName, child);
+            }
+            return child;
+        }
+
+        private void addAttribute(String prefix, String localName, String label) {
+            Map<String, String> byName = attributes.get(prefix);
+            if (byName == null) {
+                byName = new HashMap<String, String>();
+                attributes.put(prefix, byName);
+            }
+            byName.put(localName, label);
+        }
+    }
+
+    private final QName scanQN;
+    private final QName rootQN;
+    private final Node top = new Node();
+    private final List<String> outputLabels = new ArrayList<String>();
+    private String hrefLabel;
+    private boolean geometryMapping = false;
+
+    private PathMapping(JSONObject config) {
+        scanQN = getQName(JSONHelper.getJSONObject(config, "scan"), "scanNS");
+        rootQN = getQName(JSONHelper.getJSONObject(config, "root"), "rootNS");
+        final JSONArray paths = JSONHelper.getJSONArray(config, KEY_PATHS);
+        if (paths == null) {
+            return;
+        }
+        for (int i = 0; i < paths.length(); i++) {
+            addPath(paths.optJSONObject(i));
+        }
+        // local href links point to these features
+        for (int i = 0; i < paths.length(); i++) {
+            JSONObject item = paths.optJSONObject(i);
+            if (!TYPE_HREF.equals(JSONHelper.getStringFromJSON(item, KEY_TYPE, TYPE_STRING))) {
+                continue;
+            }
+            JSONArray hrefPaths = JSONHelper.getJSONArray(item, KEY_HREF_PATHS);
+            if (hrefPaths == null) {
+                continue;
+            }
+            for (int j = 0; j < hrefPaths.length(); j++) {
+                addPath(hrefPaths.optJSONObject(j));
+            }
+        }
+        // output properties
+        for (int i = 0; i < paths.length(); i++) {
+            JSONObject item = paths.optJSONObject(i);
+            final String label = JSONHelper.getStringFromJSON(item, KEY_LABEL, VALUE_UNKNOWN);
+            // not id, if many properties
+            if (KEY_ID.equals(label) && paths.length() > 1) {
+                continue;
+            }
+            final String type = JSONHelper.getStringFromJSON(item, KEY_TYPE, VALUE_UNKNOWN);
+            if (TYPE_GEOMETRY.equals(type)) {
+                geometryMapping = true;
+                continue;
+            }
+            outputLabels.add(label);
+            if (TYPE_HREF.equals(type)) {
+                hrefLabel = label;
+            }
+        }
+    }
+
+    /**
+     * Compiles the parse config or returns the previously compiled mapping for the same config instance
+     * @param config parse config, must not be modified afterwards
+     * @return compiled mapping
+     */
+    public static PathMapping compile(JSONObject config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Parse config is missing");
+        }
+        PathMapping mapping = COMPILED.get(config);
+        if (mapping == null) {
+            mapping = new PathMapping(config);
+            COMPILED.put(config, mapping);
+        }
+        return mapping;
+    }
+
+    private static QName getQName(JSONObject item, String nsKey) {
+        if (item == null) {
+            return null;
+        }
+        final String ns = JSONHelper.getStringFromJSON(item, nsKey, null);
+        final String name = JSONHelper.getStringFromJSON(item, "name", null);
+        if (ns == null || name == null) {
+            return null;
+        }
+        return new QName(ns, name);
+    }
+
+    private void addPath(JSONObject item) {
+        final String path = JSONHelper.getStringFromJSON(item, KEY_PATH, "");
+        final boolean isAttribute = path.indexOf('@') > -1;
+        final List<String[]> segments = split(isAttribute ? path.replace("@", "") : path);
+        if (segments == null) {
+            // can't match any element
+            return;
+        }
+        final int elements = isAttribute ? segments.size() - 1 : segments.size();
+        Node node = top;
+        for (int i = 0; i < elements; i++) {
+            node = node.getOrAddChild(segments.get(i)[0], segments.get(i)[1]);
+        }
+        if (isAttribute) {
+            final String[] attr = segments.get(segments.size() - 1);
+            node.addAttribute(attr[0], attr[1], JSONHelper.getStringFromJSON(item, KEY_LABEL, VALUE_UNKNOWN));
+        } else {
+            node.label = JSONHelper.getStringFromJSON(item, KEY_LABEL, "");
+            node.type = JSONHelper.getStringFromJSON(item, KEY_TYPE, TYPE_STRING);
+        }
+    }
+
+    /**
+     * Splits a path like /prefix:name/prefix:name to [prefix, name] pairs
+     * @return segments or null if the path can't match an element path
+     */
+    static List<String[]> split(String path) {
+        if (!path.startsWith("/") || path.endsWith("/")) {
+            return null;
+        }
+        final String[] parts = path.substring(1).split("/", -1);
+        final List<String[]> segments = new ArrayList<String[]>(parts.length);
+        for (String part : parts) {
+            final int separator = part.indexOf(':');
+            if (separator < 0) {
+                return null;
+            }
+            segments.add(new String[]{part.substring(0, separator), part.substring(separator + 1)});
+        }
+        return segments;
+    }
+
+    /**
+     * @return element containing the features (like wfs:member)
+     */
+    public QName getScanQN() {
+        return scanQN;
+    }
+
+    /**
+     * @return feature element
+     */
+    public QName getRootQN() {
+        return rootQN;
+    }
+
+    /**
+     * @return state before the feature element
+     */
+    public Node getTop() {
+        return top;
+    }
+
+    /**
+     * @return labels of the output properties in config order
+     */
+    public List<String> getOutputLabels() {
+        return Collections.unmodifiableList(outputLabels);
+    }
+
+    /**
+     * @return label of the href property or null
+     */
+    public String getHrefLabel() {
+        return hrefLabel;
+    }
+
+    /**
+     * @return true if the geometry element is mapped, otherwise any geometry is parsed
+     */
+    public boolean isGeometryMapping() {
+        return geometryMapping;
+    }
+}
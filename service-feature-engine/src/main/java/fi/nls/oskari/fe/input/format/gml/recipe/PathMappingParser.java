@@ -0,0 +1,379 @@
+package fi.nls.oskari.fe.input.format.gml.recipe;
+
+import com.vividsolutions.jts.geom.Geometry;
+import fi.nls.oskari.fe.generic.FeExceptionChecker;
+import fi.nls.oskari.fe.input.format.gml.FEPullParser;
+import fi.nls.oskari.fe.iri.Resource;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses features with a compiled PathMapping. Produces the same output as ELF_wfs_Parser/RYSP_wfs_Parser
+ * with the same parse config, but follows the element path as a state machine: the current path is a stack of
+ * PathMapping.Node states so elements are matched without building path strings.
+ *
+ * One parser per parse() call, not thread-safe.
+ */
+public class PathMappingParser {
+
+    protected static final Logger log = LogFactory
+            .getLogger(PathMappingParser.class);
+
+    private static final String VALUE_NILREASON = "nilReason";
+    private static final String ELEM_ADDITIONALOBJECTS = "additionalObjects";
+    private static final String ELEM_ENVELOPE = "Envelope";
+
+    private final JacksonParserRecipe recipe;
+    private final PathMapping mapping;
+    private boolean equalizeArrays = false;
+    private boolean lenientGeometry = false;
+
+    // current element path
+    private String[] prefixes = new String[16];
+    private String[] localNames = new String[16];
+    private PathMapping.Node[] nodes = new PathMapping.Node[16];
+    private int depth = 0;
+
+    public PathMappingParser(JacksonParserRecipe recipe, PathMapping mapping) {
+        this.recipe = recipe;
+        this.mapping = mapping;
+    }
+
+    /**
+     * @param equalizeArrays make multi-value properties equal size on all features (like ELF_wfs_Parser)
+     */
+    public PathMappingParser setEqualizeArrays(boolean equalizeArrays) {
+        this.equalizeArrays = equalizeArrays;
+        return this;
+    }
+
+    /**
+     * @param lenientGeometry skip mapped geometries that can't be parsed instead of failing (like RYSP_wfs_Parser)
+     */
+    public PathMappingParser setLenientGeometry(boolean lenientGeometry) {
+        this.lenientGeometry = lenientGeometry;
+        return this;
+    }
+
+    public void parse() throws IOException {
+        final QName scanQN = mapping.getScanQN();
+        final QName rootQN = mapping.getRootQN();
+        final boolean isGeomMapping = mapping.isGeometryMapping();
+
+        final JacksonParserRecipe.FeatureOutputContext outputContext = recipe.new FeatureOutputContext(rootQN);
+
+        final Map<String, Resource> resmap = new HashMap<String, Resource>();
+        Resource hrefRes = null;
+        for (String label : mapping.getOutputLabels()) {
+            final Resource resource = outputContext.addOutputStringProperty(label);
+            resmap.put(label, resource);
+            if (label.equals(mapping.getHrefLabel())) {
+                hrefRes = resource;
+            }
+        }
+        final Resource geom = outputContext.addDefaultGeometryProperty();
+        outputContext.build();
+
+        final JacksonParserRecipe.OutputFeature<Object> outputFeature = recipe.new OutputFeature<Object>(
+                outputContext);
+        final JacksonParserRecipe.InputFeature<Object> iter = recipe.new InputFeature<Object>(
+                scanQN, Object.class);
+
+        final Map<QName, FEPullParser.PullParserHandler> geometryHandlers = recipe.getGeometryDeserializer().getHandlers();
+        final Map<String, Set<String>> geometryElements = getElementNames(geometryHandlers.keySet());
+        final Map<String, String> nilmap = new HashMap<String, String>();
+        final Map<String, Integer> multiElemmap = new HashMap<String, Integer>();
+        final List<JSONObject> additionalFeas = new ArrayList<JSONObject>();
+
+        try {
+            XMLStreamReader xsr = iter.getStreamReader(scanQN);
+
+            boolean isAdditional = false;  // Is there addtional object in stream bottom
+            JSONObject additionalFea = new JSONObject();
+
+            while (xsr.hasNext()) {
+                // Handle unexpected end of document
+                int nextTag = XMLStreamConstants.END_DOCUMENT;
+                try {
+                    nextTag = xsr.next();
+                } catch (Exception e) {
+                    log.debug("*** Unknown next event", e);
+                }
+                if (nextTag != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                JSONObject feature = new JSONObject();
+                additionalFea = new JSONObject();
+                Geometry ggeom = null;
+                QName qn = xsr.getName();
+
+                // Check, if exception element in response
+                // if yes, TransportJobException is thrown
+                if (FeExceptionChecker.check(qn)) {
+                    FeExceptionChecker.breakAndThrow(xsr);
+                }
+
+                // There are local href elements  inside this element - put flag on
+                if (ELEM_ADDITIONALOBJECTS.equals(qn.getLocalPart())) {
+                    isAdditional = true;
+                }
+
+                // Skip if not member or featureMembers or featureMember
+                if (!scanQN.getLocalPart().equals(qn.getLocalPart()) && !isAdditional) {
+                    xsr.next();
+                    continue;
+                }
+
+                String textTag = null;
+                Object subfea = null;
+                depth = 0;
+
+                //Loop all childrens of root element
+                boolean isRootOpen = true;
+                while (isRootOpen) {
+                    xsr.next();
+                    final int event = xsr.getEventType();
+
+                    if (event == XMLStreamReader.START_ELEMENT) {
+                        final String prefix = getPrefix(xsr);
+                        final String localName = xsr.getLocalName();
+                        final PathMapping.Node node = push(rootQN, prefix, localName);
+                        final String elem = node == null ? null : node.getLabel();
+
+                        if (node != null && node.isType(PathMapping.TYPE_GEOMETRY)) {
+                            // Parse mapped geometry
+                            ggeom = parseMappedGeometry(geometryHandlers, rootQN, xsr);
+                        } else if (!isGeomMapping && isGeometryElement(geometryElements, xsr.getNamespaceURI(), localName)
+                                && !ELEM_ENVELOPE.equals(localName)) {
+                            // Parse any geometry
+                            ggeom = (Geometry) recipe.getGeometryDeserializer().parseGeometry(geometryHandlers, rootQN, xsr);
+                        } else {
+                            // Attributes are in start element
+                            if (node != null && (node.hasAttributes() || elem != null)) {
+                                for (int i = 0; i < xsr.getAttributeCount(); i++) {
+                                    final String attrPrefix = xsr.getAttributePrefix(i);
+                                    final String attrName = xsr.getAttributeLocalName(i);
+                                    final String label = node.attribute(attrPrefix, attrName);
+                                    if (label != null) {
+                                        if (isAdditional) {
+                                            // store current fea, if new member gml:id and prepare new one
+                                            if ("gml".equals(String.valueOf(attrPrefix)) && "id".equals(attrName)
+                                                    && additionalFea.length() > 0) {
+                                                additionalFeas.add(additionalFea);
+                                                additionalFea = new JSONObject();
+                                            }
+                                            additionalFea.accumulate(label, xsr.getAttributeValue(i));
+                                        } else {
+                                            feature.accumulate(label, xsr.getAttributeValue(i));
+                                        }
+                                    }
+                                    if (elem != null && VALUE_NILREASON.equals(attrName)) {
+                                        nilmap.put(elem, xsr.getAttributeValue(i));
+                                    }
+                                }
+                            }
+                            if (node != null && node.isType(PathMapping.TYPE_OBJECT)) {
+                                // Parse as Object
+                                subfea = recipe.getMapper().readValue(xsr, Object.class);
+                            }
+                        }
+
+                    } else if (event == XMLStreamReader.CHARACTERS) {
+                        if (xsr.hasText()) {
+                            textTag = xsr.getText().trim();
+                        }
+                    } else if (event == XMLStreamReader.END_ELEMENT) {
+                        final PathMapping.Node node = depth > 0 ? nodes[depth - 1] : null;
+                        final String elem = node == null ? null : node.getLabel();
+                        if (elem != null && (textTag == null || textTag.isEmpty())) {
+                            //Add nilreason
+                            textTag = nilmap.get(elem);
+                        }
+                        if (elem != null && textTag != null && !textTag.isEmpty()) {
+                            if (isAdditional) {
+                                additionalFea.accumulate(elem, textTag);
+                            } else {
+                                feature.accumulate(elem, textTag);
+                            }
+                            textTag = null;
+                        } else if (elem != null && node.isType(PathMapping.TYPE_OBJECT) && subfea != null) {
+                            if (isAdditional) {
+                                additionalFea.accumulate(elem, subfea);
+                            } else {
+                                feature.accumulate(elem, subfea);
+                            }
+                            subfea = null;
+                        }
+
+                        final String localName = xsr.getLocalName();
+                        pop(getPrefix(xsr), localName);
+
+                        if (localName.equals(rootQN.getLocalPart())) {
+                            isRootOpen = false;
+                        }
+                    } else if (event == XMLStreamReader.END_DOCUMENT) {
+                        isRootOpen = false;
+                    }
+                }
+
+                if (feature.length() > 0) {
+                    output(feature, outputFeature, outputContext, resmap, multiElemmap, geom, ggeom);
+                } else if (additionalFea.length() > 0) {
+                    // href features to List
+                    additionalFeas.add(additionalFea);
+                }
+            }
+            // Flat equal name property elements
+            if (equalizeArrays && multiElemmap.size() > 0) {
+                recipe.output.equalizePropertyArraySize(multiElemmap, resmap);
+            }
+
+            // Merge href features, if any
+            if (additionalFeas.size() > 0) {
+                recipe.output.merge(additionalFeas, hrefRes);
+            }
+        } catch (ServiceRuntimeException e) {
+            log.debug("*** path parsing failed - ", e);
+            throw new ServiceRuntimeException(e.getMessage(), e.getMessageKey());
+        } catch (Exception e) {
+            log.debug("*** path parsing failed - ", e);
+            throw new ServiceRuntimeException(e.getMessage());
+        }
+    }
+
+    private void output(JSONObject feature,
+                        JacksonParserRecipe.OutputFeature<Object> outputFeature,
+                        JacksonParserRecipe.FeatureOutputContext outputContext,
+                        Map<String, Resource> resmap,
+                        Map<String, Integer> multiElemmap,
+                        Resource geom,
+                        Geometry ggeom) throws Exception {
+        if (feature.has(PathMapping.KEY_ID)) {
+            Resource outputId = outputContext.uniqueId(feature.getString(PathMapping.KEY_ID));
+            outputFeature.setFeature(new Object()).setId(outputId);
+        }
+
+        Iterator<?> keys = feature.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            Resource res = resmap.get(key);
+            if (res == null) {
+                continue;
+            }
+            // Get id when it is the only attribute
+            if (key.equals(PathMapping.KEY_ID) && feature.length() != 1) {
+                continue;
+            }
+            Object prop = feature.get(key);
+            if (prop instanceof JSONArray) {
+                prop = JSONHelper.getArrayAsList((JSONArray) prop);
+                if (equalizeArrays && prop instanceof ArrayList) {
+                    // Map equal element property max count
+                    final int size = ((ArrayList) prop).size();
+                    final Integer max = multiElemmap.get(key);
+                    if (max == null || size > max) {
+                        multiElemmap.put(key, size);
+                    }
+                }
+            }
+            if (prop instanceof JSONObject) {
+                prop = JSONHelper.getObjectAsMap((JSONObject) prop);
+            }
+            outputFeature.addProperty(res, prop);
+        }
+
+        if (ggeom != null) {
+            outputFeature.addGeometryProperty(geom, ggeom);
+        }
+        outputFeature.build();
+    }
+
+    private Geometry parseMappedGeometry(Map<QName, FEPullParser.PullParserHandler> handlers, QName rootQN, XMLStreamReader xsr)
+            throws Exception {
+        if (!lenientGeometry) {
+            return (Geometry) recipe.getGeometryDeserializer().parseGeometry(handlers, rootQN, xsr);
+        }
+        try {
+            return (Geometry) recipe.getGeometryDeserializer().parseGeometry(handlers, rootQN, xsr);
+        } catch (Exception e) {
+            log.debug("*** geometry parsing failed - go on ", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds an element to the path. The path starts again from the feature element.
+     * @return state for the element or null if nothing is mapped in it
+     */
+    private PathMapping.Node push(QName rootQN, String prefix, String localName) {
+        if (rootQN.getPrefix().equals(prefix) && rootQN.getLocalPart().equals(localName)) {
+            depth = 0;
+        }
+        if (depth == nodes.length) {
+            prefixes = Arrays.copyOf(prefixes, depth * 2);
+            localNames = Arrays.copyOf(localNames, depth * 2);
+            nodes = Arrays.copyOf(nodes, depth * 2);
+        }
+        final PathMapping.Node parent = depth == 0 ? mapping.getTop() : nodes[depth - 1];
+        final PathMapping.Node node = parent == null ? null : parent.child(prefix, localName);
+        prefixes[depth] = prefix;
+        localNames[depth] = localName;
+        nodes[depth] = node;
+        depth++;
+        return node;
+    }
+
+    /**
+     * Removes an ended element from the path. Elements consumed by the geometry/object parsers
+     * might not have been ended so the path is unwound to the ended element.
+     */
+    private void pop(String prefix, String localName) {
+        while (depth > 0 && !(prefix.equals(prefixes[depth - 1]) && localName.equals(localNames[depth - 1]))) {
+            depth--;
+        }
+        if (depth > 0) {
+            depth--;
+        }
+    }
+
+    private static String getPrefix(XMLStreamReader xsr) {
+        final String prefix = xsr.getPrefix();
+        return prefix == null ? "" : prefix;
+    }
+
+    private static Map<String, Set<String>> getElementNames(Set<QName> names) {
+        final Map<String, Set<String>> byNs = new HashMap<String, Set<String>>();
+        for (QName name : names) {
+            Set<String> localNames = byNs.get(name.getNamespaceURI());
+            if (localNames == null) {
+                localNames = new HashSet<String>();
+                byNs.put(name.getNamespaceURI(), localNames);
+            }
+            localNames.add(name.getLocalPart());
+        }
+        return byNs;
+    }
+
+    private static boolean isGeometryElement(Map<String, Set<String>> geometryElements, String ns, String localName) {
+        final Set<String> localNames = geometryElements.get(ns == null ? "" : ns);
+        return localNames != null && localNames.contains(localName);
+    }
+}
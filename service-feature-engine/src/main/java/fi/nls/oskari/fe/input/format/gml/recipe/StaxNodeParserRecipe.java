@@ -1,10 +1,12 @@
 package fi.nls.oskari.fe.input.format.gml.recipe;
 
 import com.vividsolutions.jts.geom.Geometry;
+import fi.nls.oskari.fe.input.InputProcessor;
 import fi.nls.oskari.fe.input.format.gml.StaxGMLInputProcessor;
 import fi.nls.oskari.fe.input.jackson.GeometryPropertyDeserializer;
 import fi.nls.oskari.fe.input.jackson.GmlMapper;
 import fi.nls.oskari.fe.iri.Resource;
+import fi.nls.oskari.fe.output.OutputProcessor;
 import fi.nls.oskari.fe.schema.XSDDatatype;
 import org.apache.commons.lang3.tuple.Pair;
 import org.geotools.xml.Configuration;
@@ -77,6 +79,18 @@ public abstract class StaxNodeParserRecipe extends StaxMateGMLParserRecipeBase {
         setupGeometryMapper(getGeometryDeserializer());
     }
 
+    /**
+     * Output properties are collected while parsing, start over for each response
+     * so that a reused recipe doesn't repeat the properties of previous responses
+     */
+    @Override
+    public void setInputOutput(InputProcessor inp, OutputProcessor out) {
+        super.setInputOutput(inp, out);
+        O_properties.clear();
+        O_linkProperties.clear();
+        O_geometryProperties.clear();
+    }
+
     public void setLenient(boolean l) {
         mapper.setLenient(l);
     }
@@ -0,0 +1,23 @@
+package fi.nls.oskari.fi.rysp.generic;
+
+/**
+ * Generic parser for WFS 1.1.0 FeatureCollection using a compiled parse config
+ * - same configs (oskari_wfs_parser_config db table) and output as RYSP_wfs_Parser
+ * - element paths are followed with a compiled PathMapping instead of path strings
+ * */
+
+import fi.nls.oskari.fe.input.format.gml.recipe.JacksonParserRecipe;
+import fi.nls.oskari.fe.input.format.gml.recipe.PathMapping;
+import fi.nls.oskari.fe.input.format.gml.recipe.PathMappingParser;
+
+import java.io.IOException;
+
+public class RYSP_wfs_CompiledParser extends JacksonParserRecipe.GML31 {
+
+    public void parse() throws IOException {
+        new PathMappingParser(this, PathMapping.compile(wfs11ParseWorker.parseConfig))
+                .setLenientGeometry(true)
+                .parse();
+    }
+
+}
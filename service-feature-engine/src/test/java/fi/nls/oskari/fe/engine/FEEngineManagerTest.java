@@ -0,0 +1,118 @@
+package fi.nls.oskari.fe.engine;
+
+import com.vividsolutions.jts.geom.Geometry;
+import fi.nls.oskari.fe.input.XMLInputProcessor;
+import fi.nls.oskari.fe.input.format.gml.StaxGMLInputProcessor;
+import fi.nls.oskari.fe.iri.Resource;
+import fi.nls.oskari.fe.output.AbstractOutputProcessor;
+import fi.nls.oskari.fe.schema.XSDDatatype;
+import fi.nls.oskari.fi.rysp.recipe.kanta.RYSP_kanta_Rakennus_Parser;
+import org.apache.commons.lang3.tuple.Pair;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FEEngineManagerTest {
+
+    private static final String RECIPE = RYSP_kanta_Rakennus_Parser.class.getName();
+    private static final String INPUT = "/fi/nls/oskari/fi/rysp/kanta_Rakennus.xml";
+
+    @Test
+    public void testReusedEngineProducesSameFields() throws Exception {
+        final FeatureEngine engine = FEEngineManager.getEngineForRecipe(RECIPE);
+        assertTrue(engine instanceof FEEngineManager.PooledFeatureEngine);
+        final TypeCollector first = process(engine);
+        // what releaseEngine() does before the engine is handed out again
+        ((FEEngineManager.PooledFeatureEngine) engine).reset();
+        final TypeCollector second = process(engine);
+        FEEngineManager.releaseEngine(engine);
+
+        assertFalse("Should have output fields", first.properties.isEmpty());
+        assertEquals("Fields of a reused engine shouldn't include the previous response",
+                first.properties, second.properties);
+        assertEquals(first.geometryProperties, second.geometryProperties);
+        assertEquals(first.vertexCount, second.vertexCount);
+    }
+
+    @Test
+    public void testPrecompile() throws Exception {
+        final String recipe = "/fi/nls/oskari/fe/engine/does-not-exist.groovy";
+        FEEngineManager.precompile(Collections.singletonList(recipe)).get();
+        final FEEngineManager.RecipeStats stats = FEEngineManager.getRecipeStats().get(recipe);
+        assertEquals("Invalid recipe should not be loaded", -1, stats.getLoadTimeMs());
+        assertEquals(0, stats.getCreatedCount());
+
+        FEEngineManager.precompile(Collections.singletonList(RECIPE)).get();
+        final long created = FEEngineManager.getRecipeStats().get(RECIPE).getCreatedCount();
+        final long reused = FEEngineManager.getRecipeStats().get(RECIPE).getReusedCount();
+        assertTrue("Recipe should be loaded", FEEngineManager.getRecipeStats().get(RECIPE).getLoadTimeMs() >= 0);
+
+        final FeatureEngine engine = FEEngineManager.getEngineForRecipe(RECIPE);
+        assertEquals("Precompiled engine should be reused", created,
+                FEEngineManager.getRecipeStats().get(RECIPE).getCreatedCount());
+        assertEquals(reused + 1, FEEngineManager.getRecipeStats().get(RECIPE).getReusedCount());
+        FEEngineManager.releaseEngine(engine);
+    }
+
+    private TypeCollector process(FeatureEngine engine) throws Exception {
+        final TypeCollector output = new TypeCollector();
+        final XMLInputProcessor input = new StaxGMLInputProcessor();
+        try (InputStream in = getClass().getResourceAsStream(INPUT)) {
+            input.setInput(in);
+            engine.setInputProcessor(input);
+            engine.setOutputProcessor(output);
+            engine.process();
+        }
+        return output;
+    }
+
+    /**
+     * Copies the fields given to type(), the lists are owned by the recipe
+     */
+    private static class TypeCollector extends AbstractOutputProcessor {
+        final List<String> properties = new ArrayList<>();
+        final List<String> geometryProperties = new ArrayList<>();
+        int vertexCount;
+
+        public void type(Resource type, List<Pair<Resource, XSDDatatype>> simpleProperties,
+                         List<Pair<Resource, Object>> linkProperties,
+                         List<Pair<Resource, String>> geometryProperties) {
+            for (Pair<Resource, XSDDatatype> p : simpleProperties) {
+                properties.add(p.getKey().getLocalPart());
+            }
+            for (Pair<Resource, Object> p : linkProperties) {
+                properties.add(p.getKey().getLocalPart());
+            }
+            for (Pair<Resource, String> p : geometryProperties) {
+                this.geometryProperties.add(p.getKey().getLocalPart());
+            }
+        }
+
+        public void vertex(Resource iri, Resource type, List<Pair<Resource, Object>> simpleProperties,
+                           List<Pair<Resource, Object>> linkProperties) {
+            vertexCount++;
+        }
+
+        public void vertex(Resource iri, Resource type, List<Pair<Resource, Object>> simpleProperties,
+                           List<Pair<Resource, Object>> linkProperties,
+                           List<Pair<Resource, Geometry>> geometryProperties) {
+            vertexCount++;
+        }
+
+        public void begin() {}
+        public void edge(Resource subject, Resource predicate, Resource value) {}
+        public void end() {}
+        public void flush() {}
+        public void merge(List<JSONObject> list, Resource href) {}
+        public void equalizePropertyArraySize(Map<String, Integer> multiElemmap, Map<String, Resource> resmap) {}
+    }
+}
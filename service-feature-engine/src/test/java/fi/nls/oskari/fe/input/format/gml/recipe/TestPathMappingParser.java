@@ -0,0 +1,169 @@
+package fi.nls.oskari.fe.input.format.gml.recipe;
+
+import fi.nls.oskari.eu.elf.recipe.universal.ELF_path_parse_worker;
+import fi.nls.oskari.eu.elf.recipe.universal.ELF_wfs_CompiledParser;
+import fi.nls.oskari.eu.elf.recipe.universal.ELF_wfs_Parser;
+import fi.nls.oskari.fe.engine.BasicFeatureEngine;
+import fi.nls.oskari.fe.input.XMLInputProcessor;
+import fi.nls.oskari.fe.input.format.gml.StaxGMLInputProcessor;
+import fi.nls.oskari.fe.output.OutputStreamProcessor;
+import fi.nls.oskari.fe.output.format.json.JsonOutputProcessor;
+import fi.nls.oskari.fi.rysp.generic.RYSP_wfs_CompiledParser;
+import fi.nls.oskari.fi.rysp.generic.RYSP_wfs_Parser;
+import fi.nls.oskari.fi.rysp.generic.WFS11_path_parse_worker;
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiled path mapping parsers must produce the same output as the path parsers they replace.
+ * See FeatureEngineBenchmark in oskari-benchmarks for parse times of both.
+ */
+public class TestPathMappingParser {
+
+    private static final String ELF_ADDRESS_CONF = "{\"scan\":{\"scanNS\":\"http://www.opengis.net/wfs/2.0\",\"name\":\"member\"}," +
+            "\"root\":{\"rootNS\":\"http://www.locationframework.eu/schemas/Addresses/MasterLoD0/1.0\",\"name\":\"Address\"}," +
+            "\"paths\":[" +
+            "{\"path\":\"/elf-lod0ad:Address/@gml:id\",\"type\":\"String\",\"label\":\"id\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:inspireId/base:Identifier/base:localId\",\"type\":\"String\",\"label\":\"InspireLocalId\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:inspireId/base:Identifier/base:versionId\",\"type\":\"String\",\"label\":\"InspireVersionId\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:position/ad:GeographicPosition/ad:geometry\",\"type\":\"Geometry\",\"label\":\"geom\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:locator/ad:AddressLocator/ad:designator/ad:LocatorDesignator\",\"type\":\"Object\",\"label\":\"addressLocatorDesignators\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:validFrom\",\"type\":\"String\",\"label\":\"validFrom\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:validTo\",\"type\":\"String\",\"label\":\"validTo\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:beginLifespanVersion\",\"type\":\"String\",\"label\":\"beginLifespanVersion\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:endLifespanVersion\",\"type\":\"String\",\"label\":\"endLifespanVersion\"}," +
+            "{\"path\":\"/elf-lod0ad:Address/ad:component/@xlink:href\",\"type\":\"Href\",\"label\":\"components\",\"hrefPath\":[" +
+            "{\"path\":\"/wfs:SimpleFeatureCollection/wfs:member/elf-lod0ad:AdminUnitName/@gml:id\",\"type\":\"String\",\"label\":\"id\"}," +
+            "{\"path\":\"/wfs:SimpleFeatureCollection/wfs:member/elf-lod0ad:AdminUnitName/ad:name/gn:GeographicalName/gn:spelling/gn:SpellingOfName/gn:text\",\"type\":\"String\",\"label\":\"name\"}," +
+            "{\"path\":\"/wfs:SimpleFeatureCollection/wfs:member/elf-lod0ad:ThoroughfareName/@gml:id\",\"type\":\"String\",\"label\":\"id\"}," +
+            "{\"path\":\"/wfs:SimpleFeatureCollection/wfs:member/elf-lod0ad:ThoroughfareName/ad:name/gn:GeographicalName/gn:spelling/gn:SpellingOfName/gn:text\",\"type\":\"String\",\"label\":\"name\"}" +
+            "]}" +
+            "]}";
+
+    private static final String RYSP_RAKENNUSALA_CONF = "{\"paths\":[" +
+            "{\"path\":\"/akaava:Rakennusala/@gml:id\",\"label\":\"id\",\"type\":\"String\"}," +
+            "{\"path\":\"/akaava:Rakennusala/akaava:tunnus\",\"label\":\"Tunnus\",\"type\":\"String\"}," +
+            "{\"path\":\"/akaava:Rakennusala/akaava:kaavatunnus\",\"label\":\"Kaavatunnus\",\"type\":\"String\"}," +
+            "{\"path\":\"/akaava:Rakennusala/akaava:kaavamerkinta\",\"label\":\"Kaavamerkintä\",\"type\":\"String\"}," +
+            "{\"path\":\"/akaava:Rakennusala/akaava:sijainti/akaava:AlueSijainti/akaava:reunaviiva\",\"label\":\"geom\",\"type\":\"Geometry\"}," +
+            "{\"path\":\"/akaava:Rakennusala/akaava:sijainti/akaava:AlueSijainti/akaava:alue\",\"label\":\"geom\",\"type\":\"Geometry\"}]," +
+            "\"root\":{\"rootNS\":\"http://www.paikkatietopalvelu.fi/gml/asemakaava\",\"name\":\"Rakennusala\"}," +
+            "\"scan\":{\"scanNS\":\"http://www.opengis.net/gml\",\"name\":\"featureMember\"}}";
+
+    private static final String RYSP_KIINTEISTO_CONF = "{\"paths\":[" +
+            "{\"path\":\"/kanta:Kiinteisto/@gml:id\",\"label\":\"id\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:kiinteistotunnus\",\"label\":\"Kiinteistotunnus\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:rekisteriyksikkolaji\",\"label\":\"Laji\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:alkuPvm\",\"label\":\"LuontiPvm\",\"type\":\"String\"}," +
+            "{\"path\":\"/kanta:Kiinteisto/kanta:sijainnit/kanta:Sijainti/kanta:alue\",\"label\":\"geom\",\"type\":\"Geometry\"}]," +
+            "\"root\":{\"rootNS\":\"http://www.paikkatietopalvelu.fi/gml/kantakartta\",\"name\":\"Kiinteisto\"}," +
+            "\"scan\":{\"scanNS\":\"http://www.opengis.net/gml\",\"name\":\"featureMember\"}}";
+
+    @Test
+    public void testCompile() {
+        PathMapping mapping = PathMapping.compile(JSONHelper.createJSONObject(ELF_ADDRESS_CONF));
+
+        assertEquals("Address", mapping.getRootQN().getLocalPart());
+        assertEquals("member", mapping.getScanQN().getLocalPart());
+        assertTrue(mapping.isGeometryMapping());
+        assertEquals("components", mapping.getHrefLabel());
+        assertEquals(Arrays.asList("InspireLocalId", "InspireVersionId", "addressLocatorDesignators",
+                "validFrom", "validTo", "beginLifespanVersion", "endLifespanVersion", "components"),
+                mapping.getOutputLabels());
+
+        PathMapping.Node address = mapping.getTop().child("elf-lod0ad", "Address");
+        assertNotNull(address);
+        assertNull(address.getLabel());
+        assertEquals("id", address.attribute("gml", "id"));
+        assertEquals("components", address.child("ad", "component").attribute("xlink", "href"));
+        assertTrue(address.child("ad", "position").child("ad", "GeographicPosition").child("ad", "geometry")
+                .isType(PathMapping.TYPE_GEOMETRY));
+        assertNull(address.child("ad", "unknown"));
+        assertFalse(address.child("ad", "validFrom").hasAttributes());
+    }
+
+    @Test
+    public void testSplit() {
+        assertEquals(2, PathMapping.split("/a:b/:c").size());
+        assertNull(PathMapping.split("a:b"));
+        assertNull(PathMapping.split("/a:b/"));
+        assertNull(PathMapping.split("/a:b/c"));
+    }
+
+    @Test
+    public void testELFAddressOutputEquals() throws Exception {
+        final JSONObject conf = JSONHelper.createJSONObject(ELF_ADDRESS_CONF);
+        final String resource = "/fi/nls/oskari/eu/elf/addresses/ign_fi_local-href-ELF-AD-wfs.xml";
+        compare("ELF addresses", resource, () -> {
+            ParserRecipe recipe = new ELF_wfs_Parser();
+            recipe.setParseWorker(new ELF_path_parse_worker(conf));
+            return recipe;
+        }, () -> {
+            ParserRecipe recipe = new ELF_wfs_CompiledParser();
+            recipe.setParseWorker(new ELF_path_parse_worker(conf));
+            return recipe;
+        });
+    }
+
+    @Test
+    public void testRYSPRakennusalaOutputEquals() throws Exception {
+        compareRYSP("RYSP Rakennusala", "/fi/nls/oskari/fi/rysp/akaava_Rakennusala.xml",
+                JSONHelper.createJSONObject(RYSP_RAKENNUSALA_CONF));
+    }
+
+    @Test
+    public void testRYSPKiinteistoOutputEquals() throws Exception {
+        compareRYSP("RYSP Kiinteisto", "/fi/nls/oskari/fi/rysp/kanta_Kiinteisto.xml",
+                JSONHelper.createJSONObject(RYSP_KIINTEISTO_CONF));
+    }
+
+    private void compareRYSP(String name, String resource, final JSONObject conf) throws Exception {
+        compare(name, resource, () -> {
+            ParserRecipe recipe = new RYSP_wfs_Parser();
+            recipe.setWFS11ParseWorker(new WFS11_path_parse_worker(conf));
+            return recipe;
+        }, () -> {
+            ParserRecipe recipe = new RYSP_wfs_CompiledParser();
+            recipe.setWFS11ParseWorker(new WFS11_path_parse_worker(conf));
+            return recipe;
+        });
+    }
+
+    private void compare(String name, String resource, Callable<ParserRecipe> pathParser,
+                         Callable<ParserRecipe> compiledParser) throws Exception {
+        final String expected = parse(resource, pathParser.call());
+        final String actual = parse(resource, compiledParser.call());
+        assertTrue(name + " output is empty", expected.contains("\"simpleProperties\""));
+        assertEquals(name + " output differs", expected, actual);
+    }
+
+    private String parse(String resource, ParserRecipe recipe) throws Exception {
+        BasicFeatureEngine engine = new BasicFeatureEngine();
+        XMLInputProcessor inputProcessor = new StaxGMLInputProcessor();
+        OutputStreamProcessor outputProcessor = new JsonOutputProcessor();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (InputStream inp = getClass().getResourceAsStream(resource)) {
+            inputProcessor.setInput(inp);
+            outputProcessor.setOutput(out);
+
+            engine.setRecipe(recipe);
+            engine.setInputProcessor(inputProcessor);
+            engine.setOutputProcessor(outputProcessor);
+            engine.process();
+        }
+        return out.toString("UTF-8");
+    }
+}
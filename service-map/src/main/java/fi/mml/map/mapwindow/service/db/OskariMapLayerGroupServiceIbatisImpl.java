@@ -5,6 +5,7 @@ import fi.nls.oskari.annotation.Oskari;
 import fi.nls.oskari.cache.Cache;
 import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.domain.map.MaplayerGroup;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.service.ServiceRuntimeException;
 
 import java.sql.SQLException;
@@ -71,12 +72,14 @@ public class OskariMapLayerGroupServiceIbatisImpl extends OskariMapLayerGroupSer
         super.delete(id);
         // update caches
         ID_CACHE.remove(getCacheKey(id));
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
     public void update(final MaplayerGroup group) {
         ID_CACHE.put(getCacheKey(group), group);
         super.update(group);
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
@@ -84,6 +87,7 @@ public class OskariMapLayerGroupServiceIbatisImpl extends OskariMapLayerGroupSer
         final int id = super.insert(theme);
         theme.setId(id);
         ID_CACHE.put(getCacheKey(id), theme);
+        OskariLayerRegistry.invalidate();
         return id;
     }
 
@@ -102,6 +106,7 @@ public class OskariMapLayerGroupServiceIbatisImpl extends OskariMapLayerGroupSer
                     client.endTransaction();
                 } catch (SQLException ignored) { }
             }
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -123,6 +128,7 @@ public class OskariMapLayerGroupServiceIbatisImpl extends OskariMapLayerGroupSer
                     client.endTransaction();
                 } catch (SQLException ignored) { }
             }
+            OskariLayerRegistry.invalidate();
         }
     }
 
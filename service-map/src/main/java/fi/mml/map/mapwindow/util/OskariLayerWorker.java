@@ -1,6 +1,7 @@
 package fi.mml.map.mapwindow.util;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +19,7 @@ import fi.nls.oskari.domain.User;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
 import fi.nls.oskari.map.layer.formatters.LayerJSONFormatter;
@@ -53,7 +55,7 @@ public class OskariLayerWorker {
      */
     public static JSONObject getListOfMapLayersByIdList(final List<Integer> layerIdList, final User user,
             final String lang, final String crs) {
-        final List<OskariLayer> layers = mapLayerService.findByIdList(layerIdList);
+        final List<OskariLayer> layers = OskariLayerRegistry.findByIdList(layerIdList, mapLayerService);
         return getListOfMapLayers(layers, user, lang, crs, false, false);
     }
     /**
@@ -68,7 +70,7 @@ public class OskariLayerWorker {
      */
     public static JSONObject getListOfMapLayersById(final List<Integer> layerIdList, final User user,
             final String lang, final boolean isPublished, final boolean isSecure, final String crs) {
-        final List<OskariLayer> layers = mapLayerService.findByIdList(layerIdList);
+        final List<OskariLayer> layers = OskariLayerRegistry.findByIdList(layerIdList, mapLayerService);
         return getListOfMapLayers(layers, user, lang, crs, isPublished, isSecure);
     }
 
@@ -86,14 +88,12 @@ public class OskariLayerWorker {
             final String lang, final String crs, final boolean isPublished, final boolean isSecure) {
 
         final String permissionType = getPermissionType(isPublished);
-        long start = System.currentTimeMillis();
-        final Set<String> resources = permissionsService.getResourcesWithGrantedPermissions(
-                Permissions.RESOURCE_TYPE_MAP_LAYER, user, permissionType);
-        log.debug("View permissions loaded in", System.currentTimeMillis() - start, "ms");
+        final BitSet layerIds = permissionsService.getLayerIdsWithGrantedPermissions(user, permissionType);
 
         PermissionCollection permissionCollection = getPermissionCollection(user);
 
-        return getListOfMapLayers(layers, user, lang, isSecure, crs, resources, permissionCollection);
+        final List<OskariLayer> filtered = filterLayersWithPermissions(layers, layerIds);
+        return getListOfMapLayers(filtered, user, lang, isSecure, crs, permissionCollection);
     }
 
     public static PermissionCollection getPermissionCollection(User user) {
@@ -142,6 +142,20 @@ public class OskariLayerWorker {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Filters out internal layers and layers not included in the given layer ids.
+     * Sublayers are always included since permissions are checked for the parent layer.
+     * @param layers layers to filter
+     * @param layerIds ids of permitted layers (see PermissionsService.getLayerIdsWithGrantedPermissions())
+     * @return permitted layers
+     */
+    public static List<OskariLayer> filterLayersWithPermissions(List<OskariLayer> layers, BitSet layerIds) {
+        return layers.stream()
+                .filter(layer -> !layer.isInternal())
+                .filter(layer -> layer.isSublayer() || layerIds.get(layer.getId()))
+                .collect(Collectors.toList());
+    }
+
     public static JSONObject getListOfMapLayers(final List<OskariLayer> layers,
             final User user,
             final String lang,
@@ -152,7 +166,8 @@ public class OskariLayerWorker {
         long start = System.currentTimeMillis();
         for (OskariLayer layer : layers) {
             try {
-                final JSONObject layerJson = FORMATTER.getJSON(layer, lang, isSecure, crs);
+                // user independent part is cached, permissions are added per request
+                final JSONObject layerJson = FORMATTER.getCachedJSON(layer, lang, isSecure, crs);
                 if (layerJson == null) {
                     continue;
                 }
@@ -180,6 +195,20 @@ public class OskariLayerWorker {
         return result;
     }
 
+    /**
+     * Returns a copy of the layer with attributes.forceProxy=true so the layer is proxied through Oskari.
+     * The original layer is not modified since it might be shared between requests (see OskariLayerRegistry).
+     * @param layer layer to proxy
+     * @return proxied copy of the layer
+     */
+    public static OskariLayer forceProxy(final OskariLayer layer) {
+        final OskariLayer copy = layer.copy();
+        final JSONObject attributes = JSONHelper.merge(layer.getAttributes(),
+                JSONHelper.createJSONObject("forceProxy", true));
+        copy.setAttributes(attributes);
+        return copy;
+    }
+
     public static String getPermissionKey(OskariLayer layer) {
         return layer.getType() + "+" + layer.getUrl() + "+" + layer.getName();
     }
@@ -7,13 +7,13 @@ import fi.nls.oskari.domain.map.UserDataStyle;
 import fi.nls.oskari.domain.map.analysis.Analysis;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.service.ServiceException;
 
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
@@ -58,7 +58,7 @@ public class AnalysisDbServiceMybatisImpl implements AnalysisDbService {
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(AnalysisMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
 
@@ -145,7 +145,7 @@ public class AnalysisDbServiceMybatisImpl implements AnalysisDbService {
         }
 
         final SqlSession session = factory.openSession();
-        List<Analysis> analysisList = null;
+        List<Analysis> analysisList = Collections.emptyList();
         try {
             log.debug("Finding analysis matching: ", idList);
             final AnalysisMapper mapper = session.getMapper(AnalysisMapper.class);
@@ -11,7 +11,6 @@ import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
@@ -48,7 +47,7 @@ public class AnalysisStyleDbServiceMybatisImpl implements AnalysisStyleDbService
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(AnalysisStyleMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     /**
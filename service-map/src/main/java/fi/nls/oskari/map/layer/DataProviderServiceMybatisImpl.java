@@ -7,11 +7,11 @@ import fi.nls.oskari.domain.map.DataProvider;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.mybatis.JSONObjectMybatisTypeHandler;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
@@ -52,7 +52,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
         configuration.getTypeHandlerRegistry().register(JSONObjectMybatisTypeHandler.class);
         configuration.addMapper(DataProviderMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     public boolean hasPermissionToUpdate(final User user, final int layerId) {
@@ -142,6 +142,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
             log.warn("Unable to delete data provider with id: " + id);
         } finally {
             session.close();
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -157,6 +158,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
             log.warn("Unable to update data provider with id: " + group.getId());
         } finally {
             session.close();
+            OskariLayerRegistry.invalidate();
         }
     }
 
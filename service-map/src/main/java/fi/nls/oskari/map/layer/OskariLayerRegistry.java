@@ -0,0 +1,324 @@
+package fi.nls.oskari.map.layer;
+
+import fi.mml.map.mapwindow.service.db.OskariMapLayerGroupService;
+import fi.mml.map.mapwindow.service.db.OskariMapLayerGroupServiceIbatisImpl;
+import fi.mml.portti.service.db.permissions.LayerPermissionIndex;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.cache.JedisSubscriber;
+import fi.nls.oskari.domain.map.MaplayerGroup;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLink;
+import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLinkService;
+import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLinkServiceMybatisImpl;
+import fi.nls.oskari.service.OskariComponentManager;
+import fi.nls.oskari.util.PropertyUtil;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory registry of all map layers, layer groups and group links. The registry is loaded
+ * once from the database into an immutable snapshot that is swapped as a whole when something changes,
+ * so readers never see a partially updated state and don't need any locking.
+ *
+ * The snapshot is invalidated by the insert/update/delete methods of the layer, group, link and dataprovider
+ * services. Other nodes in a cluster are notified with Redis pub/sub so they reload on next access.
+ * As a safety net snapshots also expire after oskari.layers.registry.maxAgeSec (default 600) seconds.
+ * The registry can be bypassed with oskari.layers.registry.enabled=false.
+ *
+ * NOTE! Layers in the snapshot are shared between requests and MUST NOT be modified. Use OskariLayer.copy()
+ * to tweak a layer for a single request and the layer services to get a layer for editing.
+ */
+public class OskariLayerRegistry {
+
+    private static final Logger LOG = LogFactory.getLogger(OskariLayerRegistry.class);
+
+    public static final String CHANNEL = "oskari_layer_registry";
+
+    private static final boolean ENABLED = PropertyUtil.getOptional("oskari.layers.registry.enabled", true);
+    private static final long MAX_AGE_MS = TimeUnit.SECONDS.toMillis(
+            PropertyUtil.getOptional("oskari.layers.registry.maxAgeSec", 600));
+    // identifies invalidation messages sent by this node
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    private static final AtomicReference<Snapshot> CURRENT = new AtomicReference<>();
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static final AtomicBoolean SUBSCRIBED = new AtomicBoolean(false);
+    private static final Object LOAD_LOCK = new Object();
+
+    private static OskariLayerService layerService;
+    private static OskariMapLayerGroupService groupService;
+    private static OskariLayerGroupLinkService linkService;
+
+    private OskariLayerRegistry() {}
+
+    /**
+     * Returns the current snapshot. Loads it from the database if there's no valid snapshot.
+     * @return snapshot of layers, groups and links
+     */
+    public static Snapshot getSnapshot() {
+        Snapshot snapshot = CURRENT.get();
+        if (isValid(snapshot)) {
+            return snapshot;
+        }
+        synchronized (LOAD_LOCK) {
+            snapshot = CURRENT.get();
+            if (isValid(snapshot)) {
+                return snapshot;
+            }
+            snapshot = load(GENERATION.get());
+            if (ENABLED && snapshot.loaded) {
+                // a stale snapshot is ignored by isValid() if invalidate() was called while loading
+                CURRENT.set(snapshot);
+                subscribe();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Returns the current snapshot without loading it
+     * @return snapshot or null if there's no valid snapshot at the moment
+     */
+    public static Snapshot getCurrentSnapshot() {
+        Snapshot snapshot = CURRENT.get();
+        return isValid(snapshot) ? snapshot : null;
+    }
+
+    /**
+     * Returns the layer with given id from the registry or from the service if the layer
+     * isn't (yet) known by the registry
+     * @param id layer id
+     * @param fallback service to use for layers not in the registry
+     * @return layer or null if not found
+     */
+    public static OskariLayer find(int id, OskariLayerService fallback) {
+        OskariLayer layer = getSnapshot().getLayer(id);
+        if (layer == null && fallback != null) {
+            return fallback.find(id);
+        }
+        return layer;
+    }
+
+    /**
+     * Returns the layers with given ids in the requested order. Layers not (yet) known by
+     * the registry are fetched with the fallback service.
+     * @param ids layer ids
+     * @param fallback service to use for layers not in the registry
+     * @return found layers
+     */
+    public static List<OskariLayer> findByIdList(List<Integer> ids, OskariLayerService fallback) {
+        final Snapshot snapshot = getSnapshot();
+        final Map<Integer, OskariLayer> found = new HashMap<>();
+        final List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            OskariLayer layer = snapshot.getLayer(id);
+            if (layer != null) {
+                found.put(id, layer);
+            } else if (!missing.contains(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty() && fallback != null) {
+            LOG.debug("Layers not in registry:", missing);
+            for (OskariLayer layer : fallback.findByIdList(missing)) {
+                found.put(layer.getId(), layer);
+            }
+        }
+        final List<OskariLayer> result = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            OskariLayer layer = found.get(id);
+            if (layer != null) {
+                result.add(layer);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the current snapshot on this node and notifies other nodes to do the same.
+     * Called by services after modifying layers, groups or links.
+     */
+    public static void invalidate() {
+        invalidateLocal();
+        if (ENABLED) {
+            JedisManager.publish(CHANNEL, NODE_ID);
+        }
+        // layer permissions are mapped by layer type, url and name so they might have changed as well
+        LayerPermissionIndex.invalidate();
+    }
+
+    private static void invalidateLocal() {
+        GENERATION.incrementAndGet();
+        CURRENT.set(null);
+    }
+
+    private static boolean isValid(Snapshot snapshot) {
+        return snapshot != null
+                && snapshot.generation == GENERATION.get()
+                && System.currentTimeMillis() - snapshot.created < MAX_AGE_MS;
+    }
+
+    private static Snapshot load(long generation) {
+        long start = System.currentTimeMillis();
+        try {
+            initServices();
+            List<OskariLayer> layers = layerService.findAll();
+            List<MaplayerGroup> groups = groupService.findAll();
+            List<OskariLayerGroupLink> links = linkService.findAll();
+            Snapshot snapshot = new Snapshot(generation, layers, groups, links, true);
+            LOG.info("Loaded layer registry with", layers.size(), "layers in",
+                    System.currentTimeMillis() - start, "ms");
+            return snapshot;
+        } catch (Exception e) {
+            // don't store the failed result so loading is retried on next call
+            LOG.error(e, "Couldn't load layer registry");
+            return new Snapshot(generation, Collections.emptyList(), Collections.emptyList(),
+                    Collections.emptyList(), false);
+        }
+    }
+
+    private static void initServices() {
+        if (layerService == null) {
+            layerService = OskariComponentManager.getComponentOfType(OskariLayerService.class);
+        }
+        if (groupService == null) {
+            groupService = new OskariMapLayerGroupServiceIbatisImpl();
+        }
+        if (linkService == null) {
+            linkService = new OskariLayerGroupLinkServiceMybatisImpl();
+        }
+    }
+
+    private static void subscribe() {
+        if (SUBSCRIBED.compareAndSet(false, true)) {
+            JedisManager.subscribe(new InvalidationSubscriber(), CHANNEL);
+        }
+    }
+
+    /**
+     * Listens to invalidations from other nodes
+     */
+    private static class InvalidationSubscriber extends JedisSubscriber {
+        @Override
+        public void onMessage(String channel, String message) {
+            if (CHANNEL.equals(channel) && !NODE_ID.equals(message)) {
+                LOG.debug("Layer registry invalidated by another node");
+                invalidateLocal();
+            }
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            // subscribe again when the next snapshot is loaded
+            SUBSCRIBED.set(false);
+        }
+    }
+
+    /**
+     * Immutable view of layers, groups and links at the time of loading
+     */
+    public static class Snapshot {
+        private final long generation;
+        private final long created = System.currentTimeMillis();
+        private final boolean loaded;
+        private final List<OskariLayer> layers;
+        private final Map<Integer, OskariLayer> layersById = new HashMap<>();
+        private final List<MaplayerGroup> groups;
+        private final Map<Integer, List<MaplayerGroup>> groupsByParentId;
+        private final Map<Integer, List<OskariLayerGroupLink>> linksByGroupId;
+        private final Map<String, JSONObject> layerJSON = new ConcurrentHashMap<>();
+
+        private Snapshot(long generation, List<OskariLayer> layers, List<MaplayerGroup> groups,
+                         List<OskariLayerGroupLink> links, boolean loaded) {
+            this.generation = generation;
+            this.loaded = loaded;
+            this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+            for (OskariLayer layer : layers) {
+                layersById.put(layer.getId(), layer);
+                for (OskariLayer sublayer : layer.getSublayers()) {
+                    layersById.put(sublayer.getId(), sublayer);
+                }
+            }
+            this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
+            this.groupsByParentId = groups.stream()
+                    .sorted(Comparator.comparing(MaplayerGroup::getOrderNumber,
+                            Comparator.nullsLast(Comparator.naturalOrder())))
+                    .collect(Collectors.groupingBy(MaplayerGroup::getParentId,
+                            Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+            this.linksByGroupId = links.stream()
+                    .sorted(Comparator.comparingInt(OskariLayerGroupLink::getOrderNumber))
+                    .collect(Collectors.groupingBy(OskariLayerGroupLink::getGroupId,
+                            Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+        }
+
+        /**
+         * Identifies the snapshot. Can be used as part of a cache key for content that is derived
+         * from the snapshot since a new snapshot has a different version.
+         * @return version of the snapshot
+         */
+        public String getVersion() {
+            return generation + "." + created;
+        }
+
+        /**
+         * Layer JSON is built from the layers of this snapshot so it's cached here and dropped with the snapshot
+         * (see LayerJSONFormatter.getCachedJSON()).
+         * @return mutable cache for layer JSON
+         */
+        public Map<String, JSONObject> getLayerJSONCache() {
+            return layerJSON;
+        }
+
+        /**
+         * @return false if the snapshot is loaded for a single request only (registry disabled or loading failed)
+         *      so content derived from it shouldn't be cached
+         */
+        public boolean isShared() {
+            return ENABLED && loaded;
+        }
+
+        /**
+         * @return top level layers with sublayers attached to their parents
+         */
+        public List<OskariLayer> getLayers() {
+            return layers;
+        }
+
+        /**
+         * @param id layer or sublayer id
+         * @return layer or null if not found
+         */
+        public OskariLayer getLayer(int id) {
+            return layersById.get(id);
+        }
+
+        public List<MaplayerGroup> getGroups() {
+            return groups;
+        }
+
+        /**
+         * @param parentId parent group id, -1 for top level groups
+         * @return child groups ordered by order number
+         */
+        public List<MaplayerGroup> getGroupsByParentId(int parentId) {
+            return groupsByParentId.getOrDefault(parentId, Collections.emptyList());
+        }
+
+        /**
+         * @param groupId group id
+         * @return links of the group ordered by order number
+         */
+        public List<OskariLayerGroupLink> getLinksByGroupId(int groupId) {
+            return linksByGroupId.getOrDefault(groupId, Collections.emptyList());
+        }
+    }
+}
@@ -7,13 +7,13 @@ import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.mybatis.JSONObjectMybatisTypeHandler;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.JSONHelper;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
@@ -51,7 +51,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
         configuration.getTypeHandlerRegistry().register(JSONObjectMybatisTypeHandler.class);
         configuration.addMapper(OskariLayerMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     private OskariLayer mapData(Map<String, Object> data) {
@@ -314,6 +314,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             throw new RuntimeException("Failed to update", e);
         } finally {
             session.close();
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -328,6 +329,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             throw new RuntimeException("Failed to insert", e);
         } finally {
             session.close();
+            OskariLayerRegistry.invalidate();
         }
         return layer.getId();
     }
@@ -343,6 +345,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             LOG.error(e, "Couldn't delete with id:", id);
         } finally {
             session.close();
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -4,6 +4,7 @@ import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.geometry.WKTHelper;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
@@ -78,6 +79,27 @@ public class LayerJSONFormatter {
         return getBaseJSON(layer, lang, isSecure, crs);
     }
 
+    /**
+     * Like getJSON(), but the JSON is built only once for each layer, language, secure mode and crs
+     * as long as the layer is unchanged in OskariLayerRegistry. Layers not from the registry
+     * (like modified copies) are always formatted. Saving a layer, its WFS configuration or styles or
+     * updating its capabilities invalidates the registry and the cached JSON with it.
+     * @return copy of the cached JSON that can be modified by the caller
+     */
+    public JSONObject getCachedJSON(final OskariLayer layer,
+                                    final String lang,
+                                    final boolean isSecure,
+                                    final String crs) {
+        final OskariLayerRegistry.Snapshot registry = OskariLayerRegistry.getCurrentSnapshot();
+        if (registry == null || registry.getLayer(layer.getId()) != layer) {
+            return getJSON(layer, lang, isSecure, crs);
+        }
+        final String key = layer.getId() + "|" + lang + "|" + isSecure + "|" + crs;
+        final JSONObject json = registry.getLayerJSONCache()
+                .computeIfAbsent(key, k -> getJSON(layer, lang, isSecure, crs));
+        return JSONHelper.copy(json);
+    }
+
     public JSONObject getBaseJSON(final OskariLayer layer,
                                      final String lang,
                                      final boolean isSecure,
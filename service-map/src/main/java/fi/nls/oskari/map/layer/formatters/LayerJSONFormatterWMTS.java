@@ -46,15 +46,16 @@ public class LayerJSONFormatterWMTS extends LayerJSONFormatter {
         if(urlTemplate != null) {
             if(needsProxy || isBeingProxiedViaOskariServer(layerJson.optString("url"))) {
                 // remove requestEncoding so we always get KVP params when proxying
-                JSONObject options = layerJson.optJSONObject("options");
+                // (from a copy since the options object is shared with the layer)
+                JSONObject options = JSONHelper.merge(layerJson.optJSONObject("options"), null);
                 options.remove("requestEncoding");
+                JSONHelper.putValue(layerJson, "options", options);
             } else {
                 // setup tileURL for REST layers
-                final String originalUrl = layer.getUrl();
-                layer.setUrl(urlTemplate);
-                JSONHelper.putValue(layerJson, "tileUrl", layer.getUrl(isSecure));
-                // switch back the original url in case it's used down the line
-                layer.setUrl(originalUrl);
+                // use a copy so the layer itself isn't modified as it might be shared between requests
+                final OskariLayer restLayer = layer.copy();
+                restLayer.setUrl(urlTemplate);
+                JSONHelper.putValue(layerJson, "tileUrl", restLayer.getUrl(isSecure));
             }
         }
 
@@ -11,6 +11,7 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import fi.nls.oskari.db.DatasourceHelper;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.service.capabilities.CapabilitiesCacheServiceMybatisImpl;
 
@@ -65,6 +66,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl implements OskariLayerGroupL
             getMapper(session).insert(link);
             session.commit();
         }
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
@@ -79,6 +81,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl implements OskariLayerGroupL
             }
             session.commit();
         }
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
@@ -87,6 +90,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl implements OskariLayerGroupL
             getMapper(session).delete(layerId, groupId);
             session.commit();
         }
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
@@ -95,6 +99,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl implements OskariLayerGroupL
             getMapper(session).deleteByLayerId(layerId);
             session.commit();
         }
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
@@ -109,6 +114,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl implements OskariLayerGroupL
             }
             session.commit();
         }
+        OskariLayerRegistry.invalidate();
     }
 
     @Override
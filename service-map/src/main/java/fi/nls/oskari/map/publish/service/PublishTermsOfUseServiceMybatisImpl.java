@@ -5,11 +5,11 @@ import fi.nls.oskari.db.DatasourceHelper;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.publish.domain.TermsOfUse;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import javax.sql.DataSource;
@@ -43,7 +43,7 @@ public class PublishTermsOfUseServiceMybatisImpl extends PublishTermsOfUseServic
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(PublishTermsOfUseMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     public boolean insert(final TermsOfUse termsOfUse) {
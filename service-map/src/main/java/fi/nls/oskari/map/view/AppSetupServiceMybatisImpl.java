@@ -10,6 +10,7 @@ import fi.nls.oskari.domain.map.view.ViewTypes;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.mybatis.JSONObjectMybatisTypeHandler;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.PropertyUtil;
@@ -17,7 +18,6 @@ import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
@@ -68,7 +68,7 @@ public class AppSetupServiceMybatisImpl extends ViewService {
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(AppSetupMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     private Map<String, Long> initDefaultViewsByRole(String[] roles) {
@@ -245,6 +245,8 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             session.commit();
         } catch (Exception e) {
             LOG.warn(e, "Exception while updating access flag");
+        } finally {
+            ViewConfigurationCache.invalidate(view.getId());
         }
     }
 
@@ -260,6 +262,8 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             session.commit();
         } catch (Exception e) {
             throw new DeleteViewException("Error deleting a view with id:" + id, e);
+        } finally {
+            ViewConfigurationCache.invalidate(id);
         }
     }
 
@@ -272,6 +276,9 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             session.commit();
         } catch (Exception e) {
             throw new DeleteViewException("Error deleting a view with user id:" + userId, e);
+        } finally {
+            // views aren't listed before deleting so drop all
+            ViewConfigurationCache.invalidateAll();
         }
     }
 
@@ -296,6 +303,8 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             session.commit();
         } catch (Exception e) {
             LOG.warn(e, "Exception while updating view");
+        } finally {
+            ViewConfigurationCache.invalidate(view.getId());
         }
     }
 
@@ -326,6 +335,8 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             session.commit();
         } catch (Exception e) {
             throw new ViewException("Error updating a view with id:" + id, e);
+        } finally {
+            ViewConfigurationCache.invalidate(id);
         }
     }
 
@@ -351,6 +362,8 @@ public class AppSetupServiceMybatisImpl extends ViewService {
             session.commit();
         } catch (Exception e) {
             throw new ViewException("Failed to update", e);
+        } finally {
+            ViewConfigurationCache.invalidate(viewId);
         }
     }
 
@@ -0,0 +1,155 @@
+package fi.nls.oskari.map.view;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.cache.JedisSubscriber;
+import fi.nls.oskari.domain.map.view.View;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache for fully resolved view configurations (startup sequence and bundle configurations after
+ * view modifiers have been run). The cache key is decided by the caller, entries are removed by view id
+ * when the view is modified through ViewService. Other nodes in a cluster are notified with Redis pub/sub.
+ *
+ * Cached JSON is copied on the way in and out so callers can modify it freely.
+ */
+public class ViewConfigurationCache {
+
+    private static final Logger LOG = LogFactory.getLogger(ViewConfigurationCache.class);
+
+    public static final String CHANNEL = "oskari_view_config";
+
+    private static final String NODE_ID = UUID.randomUUID().toString();
+    private static final String MSG_SEPARATOR = ":";
+    private static final String ALL_VIEWS = "*";
+    private static final Cache<Entry> CACHE = CacheManager.getCache(ViewConfigurationCache.class.getName());
+    private static final AtomicBoolean SUBSCRIBED = new AtomicBoolean(false);
+
+    private ViewConfigurationCache() {}
+
+    /**
+     * @param key cache key
+     * @return cached entry or null if not found
+     */
+    public static Entry get(String key) {
+        return CACHE.get(key);
+    }
+
+    /**
+     * Caches copies of the given startup sequence and configuration
+     * @param key cache key
+     * @param view the configuration was resolved for, must not be modified after caching
+     * @param startupSequence resolved startup sequence
+     * @param configuration resolved bundle configurations
+     */
+    public static void put(String key, View view, JSONArray startupSequence, JSONObject configuration) {
+        if (SUBSCRIBED.compareAndSet(false, true)) {
+            JedisManager.subscribe(new InvalidationSubscriber(), CHANNEL);
+        }
+        CACHE.put(key, new Entry(view, JSONHelper.copy(startupSequence), JSONHelper.copy(configuration)));
+    }
+
+    /**
+     * Removes entries for the given view on this node and notifies other nodes to do the same
+     * @param viewId modified view
+     */
+    public static void invalidate(long viewId) {
+        invalidateLocal(viewId);
+        JedisManager.publish(CHANNEL, NODE_ID + MSG_SEPARATOR + viewId);
+    }
+
+    /**
+     * Removes all entries on this node and notifies other nodes to do the same
+     */
+    public static void invalidateAll() {
+        clear();
+        JedisManager.publish(CHANNEL, NODE_ID + MSG_SEPARATOR + ALL_VIEWS);
+    }
+
+    /**
+     * Removes all entries on this node only. Used when something shared by all views has changed
+     * and every node notices the change by itself.
+     */
+    public static void clear() {
+        CACHE.flush(true);
+    }
+
+    private static void invalidateLocal(long viewId) {
+        for (String key : new ArrayList<>(CACHE.getKeys())) {
+            Entry entry = CACHE.get(key);
+            if (entry != null && entry.view.getId() == viewId) {
+                CACHE.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Resolved configuration of a view
+     */
+    public static class Entry {
+        private final View view;
+        private final JSONArray startupSequence;
+        private final JSONObject configuration;
+
+        private Entry(View view, JSONArray startupSequence, JSONObject configuration) {
+            this.view = view;
+            this.startupSequence = startupSequence;
+            this.configuration = configuration;
+        }
+
+        /**
+         * @return the view, shared between requests and must not be modified
+         */
+        public View getView() {
+            return view;
+        }
+
+        /**
+         * @return copy of the startup sequence
+         */
+        public JSONArray getStartupSequence() {
+            return JSONHelper.copy(startupSequence);
+        }
+
+        /**
+         * @return copy of the configuration
+         */
+        public JSONObject getConfiguration() {
+            return JSONHelper.copy(configuration);
+        }
+    }
+
+    /**
+     * Listens to invalidations from other nodes
+     */
+    private static class InvalidationSubscriber extends JedisSubscriber {
+        @Override
+        public void onMessage(String channel, String message) {
+            if (!CHANNEL.equals(channel) || message == null || message.startsWith(NODE_ID)) {
+                return;
+            }
+            final String view = message.substring(message.indexOf(MSG_SEPARATOR) + 1);
+            LOG.debug("View", view, "modified on another node");
+            if (ALL_VIEWS.equals(view)) {
+                clear();
+            } else {
+                invalidateLocal(ConversionHelper.getLong(view, -1));
+            }
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            SUBSCRIBED.set(false);
+        }
+    }
+}
@@ -3,13 +3,13 @@ package fi.nls.oskari.ontology.service;
 import fi.nls.oskari.db.DatasourceHelper;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.ontology.domain.Relation;
 import fi.nls.oskari.ontology.domain.RelationType;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
@@ -52,7 +52,7 @@ public class KeywordRelationServiceMybatisImpl implements KeywordRelationService
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(KeywordRelationMapper.class);
 
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     public void addRelation(Relation relation) throws IllegalArgumentException {
@@ -7,6 +7,7 @@ import fi.nls.oskari.domain.map.wfs.WFSParserConfig;
 import fi.nls.oskari.domain.map.wfs.WFSSLDStyle;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.db.BaseIbatisService;
 import fi.nls.oskari.util.ConversionHelper;
@@ -60,6 +61,8 @@ public class WFSLayerConfigurationServiceIbatisImpl extends BaseIbatisService<WF
             getSqlMapClient().update(getNameSpace() + ".update", layer);
         } catch (Exception e) {
             throw new RuntimeException("Failed to update", e);
+        } finally {
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -91,6 +94,7 @@ public class WFSLayerConfigurationServiceIbatisImpl extends BaseIbatisService<WF
                     client.endTransaction();
                 } catch (SQLException ignored) { }
             }
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -112,6 +116,7 @@ public class WFSLayerConfigurationServiceIbatisImpl extends BaseIbatisService<WF
                     client.endTransaction();
                 } catch (SQLException ignored) { }
             }
+            OskariLayerRegistry.invalidate();
         }
     }
 
@@ -128,6 +133,7 @@ public class WFSLayerConfigurationServiceIbatisImpl extends BaseIbatisService<WF
             throw new RuntimeException("Error deleting wfs layer with maplayer_id:" + Long.toString(maplayer_id), e);
         } finally {
             endSession(session);
+            OskariLayerRegistry.invalidate();
         }
     }
 }
@@ -0,0 +1,110 @@
+package fi.nls.oskari.map.layer.formatters;
+
+import com.ibatis.sqlmap.client.SqlMapClient;
+import fi.mml.map.mapwindow.service.db.OskariMapLayerGroupService;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.domain.map.wfs.WFSLayerConfiguration;
+import fi.nls.oskari.domain.map.wfs.WFSSLDStyle;
+import fi.nls.oskari.map.layer.OskariLayerRegistry;
+import fi.nls.oskari.map.layer.OskariLayerService;
+import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLinkService;
+import fi.nls.oskari.wfs.WFSLayerConfigurationService;
+import fi.nls.oskari.wfs.WFSLayerConfigurationServiceIbatisImpl;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class LayerJSONFormatterWFSTest {
+
+    private static final int LAYER_ID = 1;
+
+    private final LayerJSONFormatter formatter = new LayerJSONFormatter();
+    private final List<WFSSLDStyle> styles = new ArrayList<>();
+    private WFSLayerConfigurationService originalWfsService;
+
+    @Before
+    public void setUp() {
+        final OskariLayer layer = new OskariLayer();
+        layer.setId(LAYER_ID);
+        layer.setType(OskariLayer.TYPE_WFS);
+        layer.setName("test:layer");
+        final OskariLayerService layerService = mock(OskariLayerService.class);
+        doReturn(Collections.singletonList(layer)).when(layerService).findAll();
+        Whitebox.setInternalState(OskariLayerRegistry.class, "layerService", layerService);
+        Whitebox.setInternalState(OskariLayerRegistry.class, "groupService", mock(OskariMapLayerGroupService.class));
+        Whitebox.setInternalState(OskariLayerRegistry.class, "linkService", mock(OskariLayerGroupLinkService.class));
+        OskariLayerRegistry.invalidate();
+
+        originalWfsService = Whitebox.getInternalState(LayerJSONFormatterWFS.class, "wfsService");
+        Whitebox.setInternalState(LayerJSONFormatterWFS.class, "wfsService", new TestWFSService());
+        addStyle("default");
+    }
+
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(LayerJSONFormatterWFS.class, "wfsService", originalWfsService);
+        Whitebox.setInternalState(OskariLayerRegistry.class, "layerService", (Object) null);
+        Whitebox.setInternalState(OskariLayerRegistry.class, "groupService", (Object) null);
+        Whitebox.setInternalState(OskariLayerRegistry.class, "linkService", (Object) null);
+        OskariLayerRegistry.invalidate();
+    }
+
+    @Test
+    public void testCachedJSONHasUpdatedStyles() throws Exception {
+        assertEquals(1, getStyles().length());
+
+        // styles are saved after the layer itself when saving a WFS layer
+        addStyle("highlight");
+        final WFSLayerConfigurationService wfsService =
+                Whitebox.getInternalState(LayerJSONFormatterWFS.class, "wfsService");
+        wfsService.insertSLDStyles(LAYER_ID, Collections.singletonList(2));
+
+        final JSONArray updated = getStyles();
+        assertEquals(2, updated.length());
+        assertEquals("highlight", updated.getJSONObject(1).getString("name"));
+    }
+
+    private JSONArray getStyles() throws Exception {
+        final OskariLayer layer = OskariLayerRegistry.getSnapshot().getLayer(LAYER_ID);
+        final JSONObject json = formatter.getCachedJSON(layer, "en", false, "EPSG:3067");
+        return json.getJSONArray(LayerJSONFormatter.KEY_STYLES);
+    }
+
+    private void addStyle(String name) {
+        final WFSSLDStyle style = new WFSSLDStyle();
+        style.setName(name);
+        styles.add(style);
+    }
+
+    /**
+     * Serves the configuration from memory and writes to a no-op SqlMapClient
+     */
+    private class TestWFSService extends WFSLayerConfigurationServiceIbatisImpl {
+        private final SqlMapClient client = mock(SqlMapClient.class);
+
+        @Override
+        protected SqlMapClient getSqlMapClient() {
+            return client;
+        }
+
+        @Override
+        public WFSLayerConfiguration findConfiguration(int id) {
+            final WFSLayerConfiguration conf = new WFSLayerConfiguration();
+            conf.setLayerId(Integer.toString(id));
+            conf.setWps_params("{}");
+            conf.setSLDStyles(new ArrayList<>(styles));
+            return conf;
+        }
+    }
+}
@@ -2,13 +2,20 @@ package fi.nls.oskari.map.view;
 
 import fi.nls.oskari.domain.GuestUser;
 import fi.nls.oskari.domain.User;
+import fi.nls.oskari.domain.map.view.Bundle;
+import fi.nls.oskari.domain.map.view.View;
 import fi.nls.oskari.service.DummyUserService;
 import fi.nls.oskari.util.PropertyUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 public class AppSetupServiceMybatisImplTest {
 
@@ -47,8 +54,47 @@ public class AppSetupServiceMybatisImplTest {
 
     }
 
+    @Test
+    public void testUpdatesDropCachedConfiguration() throws Exception {
+        // nothing listening so updates fail, the cache should be cleared anyway
+        PropertyUtil.addProperty("db.url", "jdbc:postgresql://localhost:1/oskari-test", true);
+        final ViewService failingService = new AppSetupServiceMybatisImpl();
+        final View view = new View();
+        view.setId(1);
+
+        cacheViews();
+        failingService.updateView(view);
+        assertNull(ViewConfigurationCache.get("view"));
+        assertNotNull("Other views should be kept", ViewConfigurationCache.get("other"));
+
+        cacheViews();
+        try {
+            failingService.updatePublishedView(view);
+            fail("Update should fail without a database");
+        } catch (ViewException expected) {}
+        assertNull(ViewConfigurationCache.get("view"));
+
+        cacheViews();
+        try {
+            failingService.updateBundleSettingsForView(view.getId(), new Bundle());
+            fail("Update should fail without a database");
+        } catch (ViewException expected) {}
+        assertNull(ViewConfigurationCache.get("view"));
+        assertNotNull("Other views should be kept", ViewConfigurationCache.get("other"));
+    }
+
+    private void cacheViews() {
+        final View view = new View();
+        view.setId(1);
+        final View other = new View();
+        other.setId(2);
+        ViewConfigurationCache.put("view", view, new JSONArray(), new JSONObject());
+        ViewConfigurationCache.put("other", other, new JSONArray(), new JSONObject());
+    }
+
     @After
     public void tearDown() {
+        ViewConfigurationCache.clear();
         PropertyUtil.clearProperties();
     }
 }
@@ -0,0 +1,77 @@
+package fi.nls.oskari.map.view;
+
+import fi.nls.oskari.domain.map.view.View;
+import fi.nls.oskari.util.JSONHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ViewConfigurationCacheTest {
+
+    @After
+    public void tearDown() {
+        ViewConfigurationCache.clear();
+    }
+
+    @Test
+    public void testCachedConfigurationIsCopied() throws Exception {
+        final View view = createView(1);
+        final JSONArray startupSequence = new JSONArray("[{\"bundlename\":\"mapfull\"}]");
+        final JSONObject configuration = JSONHelper.createJSONObject("{\"mapfull\":{\"conf\":{\"layers\":[]}}}");
+        ViewConfigurationCache.put("key", view, startupSequence, configuration);
+
+        // modifying after caching
+        startupSequence.put(JSONHelper.createJSONObject("{\"bundlename\":\"toolbar\"}"));
+        configuration.put("toolbar", new JSONObject());
+
+        final ViewConfigurationCache.Entry entry = ViewConfigurationCache.get("key");
+        assertNotNull(entry);
+        assertSame(view, entry.getView());
+        assertEquals(1, entry.getStartupSequence().length());
+        assertFalse(entry.getConfiguration().has("toolbar"));
+
+        // modifying a response, for example by adding user specific conf
+        entry.getConfiguration().getJSONObject("mapfull").put("user", new JSONObject());
+        entry.getStartupSequence().remove(0);
+        assertFalse(ViewConfigurationCache.get("key").getConfiguration().getJSONObject("mapfull").has("user"));
+        assertEquals(1, ViewConfigurationCache.get("key").getStartupSequence().length());
+    }
+
+    @Test
+    public void testInvalidateView() {
+        // same view for different languages
+        ViewConfigurationCache.put("fi", createView(1), new JSONArray(), new JSONObject());
+        ViewConfigurationCache.put("en", createView(1), new JSONArray(), new JSONObject());
+        ViewConfigurationCache.put("other", createView(2), new JSONArray(), new JSONObject());
+
+        ViewConfigurationCache.invalidate(1);
+
+        assertNull(ViewConfigurationCache.get("fi"));
+        assertNull(ViewConfigurationCache.get("en"));
+        assertNotNull("Other views should be kept", ViewConfigurationCache.get("other"));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        ViewConfigurationCache.put("fi", createView(1), new JSONArray(), new JSONObject());
+        ViewConfigurationCache.put("other", createView(2), new JSONArray(), new JSONObject());
+
+        ViewConfigurationCache.invalidateAll();
+
+        assertNull(ViewConfigurationCache.get("fi"));
+        assertNull(ViewConfigurationCache.get("other"));
+    }
+
+    private View createView(long id) {
+        final View view = new View();
+        view.setId(id);
+        return view;
+    }
+}
@@ -38,7 +38,15 @@ public class MyBatisHelper {
         }
     }
 
+    /**
+     * Builds a session factory for the configuration. Adds tracing for the statements (see RequestTrace).
+     */
     public static SqlSessionFactory build(Configuration config) {
+        boolean hasTracing = config.getInterceptors().stream()
+                .anyMatch(i -> i instanceof TracingInterceptor);
+        if (!hasTracing) {
+            config.addInterceptor(new TracingInterceptor());
+        }
         return new SqlSessionFactoryBuilder().build(config);
     }
 }
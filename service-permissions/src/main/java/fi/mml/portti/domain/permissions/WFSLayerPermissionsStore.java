@@ -70,6 +70,7 @@ public class WFSLayerPermissionsStore {
 	 */
 	public void save(String session) {
         JedisManager.setex(KEY + session, 86400,  getAsJSON());
+        JedisManager.notifyKeyChanged(KEY + session);
 	}
 
     /**
@@ -80,6 +81,7 @@ public class WFSLayerPermissionsStore {
 	@JsonIgnore
 	public static void destroy(String session) {
         JedisManager.del(KEY + session);
+        JedisManager.notifyKeyChanged(KEY + session);
 	}
 
     /**
@@ -88,6 +90,7 @@ public class WFSLayerPermissionsStore {
 	@JsonIgnore
 	public static void destroyAll() {
         JedisManager.delAll(KEY);
+        JedisManager.notifyKeyChanged(KEY);
 	}
 
 	/**
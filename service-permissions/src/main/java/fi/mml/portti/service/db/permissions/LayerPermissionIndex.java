@@ -0,0 +1,184 @@
+package fi.mml.portti.service.db.permissions;
+
+import fi.mml.portti.domain.permissions.Permissions;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.cache.JedisSubscriber;
+import fi.nls.oskari.domain.Role;
+import fi.nls.oskari.domain.User;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Precomputed map layer permissions. Maps each role/user and permission type to a bitmap of layer ids
+ * so checking which layers a user can access is a union of the bitmaps for the user's roles instead of
+ * a database query.
+ *
+ * The index is immutable and swapped as a whole. It's rebuilt on next access after invalidate() which is
+ * called when permissions or layers change. Other nodes in a cluster are notified with Redis pub/sub.
+ */
+public class LayerPermissionIndex {
+
+    private static final Logger LOG = LogFactory.getLogger(LayerPermissionIndex.class);
+
+    public static final String CHANNEL = "oskari_layer_permissions";
+
+    private static final String NODE_ID = UUID.randomUUID().toString();
+    private static final AtomicReference<LayerPermissionIndex> CURRENT = new AtomicReference<>();
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static final AtomicBoolean SUBSCRIBED = new AtomicBoolean(false);
+    private static final Object LOAD_LOCK = new Object();
+
+    private final long generation;
+    // key is externalType:externalId (like ROLE:2), value is permission type -> layer ids
+    private final Map<String, Map<String, BitSet>> layers = new HashMap<>();
+
+    private LayerPermissionIndex(long generation, Map<Long, List<Permissions>> permissionsByLayerId) {
+        this.generation = generation;
+        for (Map.Entry<Long, List<Permissions>> entry : permissionsByLayerId.entrySet()) {
+            final int layerId = entry.getKey().intValue();
+            for (Permissions perm : entry.getValue()) {
+                final Map<String, BitSet> byType = layers.computeIfAbsent(
+                        getKey(perm.getExternalIdType(), perm.getExternalId()), key -> new HashMap<>());
+                for (String type : perm.getGrantedPermissions()) {
+                    byType.computeIfAbsent(type, key -> new BitSet()).set(layerId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current index or builds a new one with the loader
+     * @param loader returns permissions for all map layers keyed by layer id
+     * @return index
+     */
+    static LayerPermissionIndex get(Supplier<Map<Long, List<Permissions>>> loader) {
+        LayerPermissionIndex index = CURRENT.get();
+        if (index != null && index.generation == GENERATION.get()) {
+            return index;
+        }
+        synchronized (LOAD_LOCK) {
+            index = CURRENT.get();
+            if (index != null && index.generation == GENERATION.get()) {
+                return index;
+            }
+            long start = System.currentTimeMillis();
+            index = new LayerPermissionIndex(GENERATION.get(), loader.get());
+            LOG.debug("Layer permission index built in", System.currentTimeMillis() - start, "ms");
+            // ignored on next get() if invalidate() was called while building
+            CURRENT.set(index);
+        }
+        if (SUBSCRIBED.compareAndSet(false, true)) {
+            JedisManager.subscribe(new InvalidationSubscriber(), CHANNEL);
+        }
+        return index;
+    }
+
+    /**
+     * Drops the index on this node and notifies other nodes to do the same.
+     * Should be called when permissions change or layers are modified (the permission
+     * mapping of a layer is based on its type, url and name).
+     */
+    public static void invalidate() {
+        invalidateLocal();
+        JedisManager.publish(CHANNEL, NODE_ID);
+    }
+
+    /**
+     * Changes every time the index is invalidated. Can be used as part of a cache key for
+     * content that depends on layer permissions.
+     * @return current generation of the index
+     */
+    public static long getGeneration() {
+        return GENERATION.get();
+    }
+
+    private static void invalidateLocal() {
+        GENERATION.incrementAndGet();
+        CURRENT.set(null);
+    }
+
+    private static String getKey(String externalType, Object externalId) {
+        return externalType + ":" + externalId;
+    }
+
+    /**
+     * Returns ids of layers that have the permission granted to the user directly or to any of the user's roles.
+     * @param user user to check
+     * @param permissionType like Permissions.PERMISSION_TYPE_VIEW_LAYER
+     * @return new bitmap of layer ids that can be modified by the caller
+     */
+    public BitSet getLayerIds(User user, String permissionType) {
+        final BitSet result = new BitSet();
+        or(result, getKey(Permissions.EXTERNAL_TYPE_USER, user.getId()), permissionType);
+        for (Role role : user.getRoles()) {
+            or(result, getKey(Permissions.EXTERNAL_TYPE_ROLE, role.getId()), permissionType);
+        }
+        return result;
+    }
+
+    /**
+     * @param user user to check
+     * @param layerId layer to check
+     * @param permissionType like Permissions.PERMISSION_TYPE_VIEW_LAYER
+     * @return true if the permission is granted to the user directly or to any of the user's roles
+     */
+    public boolean hasPermission(User user, int layerId, String permissionType) {
+        if (isSet(getKey(Permissions.EXTERNAL_TYPE_USER, user.getId()), permissionType, layerId)) {
+            return true;
+        }
+        for (Role role : user.getRoles()) {
+            if (isSet(getKey(Permissions.EXTERNAL_TYPE_ROLE, role.getId()), permissionType, layerId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param user user to check
+     * @return true if any layer permissions are granted to the user directly instead of a role
+     */
+    public boolean hasUserPermissions(User user) {
+        return layers.containsKey(getKey(Permissions.EXTERNAL_TYPE_USER, user.getId()));
+    }
+
+    private BitSet getBitSet(String key, String permissionType) {
+        final Map<String, BitSet> byType = layers.get(key);
+        return byType == null ? null : byType.get(permissionType);
+    }
+
+    private void or(BitSet result, String key, String permissionType) {
+        final BitSet ids = getBitSet(key, permissionType);
+        if (ids != null) {
+            result.or(ids);
+        }
+    }
+
+    private boolean isSet(String key, String permissionType, int layerId) {
+        final BitSet ids = getBitSet(key, permissionType);
+        return ids != null && ids.get(layerId);
+    }
+
+    /**
+     * Listens to invalidations from other nodes
+     */
+    private static class InvalidationSubscriber extends JedisSubscriber {
+        @Override
+        public void onMessage(String channel, String message) {
+            if (CHANNEL.equals(channel) && !NODE_ID.equals(message)) {
+                invalidateLocal();
+            }
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            SUBSCRIBED.set(false);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import fi.nls.oskari.domain.User;
 import fi.nls.oskari.permission.domain.Resource;
 import fi.nls.oskari.service.db.BaseService;
 
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -134,6 +135,32 @@ public interface PermissionsService extends BaseService<Permissions> {
     
     public boolean hasViewPermissionForLayerByLayerId(User user, long layerId);
 
+    /**
+     * Returns ids of map layers for which the permission has been granted to the user or roles where the user belongs.
+     * Uses a precomputed in-memory index (see LayerPermissionIndex) instead of querying the database.
+     * @param user current user
+     * @param permissionsType permissions type such as VIEW_LAYER or PUBLISH
+     * @return bitmap of layer ids
+     */
+    public BitSet getLayerIdsWithGrantedPermissions(User user, String permissionsType);
+
+    /**
+     * Checks map layer permission from the precomputed in-memory index (see LayerPermissionIndex).
+     * @param user current user
+     * @param layerId layer to check
+     * @param permissionsType permissions type such as VIEW_LAYER or PUBLISH
+     * @return true if the permission has been granted to the user or roles where the user belongs
+     */
+    public boolean hasLayerPermission(User user, int layerId, String permissionsType);
+
+    /**
+     * Responses listing layers can be shared between users with the same roles unless
+     * the user has been granted permissions directly.
+     * @param user current user
+     * @return true if any map layer permissions have been granted to the user instead of a role
+     */
+    public boolean hasUserSpecificLayerPermissions(User user);
+
     public boolean hasEditPermissionForLayerByLayerId(User user, long layerId);
 
     public boolean hasAddLayerPermission(User user);
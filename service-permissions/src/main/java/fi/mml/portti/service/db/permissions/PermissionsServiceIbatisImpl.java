@@ -97,6 +97,7 @@ public class PermissionsServiceIbatisImpl extends BaseIbatisService<Permissions>
         }
 
 		WFSLayerPermissionsStore.destroyAll();
+        LayerPermissionIndex.invalidate();
 	}
 	
 	public Set<String> getResourcesWithGrantedPermissions(
@@ -283,6 +284,7 @@ public class PermissionsServiceIbatisImpl extends BaseIbatisService<Permissions>
             delete(getNameSpace() + ".deletePermission",oskariPermissionId);
             // flush permissions for WFS transport
             WFSLayerPermissionsStore.destroyAll();
+            LayerPermissionIndex.invalidate();
         }
 
 	}
@@ -417,6 +419,23 @@ public class PermissionsServiceIbatisImpl extends BaseIbatisService<Permissions>
         
     }
 
+    public BitSet getLayerIdsWithGrantedPermissions(User user, String permissionsType) {
+        return getLayerPermissionIndex().getLayerIds(user, permissionsType);
+    }
+
+    public boolean hasLayerPermission(User user, int layerId, String permissionsType) {
+        return getLayerPermissionIndex().hasPermission(user, layerId, permissionsType);
+    }
+
+    public boolean hasUserSpecificLayerPermissions(User user) {
+        return getLayerPermissionIndex().hasUserPermissions(user);
+    }
+
+    private LayerPermissionIndex getLayerPermissionIndex() {
+        // empty id list and permission type returns permissions for all layers
+        return LayerPermissionIndex.get(() -> getPermissionsForLayers(Collections.emptyList(), null));
+    }
+
     public boolean hasEditPermissionForLayerByLayerId(User user, long layerId) {
 
         if (user.isAdmin()) {
@@ -529,6 +548,7 @@ public class PermissionsServiceIbatisImpl extends BaseIbatisService<Permissions>
         for(Permission permission : resource.getPermissions()) {
             insertPermission(resource, permission, false);
         }
+        LayerPermissionIndex.invalidate();
         // return object through db query
         return findResource(resource);
     }
@@ -552,6 +572,7 @@ public class PermissionsServiceIbatisImpl extends BaseIbatisService<Permissions>
         removeResourcePermissions(resource);
         log.debug("Deleting permissions for resource:", resource);
         delete(getNameSpace() + ".deleteResource", resource.getId());
+        LayerPermissionIndex.invalidate();
     }
 
     private Resource createResourceRow(final String type, final String mapping) {
@@ -0,0 +1,205 @@
+package fi.mml.portti.service.db.permissions;
+
+import fi.mml.portti.domain.permissions.Permissions;
+import fi.mml.portti.domain.permissions.UniqueResourceName;
+import fi.nls.oskari.domain.GuestUser;
+import fi.nls.oskari.domain.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LayerPermissionIndexTest {
+
+    private static final int LAYER_COUNT = 60;
+    private static final long GUEST_ROLE = 10;
+    private static final long USER_ROLE = 2;
+    private static final long USER_ID = 100;
+    private static final List<String> PERMISSION_TYPES = Arrays.asList(
+            Permissions.PERMISSION_TYPE_VIEW_LAYER,
+            Permissions.PERMISSION_TYPE_PUBLISH,
+            Permissions.PERMISSION_TYPE_EDIT_LAYER);
+
+    private TestPermissionsService service;
+
+    @Before
+    public void setUp() {
+        service = new TestPermissionsService();
+        for (long layerId = 1; layerId <= LAYER_COUNT; layerId++) {
+            if (layerId % 3 == 0) {
+                service.grant(layerId, Permissions.EXTERNAL_TYPE_ROLE, GUEST_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+            }
+            if (layerId % 3 != 2) {
+                service.grant(layerId, Permissions.EXTERNAL_TYPE_ROLE, USER_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+            }
+            if (layerId % 4 == 0) {
+                service.grant(layerId, Permissions.EXTERNAL_TYPE_ROLE, USER_ROLE, Permissions.PERMISSION_TYPE_PUBLISH);
+            }
+            if (layerId % 5 == 0) {
+                service.grant(layerId, Permissions.EXTERNAL_TYPE_USER, USER_ID, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+                service.grant(layerId, Permissions.EXTERNAL_TYPE_USER, USER_ID, Permissions.PERMISSION_TYPE_EDIT_LAYER);
+            }
+        }
+        // start from an empty index since it's shared by all service instances
+        LayerPermissionIndex.invalidate();
+    }
+
+    @Test
+    public void testGuest() {
+        assertSameAsQueries(getGuest());
+        assertFalse(service.hasUserSpecificLayerPermissions(getGuest()));
+    }
+
+    @Test
+    public void testRoleUser() {
+        final User user = new User();
+        user.setId(200);
+        user.addRole(USER_ROLE, "User");
+        assertSameAsQueries(user);
+        assertFalse(service.hasUserSpecificLayerPermissions(user));
+    }
+
+    @Test
+    public void testUserWithOwnPermissions() {
+        final User user = new User();
+        user.setId(USER_ID);
+        user.addRole(USER_ROLE, "User");
+        assertSameAsQueries(user);
+        assertTrue(service.hasUserSpecificLayerPermissions(user));
+    }
+
+    @Test
+    public void testUserWithoutRoles() {
+        final User user = new User();
+        user.setId(300);
+        assertSameAsQueries(user);
+        for (String type : PERMISSION_TYPES) {
+            assertTrue(service.getLayerIdsWithGrantedPermissions(user, type).isEmpty());
+        }
+    }
+
+    @Test
+    public void testIndexIsUpdatedWhenPermissionsChange() {
+        final User guest = getGuest();
+        final UniqueResourceName layer = new UniqueResourceName();
+        layer.setType(Permissions.RESOURCE_TYPE_MAP_LAYER);
+        layer.setNamespace("http://example.com/wms");
+        layer.setName("layer3");
+        assertTrue(service.hasLayerPermission(guest, 3, Permissions.PERMISSION_TYPE_VIEW_LAYER));
+
+        service.revoke(3, Permissions.EXTERNAL_TYPE_ROLE, GUEST_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+        service.deletePermissions(layer, Long.toString(GUEST_ROLE),
+                Permissions.EXTERNAL_TYPE_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+        assertFalse(service.hasLayerPermission(guest, 3, Permissions.PERMISSION_TYPE_VIEW_LAYER));
+        assertSameAsQueries(guest);
+
+        service.grant(4, Permissions.EXTERNAL_TYPE_ROLE, GUEST_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+        service.insertPermissions(layer, Long.toString(GUEST_ROLE),
+                Permissions.EXTERNAL_TYPE_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+        assertTrue(service.hasLayerPermission(guest, 4, Permissions.PERMISSION_TYPE_VIEW_LAYER));
+        assertSameAsQueries(guest);
+    }
+
+    @Test
+    public void testIndexIsUpdatedWhenLayersChange() {
+        final User guest = getGuest();
+        final long generation = LayerPermissionIndex.getGeneration();
+        assertFalse(service.hasLayerPermission(guest, LAYER_COUNT + 3, Permissions.PERMISSION_TYPE_VIEW_LAYER));
+
+        // permissions are mapped by layer url and name so a layer can get permissions by changing them
+        service.grant(LAYER_COUNT + 3, Permissions.EXTERNAL_TYPE_ROLE, GUEST_ROLE, Permissions.PERMISSION_TYPE_VIEW_LAYER);
+        LayerPermissionIndex.invalidate();
+        assertTrue(LayerPermissionIndex.getGeneration() > generation);
+        assertTrue(service.hasLayerPermission(guest, LAYER_COUNT + 3, Permissions.PERMISSION_TYPE_VIEW_LAYER));
+    }
+
+    private User getGuest() {
+        final User guest = new GuestUser();
+        guest.addRole(GUEST_ROLE, "Guest");
+        return guest;
+    }
+
+    /**
+     * Compares the index to checking the permissions of each layer with permissionGrantedForRolesOrUser()
+     */
+    private void assertSameAsQueries(User user) {
+        final Map<Long, List<Permissions>> permissions = service.getPermissionsForLayers(new ArrayList<>(), null);
+        for (String type : PERMISSION_TYPES) {
+            final BitSet ids = service.getLayerIdsWithGrantedPermissions(user, type);
+            final BitSet expected = new BitSet();
+            for (int layerId = 1; layerId <= LAYER_COUNT + 10; layerId++) {
+                final boolean granted = service.permissionGrantedForRolesOrUser(user, permissions.get((long) layerId), type);
+                if (granted) {
+                    expected.set(layerId);
+                }
+                assertEquals(type + " for layer " + layerId, granted, service.hasLayerPermission(user, layerId, type));
+            }
+            assertEquals(type, expected, ids);
+        }
+    }
+
+    /**
+     * Serves permissions from memory instead of the database
+     */
+    private static class TestPermissionsService extends PermissionsServiceIbatisImpl {
+        private final Map<Long, List<Permissions>> permissions = new HashMap<>();
+
+        void grant(long layerId, String externalType, long externalId, String permissionType) {
+            final Permissions perm = new Permissions();
+            perm.setExternalIdType(externalType);
+            perm.setExternalId(Long.toString(externalId));
+            perm.getGrantedPermissions().add(permissionType);
+            permissions.computeIfAbsent(layerId, id -> new ArrayList<>()).add(perm);
+        }
+
+        void revoke(long layerId, String externalType, long externalId, String permissionType) {
+            final Iterator<Permissions> it = permissions.get(layerId).iterator();
+            while (it.hasNext()) {
+                final Permissions perm = it.next();
+                if (perm.getExternalIdType().equals(externalType)
+                        && perm.getExternalId().equals(Long.toString(externalId))
+                        && perm.getGrantedPermissions().contains(permissionType)) {
+                    it.remove();
+                }
+            }
+        }
+
+        @Override
+        public Map<Long, List<Permissions>> getPermissionsForLayers(List<Long> layeridList, String permissionsType) {
+            final Map<Long, List<Permissions>> copy = new HashMap<>();
+            permissions.forEach((layerId, list) -> copy.put(layerId, new ArrayList<>(list)));
+            return copy;
+        }
+
+        @Override
+        public <F> F queryForObject(String sqlId, Object o) {
+            switch (sqlId) {
+                case "Permissions.findResource":
+                    return (F) Integer.valueOf(1);
+                case "Permissions.findOskariPermissionId":
+                    return (F) Long.valueOf(1);
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public synchronized int insert(String sqlId, Map o) {
+            return 1;
+        }
+
+        @Override
+        public void delete(String sqlId, long objectId) {
+        }
+    }
+}
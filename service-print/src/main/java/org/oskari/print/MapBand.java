@@ -0,0 +1,143 @@
+package org.oskari.print;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.oskari.print.loader.AsyncImageLoader;
+import org.oskari.print.request.PrintRequest;
+import org.oskari.print.wmts.WMTSCapabilitiesCache;
+
+import fi.nls.oskari.service.ServiceException;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Horizontal slice of the map. Large prints are loaded and composed one band at a time
+ * so that only the layer images of a single band are kept in memory at once.
+ *
+ * Each band is loaded with a gutter above and below it (excluding the edges of the map)
+ * so that symbols and labels crossing the band boundaries are less likely to be cut.
+ *
+ * Properties:
+ * - oskari.print.band.memorymb memory budget for the layer images of a band (default 64)
+ * - oskari.print.band.gutter gutter in pixels (default 32)
+ */
+class MapBand {
+
+    private static final String PROPERTY_PREFIX = "oskari.print.band.";
+    // Don't split into bands thinner than this, per band overhead (requests) would dominate
+    static final int MIN_HEIGHT = 64;
+
+    private static final long MEMORY_BUDGET = PropertyUtil.getOptional(PROPERTY_PREFIX + "memorymb", 64) * 1024L * 1024L;
+    private static final int GUTTER = PropertyUtil.getOptional(PROPERTY_PREFIX + "gutter", 32);
+
+    private final int y;
+    private final int height;
+    private final int gutterTop;
+    private final int gutterBottom;
+    private final double[] bbox;
+
+    MapBand(int y, int height, int gutterTop, int gutterBottom, double[] bbox) {
+        this.y = y;
+        this.height = height;
+        this.gutterTop = gutterTop;
+        this.gutterBottom = gutterBottom;
+        this.bbox = bbox;
+    }
+
+    static List<MapBand> split(PrintRequest request) {
+        int width = request.getWidth();
+        int height = request.getHeight();
+        double[] bbox = AsyncImageLoader.getBoundingBox(
+                request.getEast(), request.getNorth(),
+                request.getResolution(), width, height);
+        return split(width, height, request.getLayers().size(),
+                bbox, request.getResolution(), MEMORY_BUDGET, GUTTER);
+    }
+
+    /**
+     * @param layerCount number of layers, one image per layer + the canvas is needed per band
+     * @param bbox of the whole map
+     * @param budget memory budget in bytes for the images of a single band
+     */
+    static List<MapBand> split(int width, int height, int layerCount,
+            double[] bbox, double resolution, long budget, int gutter) {
+        List<MapBand> bands = new ArrayList<>();
+
+        long bytesPerRow = width * 4L * (layerCount + 1);
+        long rows = budget / Math.max(1L, bytesPerRow);
+        if (rows >= height) {
+            bands.add(new MapBand(0, height, 0, 0, bbox));
+            return bands;
+        }
+
+        int bandHeight = (int) Math.max(MIN_HEIGHT, rows - 2 * gutter);
+        for (int y = 0; y < height; y += bandHeight) {
+            int h = Math.min(bandHeight, height - y);
+            int gutterTop = Math.min(gutter, y);
+            int gutterBottom = Math.min(gutter, height - y - h);
+            double maxY = bbox[3] - (y - gutterTop) * resolution;
+            double minY = bbox[3] - (y + h + gutterBottom) * resolution;
+            bands.add(new MapBand(y, h, gutterTop, gutterBottom,
+                    new double[] { bbox[0], minY, bbox[2], maxY }));
+        }
+        return bands;
+    }
+
+    /**
+     * Start loading the layers of this band, images include the gutters
+     */
+    List<Future<BufferedImage>> load(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache)
+            throws ServiceException {
+        return AsyncImageLoader.initLayers(request, wmtsCapsCache,
+                request.getWidth(), getLoadHeight(), bbox);
+    }
+
+    /**
+     * @return the part of the layer image that belongs to this band (leaves out the gutters).
+     * If the image is too short the missing rows are left transparent, like PNG.compose() does.
+     */
+    BufferedImage crop(BufferedImage layerImage) {
+        if (gutterTop == 0 && gutterBottom == 0) {
+            return layerImage;
+        }
+        if (layerImage.getHeight() < gutterTop + height) {
+            // Service didn't return what we asked for, keep the rows we got in their place
+            BufferedImage padded = new BufferedImage(layerImage.getWidth(), height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = padded.createGraphics();
+            try {
+                g2d.drawImage(layerImage, 0, -gutterTop, null);
+            } finally {
+                g2d.dispose();
+            }
+            return padded;
+        }
+        return layerImage.getSubimage(0, gutterTop, layerImage.getWidth(), height);
+    }
+
+    /**
+     * @return first row of the band in the map
+     */
+    int getY() {
+        return y;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getGutterTop() {
+        return gutterTop;
+    }
+
+    int getLoadHeight() {
+        return gutterTop + height + gutterBottom;
+    }
+
+    double[] getBbox() {
+        return bbox;
+    }
+
+}
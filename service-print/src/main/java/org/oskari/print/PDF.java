@@ -8,6 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -29,13 +30,15 @@ import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
 import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
-import org.oskari.print.loader.AsyncImageLoader;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
+import org.oskari.print.util.EncodedImage;
+import org.oskari.print.util.ImageEncoder;
 import org.oskari.print.util.PDFBoxUtil;
 import org.oskari.print.util.Units;
 import org.oskari.print.wmts.WMTSCapabilitiesCache;
 
+import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.ServiceException;
@@ -99,6 +102,8 @@ public class PDF {
 
     private static final double[] SCALE_LINE_DISTANCES_METRES = new double[24];
 
+    private static final ImageEncoder ENCODER = ImageEncoder.getDefault();
+
     private static final String LOGO_PATH_DEFAULT = "logo.png";
     private static final String LOGO_PATH = PropertyUtil.get("print.logo.path", LOGO_PATH_DEFAULT);
 
@@ -125,8 +130,8 @@ public class PDF {
     /**
      * This method should be called via PrintService
      */
-    protected static void getPDF(PrintRequest request, PDDocument doc, WMTSCapabilitiesCache wmtsCapsCache)
-            throws IOException, ServiceException {
+    protected static void getPDF(PrintRequest request, PDDocument doc, WMTSCapabilitiesCache wmtsCapsCache,
+            PrintProgress progress) throws IOException, ServiceException {
         int mapWidthPx = request.getWidth();
         int mapHeightPx = request.getHeight();
 
@@ -139,8 +144,13 @@ public class PDF {
         float mapWidth = pixelsToPoints(mapWidthPx);
         float mapHeight = pixelsToPoints(mapHeightPx);
 
-        // Init requests to run in the background
-        List<Future<BufferedImage>> layerImages = AsyncImageLoader.initLayers(request, wmtsCapsCache);
+        // Large maps are loaded and drawn in bands to keep the memory usage bounded
+        List<MapBand> bands = MapBand.split(request);
+        LOG.debug("Printing", mapWidthPx, "x", mapHeightPx, "map in", bands.size(), "band(s)");
+        progress.init(request.getLayers().size(), bands.size());
+
+        // Init requests of the first band to run in the background
+        List<Future<BufferedImage>> layerImages = bands.get(0).load(request, wmtsCapsCache);
 
         PDPage page = new PDPage(pageSize);
         doc.addPage(page);
@@ -154,8 +164,15 @@ public class PDF {
             drawLogo(doc, stream, request);
             drawScale(stream, request);
             drawDate(stream, request, pageSize);
-            drawLayers(doc, stream, request.getLayers(), layerImages,
-                    x, y, mapWidth, mapHeight);
+            for (int i = 0; i < bands.size(); i++) {
+                MapBand band = bands.get(i);
+                if (i > 0) {
+                    layerImages = band.load(request, wmtsCapsCache);
+                }
+                drawLayers(doc, stream, request.getLayers(), layerImages, band,
+                        x, y, mapWidth, mapHeight, mapHeightPx, progress);
+                progress.bandRendered();
+            }
             drawBorder(stream, x, y, mapWidth, mapHeight);
         }
     }
@@ -350,18 +367,48 @@ public class PDF {
         }
     }
 
+    /**
+     * Draws the layers of a single band
+     * @param x left of the map
+     * @param y bottom of the map
+     * @param w width of the map
+     * @param h height of the map
+     * @param heightPx height of the map in pixels
+     */
     private static void drawLayers(PDDocument doc, PDPageContentStream stream,
-            List<PrintLayer> layers, List<Future<BufferedImage>> images,
-            float x, float y, float w, float h) throws IOException {
+            List<PrintLayer> layers, List<Future<BufferedImage>> images, MapBand band,
+            float x, float y, float w, float h, int heightPx, PrintProgress progress) throws IOException {
+        // Calculate both edges the same way so that adjacent bands meet exactly
+        float bandTop = y + h * (heightPx - band.getY()) / heightPx;
+        float bandBottom = y + h * (heightPx - band.getY() - band.getHeight()) / heightPx;
+        float bandHeight = bandTop - bandBottom;
+
+        // Start encoding each layer as soon as it's loaded, layers are encoded in parallel
+        List<Future<EncodedImage>> encoded = new ArrayList<>(layers.size());
         for (int i = 0; i < layers.size(); i++) {
             PrintLayer layer = layers.get(i);
-            Future<BufferedImage> image = images.get(i);
             try {
-                BufferedImage bi = image.get();
-                if (bi == null) {
-                    continue;
-                }
-                PDImageXObject imgObject = LosslessFactory.createFromImage(doc, bi);
+                BufferedImage bi = images.get(i).get();
+                progress.layerLoaded();
+                // The Future holds on to the image, let it be garbage collected once encoded
+                images.set(i, null);
+                encoded.add(bi == null ? null : ENCODER.encodeAsync(band.crop(bi), isVector(layer)));
+            } catch (InterruptedException | ExecutionException e) {
+                LOG.warn(e);
+                cancel(encoded);
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < layers.size(); i++) {
+            PrintLayer layer = layers.get(i);
+            Future<EncodedImage> image = encoded.get(i);
+            if (image == null) {
+                continue;
+            }
+            try {
+                PDImageXObject imgObject = PDFBoxUtil.createImageXObject(doc, image.get());
+                encoded.set(i, null);
 
                 // Set layer (Optional Content Group)
                 PDOptionalContentGroup ocg = PDFBoxUtil.getOCG(doc, layer.getName());
@@ -374,18 +421,42 @@ public class PDF {
                     PDExtendedGraphicsState gs = new PDExtendedGraphicsState();
                     gs.setNonStrokingAlphaConstant(0.01f * opacity);
                     stream.setGraphicsStateParameters(gs);
-                    stream.drawImage(imgObject, x, y, w, h);
+                    stream.drawImage(imgObject, x, bandBottom, w, bandHeight);
                     stream.restoreGraphicsState();
                 } else {
-                    stream.drawImage(imgObject, x, y, w, h);
+                    stream.drawImage(imgObject, x, bandBottom, w, bandHeight);
                 }
             } catch (InterruptedException | ExecutionException e) {
                 LOG.warn(e);
+                cancel(encoded);
                 throw new IOException(e.getMessage());
             }
         }
     }
 
+    /**
+     * Layers rendered from vector data are always embedded losslessly
+     */
+    private static boolean isVector(PrintLayer layer) {
+        switch (layer.getType()) {
+        case OskariLayer.TYPE_WFS:
+        case OskariLayer.TYPE_USERLAYER:
+        case OskariLayer.TYPE_ANALYSIS:
+        case "myplaces":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static void cancel(List<Future<EncodedImage>> encoded) {
+        for (Future<EncodedImage> f : encoded) {
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+    }
+
     private static void drawBorder(PDPageContentStream stream,
             float x, float y, float mapWidthPt, float mapHeightPt)
                     throws IOException {
@@ -8,11 +8,18 @@ import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
 import org.oskari.print.loader.AsyncImageLoader;
+import org.oskari.print.request.PrintFormat;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
+import org.oskari.print.util.PNGWriter;
 import org.oskari.print.wmts.WMTSCapabilitiesCache;
 
 public class PNG {
@@ -31,6 +38,94 @@ public class PNG {
 
         List<Future<BufferedImage>> images = AsyncImageLoader.initLayers(request, tmsCache);
 
+        BufferedImage canvas;
+        try {
+            List<BufferedImage> loaded = new ArrayList<>(images.size());
+            for (Future<BufferedImage> image : images) {
+                loaded.add(image.get());
+            }
+            canvas = compose(width, height, layers, loaded);
+        } catch (Exception e) {
+            LOG.warn(e);
+            return null;
+        }
+
+        BufferedImage scaled = scale(canvas,
+                request.getTargetWidth(),
+                request.getTargetHeight(),
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+        return scaled;
+    }
+
+    /**
+     * Loads, composes and encodes the map one band at a time, see {@link MapBand}.
+     * Falls back to {@link #getBufferedImage(PrintRequest, WMTSCapabilitiesCache)}
+     * if the image needs to be scaled to the target size.
+     * This method should be called via PrintService
+     */
+    protected static void writePNG(PrintRequest request, WMTSCapabilitiesCache tmsCache,
+            OutputStream out, PrintProgress progress) throws ServiceException, IOException {
+        final int width = request.getWidth();
+        final int height = request.getHeight();
+
+        if (isScaled(request)) {
+            progress.init(request.getLayers().size(), 1);
+            BufferedImage bi = getBufferedImage(request, tmsCache);
+            if (bi == null) {
+                throw new ServiceException("Failed to create image");
+            }
+            ImageIO.write(bi, PrintFormat.PNG.fileExtension, out);
+            progress.bandRendered();
+            return;
+        }
+
+        final List<PrintLayer> layers = request.getLayers();
+        final List<MapBand> bands = MapBand.split(request);
+        LOG.debug("Printing", width, "x", height, "PNG in", bands.size(), "band(s)");
+        progress.init(layers.size(), bands.size());
+
+        PNGWriter writer = new PNGWriter(out, width, height);
+        for (MapBand band : bands) {
+            List<Future<BufferedImage>> images = band.load(request, tmsCache);
+            BufferedImage canvas;
+            try {
+                List<BufferedImage> loaded = new ArrayList<>(images.size());
+                for (Future<BufferedImage> image : images) {
+                    loaded.add(image.get());
+                    progress.layerLoaded();
+                }
+                canvas = compose(width, band.getHeight(), band.getGutterTop(), layers, loaded);
+            } catch (InterruptedException | ExecutionException e) {
+                LOG.warn(e);
+                throw new ServiceException("Failed to load layers", e);
+            }
+            writer.write(canvas);
+            progress.bandRendered();
+        }
+        writer.finish();
+    }
+
+    private static boolean isScaled(PrintRequest request) {
+        return request.getTargetWidth() > 0
+                && request.getTargetWidth() != request.getWidth()
+                && request.getTargetHeight() > 0
+                && request.getTargetHeight() != request.getHeight();
+    }
+
+    /**
+     * Draws the layer images on top of each other with the opacity of the layer
+     * @param images images in the same order as layers, null for layers that couldn't be loaded
+     */
+    public static BufferedImage compose(int width, int height, List<PrintLayer> layers, List<BufferedImage> images) {
+        return compose(width, height, 0, layers, images);
+    }
+
+    /**
+     * @param offsetY rows to skip from the top of the layer images
+     */
+    public static BufferedImage compose(int width, int height, int offsetY,
+            List<PrintLayer> layers, List<BufferedImage> images) {
         BufferedImage canvas = new BufferedImage(width, height,
                 BufferedImage.TYPE_INT_ARGB);
 
@@ -38,28 +133,18 @@ public class PNG {
         try {
             for (int i = 0; i < layers.size(); i++) {
                 PrintLayer layer = layers.get(i);
-                Future<BufferedImage> image = images.get(i);
-                BufferedImage bi = image.get();
+                BufferedImage bi = images.get(i);
                 if (bi == null) {
                     continue;
                 }
                 float alpha = getAlpha(layer.getOpacity());
                 g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-                g2d.drawImage(bi, 0, 0, null);
+                g2d.drawImage(bi, 0, -offsetY, null);
             }
-        } catch (Exception e) {
-            LOG.warn(e);
-            return null;
         } finally {
             g2d.dispose();
         }
-
-        BufferedImage scaled = scale(canvas,
-                request.getTargetWidth(),
-                request.getTargetHeight(),
-                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-
-        return scaled;
+        return canvas;
     }
 
     private static float getAlpha(int opacity) {
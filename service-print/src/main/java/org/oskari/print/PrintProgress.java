@@ -0,0 +1,27 @@
+package org.oskari.print;
+
+/**
+ * Receives progress updates while a print is being rendered
+ */
+public interface PrintProgress {
+
+    PrintProgress NONE = new PrintProgress() {};
+
+    /**
+     * Called once before loading anything
+     * @param layers number of layers to load per band
+     * @param bands number of bands the map is rendered in, see MapBand
+     */
+    default void init(int layers, int bands) {}
+
+    /**
+     * Called each time the image of a layer (within a band) has been loaded
+     */
+    default void layerLoaded() {}
+
+    /**
+     * Called each time a band has been composed and written
+     */
+    default void bandRendered() {}
+
+}
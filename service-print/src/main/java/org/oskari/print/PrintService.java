@@ -3,11 +3,14 @@ package org.oskari.print;
 import fi.nls.oskari.service.ServiceException;
 
 import fi.nls.oskari.service.capabilities.CapabilitiesCacheService;
+import fi.nls.oskari.util.PropertyUtil;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
@@ -15,6 +18,9 @@ import org.oskari.print.wmts.WMTSCapabilitiesCache;
 
 public class PrintService {
 
+    private static final long PDF_MAX_MAIN_MEMORY_BYTES =
+            PropertyUtil.getOptional("oskari.print.pdf.memorymb", 64) * 1024L * 1024L;
+
     private WMTSCapabilitiesCache wmtsCapsCache;
 
     public PrintService() {
@@ -34,10 +40,47 @@ public class PrintService {
         return PNG.getBufferedImage(request, wmtsCapsCache);
     }
 
+    /**
+     * Writes the map as PNG to out, large maps are composed in bands
+     * so that the whole image is never in memory at once
+     */
+    public void writePNG(PrintRequest request, OutputStream out)
+            throws IOException, ServiceException {
+        writePNG(request, out, PrintProgress.NONE);
+    }
+
+    public void writePNG(PrintRequest request, OutputStream out, PrintProgress progress)
+            throws IOException, ServiceException {
+        request.setLayers(filterLayersWithZeroOpacity(request.getLayers()));
+        PNG.writePNG(request, wmtsCapsCache, out, progress);
+    }
+
     public void getPDF(PrintRequest request, PDDocument doc)
             throws IOException, ServiceException {
+        getPDF(request, doc, PrintProgress.NONE);
+    }
+
+    public void getPDF(PrintRequest request, PDDocument doc, PrintProgress progress)
+            throws IOException, ServiceException {
         request.setLayers(filterLayersWithZeroOpacity(request.getLayers()));
-        PDF.getPDF(request, doc, wmtsCapsCache);
+        PDF.getPDF(request, doc, wmtsCapsCache, progress);
+    }
+
+    /**
+     * Writes the map as PDF to out. The page images are kept in a scratch file
+     * instead of the heap once they exceed oskari.print.pdf.memorymb
+     */
+    public void writePDF(PrintRequest request, OutputStream out)
+            throws IOException, ServiceException {
+        writePDF(request, out, PrintProgress.NONE);
+    }
+
+    public void writePDF(PrintRequest request, OutputStream out, PrintProgress progress)
+            throws IOException, ServiceException {
+        try (PDDocument doc = new PDDocument(MemoryUsageSetting.setupMixed(PDF_MAX_MAIN_MEMORY_BYTES))) {
+            getPDF(request, doc, progress);
+            doc.save(out);
+        }
     }
 
     private static List<PrintLayer> filterLayersWithZeroOpacity(List<PrintLayer> layers) {
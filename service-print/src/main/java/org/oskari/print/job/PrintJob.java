@@ -0,0 +1,167 @@
+package org.oskari.print.job;
+
+import java.nio.file.Path;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.oskari.print.PrintProgress;
+import org.oskari.print.request.PrintFormat;
+import org.oskari.print.request.PrintRequest;
+
+/**
+ * Print request that is rendered in the background by PrintJobService.
+ * Tracks its own progress, the result is written to a temporary file.
+ */
+public class PrintJob implements PrintProgress {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    private final String id;
+    private final String owner;
+    private final PrintRequest request;
+    private final long created;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long started;
+    private volatile long finished;
+    private volatile String error;
+    private volatile Path result;
+    private volatile Future<?> future;
+
+    private volatile int layersPerBand;
+    private volatile int bandsTotal;
+    private final AtomicInteger layersLoaded = new AtomicInteger();
+    private final AtomicInteger bandsRendered = new AtomicInteger();
+
+    PrintJob(String id, String owner, PrintRequest request, long created) {
+        this.id = id;
+        this.owner = owner;
+        this.request = request;
+        this.created = created;
+    }
+
+    @Override
+    public void init(int layers, int bands) {
+        this.layersPerBand = layers;
+        this.bandsTotal = bands;
+    }
+
+    @Override
+    public void layerLoaded() {
+        layersLoaded.incrementAndGet();
+    }
+
+    @Override
+    public void bandRendered() {
+        bandsRendered.incrementAndGet();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public PrintRequest getRequest() {
+        return request;
+    }
+
+    public PrintFormat getFormat() {
+        return request.getFormat();
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return epoch millis when the job was submitted
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return epoch millis when rendering started, 0 if still queued
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    void setStarted(long started) {
+        this.started = started;
+    }
+
+    /**
+     * @return epoch millis when the job finished, 0 if not finished
+     */
+    public long getFinished() {
+        return finished;
+    }
+
+    void setFinished(long finished) {
+        this.finished = finished;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return the rendered PDF/PNG, null unless status is DONE
+     */
+    public Path getResult() {
+        return result;
+    }
+
+    void setResult(Path result) {
+        this.result = result;
+    }
+
+    Future<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    public int getLayersLoaded() {
+        return layersLoaded.get();
+    }
+
+    /**
+     * @return number of layer images to load, 0 until rendering has started
+     */
+    public int getLayersTotal() {
+        return layersPerBand * bandsTotal;
+    }
+
+    public int getBandsRendered() {
+        return bandsRendered.get();
+    }
+
+    /**
+     * @return number of bands the map is rendered in, 0 until rendering has started
+     */
+    public int getBandsTotal() {
+        return bandsTotal;
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.oskari.print.job;
+
+import fi.nls.oskari.service.ServiceException;
+
+/**
+ * Thrown when a print job can't be accepted right now, either because the queue is full
+ * or because the user already has the maximum number of unfinished jobs. Clients should try again later.
+ */
+public class PrintJobRejectedException extends ServiceException {
+
+    private final boolean userLimit;
+
+    public PrintJobRejectedException(String message, boolean userLimit) {
+        super(message);
+        this.userLimit = userLimit;
+    }
+
+    /**
+     * @return true if the per-user limit was hit, false if the queue was full
+     */
+    public boolean isUserLimit() {
+        return userLimit;
+    }
+
+}
@@ -0,0 +1,296 @@
+package org.oskari.print.job;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.oskari.print.PrintService;
+import org.oskari.print.request.PrintRequest;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Renders print requests in the background.
+ *
+ * Jobs are run by a fixed size pool of workers, the number of jobs waiting for a worker is bounded
+ * and each user may only have a limited number of unfinished jobs. Jobs that can't be accepted are
+ * rejected with PrintJobRejectedException. Results are written to temporary files that are removed
+ * (along with the job) once they have expired.
+ *
+ * Properties:
+ * - oskari.print.jobs.workers number of jobs rendered at the same time (default 2)
+ * - oskari.print.jobs.queue max number of jobs waiting for a worker (default 20)
+ * - oskari.print.jobs.peruser max number of unfinished jobs per user (default 2)
+ * - oskari.print.jobs.ttlsec how long finished jobs and their results are kept (default 600)
+ * - oskari.print.jobs.dir where results are written (default java.io.tmpdir/oskari-print)
+ *
+ * Metrics (registered to the given MetricRegistry):
+ * - print.jobs.queue number of jobs waiting for a worker
+ * - print.jobs.running number of jobs being rendered
+ * - print.jobs.wait time spent in the queue
+ * - print.jobs.render time spent rendering
+ * - print.jobs.failed, print.jobs.rejected
+ */
+public class PrintJobService {
+
+    private static final Logger LOG = LogFactory.getLogger(PrintJobService.class);
+
+    private static final String PROPERTY_PREFIX = "oskari.print.jobs.";
+    private static final String METRICS_PREFIX = "print.jobs";
+    private static final long CLEANUP_INTERVAL_MS = 60_000L;
+
+    private final PrintService printService;
+    private final Path dir;
+    private final int maxJobsPerUser;
+    private final long ttlMs;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, PrintJob> jobs = new ConcurrentHashMap<>();
+
+    private final Timer waitTimer;
+    private final Timer renderTimer;
+    private final Meter failed;
+    private final Meter rejected;
+
+    public PrintJobService(PrintService printService, MetricRegistry metrics) throws IOException {
+        this(printService, metrics,
+                PropertyUtil.getOptional(PROPERTY_PREFIX + "workers", 2),
+                PropertyUtil.getOptional(PROPERTY_PREFIX + "queue", 20),
+                PropertyUtil.getOptional(PROPERTY_PREFIX + "peruser", 2),
+                TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROPERTY_PREFIX + "ttlsec", 600)),
+                Paths.get(PropertyUtil.get(PROPERTY_PREFIX + "dir",
+                        Paths.get(System.getProperty("java.io.tmpdir"), "oskari-print").toString())));
+    }
+
+    PrintJobService(PrintService printService, MetricRegistry metrics,
+            int workers, int queueSize, int maxJobsPerUser, long ttlMs, Path dir) throws IOException {
+        this.printService = printService;
+        this.maxJobsPerUser = maxJobsPerUser;
+        this.ttlMs = ttlMs;
+        this.dir = Files.createDirectories(dir);
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "PrintJob-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PrintJob-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::removeExpired,
+                CLEANUP_INTERVAL_MS, CLEANUP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        // Replace metrics of a previous instance (e.g. the handler was re-initialized)
+        metrics.removeMatching((name, metric) -> name.startsWith(METRICS_PREFIX + "."));
+        metrics.register(METRICS_PREFIX + ".queue", (Gauge<Integer>) () -> executor.getQueue().size());
+        metrics.register(METRICS_PREFIX + ".running", (Gauge<Integer>) executor::getActiveCount);
+        waitTimer = metrics.timer(METRICS_PREFIX + ".wait");
+        renderTimer = metrics.timer(METRICS_PREFIX + ".render");
+        failed = metrics.meter(METRICS_PREFIX + ".failed");
+        rejected = metrics.meter(METRICS_PREFIX + ".rejected");
+    }
+
+    /**
+     * Queue the request for rendering
+     * @param owner identifies the user, the job can only be accessed with the same owner
+     * @throws PrintJobRejectedException if the queue is full or the owner has too many unfinished jobs
+     */
+    public PrintJob submit(String owner, PrintRequest request) throws PrintJobRejectedException {
+        final PrintJob job = new PrintJob(UUID.randomUUID().toString(), owner, request, System.currentTimeMillis());
+        synchronized (this) {
+            if (countUnfinished(owner) >= maxJobsPerUser) {
+                rejected.mark();
+                throw new PrintJobRejectedException("Too many unfinished print jobs", true);
+            }
+            jobs.put(job.getId(), job);
+        }
+        try {
+            job.setFuture(executor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            rejected.mark();
+            throw new PrintJobRejectedException("Print queue is full", false);
+        }
+        return job;
+    }
+
+    private int countUnfinished(String owner) {
+        int count = 0;
+        for (PrintJob job : jobs.values()) {
+            if (job.getOwner().equals(owner) && !job.getStatus().isFinished()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the job or null if it doesn't exist (anymore) or belongs to someone else
+     */
+    public PrintJob getJob(String owner, String id) {
+        final PrintJob job = jobs.get(id);
+        if (job == null || !job.getOwner().equals(owner)) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Stops the job if it's still queued or running and removes it along with its result
+     * @return false if the job doesn't exist (anymore) or belongs to someone else
+     */
+    public boolean cancel(String owner, String id) {
+        final PrintJob job = getJob(owner, id);
+        if (job == null) {
+            return false;
+        }
+        jobs.remove(id);
+        synchronized (job) {
+            if (!job.getStatus().isFinished()) {
+                job.setStatus(PrintJob.Status.CANCELLED);
+                job.setFinished(System.currentTimeMillis());
+            }
+        }
+        if (job.getFuture() != null) {
+            job.getFuture().cancel(true);
+            // Free the queue slot of a job that was still waiting
+            executor.purge();
+        }
+        deleteResult(job);
+        return true;
+    }
+
+    private void run(PrintJob job) {
+        final long started = System.currentTimeMillis();
+        synchronized (job) {
+            if (job.getStatus() != PrintJob.Status.QUEUED) {
+                // Cancelled while waiting
+                return;
+            }
+            job.setStarted(started);
+            job.setStatus(PrintJob.Status.RUNNING);
+        }
+        waitTimer.update(started - job.getCreated(), TimeUnit.MILLISECONDS);
+
+        final Path file = dir.resolve(job.getId() + "." + job.getFormat().fileExtension);
+        try (Timer.Context ignored = renderTimer.time();
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            render(job, out);
+        } catch (Exception e) {
+            LOG.warn(e, "Print job", job.getId(), "failed");
+            failed.mark();
+            deleteFile(file);
+            finish(job, PrintJob.Status.FAILED, e.getMessage());
+            return;
+        }
+        job.setResult(file);
+        if (!finish(job, PrintJob.Status.DONE, null)) {
+            // Cancelled while rendering
+            deleteFile(file);
+        }
+    }
+
+    private void render(PrintJob job, OutputStream out) throws Exception {
+        final PrintRequest request = job.getRequest();
+        switch (job.getFormat()) {
+        case PDF:
+            printService.writePDF(request, out, job);
+            break;
+        case PNG:
+            printService.writePNG(request, out, job);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported format " + job.getFormat());
+        }
+    }
+
+    /**
+     * @return false if the job was cancelled in the meanwhile
+     */
+    private boolean finish(PrintJob job, PrintJob.Status status, String error) {
+        synchronized (job) {
+            if (job.getStatus() == PrintJob.Status.CANCELLED) {
+                return false;
+            }
+            job.setError(error);
+            job.setFinished(System.currentTimeMillis());
+            job.setStatus(status);
+            return true;
+        }
+    }
+
+    void removeExpired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<PrintJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            final PrintJob job = it.next();
+            if (job.getStatus().isFinished() && job.getFinished() + ttlMs < now) {
+                it.remove();
+                deleteResult(job);
+            }
+        }
+    }
+
+    private static void deleteResult(PrintJob job) {
+        final Path result = job.getResult();
+        if (result != null) {
+            deleteFile(result);
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn(e, "Failed to delete", file);
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getRunningCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Stops the workers and removes all jobs and results
+     */
+    public void shutdown() {
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+        for (PrintJob job : jobs.values()) {
+            deleteResult(job);
+        }
+        jobs.clear();
+    }
+
+}
@@ -16,6 +16,20 @@ public class AsyncImageLoader {
 
     public static List<Future<BufferedImage>> initLayers(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache)
             throws ServiceException {
+        final int width = request.getWidth();
+        final int height = request.getHeight();
+        final double[] bbox = getBoundingBox(
+                request.getEast(), request.getNorth(),
+                request.getResolution(), width, height);
+        return initLayers(request, wmtsCapsCache, width, height, bbox);
+    }
+
+    /**
+     * Load the layers of the request for a part of the map
+     * @param bbox extent of the part, must match the resolution of the request
+     */
+    public static List<Future<BufferedImage>> initLayers(PrintRequest request, WMTSCapabilitiesCache wmtsCapsCache,
+            int width, int height, double[] bbox) throws ServiceException {
         final List<Future<BufferedImage>> images = new ArrayList<>();
 
         final List<PrintLayer> requestedLayers = request.getLayers();
@@ -23,11 +37,6 @@ public class AsyncImageLoader {
             return images;
         }
 
-        final int width = request.getWidth();
-        final int height = request.getHeight();
-        final double[] bbox = getBoundingBox(
-                request.getEast(), request.getNorth(),
-                request.getResolution(), width, height);
         final String srsName = request.getSrsName();
 
         for (PrintLayer layer : requestedLayers) {
@@ -30,7 +30,7 @@ public class CommandLoadImageArcGISREST extends CommandLoadImageBase {
     }
 
     @Override
-    public BufferedImage run() throws Exception {
+    protected BufferedImage load() throws Exception {
         final String request = new ArcGISMapExportBuilder()
                 .endPoint(layer.getUrl())
                 .layer(layer.getName())
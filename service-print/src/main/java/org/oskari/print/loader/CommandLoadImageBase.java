@@ -9,10 +9,15 @@ import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.HystrixThreadPoolProperties;
 
 import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.util.RequestTrace;
 
 public abstract class CommandLoadImageBase extends HystrixCommand<BufferedImage> {
 
     private static final String GROUP_KEY = "print";
+    private static final String TRACE_CATEGORY = "hystrix";
+
+    // commands are run on a Hystrix thread, keep a reference to the span of the thread that created the command
+    private final RequestTrace.Span parentSpan = RequestTrace.current();
 
     public CommandLoadImageBase(String commandName) {
         super(Setter
@@ -32,4 +37,13 @@ public abstract class CommandLoadImageBase extends HystrixCommand<BufferedImage>
         );
     }
 
+    @Override
+    protected final BufferedImage run() throws Exception {
+        try (RequestTrace.Span span = RequestTrace.span(parentSpan, TRACE_CATEGORY, getCommandKey().name())) {
+            return load();
+        }
+    }
+
+    protected abstract BufferedImage load() throws Exception;
+
 }
@@ -2,6 +2,7 @@ package org.oskari.print.loader;
 
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -15,6 +16,7 @@ import fi.nls.oskari.util.IOHelper;
 /**
  * HystrixCommand that loads BufferedImage from URL
  * Retries up to 3 times
+ * Tiles (WMTS, WFS) go through the shared PrintTileCache
  */
 public class CommandLoadImageFromURL extends CommandLoadImageBase {
 
@@ -25,19 +27,66 @@ public class CommandLoadImageFromURL extends CommandLoadImageBase {
     private final String uri;
     private final String user;
     private final String pass;
+    private final boolean tile;
 
     protected CommandLoadImageFromURL(String commandName, String uri, String user, String pass) {
+        this(commandName, uri, user, pass, false);
+    }
+
+    /**
+     * @param tile true if the image is a map tile that other prints are likely to request as well
+     */
+    protected CommandLoadImageFromURL(String commandName, String uri, String user, String pass, boolean tile) {
         super(commandName);
         this.uri = uri;
         this.user = user;
         this.pass = pass;
+        this.tile = tile;
     }
 
     @Override
-    public BufferedImage run() throws Exception {
+    protected BufferedImage load() throws Exception {
+        if (tile && PrintTileCache.isEnabled()) {
+            return loadTile(uri, user, pass);
+        }
         return load(uri, user, pass);
     }
 
+    public static BufferedImage loadTile(String uri, String user, String pass) throws InterruptedException, IOException {
+        final PrintTileCache cache = PrintTileCache.getInstance();
+        // credentials are per layer, but don't mix responses of different accounts
+        final String key = user == null || user.isEmpty() ? uri : user + '@' + uri;
+        final byte[] data = cache.get(key, () -> loadBytes(uri, user, pass, cache));
+        if (data == null) {
+            return null;
+        }
+        return ImageIO.read(new ByteArrayInputStream(data));
+    }
+
+    private static PrintTileCache.Response loadBytes(String uri, String user, String pass, PrintTileCache cache)
+            throws InterruptedException {
+        LOG.info("Loading tile from:", uri);
+        for (int i = 0; i < RETRY_COUNT; i++) {
+            try {
+                HttpURLConnection conn = IOHelper.getConnection(uri, user, pass);
+                byte[] data = IOHelper.readBytes(conn);
+                String contentType = conn.getContentType();
+                long expiresAt = 0;
+                // don't keep exception reports served with 200 OK
+                if (contentType != null && contentType.startsWith("image/")) {
+                    expiresAt = cache.getExpiresAt(conn.getHeaderField("Cache-Control"),
+                            conn.getExpiration(), System.currentTimeMillis());
+                }
+                return new PrintTileCache.Response(data, expiresAt);
+            } catch (IOException e) {
+                LOG.warn(e, "Failed to load tile from:", uri);
+                // Sleep for a moment between retries
+                Thread.sleep(SLEEP_BETWEEN_RETRIES_MS);
+            }
+        }
+        return null;
+    }
+
     public static BufferedImage load(String uri, String user, String pass) throws InterruptedException, IOException {
         LOG.info("Loading image from:", uri);
         for (int i = 0; i < RETRY_COUNT; i++) {
@@ -46,7 +46,7 @@ public abstract class CommandLoadImageProxyService extends CommandLoadImageBase
     }
 
     @Override
-    public BufferedImage run() throws Exception {
+    protected BufferedImage load() throws Exception {
         Map<String, String> queryParams = new GetMapBuilder()
                 .version(layer.getVersion())
                 .layer(layer.getName())
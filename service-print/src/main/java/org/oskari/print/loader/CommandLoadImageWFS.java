@@ -30,7 +30,7 @@ public class CommandLoadImageWFS extends CommandLoadImageBase {
     }
 
     @Override
-    public BufferedImage run() throws Exception {
+    protected BufferedImage load() throws Exception {
         PrintTile[] tiles = layer.getTiles();
         if (tiles == null) {
             // Preview doesn't set tiles
@@ -61,11 +61,19 @@ public class CommandLoadImageWFS extends CommandLoadImageBase {
             }
         });
 
-        String layerId = Integer.toString(layer.getId());
-        List<Future<BufferedImage>> images = new ArrayList<>(tiles.length);
+        // When printing in bands the bbox covers only a part of the map, skip the tiles outside of it
+        List<PrintTile> visible = new ArrayList<>(tiles.length);
         for (PrintTile tile : tiles) {
+            if (intersects(tile.getBbox(), bbox)) {
+                visible.add(tile);
+            }
+        }
+
+        String layerId = Integer.toString(layer.getId());
+        List<Future<BufferedImage>> images = new ArrayList<>(visible.size());
+        for (PrintTile tile : visible) {
             images.add(new CommandLoadImageFromURL(layerId, tile.getURL(),
-                    layer.getUsername(), layer.getPassword()).queue()); 
+                    layer.getUsername(), layer.getPassword(), true).queue());
         }
 
         final double x1 = bbox[0];
@@ -76,8 +84,8 @@ public class CommandLoadImageWFS extends CommandLoadImageBase {
         BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = canvas.createGraphics();
 
-        for (int i = 0; i < tiles.length; i++) {
-            PrintTile tile = tiles[i];
+        for (int i = 0; i < visible.size(); i++) {
+            PrintTile tile = visible.get(i);
             double[] tileBbox = tile.getBbox();
             // Flip y-axis, BufferedImages (0,0) is at top left
             int dx1 = getPt(tileBbox[0], x1, widthInNature, width);
@@ -95,6 +103,10 @@ public class CommandLoadImageWFS extends CommandLoadImageBase {
         return canvas;
     }
 
+    private static boolean intersects(double[] a, double[] b) {
+        return a[0] < b[2] && a[2] > b[0] && a[1] < b[3] && a[3] > b[1];
+    }
+
     private int getPt(double coordinate, double min, double distance, int points) {
         double percent = (coordinate - min) / distance;
         return (int) Math.round(percent * points);
@@ -32,7 +32,7 @@ public class CommandLoadImageWMS extends CommandLoadImageBase {
     }
 
     @Override
-    public BufferedImage run() throws Exception {
+    protected BufferedImage load() throws Exception {
         final String request = new GetMapBuilder().endPoint(layer.getUrl())
                 .version(layer.getVersion())
                 .layer(layer.getName(), layer.getStyle())
@@ -64,7 +64,7 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
     }
 
     @Override
-    public BufferedImage run() throws Exception {
+    protected BufferedImage load() throws Exception {
         WMTSCapabilitiesLayer layerCapabilities = getLayerCapabilities();
         TileMatrixSet tms = getTileMatrixSet();
         TileMatrix tm = getTileMatrix(tms);
@@ -137,7 +137,7 @@ public class CommandLoadImageWMTS extends CommandLoadImageBase {
                 String uri = requestBuilder.build();
                 futureTiles.add(new CommandLoadImageFromURL(
                         Integer.toString(layer.getId()), uri,
-                        layer.getUsername(), layer.getPassword()).queue());
+                        layer.getUsername(), layer.getPassword(), true).queue());
             }
         }
 
@@ -0,0 +1,260 @@
+package org.oskari.print.loader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Tiles shared by the print image loaders. Keeps the encoded responses (PNG/JPEG as sent by
+ * the service) in LRU order within a byte budget, decoding is left to the caller.
+ * Concurrent requests for the same tile wait for the first one instead of requesting it again.
+ *
+ * Upstream cache headers are honoured: responses with Cache-Control no-store, no-cache or private
+ * are not stored (the cache is shared between users), s-maxage/max-age and Expires set the
+ * expiration, otherwise oskari.print.tilecache.ttlsec is used.
+ *
+ * Properties:
+ * - oskari.print.tilecache.enabled (default true)
+ * - oskari.print.tilecache.sizemb byte budget in megabytes (default 64)
+ * - oskari.print.tilecache.ttlsec expiration when the service doesn't tell (default 600)
+ */
+public class PrintTileCache {
+
+    private static final Logger LOG = LogFactory.getLogger(PrintTileCache.class);
+
+    private static final String PROPERTY_PREFIX = "oskari.print.tilecache.";
+    // a single tile may take at most this share of the budget
+    private static final int MAX_ENTRY_SHARE = 8;
+
+    private static final PrintTileCache INSTANCE = new PrintTileCache(
+            PropertyUtil.getOptional(PROPERTY_PREFIX + "sizemb", 64) * 1024L * 1024L,
+            TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROPERTY_PREFIX + "ttlsec", 600)));
+
+    /**
+     * Loaded tile and until when it may be reused
+     */
+    public static class Response {
+        private final byte[] data;
+        private final long expiresAt;
+
+        /**
+         * @param data encoded tile
+         * @param expiresAt epoch millis, 0 or less if the response must not be stored
+         */
+        public Response(byte[] data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @return the tile or null if it couldn't be loaded
+         */
+        Response load() throws IOException, InterruptedException;
+    }
+
+    private final long maxBytes;
+    private final long defaultTtlMs;
+    // access ordered -> iteration starts from the least recently used
+    private final LinkedHashMap<String, Response> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    PrintTileCache(long maxBytes, long defaultTtlMs) {
+        this.maxBytes = maxBytes;
+        this.defaultTtlMs = defaultTtlMs;
+    }
+
+    public static PrintTileCache getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return PropertyUtil.getOptional(PROPERTY_PREFIX + "enabled", true);
+    }
+
+    /**
+     * @param key identifies the tile, usually the url
+     * @param loader called if the tile isn't cached and isn't being loaded by someone else
+     * @return encoded tile or null if it couldn't be loaded
+     */
+    public byte[] get(String key, Loader loader) throws IOException, InterruptedException {
+        byte[] data = getCached(key);
+        if (data != null) {
+            hits.incrementAndGet();
+            return data;
+        }
+
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        final CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            // someone might have completed the load between getCached() and putIfAbsent()
+            data = getCached(key);
+            if (data == null) {
+                misses.incrementAndGet();
+                final Response response = loader.load();
+                if (response != null) {
+                    data = response.getData();
+                    put(key, response);
+                }
+            }
+            future.complete(data);
+            return data;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                // the loading thread was interrupted, not us
+                throw new InterruptedIOException(cause.getMessage());
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private synchronized byte[] getCached(String key) {
+        final Response cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.getExpiresAt() <= System.currentTimeMillis()) {
+            entries.remove(key);
+            bytes -= cached.getData().length;
+            return null;
+        }
+        return cached.getData();
+    }
+
+    synchronized void put(String key, Response response) {
+        final byte[] data = response.getData();
+        if (data == null || response.getExpiresAt() <= System.currentTimeMillis()) {
+            return;
+        }
+        if (data.length > maxBytes / MAX_ENTRY_SHARE) {
+            LOG.debug("Not caching", key, "- too large:", data.length, "bytes");
+            return;
+        }
+        final Response previous = entries.put(key, response);
+        if (previous != null) {
+            bytes -= previous.getData().length;
+        }
+        bytes += data.length;
+        final Iterator<Map.Entry<String, Response>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().getData().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * @param cacheControl value of Cache-Control header, may be null
+     * @param expires value of Expires header as epoch millis, 0 if missing
+     * @param now epoch millis
+     * @return until when the response may be reused, 0 if it must not be stored
+     */
+    public long getExpiresAt(String cacheControl, long expires, long now) {
+        if (cacheControl != null) {
+            long maxAge = -1;
+            long sMaxAge = -1;
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                final String d = directive.trim();
+                if (d.equals("no-store") || d.equals("no-cache") || d.startsWith("private")) {
+                    return 0;
+                }
+                if (d.startsWith("s-maxage=")) {
+                    sMaxAge = parseSeconds(d.substring("s-maxage=".length()));
+                } else if (d.startsWith("max-age=")) {
+                    maxAge = parseSeconds(d.substring("max-age=".length()));
+                }
+            }
+            // s-maxage is meant for shared caches like this one
+            final long seconds = sMaxAge >= 0 ? sMaxAge : maxAge;
+            if (seconds >= 0) {
+                return seconds == 0 ? 0 : now + TimeUnit.SECONDS.toMillis(seconds);
+            }
+        }
+        if (expires > 0) {
+            return expires > now ? expires : 0;
+        }
+        return now + defaultTtlMs;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+}
@@ -0,0 +1,47 @@
+package org.oskari.print.util;
+
+/**
+ * Image encoded for embedding in PDF, either JPEG (DCTDecode) or 8-bit
+ * RGB samples compressed with Flate (FlateDecode)
+ */
+public class EncodedImage {
+
+    private final byte[] data;
+    private final byte[] alpha;
+    private final int width;
+    private final int height;
+    private final boolean jpeg;
+
+    EncodedImage(byte[] data, byte[] alpha, int width, int height, boolean jpeg) {
+        this.data = data;
+        this.alpha = alpha;
+        this.width = width;
+        this.height = height;
+        this.jpeg = jpeg;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return Flate compressed 8-bit alpha samples (for a soft mask),
+     * null if the image is opaque
+     */
+    public byte[] getAlpha() {
+        return alpha;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isJPEG() {
+        return jpeg;
+    }
+
+}
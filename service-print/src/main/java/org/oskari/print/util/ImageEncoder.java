@@ -0,0 +1,198 @@
+package org.oskari.print.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Encodes layer images for embedding in PDF.
+ *
+ * Opaque raster layers (orthophotos, background maps) are encoded as JPEG which is a fraction
+ * of the size of lossless encoding and faster to compress. Images with vector content or
+ * transparent pixels are encoded losslessly, the alpha channel becomes a soft mask.
+ * Encoding is done on a shared pool of threads so that layers are encoded in parallel.
+ *
+ * Properties:
+ * - oskari.print.pdf.images "auto" (default) or "lossless" to never use JPEG
+ * - oskari.print.pdf.jpeg.quality between 0 and 1 (default 0.85)
+ * - oskari.print.pdf.dpi downsample images to this resolution, the map is rendered
+ *   at OGC dpi (~91 dpi) so only lower values have an effect (default 0, not downsampled)
+ * - oskari.print.pdf.encoder.threads (default number of processors)
+ */
+public class ImageEncoder {
+
+    private static final String PROPERTY_PREFIX = "oskari.print.pdf.";
+
+    private static final int THREADS = PropertyUtil.getOptional(PROPERTY_PREFIX + "encoder.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService EXECUTOR;
+    static {
+        final AtomicInteger threadCount = new AtomicInteger();
+        EXECUTOR = Executors.newFixedThreadPool(Math.max(1, THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "PDF-image-encoder-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final ImageEncoder DEFAULT = new ImageEncoder(
+            "lossless".equals(PropertyUtil.get(PROPERTY_PREFIX + "images", "auto").toLowerCase(Locale.ROOT)),
+            (float) PropertyUtil.getOptional(PROPERTY_PREFIX + "jpeg.quality", 0.85),
+            PropertyUtil.getOptional(PROPERTY_PREFIX + "dpi", 0.0));
+
+    private final boolean losslessOnly;
+    private final float jpegQuality;
+    private final double scale;
+
+    /**
+     * @param losslessOnly never use JPEG
+     * @param jpegQuality between 0 and 1
+     * @param dpi resolution to downsample to, 0 or less to keep the resolution of the map
+     */
+    public ImageEncoder(boolean losslessOnly, float jpegQuality, double dpi) {
+        this.losslessOnly = losslessOnly;
+        this.jpegQuality = jpegQuality;
+        this.scale = dpi > 0 && dpi < Units.OGC_DPI ? dpi / Units.OGC_DPI : 1.0;
+    }
+
+    public static ImageEncoder getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Encode the image on the shared encoder pool
+     * @see #encode(BufferedImage, boolean)
+     */
+    public Future<EncodedImage> encodeAsync(BufferedImage img, boolean vector) {
+        return EXECUTOR.submit(() -> encode(img, vector));
+    }
+
+    /**
+     * @param vector true if the image is rendered from vector data (sharp edges, text)
+     * which JPEG would blur, the image is then always encoded losslessly
+     */
+    public EncodedImage encode(BufferedImage img, boolean vector) throws IOException {
+        BufferedImage scaled = downsample(img);
+        boolean opaque = isOpaque(scaled);
+        if (opaque && !vector && !losslessOnly) {
+            return encodeJPEG(scaled);
+        }
+        return encodeLossless(scaled, opaque);
+    }
+
+    BufferedImage downsample(BufferedImage img) {
+        if (scale >= 1.0) {
+            return img;
+        }
+        int w = Math.max(1, (int) Math.round(img.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(img.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(w, h, img.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaled.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(img, 0, 0, w, h, null);
+        } finally {
+            g2d.dispose();
+        }
+        return scaled;
+    }
+
+    static boolean isOpaque(BufferedImage img) {
+        if (!img.getColorModel().hasAlpha()) {
+            return true;
+        }
+        int w = img.getWidth();
+        int[] row = new int[w];
+        for (int y = 0; y < img.getHeight(); y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            for (int argb : row) {
+                if ((argb >>> 24) != 0xFF) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private EncodedImage encodeJPEG(BufferedImage img) throws IOException {
+        BufferedImage rgb = img;
+        if (img.getType() != BufferedImage.TYPE_INT_RGB) {
+            // The JPEG writer would interpret the alpha channel as a fourth color component
+            rgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = rgb.createGraphics();
+            try {
+                g2d.drawImage(img, 0, 0, null);
+            } finally {
+                g2d.dispose();
+            }
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(baos)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new EncodedImage(baos.toByteArray(), null, rgb.getWidth(), rgb.getHeight(), true);
+    }
+
+    private static EncodedImage encodeLossless(BufferedImage img, boolean opaque) throws IOException {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] row = new int[w];
+        byte[] rgbRow = new byte[w * 3];
+        byte[] alphaRow = new byte[w];
+
+        Deflater rgbDeflater = new Deflater();
+        Deflater alphaDeflater = new Deflater();
+        ByteArrayOutputStream rgbBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream alphaBytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream rgb = new DeflaterOutputStream(rgbBytes, rgbDeflater);
+                DeflaterOutputStream alpha = new DeflaterOutputStream(alphaBytes, alphaDeflater)) {
+            for (int y = 0; y < h; y++) {
+                img.getRGB(0, y, w, 1, row, 0, w);
+                for (int x = 0, i = 0; x < w; x++) {
+                    int argb = row[x];
+                    rgbRow[i++] = (byte) (argb >>> 16);
+                    rgbRow[i++] = (byte) (argb >>> 8);
+                    rgbRow[i++] = (byte) argb;
+                    alphaRow[x] = (byte) (argb >>> 24);
+                }
+                rgb.write(rgbRow);
+                if (!opaque) {
+                    alpha.write(alphaRow);
+                }
+            }
+        } finally {
+            rgbDeflater.end();
+            alphaDeflater.end();
+        }
+        return new EncodedImage(rgbBytes.toByteArray(), opaque ? null : alphaBytes.toByteArray(), w, h, false);
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.oskari.print.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import org.apache.pdfbox.cos.COSName;
@@ -8,6 +9,9 @@ import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.graphics.optionalcontent.PDOptionalContentGroup;
 import org.apache.pdfbox.pdmodel.graphics.optionalcontent.PDOptionalContentProperties;
 import org.apache.pdfbox.util.Matrix;
@@ -75,6 +79,21 @@ public class PDFBoxUtil {
         }
     }
 
+    /**
+     * Create the image XObject from already encoded data, see ImageEncoder
+     */
+    public static PDImageXObject createImageXObject(PDDocument doc, EncodedImage img) throws IOException {
+        COSName filter = img.isJPEG() ? COSName.DCT_DECODE : COSName.FLATE_DECODE;
+        PDImageXObject image = new PDImageXObject(doc, new ByteArrayInputStream(img.getData()),
+                filter, img.getWidth(), img.getHeight(), 8, PDDeviceRGB.INSTANCE);
+        if (img.getAlpha() != null) {
+            PDImageXObject smask = new PDImageXObject(doc, new ByteArrayInputStream(img.getAlpha()),
+                    COSName.FLATE_DECODE, img.getWidth(), img.getHeight(), 8, PDDeviceGray.INSTANCE);
+            image.getCOSObject().setItem(COSName.SMASK, smask);
+        }
+        return image;
+    }
+
     public static void closeSilently(PDDocument doc) {
         try {
             doc.close();
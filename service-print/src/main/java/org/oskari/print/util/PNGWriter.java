@@ -0,0 +1,243 @@
+package org.oskari.print.util;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a 8-bit RGBA PNG image row by row so that the whole image never
+ * needs to be in memory. ImageIO can only write complete RenderedImages.
+ *
+ * Usage: create with the final size, call {@link #write(BufferedImage)}
+ * for each band of rows from top to bottom and finally {@link #finish()}.
+ */
+public class PNGWriter {
+
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+
+    private final int[] argb;
+    private byte[] prev;
+    private byte[] curr;
+    private final byte[][] filtered;
+    private int rowsWritten;
+
+    public PNGWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+
+        int rowBytes = width * BYTES_PER_PIXEL;
+        this.argb = new int[width];
+        this.prev = new byte[rowBytes];
+        this.curr = new byte[rowBytes];
+        this.filtered = new byte[5][1 + rowBytes];
+
+        this.out.write(SIGNATURE);
+        writeHeader();
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.idat = new DeflaterOutputStream(new IDATOutputStream(), deflater, IDAT_CHUNK_SIZE);
+    }
+
+    /**
+     * Write all rows of the image
+     * @param band image with the same width as the PNG
+     */
+    public void write(BufferedImage band) throws IOException {
+        write(band, 0, band.getHeight());
+    }
+
+    /**
+     * @param band image with the same width as the PNG
+     * @param y first row of the image to write
+     * @param h number of rows to write
+     */
+    public void write(BufferedImage band, int y, int h) throws IOException {
+        if (band.getWidth() != width) {
+            throw new IllegalArgumentException("Expected width " + width + ", got " + band.getWidth());
+        }
+        if (rowsWritten + h > height) {
+            throw new IllegalStateException("Too many rows, height is " + height);
+        }
+        for (int row = y; row < y + h; row++) {
+            band.getRGB(0, row, width, 1, argb, 0, width);
+            for (int i = 0, j = 0; i < width; i++) {
+                int px = argb[i];
+                curr[j++] = (byte) (px >>> 16);
+                curr[j++] = (byte) (px >>> 8);
+                curr[j++] = (byte) px;
+                curr[j++] = (byte) (px >>> 24);
+            }
+            idat.write(filterRow());
+            byte[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+            rowsWritten++;
+        }
+    }
+
+    /**
+     * Writes the rest of the compressed data and the end of the image.
+     * Doesn't close the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (rowsWritten != height) {
+            throw new IllegalStateException("Wrote " + rowsWritten + " rows, expected " + height);
+        }
+        idat.close();
+        deflater.end();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    /**
+     * Try every filter and pick the one with the smallest sum of absolute
+     * differences, the same heuristic libpng and ImageIO use
+     */
+    private byte[] filterRow() {
+        int n = curr.length;
+        long[] sums = new long[5];
+        for (int f = 0; f < 5; f++) {
+            filtered[f][0] = (byte) f;
+        }
+        for (int i = 0; i < n; i++) {
+            int x = curr[i] & 0xff;
+            int a = i >= BYTES_PER_PIXEL ? curr[i - BYTES_PER_PIXEL] & 0xff : 0;
+            int b = prev[i] & 0xff;
+            int c = i >= BYTES_PER_PIXEL ? prev[i - BYTES_PER_PIXEL] & 0xff : 0;
+
+            byte none = (byte) x;
+            byte sub = (byte) (x - a);
+            byte up = (byte) (x - b);
+            byte avg = (byte) (x - ((a + b) >>> 1));
+            byte paeth = (byte) (x - paethPredictor(a, b, c));
+
+            filtered[FILTER_NONE][i + 1] = none;
+            filtered[FILTER_SUB][i + 1] = sub;
+            filtered[FILTER_UP][i + 1] = up;
+            filtered[FILTER_AVERAGE][i + 1] = avg;
+            filtered[FILTER_PAETH][i + 1] = paeth;
+
+            sums[FILTER_NONE] += Math.abs(none);
+            sums[FILTER_SUB] += Math.abs(sub);
+            sums[FILTER_UP] += Math.abs(up);
+            sums[FILTER_AVERAGE] += Math.abs(avg);
+            sums[FILTER_PAETH] += Math.abs(paeth);
+        }
+        int best = FILTER_NONE;
+        for (int f = 1; f < 5; f++) {
+            if (sums[f] < sums[best]) {
+                best = f;
+            }
+        }
+        return filtered[best];
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private void writeHeader() throws IOException {
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = BIT_DEPTH;
+        ihdr[9] = COLOR_TYPE_RGBA;
+        ihdr[10] = 0; // deflate
+        ihdr[11] = 0; // adaptive filtering
+        ihdr[12] = 0; // no interlace
+        writeChunk("IHDR", ihdr, ihdr.length);
+    }
+
+    private void writeChunk(String type, byte[] data, int len) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, len);
+        out.writeInt(len);
+        out.write(typeBytes);
+        out.write(data, 0, len);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    /**
+     * Splits the compressed stream to IDAT chunks
+     */
+    private class IDATOutputStream extends OutputStream {
+
+        private final byte[] buf = new byte[IDAT_CHUNK_SIZE];
+        private int len;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (len == buf.length) {
+                flushChunk();
+            }
+            buf[len++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int n) throws IOException {
+            while (n > 0) {
+                if (len == buf.length) {
+                    flushChunk();
+                }
+                int k = Math.min(n, buf.length - len);
+                System.arraycopy(b, off, buf, len, k);
+                len += k;
+                off += k;
+                n -= k;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (len > 0) {
+                writeChunk("IDAT", buf, len);
+                len = 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.oskari.print;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MapBandTest {
+
+    private static final double[] BBOX = { 0, 0, 1000, 2000 };
+    private static final double RESOLUTION = 1;
+
+    @Test
+    public void testSmallMapIsSingleBand() {
+        List<MapBand> bands = MapBand.split(1000, 2000, 2, BBOX, RESOLUTION, 1000 * 4 * 3 * 2000, 32);
+        assertEquals(1, bands.size());
+        MapBand band = bands.get(0);
+        assertEquals(0, band.getY());
+        assertEquals(2000, band.getHeight());
+        assertEquals(2000, band.getLoadHeight());
+        assertArrayEquals(BBOX, band.getBbox(), 0);
+    }
+
+    @Test
+    public void testBandsCoverTheMap() {
+        // room for 564 rows -> 500 rows + 2 * 32 rows of gutter
+        long budget = 1000L * 4 * 3 * 564;
+        List<MapBand> bands = MapBand.split(1000, 2000, 2, BBOX, RESOLUTION, budget, 32);
+        assertEquals(4, bands.size());
+
+        int y = 0;
+        for (MapBand band : bands) {
+            assertEquals(y, band.getY());
+            assertEquals(500, band.getHeight());
+            assertEquals(true, band.getLoadHeight() * 1000L * 4 * 3 <= budget);
+            y += band.getHeight();
+        }
+        assertEquals(2000, y);
+
+        // No gutter outside of the map
+        MapBand first = bands.get(0);
+        assertEquals(0, first.getGutterTop());
+        assertEquals(532, first.getLoadHeight());
+        assertArrayEquals(new double[] { 0, 1468, 1000, 2000 }, first.getBbox(), 0);
+
+        MapBand second = bands.get(1);
+        assertEquals(32, second.getGutterTop());
+        assertEquals(564, second.getLoadHeight());
+        assertArrayEquals(new double[] { 0, 968, 1000, 1532 }, second.getBbox(), 0);
+
+        MapBand last = bands.get(3);
+        assertEquals(532, last.getLoadHeight());
+        assertArrayEquals(new double[] { 0, 0, 1000, 532 }, last.getBbox(), 0);
+    }
+
+    @Test
+    public void testMinimumHeight() {
+        List<MapBand> bands = MapBand.split(1000, 200, 10, BBOX, RESOLUTION, 1, 0);
+        assertEquals(4, bands.size());
+        assertEquals(MapBand.MIN_HEIGHT, bands.get(0).getHeight());
+        assertEquals(200 - 3 * MapBand.MIN_HEIGHT, bands.get(3).getHeight());
+    }
+
+    @Test
+    public void testCrop() {
+        MapBand band = new MapBand(500, 500, 32, 32, BBOX);
+        BufferedImage cropped = band.crop(createImage(1000, band.getLoadHeight()));
+        assertEquals(500, cropped.getHeight());
+        // row 32 of the loaded image is the first row of the band
+        assertEquals(Color.RED.getRGB(), cropped.getRGB(0, 0));
+        assertEquals(Color.BLUE.getRGB(), cropped.getRGB(0, 1));
+    }
+
+    @Test
+    public void testCropTooShortImage() {
+        MapBand band = new MapBand(500, 500, 32, 32, BBOX);
+        BufferedImage cropped = band.crop(createImage(1000, 300));
+        assertEquals("Gutters should be left out even if the image is too short", 500, cropped.getHeight());
+        assertEquals(1000, cropped.getWidth());
+        assertEquals(Color.RED.getRGB(), cropped.getRGB(0, 0));
+        assertEquals(Color.BLUE.getRGB(), cropped.getRGB(0, 300 - 32 - 1));
+        assertEquals("Missing rows should be transparent", 0, cropped.getRGB(0, 300 - 32) >>> 24);
+        assertEquals(0, cropped.getRGB(0, 499) >>> 24);
+    }
+
+    /**
+     * Blue image with a red row at the top of the band (below the gutter)
+     */
+    private BufferedImage createImage(int width, int height) {
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = bi.createGraphics();
+        g2d.setColor(Color.BLUE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(Color.RED);
+        g2d.fillRect(0, 32, width, 1);
+        g2d.dispose();
+        return bi;
+    }
+
+}
@@ -0,0 +1,178 @@
+package org.oskari.print.job;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oskari.print.PrintProgress;
+import org.oskari.print.PrintService;
+import org.oskari.print.request.PrintFormat;
+import org.oskari.print.request.PrintRequest;
+import org.oskari.print.wmts.WMTSCapabilitiesCache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import fi.nls.oskari.service.ServiceException;
+
+public class PrintJobServiceTest {
+
+    private static final byte[] PNG = { 1, 2, 3 };
+
+    private Path dir;
+    private MetricRegistry metrics;
+    private CountDownLatch release;
+    private PrintService printService;
+    private PrintJobService service;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("printjobs");
+        metrics = new MetricRegistry();
+        release = new CountDownLatch(1);
+        printService = new PrintService((WMTSCapabilitiesCache) null) {
+            @Override
+            public void writePNG(PrintRequest request, OutputStream out, PrintProgress progress)
+                    throws IOException, ServiceException {
+                progress.init(2, 1);
+                progress.layerLoaded();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+                progress.layerLoaded();
+                out.write(PNG);
+                progress.bandRendered();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        service.shutdown();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        dir.toFile().delete();
+    }
+
+    private static PrintRequest request() {
+        PrintRequest request = new PrintRequest();
+        request.setFormat(PrintFormat.PNG);
+        return request;
+    }
+
+    private static void await(PrintJob job, PrintJob.Status status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getStatus() != status && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(status, job.getStatus());
+    }
+
+    @Test
+    public void testJobIsRendered() throws Exception {
+        service = new PrintJobService(printService, metrics, 1, 1, 1, 60_000L, dir);
+        PrintJob job = service.submit("user", request());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getLayersLoaded() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(PrintJob.Status.RUNNING, job.getStatus());
+        assertEquals(1, job.getLayersLoaded());
+        assertEquals(2, job.getLayersTotal());
+        assertEquals(0, job.getBandsRendered());
+
+        release.countDown();
+        await(job, PrintJob.Status.DONE);
+        assertEquals(2, job.getLayersLoaded());
+        assertEquals(1, job.getBandsRendered());
+        assertArrayEquals(PNG, Files.readAllBytes(job.getResult()));
+        assertEquals(1, metrics.timer("print.jobs.render").getCount());
+
+        assertNull(service.getJob("someone else", job.getId()));
+        assertEquals(job, service.getJob("user", job.getId()));
+    }
+
+    @Test
+    public void testUserLimit() throws Exception {
+        service = new PrintJobService(printService, metrics, 1, 10, 2, 60_000L, dir);
+        service.submit("user", request());
+        service.submit("user", request());
+        try {
+            service.submit("user", request());
+            fail("Expected the third job to be rejected");
+        } catch (PrintJobRejectedException e) {
+            assertTrue(e.isUserLimit());
+        }
+        // Other users are not affected
+        service.submit("other", request());
+        assertEquals(1, metrics.meter("print.jobs.rejected").getCount());
+    }
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        service = new PrintJobService(printService, metrics, 1, 1, 1, 60_000L, dir);
+        PrintJob running = service.submit("a", request());
+        await(running, PrintJob.Status.RUNNING);
+        service.submit("b", request());
+        assertEquals(1, ((Gauge<?>) metrics.getGauges().get("print.jobs.queue")).getValue());
+        try {
+            service.submit("c", request());
+            fail("Expected the queue to be full");
+        } catch (PrintJobRejectedException e) {
+            assertFalse(e.isUserLimit());
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        service = new PrintJobService(printService, metrics, 1, 1, 1, 60_000L, dir);
+        PrintJob running = service.submit("a", request());
+        await(running, PrintJob.Status.RUNNING);
+        PrintJob queued = service.submit("b", request());
+
+        assertFalse(service.cancel("a", queued.getId()));
+        assertTrue(service.cancel("b", queued.getId()));
+        assertEquals(PrintJob.Status.CANCELLED, queued.getStatus());
+        assertNull(service.getJob("b", queued.getId()));
+        assertEquals(0, service.getQueueSize());
+
+        assertTrue(service.cancel("a", running.getId()));
+        assertEquals(PrintJob.Status.CANCELLED, running.getStatus());
+        // The user may submit again right away
+        service.submit("a", request());
+    }
+
+    @Test
+    public void testExpiredJobsAreRemoved() throws Exception {
+        service = new PrintJobService(printService, metrics, 1, 1, 1, 0L, dir);
+        release.countDown();
+        PrintJob job = service.submit("user", request());
+        await(job, PrintJob.Status.DONE);
+        Path result = job.getResult();
+        assertTrue(Files.exists(result));
+
+        Thread.sleep(5);
+        service.removeExpired();
+        assertNull(service.getJob("user", job.getId()));
+        assertFalse(Files.exists(result));
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.oskari.print.loader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PrintTileCacheTest {
+
+    private static final long NOW = 1_000_000L;
+    private static final long TTL = 60_000L;
+
+    @Test
+    public void testExpiresAt() {
+        PrintTileCache cache = new PrintTileCache(1024, TTL);
+        assertEquals(NOW + TTL, cache.getExpiresAt(null, 0, NOW));
+        assertEquals(NOW + 3_600_000L, cache.getExpiresAt("public, max-age=3600", 0, NOW));
+        assertEquals(NOW + 10_000L, cache.getExpiresAt("max-age=3600, s-maxage=10", 0, NOW));
+        assertEquals(0, cache.getExpiresAt("max-age=0", 0, NOW));
+        assertEquals(0, cache.getExpiresAt("no-cache", 0, NOW));
+        assertEquals(0, cache.getExpiresAt("No-Store", 0, NOW));
+        assertEquals(0, cache.getExpiresAt("private, max-age=3600", 0, NOW));
+        assertEquals(NOW + 5_000L, cache.getExpiresAt(null, NOW + 5_000L, NOW));
+        assertEquals(0, cache.getExpiresAt(null, NOW - 1, NOW));
+        // max-age overrides Expires
+        assertEquals(NOW + 1_000L, cache.getExpiresAt("max-age=1", NOW + 5_000L, NOW));
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        PrintTileCache cache = new PrintTileCache(800, TTL);
+        long expires = System.currentTimeMillis() + TTL;
+        cache.put("a", new PrintTileCache.Response(new byte[100], expires));
+        cache.put("b", new PrintTileCache.Response(new byte[100], expires));
+        // too large, over 1/8 of the budget
+        cache.put("c", new PrintTileCache.Response(new byte[101], expires));
+        assertEquals(2, cache.getCount());
+        // touch "a" so "b" is the least recently used
+        assertEquals(100, cache.get("a", () -> null).length);
+        for (int i = 0; i < 7; i++) {
+            cache.put("x" + i, new PrintTileCache.Response(new byte[100], expires));
+        }
+        assertEquals(800, cache.getSizeInBytes());
+        assertNull(cache.get("b", () -> null));
+        assertEquals(100, cache.get("a", () -> null).length);
+    }
+
+    @Test
+    public void testNotStoredWhenExpired() throws Exception {
+        PrintTileCache cache = new PrintTileCache(1024, TTL);
+        AtomicInteger loads = new AtomicInteger();
+        PrintTileCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            return new PrintTileCache.Response(new byte[] { 1 }, 0);
+        };
+        cache.get("a", loader);
+        cache.get("a", loader);
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        PrintTileCache cache = new PrintTileCache(1024, TTL);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        byte[] tile = new byte[] { 1, 2, 3 };
+        PrintTileCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return new PrintTileCache.Response(tile, System.currentTimeMillis() + TTL);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> first = executor.submit(() -> cache.get("tile", loader));
+            loading.await(5, TimeUnit.SECONDS);
+            Future<byte[]> second = executor.submit(() -> cache.get("tile", loader));
+            // wait for the second request to join the first one
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getCoalescedCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            assertArrayEquals(tile, first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(tile, second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getCoalescedCount());
+        assertArrayEquals(tile, cache.get("tile", loader));
+        assertEquals(1, loads.get());
+    }
+}
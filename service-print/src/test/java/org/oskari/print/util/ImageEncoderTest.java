@@ -0,0 +1,93 @@
+package org.oskari.print.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class ImageEncoderTest {
+
+    private static BufferedImage image(int argb) {
+        BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, argb);
+            }
+        }
+        return img;
+    }
+
+    private static byte[] inflate(byte[] data, int len) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] out = new byte[len];
+        assertEquals(len, inflater.inflate(out));
+        assertTrue(inflater.finished());
+        inflater.end();
+        return out;
+    }
+
+    @Test
+    public void testOpaqueRasterIsJPEG() throws Exception {
+        EncodedImage encoded = new ImageEncoder(false, 0.85f, 0).encode(image(0xFF336699), false);
+        assertTrue(encoded.isJPEG());
+        assertNull(encoded.getAlpha());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoded.getData()));
+        assertEquals(40, decoded.getWidth());
+        assertEquals(30, decoded.getHeight());
+        int rgb = decoded.getRGB(20, 15);
+        assertTrue(Math.abs(((rgb >> 16) & 0xFF) - 0x33) <= 2);
+        assertTrue(Math.abs(((rgb >> 8) & 0xFF) - 0x66) <= 2);
+        assertTrue(Math.abs((rgb & 0xFF) - 0x99) <= 2);
+    }
+
+    @Test
+    public void testVectorIsLossless() throws Exception {
+        EncodedImage encoded = new ImageEncoder(false, 0.85f, 0).encode(image(0xFF336699), true);
+        assertFalse(encoded.isJPEG());
+        assertNull(encoded.getAlpha());
+        byte[] rgb = inflate(encoded.getData(), 40 * 30 * 3);
+        assertArrayEquals(new byte[] { 0x33, 0x66, (byte) 0x99 }, new byte[] { rgb[0], rgb[1], rgb[2] });
+    }
+
+    @Test
+    public void testTransparentIsLosslessWithAlpha() throws Exception {
+        BufferedImage img = image(0xFF336699);
+        img.setRGB(0, 0, 0x80FFFFFF);
+        EncodedImage encoded = new ImageEncoder(false, 0.85f, 0).encode(img, false);
+        assertFalse(encoded.isJPEG());
+        assertNotNull(encoded.getAlpha());
+        byte[] alpha = inflate(encoded.getAlpha(), 40 * 30);
+        assertEquals((byte) 0x80, alpha[0]);
+        assertEquals((byte) 0xFF, alpha[1]);
+    }
+
+    @Test
+    public void testLosslessOnly() throws Exception {
+        EncodedImage encoded = new ImageEncoder(true, 0.85f, 0).encode(image(0xFF336699), false);
+        assertFalse(encoded.isJPEG());
+    }
+
+    @Test
+    public void testDownsample() throws Exception {
+        ImageEncoder encoder = new ImageEncoder(false, 0.85f, Units.OGC_DPI / 2);
+        EncodedImage encoded = encoder.encode(image(0xFF336699), false);
+        assertEquals(20, encoded.getWidth());
+        assertEquals(15, encoded.getHeight());
+
+        // Higher than the resolution of the map, nothing to do
+        BufferedImage img = image(0xFF336699);
+        assertTrue(img == new ImageEncoder(false, 0.85f, 300).downsample(img));
+    }
+
+}
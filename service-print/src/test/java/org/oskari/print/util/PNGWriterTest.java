@@ -0,0 +1,56 @@
+package org.oskari.print.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PNGWriterTest {
+
+    @Test
+    public void testWriteInBands() throws Exception {
+        int width = 301;
+        int height = 200;
+        BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random r = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Mix of gradients and noise so that every filter type gets used
+                int argb = x < 100 ? (x * 2) << 24 | y << 16 | x << 8 | 0x40
+                        : x < 200 ? 0xFF000000 | r.nextInt(0xFFFFFF)
+                        : 0x80112233;
+                expected.setRGB(x, y, argb);
+            }
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PNGWriter writer = new PNGWriter(baos, width, height);
+        writer.write(expected.getSubimage(0, 0, width, 64));
+        writer.write(expected, 64, 100);
+        writer.write(expected.getSubimage(0, 164, width, 36));
+        writer.finish();
+
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(width, actual.getWidth());
+        assertEquals(height, actual.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFinishChecksHeight() throws Exception {
+        PNGWriter writer = new PNGWriter(new ByteArrayOutputStream(), 10, 10);
+        writer.write(new BufferedImage(10, 5, BufferedImage.TYPE_INT_ARGB));
+        writer.finish();
+    }
+
+}
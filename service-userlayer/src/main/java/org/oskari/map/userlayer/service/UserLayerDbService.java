@@ -14,6 +14,7 @@ public abstract class UserLayerDbService extends OskariComponent {
     public abstract int insertUserLayer(final UserLayer userlayer, final List<UserLayerData> userLayerDataList) throws UserLayerException;
     public abstract int updateUserLayerCols(final UserLayer userlayer);
     public abstract UserLayer getUserLayerById(long id);
+    public abstract List<UserLayer> getUserLayersByIds(List<Long> ids);
     public abstract List<UserLayer> getUserLayerByUuid(String uuid);
     public abstract void deleteUserLayerById(final long id) throws ServiceException;
     public abstract void deleteUserLayer(final UserLayer userlayer) throws ServiceException;
@@ -10,6 +10,7 @@ import fi.nls.oskari.domain.map.userlayer.UserLayerData;
 import fi.nls.oskari.domain.map.UserDataStyle;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.mybatis.MyBatisHelper;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.util.PropertyUtil;
 import org.apache.ibatis.mapping.Environment;
@@ -18,6 +19,7 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -53,7 +55,7 @@ public class UserLayerDbServiceMybatisImpl extends UserLayerDbService {
         configuration.getTypeAliasRegistry().registerAlias(UserDataStyle.class);
         configuration.setLazyLoadingEnabled(true);
         configuration.addMapper(UserLayerMapper.class);
-        return new SqlSessionFactoryBuilder().build(configuration);
+        return MyBatisHelper.build(configuration);
     }
 
     public int insertUserLayer(final UserLayer userLayer, final List<UserLayerData> userLayerDataList) throws UserLayerException {
@@ -143,6 +145,36 @@ public class UserLayerDbServiceMybatisImpl extends UserLayerDbService {
     }
 
 
+    /**
+     * Get UserLayer rows by ids with one query. Cached layers are not queried again.
+     *
+     * @param ids userLayer ids
+     * @return found userLayer objects, order is not guaranteed
+     */
+    public List<UserLayer> getUserLayersByIds(List<Long> ids) {
+        final List<UserLayer> layers = new ArrayList<>(ids.size());
+        final List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            UserLayer layer = getFromCache(id);
+            if (layer != null) {
+                layers.add(layer);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return layers;
+        }
+        try (SqlSession session = factory.openSession()) {
+            for (UserLayer layer : getMapper(session).findUserLayersByIds(missing)) {
+                layers.add(cache(layer));
+            }
+        } catch (Exception e) {
+            log.error(e, "Failed to get userLayers with ids:", missing);
+        }
+        return layers;
+    }
+
     /**
      * Get UserLayer rows of one user by uuid
      *
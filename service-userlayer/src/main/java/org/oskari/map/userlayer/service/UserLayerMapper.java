@@ -14,6 +14,7 @@ public interface UserLayerMapper {
     public void insertUserLayerRow(final UserLayer userlayer);
     public int updateUserLayerCols(final UserLayer userlayer);
     public UserLayer findUserLayer(long id);
+    public List<UserLayer> findUserLayersByIds(List<Long> ids);
     public List<UserLayer> findUserLayerByUuid(String uuid);
     public void deleteUserLayerRow(final long id) throws ServiceException;
     public int updatePublisherName(@Param ("id") long id, @Param ("uuid") String uuid, @Param ("publisher_name") String name);
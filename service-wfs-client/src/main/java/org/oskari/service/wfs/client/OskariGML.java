@@ -2,7 +2,14 @@ package org.oskari.service.wfs.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -17,8 +24,12 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.XmlHelper;
 import net.opengis.wfs.FeatureCollectionType;
 
@@ -30,11 +41,52 @@ import net.opengis.wfs.FeatureCollectionType;
  * SimpleFeatureCollection toFeatureCollection(Object)
  * SimpleFeatureCollection simpleFeatureCollection(Collection<?>
  * are marked private in the GML class, so they are copy-pasted over
+ *
+ * Large feature collections can be parsed in parallel (oskari.wfs.gml.parallel=true
+ * for the no-args constructor): the members of the collection are split into chunks
+ * of at least oskari.wfs.gml.parallel.chunkSize (default 250) features, using at most
+ * oskari.wfs.gml.parallel.threads chunks. Each chunk is parsed on its own thread and
+ * the results are merged into a DefaultFeatureCollection which orders the features
+ * by id, not by their position in the document.
+ * Collections too small for two chunks are parsed on the calling thread.
  */
 public class OskariGML extends GML {
 
+    private static final Logger LOG = LogFactory.getLogger(OskariGML.class);
+
+    private final int chunkSize;
+    private final int threads;
+    private final ExecutorService executor;
+
+    /**
+     * Parallel parsing is configured with properties
+     */
     public OskariGML() {
+        this(PropertyUtil.getOptional("oskari.wfs.gml.parallel", false),
+                PropertyUtil.getOptional("oskari.wfs.gml.parallel.chunkSize", 250),
+                PropertyUtil.getOptional("oskari.wfs.gml.parallel.threads",
+                        Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param parallel true to parse large collections in parallel
+     * @param chunkSize minimum number of features parsed on one thread
+     * @param threads maximum number of threads (and chunks) used for one collection
+     */
+    public OskariGML(boolean parallel, int chunkSize, int threads) {
         super(Version.WFS1_1);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.threads = threads;
+        if (parallel && threads > 1) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "OskariGML-parser-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
     }
 
     public SimpleFeatureCollection decodeFeatureCollection(InputStream in, String username, String password)
@@ -60,11 +112,110 @@ public class OskariGML extends GML {
         root.removeAttribute("schemaLocation");
         root.removeAttribute("xsi:schemaLocation");
 
+        if (executor != null) {
+            List<Document> chunks = split(db, root);
+            if (chunks.size() > 1) {
+                return parseParallel(chunks, username, password);
+            }
+        }
+        return parse(doc, username, password);
+    }
+
+    private SimpleFeatureCollection parse(Document doc, String username, String password)
+            throws IOException, SAXException, ParserConfigurationException {
         DOMParser parser = new DOMParser(new OskariWFSConfiguration(username, password), doc);
         Object obj = parser.parse();
         return toFeatureCollection(obj);
     }
 
+    /**
+     * Splits the featureMember/member elements of the collection to documents
+     * with a copy of the collection element (and its namespace declarations)
+     * @return documents in member order, empty if the collection is too small to split
+     */
+    private List<Document> split(DocumentBuilder db, Element root) {
+        List<Element> members = new ArrayList<>();
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String localName = getLocalName(node);
+            if ("featureMember".equals(localName) || "member".equals(localName)) {
+                members.add((Element) node);
+            } else if ("featureMembers".equals(localName)) {
+                // features are not wrapped one by one, don't split
+                return new ArrayList<>();
+            }
+        }
+        int chunkCount = Math.min(threads, members.size() / chunkSize);
+        List<Document> chunks = new ArrayList<>();
+        if (chunkCount < 2) {
+            return chunks;
+        }
+        int perChunk = (members.size() + chunkCount - 1) / chunkCount;
+        for (int start = 0; start < members.size(); start += perChunk) {
+            Document chunk = db.newDocument();
+            Element chunkRoot = (Element) chunk.importNode(root, false);
+            chunk.appendChild(chunkRoot);
+            int end = Math.min(members.size(), start + perChunk);
+            for (Element member : members.subList(start, end)) {
+                chunkRoot.appendChild(chunk.importNode(member, true));
+            }
+            chunks.add(chunk);
+        }
+        LOG.debug("Parsing", members.size(), "features in", chunks.size(), "chunks");
+        return chunks;
+    }
+
+    private static String getLocalName(Node node) {
+        if (node.getLocalName() != null) {
+            return node.getLocalName();
+        }
+        // document isn't parsed namespace aware
+        String name = node.getNodeName();
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private SimpleFeatureCollection parseParallel(List<Document> chunks, String username, String password)
+            throws IOException, SAXException, ParserConfigurationException {
+        List<Future<SimpleFeatureCollection>> results = new ArrayList<>(chunks.size());
+        for (Document chunk : chunks) {
+            results.add(executor.submit(() -> parse(chunk, username, password)));
+        }
+        DefaultFeatureCollection featureCollection = new DefaultFeatureCollection();
+        try {
+            for (Future<SimpleFeatureCollection> result : results) {
+                SimpleFeatureCollection collection = result.get();
+                if (collection != null) {
+                    featureCollection.addAll(collection);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing features", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<SimpleFeatureCollection> result : results) {
+                result.cancel(true);
+            }
+        }
+        return featureCollection;
+    }
+
     /**
      * Convert parse results into a SimpleFeatureCollection.
      *
@@ -13,11 +13,13 @@ import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.HystrixThreadPoolProperties;
 
 import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.util.RequestTrace;
 
 public class OskariWFSLoadCommand extends HystrixCommand<SimpleFeatureCollection> {
 
     private static final String WFS_3_VERSION = "3.0.0";
     private static final String GROUP_KEY = "wfs";
+    private static final String TRACE_CATEGORY = "hystrix";
 
     private final String endPoint;
     private final String version;
@@ -28,6 +30,8 @@ public class OskariWFSLoadCommand extends HystrixCommand<SimpleFeatureCollection
     private final CoordinateReferenceSystem crs;
     private final int maxFeatures;
     private final Filter filter;
+    // the command is run on a Hystrix thread, keep a reference to the span of the thread that created the command
+    private final RequestTrace.Span parentSpan = RequestTrace.current();
 
     public OskariWFSLoadCommand(String endPoint, String version, String user, String pass,
             String typeName, ReferencedEnvelope bbox, CoordinateReferenceSystem crs,
@@ -65,11 +69,13 @@ public class OskariWFSLoadCommand extends HystrixCommand<SimpleFeatureCollection
 
     @Override
     protected SimpleFeatureCollection run() throws Exception {
-        switch (version) {
-        case WFS_3_VERSION:
-            return OskariWFS3Client.getFeatures(endPoint, user, pass, typeName, bbox, crs, maxFeatures);
-        default:
-            return OskariWFS110Client.getFeatures(endPoint, user, pass, typeName, bbox, crs, maxFeatures, filter);
+        try (RequestTrace.Span span = RequestTrace.span(parentSpan, TRACE_CATEGORY, getCommandKey().name())) {
+            switch (version) {
+            case WFS_3_VERSION:
+                return OskariWFS3Client.getFeatures(endPoint, user, pass, typeName, bbox, crs, maxFeatures);
+            default:
+                return OskariWFS110Client.getFeatures(endPoint, user, pass, typeName, bbox, crs, maxFeatures, filter);
+            }
         }
     }
 
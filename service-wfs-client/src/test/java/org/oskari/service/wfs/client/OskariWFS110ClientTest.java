@@ -1,12 +1,24 @@
 package org.oskari.service.wfs.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.factory.CommonFactoryFinder;
 import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 
+import fi.nls.test.util.ResourceHelper;
+
 public class OskariWFS110ClientTest {
 
     @Test
@@ -23,4 +35,40 @@ public class OskariWFS110ClientTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testParallelGMLMatchesSequential() throws Exception {
+        // 18 features wrapped in gml:featureMember
+        byte[] gml = ResourceHelper.readBytesResource("/benchmark/wfs11-rysp-kiinteisto.xml");
+        Map<String, List<String>> expected = decode(new OskariGML(false, 1, 1), gml);
+        assertEquals(18, expected.size());
+
+        // chunk size and thread count combinations giving uneven chunks (4 chunks: 5+5+5+3),
+        // even chunks (2 chunks: 9+9, 3 chunks: 6+6+6) and a single chunk parsed sequentially
+        int[][] chunkSizeAndThreads = { { 1, 4 }, { 9, 4 }, { 5, 3 }, { 1, 2 }, { 10, 4 } };
+        for (int[] params : chunkSizeAndThreads) {
+            OskariGML parallel = new OskariGML(true, params[0], params[1]);
+            assertEquals("chunkSize: " + params[0] + ", threads: " + params[1],
+                    expected, decode(parallel, gml));
+        }
+    }
+
+    /**
+     * @return attribute values of the features by feature id
+     */
+    private Map<String, List<String>> decode(OskariGML parser, byte[] gml) throws Exception {
+        SimpleFeatureCollection fc = parser.decodeFeatureCollection(new ByteArrayInputStream(gml), null, null);
+        Map<String, List<String>> features = new HashMap<>();
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                List<String> values = new ArrayList<>();
+                for (Object value : f.getAttributes()) {
+                    values.add(String.valueOf(value));
+                }
+                assertNull("Feature ids should be unique", features.put(f.getID(), values));
+            }
+        }
+        return features;
+    }
+
 }
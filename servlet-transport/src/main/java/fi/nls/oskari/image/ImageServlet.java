@@ -4,8 +4,10 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.pojo.WFSLayerPermissionsStore;
 import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.wfs.CachedImage;
 import fi.nls.oskari.wfs.WFSImage;
 import fi.nls.oskari.wfs.WFSProcess;
+import fi.nls.oskari.work.JobHelper;
 import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -130,17 +132,15 @@ public class ImageServlet extends HttpServlet {
         }
 
 		// get image from cache (persistant)
-		BufferedImage bufferedImage = WFSImage.getCache(layerId, style, srs, bbox, zoom);
-		if(bufferedImage == null) { // check temp cache
-			bufferedImage = WFSImage.getCache(layerId, style, srs, bbox, zoom, false);
+		CachedImage cachedImage = WFSImage.getCachedImage(layerId, style, srs, bbox, zoom, true);
+		if(cachedImage == null) { // check temp cache
+			cachedImage = WFSImage.getCachedImage(layerId, style, srs, bbox, zoom, false);
 		}
 		
-		if(bufferedImage != null) {
-			// send image
+		if(cachedImage != null) {
+			// send image, already encoded
     		try {
-				OutputStream out = response.getOutputStream();
-				ImageIO.write(bufferedImage, FORMAT, out);
-				out.close();
+                writeCachedImage(request, response, cachedImage);
     		} catch (Exception e) {
 	    		log.error(e, "Sending image failed");
                 response.sendError(HttpServletResponse.SC_NOT_FOUND, "Sending image failed");
@@ -153,7 +153,7 @@ public class ImageServlet extends HttpServlet {
             } else {
                 try {
                     // create & send image
-                    bufferedImage = WFSProcess.highlight(session, layerId, featureIds, bbox, srs, zoom, width, height);
+                    BufferedImage bufferedImage = WFSProcess.highlight(session, layerId, featureIds, bbox, srs, zoom, width, height);
                     OutputStream out = response.getOutputStream();
                     ImageIO.write(bufferedImage, FORMAT, out);
                     out.close();
@@ -166,6 +166,27 @@ public class ImageServlet extends HttpServlet {
 		}
 	}
 	
+    /**
+     * Sends the encoded image with an ETag. Tiles change with the same URL when the layer or its features
+     * are modified (and temp images with custom styles etc) so browsers revalidate on every use and get
+     * a 304 if the tile hasn't changed. Tiles are permission checked per session so they are private.
+     */
+    static void writeCachedImage(HttpServletRequest request, HttpServletResponse response,
+                                 CachedImage image) throws IOException {
+        final String etag = image.getETag();
+        response.setHeader("Cache-Control", "private, no-cache");
+        response.setHeader("ETag", etag);
+        if(etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(image.getSize());
+        OutputStream out = response.getOutputStream();
+        out.write(image.getBytes());
+        out.close();
+    }
+
 	/**
 	 * Checks if user has permissions for a layer
 	 * 
@@ -176,13 +197,8 @@ public class ImageServlet extends HttpServlet {
 	 * @throws IOException 
 	 */
 	private boolean isPermission(String session, String layerId) throws IOException {
-    	String json = WFSLayerPermissionsStore.getCache(session);
-    	WFSLayerPermissionsStore permissions;
-    	if(json != null) {
-	    	permissions = WFSLayerPermissionsStore.setJSON(json);
-			return permissions.isPermission(layerId);
-    	}
-    	return false;
+    	WFSLayerPermissionsStore permissions = JobHelper.getCachedPermissions(session);
+    	return permissions != null && permissions.isPermission(layerId);
 	}
 
     private CoordinateReferenceSystem getCrs(String srs) {
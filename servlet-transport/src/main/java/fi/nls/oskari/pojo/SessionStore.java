@@ -28,11 +28,13 @@ public class SessionStore {
 	private static final ObjectMapper mapper = new ObjectMapper();
 
 	public static final String KEY = "Session_";
+	private static final String KEY_VERSION = "version";
 
 	private String client; // bayeux session (used in redis key)
 	private String session; // liferay session
     private String route; // liferay cluster route id
     private String uuid; // Oskari user id for id
+    private long version; // incremented on each save, see SessionStoreCache
 	private String language;
 	private String browser;
 	private long browserVersion;
@@ -123,6 +125,24 @@ public class SessionStore {
 		this.client = client;
 	}
 
+    /**
+     * Gets version
+     *
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets version
+     *
+     * @param version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
 	/**
 	 * Gets language
 	 *
@@ -408,6 +428,65 @@ public class SessionStore {
         this.geomRequest = geomRequest;
     }
 
+    /**
+     * Copies the state that is saved into redis. Passed parameters (map click, filters etc) are not copied
+     * so the copy matches a session read from redis.
+     *
+     * @return copy
+     */
+    @JsonIgnore
+    public SessionStore copy() {
+        SessionStore copy = new SessionStore(client);
+        copy.session = session;
+        copy.route = route;
+        copy.uuid = uuid;
+        copy.version = version;
+        copy.language = language;
+        copy.browser = browser;
+        copy.browserVersion = browserVersion;
+        if (location != null) {
+            Location loc = new Location(location.getSrs());
+            loc.setBbox(new ArrayList<>(location.getBbox()));
+            loc.setZoom(location.getZoom());
+            copy.location = loc;
+        } else {
+            copy.location = null;
+        }
+        if (grid != null) {
+            Grid g = new Grid();
+            g.setRows(grid.getRows());
+            g.setColumns(grid.getColumns());
+            List<List<Double>> bounds = new ArrayList<>(grid.getBounds().size());
+            for (List<Double> bound : grid.getBounds()) {
+                bounds.add(new ArrayList<>(bound));
+            }
+            g.setBounds(bounds);
+            copy.grid = g;
+        } else {
+            copy.grid = null;
+        }
+        copy.tileSize = copyTile(tileSize);
+        copy.mapSize = copyTile(mapSize);
+        copy.mapScales = mapScales == null ? null : new ArrayList<>(mapScales);
+        for (Map.Entry<String, Layer> entry : layers.entrySet()) {
+            Layer layer = entry.getValue();
+            Layer l = new Layer(layer.getId(), layer.getStyleName());
+            l.setVisible(layer.isVisible());
+            copy.layers.put(entry.getKey(), l);
+        }
+        return copy;
+    }
+
+    private static Tile copyTile(Tile tile) {
+        if (tile == null) {
+            return null;
+        }
+        Tile copy = new Tile();
+        copy.setWidth(tile.getWidth());
+        copy.setHeight(tile.getHeight());
+        return copy;
+    }
+
     /**
 	 * Saves into redis
 	 *
@@ -529,6 +608,8 @@ public class SessionStore {
 				store.setBrowser(parser.getText());
 			} else if (TransportService.PARAM_BROWSER_VERSION.equals(fieldName)) {
 				store.setBrowserVersion(parser.getValueAsLong());
+			} else if (KEY_VERSION.equals(fieldName)) {
+				store.setVersion(parser.getValueAsLong());
 			} else if (TransportService.PARAM_LOCATION.equals(fieldName)) {
                 if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
                     while (parser.nextToken() != JsonToken.END_OBJECT) {
@@ -0,0 +1,321 @@
+package fi.nls.oskari.transport;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.cache.JedisSubscriber;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.ConversionHelper;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-process cache for parsed objects that are stored in Redis with a common key prefix
+ * (like WFSLayer_ or Permission_). Saves a Redis round trip and JSON parsing for each job.
+ *
+ * Entries are dropped when:
+ * - they are older than the time to live
+ * - a change is published for the Redis key on JedisManager.CHANNEL_KEY_CHANGED (see JedisManager.notifyKeyChanged())
+ *   and the published version is newer than the cached one. Changes published without a version always drop the entry
+ *   and a change for the bare prefix drops all entries.
+ * - the subscription to JedisManager.CHANNEL_KEY_CHANGED is lost or (re)established since changes might have been
+ *   missed. The subscription is retried with a backoff until it succeeds.
+ *
+ * The size of the cache is limited by the number of entries and optionally by the total weight
+ * (like size in bytes) of the entries.
+ *
+ * Cached objects are shared between threads and MUST NOT be modified.
+ */
+public class NearCache<T> {
+
+    private static final Logger log = LogFactory.getLogger(NearCache.class);
+
+    // identifies changes published by this node
+    static final String NODE_ID = UUID.randomUUID().toString();
+    private static final String MSG_SEPARATOR = "|";
+    private static final List<NearCache<?>> CACHES = new CopyOnWriteArrayList<>();
+    private static final Subscription SUBSCRIPTION = new Subscription(JedisManager::subscribeAndWait, 1000, 60000);
+
+    private final String prefix;
+    private final long ttlMs;
+    private final int limit;
+    private final ToIntFunction<T> weigher;
+    private final long maxWeight;
+    private final AtomicLong weight = new AtomicLong();
+    private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param prefix Redis key prefix for the cached objects
+     * @param ttlMs max time to keep an entry in milliseconds
+     * @param limit max number of entries
+     */
+    public NearCache(String prefix, long ttlMs, int limit) {
+        this(prefix, ttlMs, limit, value -> 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param prefix Redis key prefix for the cached objects
+     * @param ttlMs max time to keep an entry in milliseconds
+     * @param limit max number of entries
+     * @param weigher returns the weight of an entry
+     * @param maxWeight max total weight of the entries
+     */
+    public NearCache(String prefix, long ttlMs, int limit, ToIntFunction<T> weigher, long maxWeight) {
+        this.prefix = prefix;
+        this.ttlMs = ttlMs;
+        this.limit = limit;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        CACHES.add(this);
+    }
+
+    /**
+     * @param id Redis key without the prefix
+     * @return cached object or null if not cached or expired
+     */
+    public T get(String id) {
+        final Entry<T> entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(ttlMs)) {
+            removeEntry(id, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(String id, T value) {
+        put(id, value, 0);
+    }
+
+    /**
+     * @param id Redis key without the prefix
+     * @param value object, must not be modified after caching
+     * @param version version of the value, older versions are dropped when a newer version is published
+     */
+    public void put(String id, T value, long version) {
+        if (id == null || value == null || ttlMs <= 0) {
+            return;
+        }
+        final Entry<T> entry = new Entry<>(value, version, weigher.applyAsInt(value));
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        if ((entries.size() >= limit && !entries.containsKey(id)) || weight.get() + entry.weight > maxWeight) {
+            evict(entry.weight);
+        }
+        final Entry<T> previous = entries.put(id, entry);
+        weight.addAndGet(entry.weight - (previous == null ? 0 : previous.weight));
+        SUBSCRIPTION.start();
+    }
+
+    public T remove(String id) {
+        final Entry<T> entry = entries.get(id);
+        return entry != null && removeEntry(id, entry) ? entry.value : null;
+    }
+
+    /**
+     * @param idFilter matches ids of the entries to remove
+     */
+    public void removeIf(Predicate<String> idFilter) {
+        entries.forEach((id, entry) -> {
+            if (idFilter.test(id)) {
+                removeEntry(id, entry);
+            }
+        });
+    }
+
+    public void clear() {
+        entries.forEach(this::removeEntry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total weight of the entries
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Tells other nodes that the object has changed
+     * @param id Redis key without the prefix
+     * @param version new version of the object
+     */
+    public void publishChange(String id, long version) {
+        JedisManager.publish(JedisManager.CHANNEL_KEY_CHANGED,
+                prefix + id + MSG_SEPARATOR + NODE_ID + MSG_SEPARATOR + version);
+    }
+
+    /**
+     * Called when another node (or the Oskari server) has changed the object.
+     * @param id Redis key without the prefix
+     * @param version published version or -1 if not known
+     */
+    protected void onChange(String id, long version) {
+        final Entry<T> entry = entries.get(id);
+        if (entry != null && (version < 0 || entry.version < version)) {
+            removeEntry(id, entry);
+        }
+    }
+
+    private boolean removeEntry(String id, Entry<T> entry) {
+        if (entries.remove(id, entry)) {
+            weight.addAndGet(-entry.weight);
+            return true;
+        }
+        return false;
+    }
+
+    private void evict(int room) {
+        entries.forEach((id, entry) -> {
+            if (entry.isExpired(ttlMs)) {
+                removeEntry(id, entry);
+            }
+        });
+        // still full, drop something to make room
+        final Iterator<Map.Entry<String, Entry<T>>> it = entries.entrySet().iterator();
+        while ((entries.size() >= limit || weight.get() + room > maxWeight) && it.hasNext()) {
+            Map.Entry<String, Entry<T>> next = it.next();
+            removeEntry(next.getKey(), next.getValue());
+        }
+    }
+
+    static void clearAll() {
+        for (NearCache<?> cache : CACHES) {
+            cache.clear();
+        }
+    }
+
+    static void dispatch(String message) {
+        final String[] parts = message.split("\\" + MSG_SEPARATOR);
+        final String key = parts[0];
+        if (parts.length > 1 && NODE_ID.equals(parts[1])) {
+            return;
+        }
+        final long version = parts.length > 2 ? ConversionHelper.getLong(parts[2], -1) : -1;
+        for (NearCache<?> cache : CACHES) {
+            if (key.equals(cache.prefix)) {
+                log.debug("All entries changed for", key);
+                cache.clear();
+            } else if (key.startsWith(cache.prefix)) {
+                cache.onChange(key.substring(cache.prefix.length()), version);
+            }
+        }
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long version;
+        private final int weight;
+        private final long created = System.currentTimeMillis();
+
+        Entry(T value, long version, int weight) {
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+
+        boolean isExpired(long ttlMs) {
+            return System.currentTimeMillis() - created > ttlMs;
+        }
+    }
+
+    /**
+     * Keeps a subscription to JedisManager.CHANNEL_KEY_CHANGED in a daemon thread. When the subscription
+     * ends (Redis not available, connection lost) it's retried with an exponential backoff.
+     */
+    static class Subscription implements Runnable {
+        // subscribes and blocks while subscribed, returns false if Redis is not available
+        private final BiPredicate<JedisSubscriber, String> subscribe;
+        private final long minBackoffMs;
+        private final long maxBackoffMs;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private volatile boolean subscribed;
+
+        Subscription(BiPredicate<JedisSubscriber, String> subscribe, long minBackoffMs, long maxBackoffMs) {
+            this.subscribe = subscribe;
+            this.minBackoffMs = minBackoffMs;
+            this.maxBackoffMs = maxBackoffMs;
+        }
+
+        void start() {
+            if (started.compareAndSet(false, true)) {
+                final Thread thread = new Thread(this, "NearCache-subscription");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        boolean isSubscribed() {
+            return subscribed;
+        }
+
+        public void run() {
+            long backoff = minBackoffMs;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    subscribe.test(new ChangeSubscriber(this), JedisManager.CHANNEL_KEY_CHANGED);
+                } catch (Exception e) {
+                    log.warn(e, "Subscription to", JedisManager.CHANNEL_KEY_CHANGED, "failed");
+                }
+                if (subscribed) {
+                    subscribed = false;
+                    log.warn("Lost subscription to", JedisManager.CHANNEL_KEY_CHANGED, "- clearing near caches");
+                    clearAll();
+                    backoff = minBackoffMs;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, maxBackoffMs);
+            }
+        }
+
+        void onSubscribe() {
+            // changes published while not subscribed were missed
+            clearAll();
+            subscribed = true;
+            log.info("Subscribed to", JedisManager.CHANNEL_KEY_CHANGED);
+        }
+    }
+
+    /**
+     * Listens to changes from other nodes
+     */
+    private static class ChangeSubscriber extends JedisSubscriber {
+        private final Subscription subscription;
+
+        ChangeSubscriber(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            if (JedisManager.CHANNEL_KEY_CHANGED.equals(channel) && message != null) {
+                dispatch(message);
+            }
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            subscription.onSubscribe();
+        }
+    }
+}
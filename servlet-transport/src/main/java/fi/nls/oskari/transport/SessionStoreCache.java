@@ -0,0 +1,139 @@
+package fi.nls.oskari.transport;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.pojo.SessionStore;
+import fi.nls.oskari.util.PropertyUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Near-cache for sessions of the CometD clients connected to this node. Sessions are read from Redis
+ * only when the node doesn't have the session yet and saved sessions are written to Redis in the background
+ * (write-behind) every transport.cache.session.writeDelayMs (default 200) milliseconds. Only the latest
+ * version of a session is written if it's saved more than once during the delay.
+ *
+ * Each save increments the session version. Other nodes drop their copy when they get a newer version
+ * through Redis pub/sub so a client moving to another node doesn't continue with a stale session.
+ *
+ * Callers get copies of the cached sessions so sessions can be modified freely by requests and jobs.
+ */
+public class SessionStoreCache extends NearCache<SessionStore> {
+
+    private static final Logger log = LogFactory.getLogger(SessionStoreCache.class);
+
+    private static final long WRITE_DELAY_MS = PropertyUtil.getOptional("transport.cache.session.writeDelayMs", 200);
+
+    // latest unwritten copy of each modified session
+    private final ConcurrentMap<String, SessionStore> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SessionStore-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionStoreCache() {
+        super(SessionStore.KEY,
+                TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional("transport.cache.session.ttlSec", 3600)),
+                PropertyUtil.getOptional("transport.cache.session.limit", 10000));
+        writer.scheduleWithFixedDelay(this::flush, WRITE_DELAY_MS, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param client CometD client id
+     * @return copy of the cached session or null if not cached
+     */
+    public SessionStore getSession(String client) {
+        final SessionStore store = get(client);
+        return store == null ? null : store.copy();
+    }
+
+    /**
+     * Caches a copy of a session read from Redis
+     * @param store parsed session
+     */
+    public void cache(SessionStore store) {
+        put(store.getClient(), store.copy(), store.getVersion());
+    }
+
+    /**
+     * Increments the version of the session, caches a copy and schedules it to be written to Redis
+     * @param store modified session
+     * @return <code>true</code> if saved a valid session; <code>false</code>
+     *         otherwise.
+     */
+    public boolean save(SessionStore store) {
+        store.setVersion(store.getVersion() + 1);
+        final SessionStore copy = store.copy();
+        put(store.getClient(), copy, copy.getVersion());
+        pending.put(store.getClient(), copy);
+        return store.isValid();
+    }
+
+    /**
+     * Removes the session from cache and pending writes and deletes it from Redis. The session is deleted
+     * on the writer thread so a write that is already in progress can't restore it after deleting.
+     * @param client CometD client id
+     * @return removed session or null if not cached
+     */
+    public SessionStore removeSession(String client) {
+        pending.remove(client);
+        final SessionStore removed = remove(client);
+        try {
+            writer.execute(() -> {
+                pending.remove(client);
+                JedisManager.del(SessionStore.KEY + client);
+            });
+        } catch (RejectedExecutionException e) {
+            // shut down, nothing is written anymore
+            JedisManager.del(SessionStore.KEY + client);
+        }
+        return removed;
+    }
+
+    /**
+     * Stops writing in the background and writes the pending sessions to Redis
+     */
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Session writer didn't stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    @Override
+    protected void onChange(String client, long version) {
+        super.onChange(client, version);
+        // the other node has a newer session, don't overwrite it
+        pending.computeIfPresent(client, (key, store) -> version < 0 || store.getVersion() < version ? null : store);
+    }
+
+    /**
+     * Writes pending sessions to Redis
+     */
+    void flush() {
+        for (String client : pending.keySet()) {
+            final SessionStore store = pending.remove(client);
+            if (store == null) {
+                continue;
+            }
+            try {
+                JedisManager.setex(SessionStore.KEY + client, JedisManager.EXPIRY_TIME_DAY, store.getAsJSON());
+                publishChange(client, store.getVersion());
+            } catch (Exception e) {
+                log.error(e, "Couldn't write session", client);
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.codahale.metrics.jvm.ThreadStatesGaugeSet;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import fi.nls.oskari.domain.User;
+import fi.nls.oskari.fe.engine.FEEngineManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.ConversionHelper;
@@ -27,6 +28,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -101,6 +103,20 @@ public class StatusServlet extends HttpServlet {
         JSONHelper.putValue(metricsJSON, "queue.job.crashed.first",  q.getFirstCrashedJob());
         JSONHelper.putValue(metricsJSON, "queue.jobs",  new JSONArray(q.getQueuedJobNames()));
 
+        JSONObject recipesJSON = new JSONObject();
+        for (Map.Entry<String, FEEngineManager.RecipeStats> recipe : FEEngineManager.getRecipeStats().entrySet()) {
+            final FEEngineManager.RecipeStats stats = recipe.getValue();
+            JSONObject recipeJSON = new JSONObject();
+            JSONHelper.putValue(recipeJSON, "load.time", stats.getLoadTimeMs());
+            JSONHelper.putValue(recipeJSON, "instances.created", stats.getCreatedCount());
+            JSONHelper.putValue(recipeJSON, "instances.reused", stats.getReusedCount());
+            JSONHelper.putValue(recipeJSON, "parse.count", stats.getParseCount());
+            JSONHelper.putValue(recipeJSON, "parse.time.avg", stats.getAvgParseTimeMs());
+            JSONHelper.putValue(recipeJSON, "parse.time.max", stats.getMaxParseTimeMs());
+            JSONHelper.putValue(recipesJSON, recipe.getKey(), recipeJSON);
+        }
+        JSONHelper.putValue(metricsJSON, "fe.recipes", recipesJSON);
+
 
         // dropwizard metrics
         MetricRegistry metrics = q.getMetricsRegistry();
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vividsolutions.jts.geom.Coordinate;
 import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.fe.engine.FEEngineManager;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.pojo.*;
@@ -28,6 +29,7 @@ import org.cometd.server.JacksonJSONContextServer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -112,6 +114,9 @@ public class TransportService extends AbstractService {
 	// JobQueue singleton
 	private static JobQueue jobs;
 
+    // sessions of the clients connected to this node
+    private final SessionStoreCache sessions = new SessionStoreCache();
+
 	/**
 	 * Constructs TransportService with BayeuxServer instance
 	 *
@@ -146,6 +151,8 @@ public class TransportService extends AbstractService {
                 PropertyUtil.getOptional("redis.port", 6379));
 
         CachingSchemaLocator.init(); // init schemas
+        // compile feature engine recipes in the background
+        FEEngineManager.precompile(Arrays.asList(PropertyUtil.getCommaSeparatedList("oskari.fe.recipes.precompile")));
 
         addService(CHANNEL_DISCONNECT, "disconnect");
         addService(CHANNEL_INIT, "processRequest");
@@ -162,6 +169,13 @@ public class TransportService extends AbstractService {
         addService(CHANNEL_HIGHLIGHT_FEATURES, "processRequest");
     }
 
+    /**
+     * Writes pending sessions to Redis and stops the session writer
+     */
+    public void shutdown() {
+        sessions.shutdown();
+    }
+
     public static JobQueue getQueue() {
         return jobs;
     }
@@ -187,6 +201,10 @@ public class TransportService extends AbstractService {
      * @return session object
      */
     public SessionStore getStore(String client) {
+        SessionStore cached = sessions.getSession(client);
+        if (cached != null) {
+            return cached;
+        }
         String json = SessionStore.getCache(client);
         if (json == null) {
             log.debug("Created a new session for user (" + client + ")");
@@ -203,6 +221,7 @@ public class TransportService extends AbstractService {
         if (store == null) {
             return new SessionStore(client);
         }
+        sessions.cache(store);
         return store;
     }
 
@@ -210,7 +229,7 @@ public class TransportService extends AbstractService {
      * Reset session
      */
     private void save(SessionStore store) {
-        if (!store.save()) {
+        if (!sessions.save(store)) {
             TransportResultProcessor.send(local, bayeux, store.getClient(), ResultProcessor.CHANNEL_RESET, "reset");
         }
     }
@@ -223,17 +242,23 @@ public class TransportService extends AbstractService {
      */
     public void disconnect(ServerSession client, ServerMessage message)
     {
-        String json = SessionStore.getCache(client.getId());
-        if(json != null) {
-            SessionStore store;
-            try {
-                store = SessionStore.setJSON(json);
-                JedisManager.del(WFSLayerPermissionsStore.KEY + store.getSession());
-            } catch (IOException e) {
-                log.error(e, "JSON parsing failed for SessionStore \n" + json);
+        SessionStore cached = sessions.removeSession(client.getId());
+        if (cached != null) {
+            JedisManager.del(WFSLayerPermissionsStore.KEY + cached.getSession());
+            JobHelper.removeCachedPermissions(cached.getSession());
+        } else {
+            String json = SessionStore.getCache(client.getId());
+            if(json != null) {
+                SessionStore store;
+                try {
+                    store = SessionStore.setJSON(json);
+                    JedisManager.del(WFSLayerPermissionsStore.KEY + store.getSession());
+                    JobHelper.removeCachedPermissions(store.getSession());
+                } catch (IOException e) {
+                    log.error(e, "JSON parsing failed for SessionStore \n" + json);
+                }
             }
         }
-        JedisManager.del(SessionStore.KEY + client.getId());
         JedisManager.delAll(WFSCustomStyleStore.KEY + client.getId());
 
         // TODO: remove styles from map
@@ -0,0 +1,143 @@
+package fi.nls.oskari.wfs;
+
+import java.awt.image.BufferedImage;
+import java.util.zip.CRC32;
+
+/**
+ * Encoded PNG image with metadata read from the PNG header. Cached images are passed around as encoded bytes
+ * and decoded only when the pixels are actually needed (see getImage()).
+ *
+ * The bytes are shared and MUST NOT be modified.
+ */
+public class CachedImage {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    // signature (8) + chunk length (4) + "IHDR" (4) + width (4) + height (4)
+    private static final int IHDR_END = 24;
+
+    private final byte[] bytes;
+    private final int width;
+    private final int height;
+    // set only when created from a rendered image
+    private final BufferedImage image;
+
+    /**
+     * @param bytes encoded PNG image
+     */
+    public CachedImage(byte[] bytes) {
+        this(bytes, null);
+    }
+
+    private CachedImage(byte[] bytes, BufferedImage image) {
+        this.bytes = bytes;
+        this.image = image;
+        if (isPNG(bytes)) {
+            this.width = readInt(bytes, 16);
+            this.height = readInt(bytes, 20);
+        } else if (image != null) {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+        } else {
+            this.width = -1;
+            this.height = -1;
+        }
+    }
+
+    /**
+     * Encodes a rendered image. The rendered image is kept so getImage() doesn't need to decode it.
+     * @param image rendered image
+     * @return encoded image or null if image is null or couldn't be encoded
+     */
+    public static CachedImage fromImage(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        final byte[] bytes = WFSImage.imageToBytes(image);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return new CachedImage(bytes, image);
+    }
+
+    /**
+     * @return encoded PNG image
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return image width from PNG header or -1 if not known
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return image height from PNG header or -1 if not known
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return size of the encoded image in bytes
+     */
+    public int getSize() {
+        return bytes.length;
+    }
+
+    /**
+     * @return HTTP entity tag for the encoded image
+     */
+    public String getETag() {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return "\"" + Integer.toHexString(bytes.length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    /**
+     * Returns the image pixels. Decodes the image unless it was created from a rendered image so
+     * use only when the image needs to be composited or modified.
+     * @return image or null if it couldn't be decoded
+     */
+    public BufferedImage getImage() {
+        if (image != null) {
+            return image;
+        }
+        return WFSImage.bytesToImage(bytes);
+    }
+
+    /**
+     * @return same image without the rendered pixels, for keeping in memory
+     */
+    public CachedImage withoutImage() {
+        return image == null ? this : new CachedImage(bytes);
+    }
+
+    /**
+     * @return encoded image as Base64 string
+     */
+    public String getBase64() {
+        return WFSImage.bytesToBase64(bytes);
+    }
+
+    static boolean isPNG(byte[] bytes) {
+        if (bytes == null || bytes.length < IHDR_END) {
+            return false;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (bytes[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24)
+                | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8)
+                | (bytes[offset + 3] & 0xff);
+    }
+}
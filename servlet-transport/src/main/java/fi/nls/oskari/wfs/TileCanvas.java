@@ -0,0 +1,126 @@
+package fi.nls.oskari.wfs;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.pojo.Location;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.renderer.GTRenderer;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.Style;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Image of a WFS layer that features can be painted on in several passes, so features can be
+ * rendered as they are parsed instead of keeping all of them in memory (see WFSImage.createCanvas()).
+ *
+ * Features painted in a later pass are drawn on top of the earlier ones and labels are not checked
+ * for conflicts between passes. Not thread-safe.
+ */
+public class TileCanvas {
+    private static final Logger log = LogFactory.getLogger(TileCanvas.class);
+
+    private final Style style;
+    private final CoordinateReferenceSystem crs;
+    private final ReferencedEnvelope bounds;
+    private final Rectangle screenArea;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final double bufferSize;
+    private final BufferedImage image;
+
+    /**
+     * @param style style for the features
+     * @param location area to draw
+     * @param imageWidth
+     * @param imageHeight
+     * @param bufferSize draw an enlarged image (by bufferSize) and crop it to the tile, 0 for no buffer
+     */
+    TileCanvas(Style style, Location location, int imageWidth, int imageHeight, double bufferSize) {
+        this.style = style;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.bufferSize = bufferSize;
+        this.crs = location.getCrsForMap();
+        if(isBuffered()) {
+            double width = (location.getRight() - location.getLeft())/2 * bufferSize;
+            double height = (location.getTop() - location.getBottom())/2 * bufferSize;
+            // trick: bounds must be without crs (.crs=null)
+            bounds = location.createEnlargedEnvelope(width, height);
+            screenArea = new Rectangle(0, 0,
+                    imageWidth + (int)(imageWidth*bufferSize),
+                    imageHeight + (int)(imageWidth*bufferSize));
+            log.debug(" Enlarged "+bounds+" "+screenArea+" in "+crs);
+        } else {
+            screenArea = new Rectangle(0, 0, imageWidth, imageHeight); // image size
+            // trick: bounds must be without crs (.crs=null)
+            bounds = location.getEnvelopeForMapNoCrs();
+            log.debug(" Normal "+bounds+" "+screenArea+ " in "+crs);
+        }
+        image = new BufferedImage(screenArea.width,
+                screenArea.height,
+                BufferedImage.TYPE_4BYTE_ABGR);
+    }
+
+    private boolean isBuffered() {
+        return bufferSize != 0.0d;
+    }
+
+    /**
+     * Draws features on the image
+     * @param features
+     */
+    public void paint(FeatureCollection<SimpleFeatureType, SimpleFeature> features) {
+        if(features == null || features.size() == 0) {
+            return;
+        }
+        MapViewport viewport = new MapViewport();
+        viewport.setCoordinateReferenceSystem(crs);
+        viewport.setScreenArea(screenArea);
+        viewport.setBounds(bounds);
+        viewport.setMatchingAspectRatio(true);
+
+        MapContent content = new MapContent();
+        content.addLayer(new FeatureLayer(features, style));
+        content.setViewport(viewport);
+
+        GTRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(content);
+
+        Graphics2D g = (Graphics2D) image.getGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        try {
+            renderer.paint(g, new Rectangle(screenArea.width, screenArea.height), content.getViewport().getBounds());
+        } finally {
+            g.dispose();
+            content.dispose();
+        }
+    }
+
+    /**
+     * @return image cropped to the tile, painting more features afterwards changes the returned image
+     */
+    public BufferedImage getImage() {
+        if(!isBuffered()) {
+            return image;
+        }
+        try {
+            return image.getSubimage((int)(imageWidth*bufferSize)/2,
+                    (int)(imageWidth*bufferSize)/2,
+                    imageWidth,
+                    imageHeight);
+        } catch(Exception e) {
+            log.error(e, "Image cropping failed");
+        }
+        return image;
+    }
+}
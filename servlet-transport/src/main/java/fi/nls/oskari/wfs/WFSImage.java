@@ -7,17 +7,12 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.pojo.Location;
 import fi.nls.oskari.pojo.Tile;
 import fi.nls.oskari.pojo.WFSCustomStyleStore;
+import fi.nls.oskari.transport.NearCache;
 import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wfs.pojo.WFSLayerStore;
 import org.apache.commons.codec.binary.Base64;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.map.FeatureLayer;
-import org.geotools.map.Layer;
-import org.geotools.map.MapContent;
-import org.geotools.map.MapViewport;
-import org.geotools.renderer.GTRenderer;
-import org.geotools.renderer.lite.StreamingRenderer;
 import org.geotools.sld.SLDConfiguration;
 import org.geotools.styling.SLD;
 import org.geotools.styling.Style;
@@ -26,15 +21,14 @@ import org.geotools.xml.Configuration;
 import org.geotools.xml.Parser;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Image drawing for WFS layers 
@@ -60,19 +54,15 @@ public class WFSImage {
 
     public static final String GEOM_TYPE_PLACEHOLDER = "wfsGeometryType";
 
+    // in-memory tier in front of Redis for persistent images
+    private static final NearCache<CachedImage> LOCAL_CACHE = new ImageNearCache();
+
     private Style style;
 
-    private Location location; // location of the tile (modified if not map)
-    private FeatureCollection<SimpleFeatureType, SimpleFeature> features;
-    private int imageWidth = 0;
-    private int imageHeight = 0;
     private double bufferSize = 0.0d;
-    private int bufferedImageWidth = 0;
-    private int bufferedImageHeight = 0;
 
     WFSCustomStyleStore customStyle;
     private boolean isHighlight = false;
-    private boolean isTile = false;
 
     protected WFSImage() {
 
@@ -144,7 +134,8 @@ public class WFSImage {
     }
 
     /**
-     * Gets bufferedImage from cache
+     * Gets bufferedImage from cache. Decodes the image, use getCachedImage() if the image
+     * is only passed on.
      *
      * @param layerId
      * @param srs
@@ -159,30 +150,50 @@ public class WFSImage {
                                          Double[] bbox,
                                          long zoom,
                                          boolean persistent) {
-        if(layerId == null ||
-                styleName == null ||
-                srs == null ||
-                bbox.length != 4) {
-            log.error("Cache key couldn't be created");
-            return null;
-        }
+        CachedImage image = getCachedImage(layerId, styleName, srs, bbox, zoom, persistent);
+        if(image != null)
+            return image.getImage();
+        return null;
+    }
 
-        // no persistent cache for custom styles
-        if(styleName.startsWith(PREFIX_CUSTOM_STYLE) && persistent) {
+    /**
+     * Gets encoded image from cache. Persistent images are kept in memory as well
+     * (transport.cache.images.localBytes, default 64MB) so they are read from Redis only once per node.
+     *
+     * @param layerId
+     * @param srs
+     * @param bbox
+     * @param zoom
+     * @param persistent
+     * @return encoded image from cache
+     */
+    public static CachedImage getCachedImage(String layerId,
+                                             String styleName,
+                                             String srs,
+                                             Double[] bbox,
+                                             long zoom,
+                                             boolean persistent) {
+        String id = getCacheId(layerId, styleName, srs, bbox, zoom, persistent);
+        if(id == null) {
             return null;
         }
 
-        String sBbox = bbox[0] + "-" + bbox[1] + "-" + bbox[2]+ "-" + bbox[3];
-        String sKey = KEY + layerId + "_" + styleName + "_"  + srs + "_" + sBbox + "_" + zoom;
-        if(!persistent) {
-            sKey = sKey + "_temp";
+        if(persistent) {
+            CachedImage image = LOCAL_CACHE.get(id);
+            if(image != null) {
+                return image;
+            }
         }
 
-        byte[] key = sKey.getBytes();
-        byte[] bytes = JedisManager.get(key);
-        if(bytes != null)
-            return bytesToImage(bytes);
-        return null;
+        byte[] bytes = JedisManager.get((KEY + id).getBytes());
+        if(bytes == null) {
+            return null;
+        }
+        CachedImage image = new CachedImage(bytes);
+        if(persistent) {
+            LOCAL_CACHE.put(id, image);
+        }
+        return image;
     }
 
     /**
@@ -202,29 +213,77 @@ public class WFSImage {
                                 Double[] bbox,
                                 long zoom,
                                 boolean persistent) {
+        setCache(CachedImage.fromImage(bufferedImage), layerId, styleName, srs, bbox, zoom, persistent);
+    }
+
+    /**
+     * Sets encoded image to cache
+     *
+     * @param image
+     * @param layerId
+     * @param srs
+     * @param bbox
+     * @param zoom
+     * @param persistent
+     * @return true if the image was stored to Redis
+     */
+    public static boolean setCache(CachedImage image,
+                                String layerId,
+                                String styleName,
+                                String srs,
+                                Double[] bbox,
+                                long zoom,
+                                boolean persistent) {
+        if(image == null) {
+            log.error("No image given");
+            return false;
+        }
+        // no persistent cache for custom styles
+        if(styleName != null && styleName.startsWith(PREFIX_CUSTOM_STYLE)) {
+            persistent = false;
+        }
+
+        String id = getCacheId(layerId, styleName, srs, bbox, zoom, persistent);
+        if(id == null) {
+            return false;
+        }
+
+        boolean stored = JedisManager.setex((KEY + id).getBytes(), JedisManager.EXPIRY_TIME_DAY, image.getBytes()) != null;
+        if(persistent) {
+            LOCAL_CACHE.put(id, image.withoutImage());
+        }
+        return stored;
+    }
+
+    /**
+     * @return cache key without the KEY prefix or null if it couldn't be created
+     */
+    private static String getCacheId(String layerId,
+                                      String styleName,
+                                      String srs,
+                                      Double[] bbox,
+                                      long zoom,
+                                      boolean persistent) {
         if(layerId == null ||
                 styleName == null ||
                 srs == null ||
+                bbox == null ||
                 bbox.length != 4) {
             log.error("Cache key couldn't be created");
-            return;
+            return null;
         }
 
         // no persistent cache for custom styles
-        if(styleName.startsWith(PREFIX_CUSTOM_STYLE)) {
-            persistent = false;
+        if(styleName.startsWith(PREFIX_CUSTOM_STYLE) && persistent) {
+            return null;
         }
 
-        byte[] byteImage = imageToBytes(bufferedImage);
         String sBbox = bbox[0] + "-" + bbox[1] + "-" + bbox[2]+ "-" + bbox[3];
-        String sKey = KEY + layerId + "_" + styleName + "_" + srs + "_" + sBbox + "_" + zoom;
+        String id = layerId + "_" + styleName + "_"  + srs + "_" + sBbox + "_" + zoom;
         if(!persistent) {
-            sKey = sKey + "_temp";
+            id = id + "_temp";
         }
-
-        byte[] key = sKey.getBytes();
-
-        JedisManager.setex(key, 86400, byteImage);
+        return id;
     }
 
     /**
@@ -311,131 +370,57 @@ public class WFSImage {
                               Location location,
                               List<Double> bounds,
                               FeatureCollection<SimpleFeatureType, SimpleFeature> features) {
+        // everything is kept in local variables so tiles can be drawn in parallel with the same instance
+        final TileCanvas canvas = features == null ? null : createCanvas(tile, location, bounds);
+        if (canvas == null) {
+            log.warn("Not enough information to draw, features:", features == null ? null : features.isEmpty());
+            return null;
+        }
+        canvas.paint(features);
+        return canvas.getImage();
+    }
 
-        this.imageWidth = tile.getWidth();
-        this.imageHeight = tile.getHeight();
-
+    /**
+     * Creates an empty image of the WFS layer that features can be drawn on in several passes
+     *
+     * @param tile
+     * @param location
+     * @param bounds tile bounds or null to draw the whole location
+     *
+     * @return canvas or null if there isn't enough information to draw
+     */
+    public TileCanvas createCanvas(Tile tile,
+                                   Location location,
+                                   List<Double> bounds) {
+        final int imageWidth = tile.getWidth();
+        final int imageHeight = tile.getHeight();
+
+        Location tileLocation;
+        boolean isTile = false;
         if(bounds == null) {
-            this.location = location;  //<--  axis order doesn't work correct
-           // this.location = new Location(location.getSrs());
-           // this.location.setBbox(location.getBbox());
+            tileLocation = location;  //<--  axis order doesn't work correct
+           // tileLocation = new Location(location.getSrs());
+           // tileLocation.setBbox(location.getBbox());
         } else {
-            this.location = new Location(location.getSrs());
-            this.location.setBbox(bounds);
-
-            // enlarge if tile and buffer is defined
-            this.isTile = true;
-            if(bufferSize != 0.0d) {
-                this.bufferedImageWidth = imageWidth+(int)(imageWidth*bufferSize);
-                this.bufferedImageHeight = imageHeight+(int)(imageWidth*bufferSize);
-            }
+            tileLocation = new Location(location.getSrs());
+            tileLocation.setBbox(bounds);
+            isTile = true;
         }
 
-        this.features = features;
-
         if (imageWidth == 0 ||
                 imageHeight == 0 ||
-                this.location == null ||
-                style == null ||
-                features == null) {
+                tileLocation == null ||
+                style == null) {
             log.warn("Not enough information to draw");
             log.warn(imageWidth);
             log.warn(imageHeight);
             log.warn(location);
             log.warn(style);
-            log.warn(features.isEmpty());
             return null;
         }
 
-        return this.draw();
-    }
-
-    /**
-     * Creates a image of the WFS layer's data
-     *
-     * @return image
-     */
-    private BufferedImage draw() {
-        MapContent content = new MapContent();
-        MapViewport viewport = new MapViewport();
-
-        CoordinateReferenceSystem crs = location.getCrsForMap();
-        ReferencedEnvelope bounds = location.getEnvelopeForMap();
-
-        Rectangle screenArea;
-        if(isTile && bufferSize != 0.0d) {
-            double width = (location.getRight() - location.getLeft())/2 * bufferSize;
-            double height = (location.getTop() - location.getBottom())/2 * bufferSize;
-            // trick: bounds must be without crs (.crs=null)
-            bounds = location.createEnlargedEnvelope(width, height);
-            screenArea = new Rectangle(0, 0, bufferedImageWidth, bufferedImageHeight);
-            
-            
-            log.debug(" Enlarged "+bounds+" "+screenArea+" in "+crs);
-            
-        } else {
-            screenArea = new Rectangle(0, 0, imageWidth, imageHeight); // image size
-            // trick: bounds must be without crs (.crs=null)
-            bounds = location.getEnvelopeForMapNoCrs();
-            log.debug(" Normal "+bounds+" "+screenArea+ " in "+crs);
-        }
-
-        viewport.setCoordinateReferenceSystem(crs);
-        viewport.setScreenArea(screenArea);
-        viewport.setBounds(bounds);
-        viewport.setMatchingAspectRatio(true);
-
-        if(features.size() > 0) {
-            Layer featureLayer = new FeatureLayer(features, style);
-            content.addLayer(featureLayer);
-        }
-
-        content.setViewport(viewport);
-
-        return saveImage(content);
-    }
-
-    /**
-     * Draws map content data into image
-     *
-     * @param content
-     * @return image
-     */
-    private BufferedImage saveImage(MapContent content) {
-        BufferedImage image;
-        if(isTile && bufferSize != 0.0d) {
-            image = new BufferedImage(bufferedImageWidth,
-                    bufferedImageHeight,
-                    BufferedImage.TYPE_4BYTE_ABGR);
-        } else {
-            image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_4BYTE_ABGR);
-        }
-
-        GTRenderer renderer = new StreamingRenderer();
-        renderer.setMapContent(content);
-
-        Graphics2D g = (Graphics2D) image.getGraphics();
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-
-        if(isTile && bufferSize != 0.0d) {
-            renderer.paint(g, new Rectangle(bufferedImageWidth,
-                    bufferedImageHeight),
-                    content.getViewport().getBounds());
-            try {
-                image = image.getSubimage((int)(imageWidth*bufferSize)/2,
-                        (int)(imageWidth*bufferSize)/2,
-                        imageWidth,
-                        imageHeight);
-            } catch(Exception e) {
-                log.error(e, "Image cropping failed");
-            }
-        } else {
-            renderer.paint(g, new Rectangle(imageWidth, imageHeight), content.getViewport().getBounds());
-        }
-
-        content.dispose();
-        return image;
+        // enlarge if tile and buffer is defined
+        return new TileCanvas(style, tileLocation, imageWidth, imageHeight, isTile ? bufferSize : 0.0d);
     }
 
     /**
@@ -583,4 +568,30 @@ public class WFSImage {
     public Style getStyle() {
         return style;
     }
+
+    /**
+     * Persistent images don't change so they are only dropped when the layer is modified. The Oskari server
+     * publishes changes for all images of a layer (KEY + layer id).
+     */
+    private static class ImageNearCache extends NearCache<CachedImage> {
+
+        ImageNearCache() {
+            super(KEY,
+                    TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional("transport.cache.images.ttlSec", 3600)),
+                    PropertyUtil.getOptional("transport.cache.images.limit", 10000),
+                    CachedImage::getSize,
+                    PropertyUtil.getOptional("transport.cache.images.localBytes", 64 * 1024 * 1024));
+        }
+
+        @Override
+        protected void onChange(String id, long version) {
+            if(id.indexOf('_') == -1) {
+                // layer id
+                final String layerPrefix = id + "_";
+                removeIf(key -> key.startsWith(layerPrefix));
+            } else {
+                super.onChange(id, version);
+            }
+        }
+    }
 }
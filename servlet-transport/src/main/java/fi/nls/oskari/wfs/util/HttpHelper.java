@@ -9,7 +9,10 @@ import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wfs.WFSExceptionHelper;
 
 import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.function.Consumer;
 
 /**
  * Implements HTTP request and response methods
@@ -124,7 +127,22 @@ public class HttpHelper {
      * @return response body
      */
     public static Reader getRequestReader(String url, String contentType, String username, String password) {
-        HttpRequest request = getRequest(url, contentType, username, password);
+        return getRequestReader(url, contentType, username, password, null);
+    }
+
+    /**
+     * HTTP GET method with optional basic authentication and contentType definition
+     *
+     * @param url
+     * @param contentType
+     * @param username
+     * @param password
+     * @param onConnect gets a handle for aborting the request (see abortHandle()), can be null
+     * @return response body
+     */
+    public static Reader getRequestReader(String url, String contentType, String username, String password,
+                                          Consumer<Closeable> onConnect) {
+        HttpRequest request = getRequest(url, contentType, username, password, onConnect);
         if(request != null) {
             return request.bufferedReader();
         }
@@ -141,6 +159,21 @@ public class HttpHelper {
      * @return response body
      */
     public static HttpRequest getRequest(String url, String contentType, String username, String password) {
+        return getRequest(url, contentType, username, password, null);
+    }
+
+    /**
+     * HTTP GET method with optional basic authentication and contentType definition
+     *
+     * @param url
+     * @param contentType
+     * @param username
+     * @param password
+     * @param onConnect gets a handle for aborting the request (see abortHandle()), can be null
+     * @return response body
+     */
+    public static HttpRequest getRequest(String url, String contentType, String username, String password,
+                                         Consumer<Closeable> onConnect) {
         HttpRequest request;
         try {
 
@@ -163,6 +196,9 @@ public class HttpHelper {
                         .trustAllCerts()
                         .trustAllHosts();
             }
+            if(onConnect != null) {
+                onConnect.accept(abortHandle(request.getConnection()));
+            }
             if(request.ok() || request.code() == 304)
                 return request;
             else {
@@ -202,6 +238,22 @@ public class HttpHelper {
      */
     public static Reader postRequestReader(String url, String contentType, String data, String username,
             String password, boolean throwException) {
+        return postRequestReader(url, contentType, data, username, password, throwException, null);
+    }
+
+    /**
+     * HTTP POST method with optional basic authentication and contentType definition
+     *
+     * @param url
+     * @param contentType
+     * @param username
+     * @param password
+     * @param throwException
+     * @param onConnect gets a handle for aborting the request (see abortHandle()), can be null
+     * @return response body
+     */
+    public static Reader postRequestReader(String url, String contentType, String data, String username,
+            String password, boolean throwException, Consumer<Closeable> onConnect) {
         HttpRequest request;
         Reader response = null;
         try {
@@ -215,8 +267,7 @@ public class HttpHelper {
                         .readTimeout(READ_TIMEOUT_MS)
                         .acceptGzipEncoding().uncompress(true)
                         .trustAllCerts()
-                        .trustAllHosts()
-                        .send(data);
+                        .trustAllHosts();
             } else {
                 request = HttpRequest.post(url)
                         .contentType(contentType)
@@ -224,9 +275,12 @@ public class HttpHelper {
                         .readTimeout(READ_TIMEOUT_MS)
                         .acceptGzipEncoding().uncompress(true)
                         .trustAllCerts()
-                        .trustAllHosts()
-                        .send(data);
+                        .trustAllHosts();
+            }
+            if(onConnect != null) {
+                onConnect.accept(abortHandle(request.getConnection()));
             }
+            request.send(data);
             if(request.ok() || request.code() == 304) {
                 // default charset is UTF-8
                 log.debug("request charset:", request.charset());
@@ -246,6 +300,17 @@ public class HttpHelper {
         return response;
     }
 
+    /**
+     * Closing the handle disconnects the request. Can be called from another thread to abort a request
+     * that is waiting for or reading the response, the request then fails with an IOException.
+     *
+     * @param connection
+     * @return handle for aborting the request
+     */
+    public static Closeable abortHandle(final HttpURLConnection connection) {
+        return connection::disconnect;
+    }
+
     /**
      * Handles HTTP error logging for HTTP request methods
      * 
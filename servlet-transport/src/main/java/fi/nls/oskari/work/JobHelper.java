@@ -6,6 +6,7 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.pojo.Units;
 import fi.nls.oskari.pojo.WFSLayerPermissionsStore;
 import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.transport.NearCache;
 import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wfs.WFSExceptionHelper;
 import fi.nls.oskari.wfs.pojo.WFSLayerStore;
@@ -14,6 +15,7 @@ import fi.nls.oskari.wfs.util.HttpHelper;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helper methods for OWSMaplayerJob
@@ -39,6 +41,14 @@ public class JobHelper {
 
     private static Units units = new Units();
 
+    // parsed layer configurations and permissions, changes are published by the Oskari server
+    private static final NearCache<WFSLayerStore> LAYERS = new NearCache<>(WFSLayerConfiguration.KEY,
+            TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional("transport.cache.layers.ttlSec", 300)),
+            PropertyUtil.getOptional("transport.cache.layers.limit", 1000));
+    private static final NearCache<WFSLayerPermissionsStore> PERMISSIONS = new NearCache<>(WFSLayerPermissionsStore.KEY,
+            TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional("transport.cache.permissions.ttlSec", 60)),
+            PropertyUtil.getOptional("transport.cache.permissions.limit", 10000));
+
     static {
         setupAPIUrl();
     }
@@ -97,6 +107,10 @@ public class JobHelper {
      *         otherwise.
      */
     public static boolean hasPermission(String layerId, String sessionId, String route) {
+        WFSLayerPermissionsStore cached = PERMISSIONS.get(sessionId);
+        if(cached != null) {
+            return cached.isPermission(layerId);
+        }
         String json = WFSLayerPermissionsStore.getCache(sessionId);
         boolean fromCache = json != null;
         if(!fromCache) {
@@ -107,6 +121,7 @@ public class JobHelper {
         }
         try {
             WFSLayerPermissionsStore permissions = WFSLayerPermissionsStore.setJSON(json);
+            PERMISSIONS.put(sessionId, permissions);
             return permissions.isPermission(layerId);
         } catch (IOException e) {
             log.error(e, "JSON parsing failed for WFSLayerPermissionsStore \n" + json);
@@ -115,6 +130,36 @@ public class JobHelper {
         return false;
     }
 
+    /**
+     * Gets layer permissions of the session from the near-cache or redis
+     *
+     * @param sessionId
+     * @return permissions or null if not found
+     * @throws IOException if parsing fails
+     */
+    public static WFSLayerPermissionsStore getCachedPermissions(String sessionId) throws IOException {
+        WFSLayerPermissionsStore permissions = PERMISSIONS.get(sessionId);
+        if(permissions != null) {
+            return permissions;
+        }
+        String json = WFSLayerPermissionsStore.getCache(sessionId);
+        if(json == null) {
+            return null;
+        }
+        permissions = WFSLayerPermissionsStore.setJSON(json);
+        PERMISSIONS.put(sessionId, permissions);
+        return permissions;
+    }
+
+    /**
+     * Drops the permissions of the session from the near-cache
+     *
+     * @param sessionId
+     */
+    public static void removeCachedPermissions(String sessionId) {
+        PERMISSIONS.remove(sessionId);
+    }
+
     /**
      * Gets layer configuration (uses cache)
      * throws ServiceRuntimeException, if Redis methods fails (not 1st get cache)
@@ -125,6 +170,10 @@ public class JobHelper {
      * @return layer
      */
     public static WFSLayerStore getLayerConfiguration(String layerId, String sessionId, String route) {
+        WFSLayerStore cached = LAYERS.get(layerId);
+        if(cached != null) {
+            return cached;
+        }
         String json = WFSLayerStore.getCache(layerId);
         boolean fromCache = json != null;
         if(!fromCache) {
@@ -140,7 +189,9 @@ public class JobHelper {
             }
         }
         try {
-            return WFSLayerStore.setJSON(json);
+            WFSLayerStore layer = WFSLayerStore.setJSON(json);
+            LAYERS.put(layerId, layer);
+            return layer;
         } catch (Exception e) {
             log.error(e, "JSON parsing failed for WFSLayerStore \n" + json);
             throw new ServiceRuntimeException("JSON parsing failed for WFSLayerStore - json: " + json,
@@ -5,7 +5,9 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.pojo.*;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.transport.TransportJobException;
+import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.wfs.CachedImage;
 import fi.nls.oskari.wfs.WFSExceptionHelper;
 import fi.nls.oskari.wfs.WFSImage;
 import fi.nls.oskari.wfs.pojo.WFSLayerStore;
@@ -16,7 +18,15 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.operation.MathTransform;
 
 import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Job for WFS Map Layer
@@ -67,6 +77,12 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
 
     public static final String BROWSER_MSIE = "msie";
 
+    public static final String IMAGE_DELIVERY_DATA = "data";
+    public static final String IMAGE_DELIVERY_URL = "url";
+    // "data" sends tiles as base64 in the message, "url" only the ImageServlet URL for tiles found in cache
+    protected static final boolean IMAGE_URL_DELIVERY = IMAGE_DELIVERY_URL.equalsIgnoreCase(
+            PropertyUtil.get("transport.image.delivery", IMAGE_DELIVERY_DATA));
+
     public static final String PROCESS_STARTED = "Started";
     public static final String PROCESS_ENDED = "Ended";
 
@@ -96,8 +112,25 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
 
     protected WFSImage image = null;
 
+    // requests to the service that are aborted if the job is terminated
+    private final Set<Closeable> inFlight = ConcurrentHashMap.newKeySet();
+
     public static final int FE_READ_TIMEOUT_MS = PropertyUtil.getOptional("oskari.wfs.read.timeout", 30000);
 
+    // renders tiles of a job in parallel, shared by all jobs so the number of rendering threads is bounded
+    protected static final int RENDER_THREADS = PropertyUtil.getOptional("transport.render.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService RENDER_POOL = Executors.newFixedThreadPool(Math.max(RENDER_THREADS, 1),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TileRenderer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
 
 
     protected static final List<List<Object>> EMPTY_LIST = new ArrayList();
@@ -173,6 +206,37 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
         super.finalize();
     }
 
+    /**
+     * Registers a request to the service that is aborted if the job is terminated
+     * (like a newer job for the same client and layer replaces this one).
+     * Aborted immediately if the job has already been terminated.
+     *
+     * @param request handle that aborts the request when closed (see HttpHelper.abortHandle())
+     */
+    protected void addInFlightRequest(Closeable request) {
+        inFlight.add(request);
+        if (!goNext()) {
+            abortInFlightRequests();
+        }
+    }
+
+    /**
+     * Aborts requests made by this job that are still in progress
+     */
+    @Override
+    protected void onTerminate() {
+        abortInFlightRequests();
+    }
+
+    private void abortInFlightRequests() {
+        for (Closeable request : inFlight) {
+            if (inFlight.remove(request)) {
+                log.debug("Aborting request for", getKey());
+                IOHelper.close(request);
+            }
+        }
+    }
+
     /**
      * Unique key definition
      */
@@ -207,7 +271,19 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
             return STATUS_CANCELED;
         }
         // run job specific tasks
-        boolean completed = runRequestedJob();
+        boolean completed;
+        try {
+            completed = runRequestedJob();
+        } catch (RuntimeException e) {
+            if (goNext()) {
+                throw e;
+            }
+            // superseded by a newer job and the request was aborted
+            log.debug("Terminated while running", getKey(), "-", e.getMessage());
+            completed = false;
+        } finally {
+            inFlight.clear();
+        }
         if(!completed) {
             log.debug("[fe] Cancelled");
             return STATUS_CANCELED;
@@ -257,90 +333,166 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
             this.session.getLocation().setEnlargedEnvelope(grid.get(0));
         }
 
+        // features are fetched once for all tiles so the tiles can be rendered in parallel
+        final boolean parallel = !this.layer.isTileRequest() && RENDER_THREADS > 1;
+        final List<Future<?>> rendering = new ArrayList<>();
+
         boolean first = true;
-        int index = 0;
-        for(List<Double> bounds : grid) {
-            if (!goNext()) {
-                return false;
-            }
+        try {
+            for(final List<Double> bounds : grid) {
+                if (!goNext()) {
+                    return false;
+                }
 
-            log.debug("Tile bounds:", bounds);
+                log.debug("Tile bounds:", bounds);
 
-            // make a request per tile
-            if(this.layer.isTileRequest()) {
-                if(!this.normalHandlers(bounds, first)) {
-                    continue;
+                // make a request per tile
+                if(this.layer.isTileRequest()) {
+                    if(!this.normalHandlers(bounds, first)) {
+                        continue;
+                    }
                 }
-            }
 
-            if(!goNext()) {
-                return false;
-            }
+                if(!goNext()) {
+                    return false;
+                }
 
-            boolean isThisTileNeeded = true;
+                // the first tile is always sent first since it tells the client not to keep previous tiles
+                if (parallel && !first) {
+                    rendering.add(RENDER_POOL.submit(() -> {
+                        if (goNext()) {
+                            processTile(bounds);
+                        }
+                    }));
+                } else {
+                    processTile(bounds);
+                }
 
-            if (!this.sendImage) {
-                log.debug("[fe] !sendImage - not sending PNG");
-                isThisTileNeeded = false;
+                if (first) {
+                    first = false;
+                    // keep the next tiles
+                    this.session.setKeepPrevious(true);
+                }
+            }
+            // tiles are sent as soon as they are ready, wait for the rest before completing the job
+            for (Future<?> tile : rendering) {
+                if (!goNext()) {
+                    return false;
+                }
+                waitForTile(tile);
+            }
+        } finally {
+            for (Future<?> tile : rendering) {
+                tile.cancel(false);
             }
+        }
+        return true;
+    }
 
-            if (!this.sessionLayer.isTile(bounds)) {
-                log.debug("[fe] !layer.isTile - not sending PNG");
-                isThisTileNeeded = false;
+    private void waitForTile(Future<?> tile) {
+        try {
+            tile.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportJobException("Interrupted while rendering tiles", e,
+                    WFSExceptionHelper.ERROR_WFS_IMAGE_PARSING_FAILED);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw new TransportJobException("Tile rendering failed", e.getCause(),
+                    WFSExceptionHelper.ERROR_WFS_IMAGE_PARSING_FAILED);
+        }
+    }
 
-            if (isThisTileNeeded) {
-                Double[] bbox = bounds.toArray(new Double[4]);
-
-                // get from cache
-                BufferedImage bufferedImage = getImageCache(bbox);
-                boolean isboundaryTile = this.session.getGrid().isBoundsOnBoundary2(this.session.getLocation(), bbox);
-
-                if(bufferedImage == null) {
-                    if(this.image == null) {
-                        this.image = createResponseImage();
-                        // Style check
-                        if(this.image.getStyle() == null) {
-                            Map<String, Object> output = this.createCommonWarningResponse(
-                                    "SDL style parsing failed for the layer (custon or default)",
-                                    WFSExceptionHelper.WARNING_SLDSTYLE_PARSING_FAILED);
-                            this.sendCommonErrorResponse(output, true);
-                        }
-                    }
-                    bufferedImage = this.image.draw(this.session.getTileSize(),
-                            this.session.getLocation(),
-                            bounds,
-                            this.features);
-                    if(bufferedImage == null) {
-                        // Break tile loop, if one tile fails
-                        throw new TransportJobException("Tile image parsing failed for features",
-                                WFSExceptionHelper.ERROR_WFS_IMAGE_PARSING_FAILED);
-                    }
+    /**
+     * Sends the tile image from cache or renders it if needed. Called from the render pool for all
+     * but the first tile when tiles are rendered in parallel so must not modify the job state.
+     *
+     * @param bounds
+     */
+    protected void processTile(List<Double> bounds) {
+        boolean isThisTileNeeded = true;
 
-                    // setup cachekey
-                    String cacheStyleName = this.session.getLayers().get(this.layerId).getStyleName();
-                    if (cacheStyleName.startsWith(WFSImage.PREFIX_CUSTOM_STYLE)) {
-                        cacheStyleName += "_" + this.session.getSession();
-                    }
+        if (!this.sendImage) {
+            log.debug("[fe] !sendImage - not sending PNG");
+            isThisTileNeeded = false;
+        }
 
-                    // save to cache
-                    setImageCache(bufferedImage, cacheStyleName, bbox, !isboundaryTile);
-                }
+        if (!this.sessionLayer.isTile(bounds)) {
+            log.debug("[fe] !layer.isTile - not sending PNG");
+            isThisTileNeeded = false;
+        }
 
-                String url = createImageURL(this.session.getLayers().get(this.layerId).getStyleName(), bbox);
-                this.sendWFSImage(url, bufferedImage, bbox, true, isboundaryTile);
-            } else {
-                log.debug("Tile not needed?", bounds);
+        if (!isThisTileNeeded) {
+            log.debug("Tile not needed?", bounds);
+            return;
+        }
+        Double[] bbox = bounds.toArray(new Double[4]);
+
+        // get from cache, cached images are sent as is without decoding
+        CachedImage tileImage = getImageCache(bbox);
+        boolean isStored = tileImage != null;
+        boolean isboundaryTile = this.session.getGrid().isBoundsOnBoundary2(this.session.getLocation(), bbox);
+
+        if(tileImage == null) {
+            BufferedImage bufferedImage = renderTile(bounds);
+            // encoded once for both cache and response
+            tileImage = CachedImage.fromImage(bufferedImage);
+            if(tileImage == null) {
+                // Break tile loop, if one tile fails
+                throw new TransportJobException("Tile image parsing failed for features",
+                        WFSExceptionHelper.ERROR_WFS_IMAGE_PARSING_FAILED);
             }
 
-            if (first) {
-                first = false;
-                // keep the next tiles
-                this.session.setKeepPrevious(true);
+            // setup cachekey
+            String cacheStyleName = this.session.getLayers().get(this.layerId).getStyleName();
+            if (cacheStyleName.startsWith(WFSImage.PREFIX_CUSTOM_STYLE)) {
+                cacheStyleName += "_" + this.session.getSession();
             }
-            index++;
+
+            // save to cache
+            isStored = setImageCache(tileImage, cacheStyleName, bbox, !isboundaryTile);
         }
-        return true;
+        if (!goNext()) {
+            return;
+        }
+
+        String url = createImageURL(this.session.getLayers().get(this.layerId).getStyleName(), bbox);
+        this.sendWFSImage(url, tileImage, bbox, true, isboundaryTile, isStored);
+    }
+
+    /**
+     * Draws the features on a tile. Called from the render pool when tiles are rendered in parallel.
+     *
+     * @param bounds
+     * @return image or null if drawing failed
+     */
+    protected BufferedImage renderTile(List<Double> bounds) {
+        return getResponseImage().draw(this.session.getTileSize(),
+                this.session.getLocation(),
+                bounds,
+                this.features);
+    }
+
+    /**
+     * Creates the image for drawing tiles on first call. Synchronized since tiles might be rendered in parallel.
+     */
+    protected synchronized WFSImage getResponseImage() {
+        if(this.image == null) {
+            this.image = createResponseImage();
+            // Style check
+            if(this.image.getStyle() == null) {
+                Map<String, Object> output = this.createCommonWarningResponse(
+                        "SDL style parsing failed for the layer (custon or default)",
+                        WFSExceptionHelper.WARNING_SLDSTYLE_PARSING_FAILED);
+                this.sendCommonErrorResponse(output, true);
+            }
+        }
+        return this.image;
     }
 
     public boolean runHighlightJob() {
@@ -376,10 +528,10 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
                     WFSExceptionHelper.WARNING_SLDSTYLE_PARSING_FAILED);
             this.sendCommonErrorResponse(output, true);
         }
-        BufferedImage bufferedImage = this.image.draw(this.session.getMapSize(),
+        CachedImage highlightImage = CachedImage.fromImage(this.image.draw(this.session.getMapSize(),
                 location,
-                this.features);
-        if(bufferedImage == null) {
+                this.features));
+        if(highlightImage == null) {
             throw new TransportJobException("Image parsing failed for feature highlight",
                     WFSExceptionHelper.ERROR_WFS_IMAGE_PARSING_FAILED);
         }
@@ -387,10 +539,10 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
         Double[] bbox = location.getBboxArray();
 
         // cache (non-persistant)
-        setImageCache(bufferedImage, JobType.HIGHLIGHT.toString() + "_" + this.session.getSession(), bbox, false);
+        boolean isStored = setImageCache(highlightImage, JobType.HIGHLIGHT.toString() + "_" + this.session.getSession(), bbox, false);
 
         String url = createImageURL(JobType.HIGHLIGHT.toString(), bbox);
-        this.sendWFSImage(url, bufferedImage, bbox, false, false);
+        this.sendWFSImage(url, highlightImage, bbox, false, false, isStored);
         return true;
     }
 
@@ -683,7 +835,34 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
      * @param isTiled
      */
     protected void sendWFSImage(String url, BufferedImage bufferedImage, Double[] bbox, boolean isTiled, boolean isboundaryTile) {
-        if(bufferedImage == null) {
+        this.sendWFSImage(url, CachedImage.fromImage(bufferedImage), bbox, isTiled, isboundaryTile);
+    }
+
+    /**
+     * Sends encoded image as an URL to IE 8 & 9, base64 data for others
+     *
+     * @param url
+     * @param image
+     * @param bbox
+     * @param isTiled
+     */
+    protected void sendWFSImage(String url, CachedImage image, Double[] bbox, boolean isTiled, boolean isboundaryTile) {
+        this.sendWFSImage(url, image, bbox, isTiled, isboundaryTile, false);
+    }
+
+    /**
+     * Sends encoded image. With transport.image.delivery=url an image that is stored in cache
+     * is sent only as an URL to ImageServlet, otherwise the image data is included as base64.
+     *
+     * @param url
+     * @param image
+     * @param bbox
+     * @param isTiled
+     * @param isboundaryTile
+     * @param isStored true if the image can be served by ImageServlet from cache
+     */
+    protected void sendWFSImage(String url, CachedImage image, Double[] bbox, boolean isTiled, boolean isboundaryTile, boolean isStored) {
+        if(image == null) {
             log.warn("Failed to send image");
             return;
         }
@@ -708,9 +887,9 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
         output.put(OUTPUT_IMAGE_HEIGHT, tileSize.getHeight());
         output.put(OUTPUT_IMAGE_URL, url);
 
-        byte[] byteImage = WFSImage.imageToBytes(bufferedImage);
-        String base64Image = WFSImage.bytesToBase64(byteImage);
-        output.put(OUTPUT_IMAGE_DATA, base64Image);
+        if(!IMAGE_URL_DELIVERY || !isStored) {
+            output.put(OUTPUT_IMAGE_DATA, image.getBase64());
+        }
 
         this.service.addResults(this.session.getClient(), ResultProcessor.CHANNEL_IMAGE, output);
     }
@@ -743,17 +922,18 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
             WFSLayerStore layer, RequestResponse response);
 
     /**
-     * Gets image from cache
+     * Gets encoded image from cache
      *
      * @param bbox
      */
-    protected BufferedImage getImageCache(Double[] bbox) {
-        return WFSImage.getCache(
+    protected CachedImage getImageCache(Double[] bbox) {
+        return WFSImage.getCachedImage(
                 this.layerId,
                 this.session.getLayers().get(this.layerId).getStyleName(),
                 this.session.getLocation().getSrs(),
                 bbox,
-                this.session.getLocation().getZoom()
+                this.session.getLocation().getZoom(),
+                true
         );
     }
 
@@ -767,8 +947,22 @@ public abstract class OWSMapLayerJob extends AbstractJob<String> {
      */
     protected void setImageCache(BufferedImage bufferedImage,
                                  final String style, Double[] bbox, boolean persistent) {
+        setImageCache(CachedImage.fromImage(bufferedImage), style, bbox, persistent);
+    }
+
+    /**
+     * Sets encoded image to cache
+     *
+     * @param image
+     * @param style
+     * @param bbox
+     * @param persistent
+     * @return true if the image was stored
+     */
+    protected boolean setImageCache(CachedImage image,
+                                 final String style, Double[] bbox, boolean persistent) {
 
-        WFSImage.setCache(bufferedImage, this.layerId, style, this.session
+        return WFSImage.setCache(image, this.layerId, style, this.session
                 .getLocation().getSrs(), bbox, this.session.getLocation()
                 .getZoom(), persistent);
 
@@ -86,7 +86,7 @@ public class WFSMapLayerJob extends OWSMapLayerJob {
             log.debug("...WFS / Request data "+ layer.getURL() + "\n" + payload + "\n");
             try {
                 response = HttpHelper.postRequestReader(layer.getURL(), "",
-                        payload, layer.getUsername(), layer.getPassword(), true);
+                        payload, layer.getUsername(), layer.getPassword(), true, this::addInFlightRequest);
             }
             catch (ServiceRuntimeException e){
                 throw new TransportJobException(e.getMessage(),
@@ -166,6 +166,10 @@ public class WFSMapLayerJob extends OWSMapLayerJob {
 
             // parse response, throws an exception on failure
             this.features = response(layer, response);
+            if(!goNext()) {
+                // terminated while reading the response, features might be incomplete
+                return false;
+            }
             final Map<String, Object> output = createCommonResponse();
             if(features == null || features.isEmpty()) {
                 log.debug("Empty result for", this.layerId, "type:", type);
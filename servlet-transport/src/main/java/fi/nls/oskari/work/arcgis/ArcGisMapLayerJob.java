@@ -14,6 +14,7 @@ import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.pojo.Location;
 import fi.nls.oskari.pojo.SessionStore;
 import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.wfs.CachedImage;
 import fi.nls.oskari.wfs.WFSParser;
 import fi.nls.oskari.wfs.pojo.WFSLayerStore;
 import fi.nls.oskari.wfs.util.HttpHelper;
@@ -23,13 +24,14 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.operation.MathTransform;
 
-import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Job for Arcgis REST Map Layer
@@ -90,6 +92,25 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
                                                   WFSLayerStore layer, ArcGisLayerStore arcGisLayer,
                                                   SessionStore session, List<Double> bounds,
                                                   String token) {
+        return sendQueryRequest(type, layer, arcGisLayer, session, bounds, token, null);
+    }
+
+    /**
+     * Makes request
+     *
+     * @param type
+     * @param layer
+     * @param arcGisLayer
+     * @param session
+     * @param bounds
+     * @param token
+     * @param onConnect gets a handle for aborting the request, can be null
+     * @return response
+     */
+    public static Reader sendQueryRequest(JobType type,
+                                          WFSLayerStore layer, ArcGisLayerStore arcGisLayer,
+                                          SessionStore session, List<Double> bounds,
+                                          String token, Consumer<Closeable> onConnect) {
         Reader response = null;
         if(layer.getTemplateType() == null) { // default
             String payload = ArcGisCommunicator.createQueryRequestPayload(type, layer, session, bounds, token);
@@ -98,7 +119,7 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
             //response = HttpHelper.postRequestReader(url, "", payload, layer.getUsername(), layer.getPassword());
 
             //TODO: POST
-            response = HttpHelper.getRequestReader(url + payload, "", layer.getUsername(), layer.getPassword());
+            response = HttpHelper.getRequestReader(url + payload, "", layer.getUsername(), layer.getPassword(), onConnect);
         } else {
             log.warn("Failed to make a request because of undefined layer type", layer.getTemplateType());
         }
@@ -263,9 +284,10 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
                         bbox[i] = bounds.get(i);
                     }
 
-                    // get from cache
-                    BufferedImage bufferedImage = getImageCache(bbox);
-                    boolean fromCache = (bufferedImage != null);
+                    // get from cache, cached images are sent as is without decoding
+                    CachedImage tileImage = getImageCache(bbox);
+                    boolean fromCache = (tileImage != null);
+                    boolean isStored = fromCache;
                     boolean isboundaryTile = this.session.getGrid().isBoundsOnBoundary(index);
 
                     if (!fromCache) {
@@ -279,26 +301,27 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
                                     this.token);
                         }
 
-                        bufferedImage = this.image.draw(this.session.getTileSize(),
+                        // encoded once for both cache and response
+                        tileImage = CachedImage.fromImage(this.image.draw(this.session.getTileSize(),
                                 this.session.getLocation(),
                                 bounds,
-                                this.features);
+                                this.features));
 
-                        if (bufferedImage == null) {
+                        if (tileImage == null) {
                             this.imageParsingFailed();
                             return "error";
                         }
 
                         // set to cache
                         if (!isboundaryTile) {
-                            setImageCache(bufferedImage, cacheStyleName, bbox, true);
+                            isStored = setImageCache(tileImage, cacheStyleName, bbox, true);
                         } else { // non-persistent cache - for ie
-                            setImageCache(bufferedImage, cacheStyleName, bbox, false);
+                            isStored = setImageCache(tileImage, cacheStyleName, bbox, false);
                         }
                     }
 
                     String url = createImageURL(this.session.getLayers().get(this.layerId).getStyleName(), bbox);
-                    this.sendWFSImage(url, bufferedImage, bbox, true, isboundaryTile);
+                    this.sendWFSImage(url, tileImage, bbox, true, isboundaryTile, isStored);
                 }
 
                 if (first) {
@@ -332,11 +355,10 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
                             JobType.HIGHLIGHT.toString(),
                             this.token);
                 }
-                BufferedImage bufferedImage = null;
-                bufferedImage = this.image.draw(this.session.getMapSize(),
+                CachedImage highlightImage = CachedImage.fromImage(this.image.draw(this.session.getMapSize(),
                         location,
-                        this.features);
-                if (bufferedImage == null) {
+                        this.features));
+                if (highlightImage == null) {
                     this.imageParsingFailed();
                     return "error";
                 }
@@ -344,10 +366,10 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
                 Double[] bbox = location.getBboxArray();
 
                 // cache (non-persistant)
-                setImageCache(bufferedImage, JobType.HIGHLIGHT.toString() + "_" + this.session.getSession(), bbox, false);
+                boolean isStored = setImageCache(highlightImage, JobType.HIGHLIGHT.toString() + "_" + this.session.getSession(), bbox, false);
 
                 String url = createImageURL(JobType.HIGHLIGHT.toString(), bbox);
-                this.sendWFSImage(url, bufferedImage, bbox, false, false);
+                this.sendWFSImage(url, highlightImage, bbox, false, false, isStored);
             }
         } else if (this.type == JobType.MAP_CLICK) {
             if (!this.requestHandler(null)) {
@@ -431,7 +453,14 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
         Map<String, Object> output = new HashMap<String, Object>();
         List<Reader> responses = new ArrayList<>();
         for (ArcGisLayerStore subLayer : this.arcGisLayers) {
-            Reader response = sendQueryRequest(this.type, this.layer, subLayer, this.session, bounds, this.token);
+            Reader response = sendQueryRequest(this.type, this.layer, subLayer, this.session, bounds, this.token,
+                    this::addInFlightRequest);
+            if(!goNext()) {
+                // superseded by a newer job, the request was aborted
+                responses.forEach(IOHelper::close);
+                IOHelper.close(response);
+                return false;
+            }
             // request failed
             if(response == null) {
                 log.warn("Request failed for layer", layer.getLayerId());
@@ -450,6 +479,9 @@ public class ArcGisMapLayerJob extends OWSMapLayerJob {
         try {
             // parse response
             this.features = ArcGisCommunicator.parseFeatures(responses, this.layer);
+            if (!goNext()) {
+                return false;
+            }
 
             // parsing failed
             if (this.features == null) {
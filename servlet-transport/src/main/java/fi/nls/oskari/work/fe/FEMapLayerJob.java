@@ -8,7 +8,6 @@ import fi.nls.oskari.fe.engine.FeatureEngine;
 import fi.nls.oskari.fe.input.XMLInputProcessor;
 import fi.nls.oskari.fe.input.format.gml.StaxGMLInputProcessor;
 import fi.nls.oskari.fe.iri.Resource;
-import fi.nls.oskari.fe.output.OutputProcessor;
 import fi.nls.oskari.fi.rysp.generic.WFS11_path_parse_worker;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.pojo.GeoJSONFilter;
@@ -17,10 +16,12 @@ import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.transport.TransportJobException;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.wfs.WFSExceptionHelper;
 import fi.nls.oskari.wfs.WFSFilter;
 import fi.nls.oskari.wfs.WFSImage;
 import fi.nls.oskari.wfs.WFSParser;
+import fi.nls.oskari.wfs.TileCanvas;
 import fi.nls.oskari.wfs.pojo.WFSLayerStore;
 import fi.nls.oskari.work.JobType;
 import fi.nls.oskari.work.OWSMapLayerJob;
@@ -47,6 +48,7 @@ import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.BasicHttpContext;
+import org.geotools.data.DataUtilities;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
@@ -67,21 +69,31 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPathExpressionException;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class FEMapLayerJob extends OWSMapLayerJob {
 
+    // send and draw features while parsing the response, see request()
+    private static final boolean STREAM_FEATURES = PropertyUtil.getOptional("transport.fe.stream", false);
+    private static final int STREAM_BATCH_SIZE = PropertyUtil.getOptional("transport.fe.stream.batchSize", 200);
+
     final ArrayList<String> selectedProperties = new ArrayList<String>();
 
     final Map<Resource, Integer> selectedPropertiesIndex = new HashMap<Resource, Integer>();
 
+    private boolean propertiesSent = false;
+    // tiles drawn while streaming features, by tile bounds
+    private final Map<List<Double>, TileCanvas> canvases = new HashMap<List<Double>, TileCanvas>();
+
     public FEMapLayerJob(ResultProcessor service, JobType type,
             SessionStore store, WFSLayerStore layer) {
         super(service, type, store, layer);
@@ -174,6 +186,11 @@ public class FEMapLayerJob extends OWSMapLayerJob {
     }
 
     protected void propertiesHandler() {
+        if (propertiesSent) {
+            // already sent with the first streamed features
+            return;
+        }
+        propertiesSent = true;
         this.sendWFSProperties(selectedProperties,
                 this.layer.getFeatureParamsLocales(this.session.getLanguage()));
     }
@@ -268,9 +285,13 @@ public class FEMapLayerJob extends OWSMapLayerJob {
             /* FeatureEngine InputProcessor */
             final XMLInputProcessor inputProcessor = new StaxGMLInputProcessor();
 
-            final OutputProcessor outputProcessor = new FEOutputProcessor(
+            final FEOutputProcessor outputProcessor = new FEOutputProcessor(
                     resultsList, responseCollections, crs, requestResponse,
                     selectedProperties, selectedPropertiesIndex, transform, geomProp);
+            if (isStreaming(type, parseConfig)) {
+                prepareCanvases(bounds);
+                outputProcessor.setBatchListener(this::onFeatures, STREAM_BATCH_SIZE);
+            }
 
             /* Backend HTTP URI info */
             FEUrl backendUrlInfo = getBackendURL(urlTemplate);
@@ -378,12 +399,19 @@ public class FEMapLayerJob extends OWSMapLayerJob {
                             backendProxy);
                 }
 
+                // aborted if a newer job replaces this one
+                addInFlightRequest(backendUriRequest::abort);
+
                 Boolean succee = backendLocalContext != null ? backendHttpClient
                         .execute(backendUriRequest, backendResponseHandler,
                                 backendLocalContext) : backendHttpClient
                         .execute(backendUriRequest, backendResponseHandler);
 
                 log.debug("[fe] execute response " + succee + " for " + url);
+                if (Boolean.TRUE.equals(succee)) {
+                    // parsed successfully so the engine can be reused by other jobs
+                    FEEngineManager.releaseEngine(engine);
+                }
 
             } catch (HttpResponseException e) {
                 log.error("Error parsing response:", log.getCauseMessages(e));
@@ -428,6 +456,74 @@ public class FEMapLayerJob extends OWSMapLayerJob {
         return requestResponse;
     }
 
+    /**
+     * Features are streamed for normal jobs when enabled with transport.fe.stream. Geometry requests need all the
+     * features after parsing and recipes using a parse config post-process the whole property list so
+     * those are not streamed.
+     */
+    private boolean isStreaming(JobType type, JSONObject parseConfig) {
+        return STREAM_FEATURES && type == JobType.NORMAL
+                && !this.session.isGeomRequest()
+                && parseConfig == null;
+    }
+
+    /**
+     * Creates canvases for the tiles that are drawn while features are streamed
+     *
+     * @param bounds requested tile or null for all tiles in the grid
+     */
+    private void prepareCanvases(List<Double> bounds) {
+        canvases.clear();
+        if (!this.sendImage) {
+            return;
+        }
+        List<List<Double>> tiles = bounds != null
+                ? Collections.singletonList(bounds)
+                : this.session.getGrid().getBounds();
+        for (List<Double> tile : tiles) {
+            if (!this.sessionLayer.isTile(tile)) {
+                continue;
+            }
+            TileCanvas canvas = getResponseImage().createCanvas(this.session.getTileSize(),
+                    this.session.getLocation(), tile);
+            if (canvas != null) {
+                canvases.put(tile, canvas);
+            }
+        }
+    }
+
+    /**
+     * Sends and draws a batch of streamed features
+     */
+    private void onFeatures(List<SimpleFeature> features, List<List<Object>> values) {
+        if (!goNext()) {
+            return;
+        }
+        // properties are parsed from the response so they can be sent only with the first features
+        propertiesHandler();
+        for (List<Object> feature : values) {
+            this.sendWFSFeature(feature);
+        }
+        SimpleFeatureCollection batch = DataUtilities.collection(features);
+        if (layer.isReverseXY(session.getLocation().getSrs())) {
+            ProjectionHelper.swapGeometryXY(batch);
+        }
+        for (TileCanvas canvas : canvases.values()) {
+            canvas.paint(batch);
+        }
+        log.debug("[fe] streamed", features.size(), "features");
+    }
+
+    @Override
+    protected BufferedImage renderTile(List<Double> bounds) {
+        // streamed features have already been drawn
+        TileCanvas canvas = canvases.get(bounds);
+        if (canvas != null) {
+            return canvas.getImage();
+        }
+        return super.renderTile(bounds);
+    }
+
     private FeatureEngine getFeatureEngine(String recipePath)
             throws InstantiationException, IllegalAccessException,
             ClassNotFoundException {
@@ -621,6 +717,11 @@ public class FEMapLayerJob extends OWSMapLayerJob {
 
             // parse response
             this.features = response(layer, response);
+            final FERequestResponse feResponse = (FERequestResponse) response;
+            // streamed features have already been sent and aren't in the response
+            final int featureCount = feResponse.isStreamed()
+                    ? feResponse.getStreamedFeatureCount()
+                    : (this.features == null ? 0 : this.features.size());
 
             // parsing failed
             if (this.features == null) {
@@ -636,7 +737,7 @@ public class FEMapLayerJob extends OWSMapLayerJob {
             }
 
             // 0 features found - send size
-            if (this.type == JobType.MAP_CLICK && this.features.size() == 0) {
+            if (this.type == JobType.MAP_CLICK && featureCount == 0) {
                 log.debug("Empty result for map click" + this.layerId);
                 output.put(OUTPUT_FEATURES, "empty");
                 output.put(OUTPUT_KEEP_PREVIOUS, this.session.isKeepPrevious());
@@ -644,7 +745,7 @@ public class FEMapLayerJob extends OWSMapLayerJob {
                         ResultProcessor.CHANNEL_MAP_CLICK, output);
                 log.debug(PROCESS_ENDED + getKey());
                 return false;
-            } else if (this.type == JobType.GEOJSON && this.features.size() == 0) {
+            } else if (this.type == JobType.GEOJSON && featureCount == 0) {
                 log.debug("Empty result for filter" + this.layerId);
                 output.put(OUTPUT_FEATURES, "empty");
                 this.service.addResults(session.getClient(),
@@ -652,14 +753,14 @@ public class FEMapLayerJob extends OWSMapLayerJob {
                 log.debug(PROCESS_ENDED + getKey());
                 return false;
             } else {
-                if (this.features.size() == 0) {
+                if (featureCount == 0) {
                     log.debug("Empty result" + this.layerId);
                     output.put(OUTPUT_FEATURE, "empty");
                     this.service.addResults(session.getClient(),
                             ResultProcessor.CHANNEL_FEATURE, output);
                     log.debug(PROCESS_ENDED + getKey());
                     return false;
-                } else if (this.features.size() == layer.getMaxFeatures()) {
+                } else if (featureCount == layer.getMaxFeatures()) {
                     log.debug("Max feature result" + this.layerId);
                     output.put(OUTPUT_FEATURE, "max");
                     this.service.addResults(session.getClient(),
@@ -667,7 +768,7 @@ public class FEMapLayerJob extends OWSMapLayerJob {
                 }
             }
 
-            log.debug("Features count" + this.features.size());
+            log.debug("Features count" + featureCount);
         } catch (ServiceRuntimeException e) {
             log.error(e);
             throw new TransportJobException(e.getMessage(),
@@ -24,10 +24,28 @@ import org.opengis.referencing.operation.TransformException;
 import java.io.IOException;
 import java.util.*;
 
+/**
+ * Collects parsed features into SimpleFeatureCollections (for drawing) and property lists (for sending to the client).
+ *
+ * In streaming mode (see setBatchListener()) features of the requested type are passed to a listener in batches
+ * while parsing and dropped afterwards, so large responses are not kept in memory. The response collections
+ * are empty in streaming mode and the number of streamed features is set to the FERequestResponse.
+ */
 public class FEOutputProcessor implements OutputProcessor {
     protected static final Logger log = LogFactory
             .getLogger(FEOutputProcessor.class);
 
+    /**
+     * Receives parsed features when streaming
+     */
+    public interface FeatureBatchListener {
+        /**
+         * @param features parsed features of the requested type
+         * @param values property values of the features
+         */
+        void onFeatures(List<SimpleFeature> features, List<List<Object>> values) throws IOException;
+    }
+
     final Map<Resource, SimpleFeatureBuilder> responseBuilders = new HashMap<Resource, SimpleFeatureBuilder>();
     final Map<Resource, List<SimpleFeature>> responseFeatures = new HashMap<Resource, List<SimpleFeature>>();
     final ArrayList<List<Object>> list;
@@ -44,6 +62,10 @@ public class FEOutputProcessor implements OutputProcessor {
     final MathTransform transform;
     final String geomProp;
 
+    private FeatureBatchListener batchListener;
+    private int batchSize;
+    private int streamedCount;
+
     public FEOutputProcessor(final ArrayList<List<Object>> list,
             final Map<Resource, SimpleFeatureCollection> responseCollections,
             CoordinateReferenceSystem crs, FERequestResponse requestResponse,
@@ -61,6 +83,20 @@ public class FEOutputProcessor implements OutputProcessor {
         this.geomProp = geomProp;
     }
 
+    /**
+     * Enables streaming mode
+     * @param listener receives the features
+     * @param batchSize number of features to collect before passing them on
+     */
+    public void setBatchListener(FeatureBatchListener listener, int batchSize) {
+        this.batchListener = listener;
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    public boolean isStreaming() {
+        return batchListener != null;
+    }
+
     public void begin() throws IOException {
         /* Setup MAP */
 
@@ -73,6 +109,9 @@ public class FEOutputProcessor implements OutputProcessor {
 
     @Override
     public void end() throws IOException {
+        if (isStreaming()) {
+            requestResponse.setStreamedFeatureCount(streamedCount);
+        }
 
         for (Resource type : responseFeatures.keySet()) {
             List<SimpleFeature> sfc = getAndSetListSimpleFeature(type);
@@ -87,6 +126,29 @@ public class FEOutputProcessor implements OutputProcessor {
 
     @Override
     public void flush() throws IOException {
+        // called after a successful parse, pass on the last features
+        if (isStreaming()) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        final List<SimpleFeature> features = responseFeatures.get(requestResponse.getFeatureIri());
+        if (features == null || features.isEmpty()) {
+            return;
+        }
+        final List<SimpleFeature> batch = new ArrayList<SimpleFeature>(features);
+        final List<List<Object>> values = new ArrayList<List<Object>>(list);
+        features.clear();
+        list.clear();
+        streamedCount += batch.size();
+        batchListener.onFeatures(batch, values);
+    }
+
+    private boolean isRequestedType(Resource type) {
+        final Resource featureIri = requestResponse.getFeatureIri();
+        return featureIri != null && type.getNs().equals(featureIri.getNs())
+                && type.getLocalPart().equals(featureIri.getLocalPart());
     }
 
     public SimpleFeatureBuilder getAndSetFeatureBuilder(Resource type, List<Pair<Resource, Object>> simpleProperties) {
@@ -193,6 +255,11 @@ public class FEOutputProcessor implements OutputProcessor {
             List<Pair<Resource, Geometry>> geometryProperties)
             throws IOException {
 
+        if (isStreaming() && !isRequestedType(type)) {
+            // only the requested type is used, don't collect others
+            return;
+        }
+
         SimpleFeatureBuilder sfb = getAndSetFeatureBuilder(type, simpleProperties);
         List<SimpleFeature> sfc = getAndSetListSimpleFeature(type);
 
@@ -234,9 +301,7 @@ public class FEOutputProcessor implements OutputProcessor {
 
         }
 
-        if (!(type.getNs().equals(requestResponse.getFeatureIri().getNs()) && type
-                .getLocalPart().equals(
-                        requestResponse.getFeatureIri().getLocalPart()))) {
+        if (!isRequestedType(type)) {
             log.debug("[fe] type mismatch for Transport regd "
                     + requestResponse.getFeatureIri() + " vs added " + type
                     + " -> properties discarded");
@@ -264,6 +329,10 @@ public class FEOutputProcessor implements OutputProcessor {
 
             list.add(props);
         }
+
+        if (isStreaming() && getAndSetListSimpleFeature(type).size() >= batchSize) {
+            flushBatch();
+        }
     }
 
     /**
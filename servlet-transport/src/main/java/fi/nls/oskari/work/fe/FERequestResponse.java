@@ -14,6 +14,8 @@ public class FERequestResponse implements RequestResponse {
     private Filter filter;
     Location location;
     Resource featureIri;
+    // number of features passed on while parsing, -1 if features were not streamed
+    int streamedFeatureCount = -1;
 
     public Map<Resource, SimpleFeatureCollection> getResponse() {
         return response;
@@ -48,7 +50,22 @@ public class FERequestResponse implements RequestResponse {
     public void setFeatureIri(Resource featureIri) {
         this.featureIri = featureIri;
     }
-    
+
+    /**
+     * @return true if the features were passed on while parsing instead of collecting them to the response
+     */
+    public boolean isStreamed() {
+        return streamedFeatureCount >= 0;
+    }
+
+    public int getStreamedFeatureCount() {
+        return streamedFeatureCount;
+    }
+
+    public void setStreamedFeatureCount(int streamedFeatureCount) {
+        this.streamedFeatureCount = streamedFeatureCount;
+    }
+
     public void flush() throws IOException {
         
     }
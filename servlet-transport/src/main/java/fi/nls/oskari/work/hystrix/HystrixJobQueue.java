@@ -21,6 +21,7 @@ import fi.nls.oskari.worker.JobQueue;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Adds support for Hystrix commands, defaults to internal threading solution for non-Hystrix jobs
@@ -30,7 +31,7 @@ public class HystrixJobQueue extends JobQueue {
     private Map<String, Job<String>> commandsMapping = new ConcurrentHashMap<String, Job<String>>(100);
     private MetricRegistry metrics = new MetricRegistry();
 
-    private long mapMaxSize = 0;
+    private final AtomicLong mapMaxSize = new AtomicLong();
     private Map<String, TimingGauge> customMetrics = new ConcurrentHashMap<String, TimingGauge>();
 
     public HystrixJobQueue(int nWorkers) {
@@ -138,7 +139,8 @@ public class HystrixJobQueue extends JobQueue {
             setupTimingStatistics(runtimeMS);
         }
         finally {
-            commandsMapping.remove(job.getKey());
+            // don't remove a newer job with the same key
+            commandsMapping.remove(job.getKey(), job);
             job.teardown();
         }
     }
@@ -163,7 +165,7 @@ public class HystrixJobQueue extends JobQueue {
     }
 
     public long getMaxQueueLength() {
-        return super.getMaxQueueLength() + mapMaxSize;
+        return super.getMaxQueueLength() + mapMaxSize.get();
     }
 
     public List<String> getQueuedJobNames() {
@@ -172,15 +174,15 @@ public class HystrixJobQueue extends JobQueue {
         return names;
     }
     /**
-     * Custom handling for HystrixJobs, call super on other type of jobs
+     * Custom handling for HystrixJobs, call super on other type of jobs.
+     * Map layer jobs are keyed by client, layer and job type so a new job supersedes
+     * the previous one: a queued job is skipped and a running job is terminated and its requests aborted.
      * @param job
      */
     public void add(Job job) {
         if(job == null) {
             return;
         }
-        // removed previous job with same key
-        remove(job);
         if(job instanceof OWSMapLayerJob) {
             // wrap to HystrixMapLayerJob
             HystrixMapLayerJob hJob = new HystrixMapLayerJob((OWSMapLayerJob)job);
@@ -188,14 +190,19 @@ public class HystrixJobQueue extends JobQueue {
                     MetricRegistry.name(HystrixJobQueue.class, "job.added." + hJob.getJobId()));
             addMeter.mark();
             addJobCount();
+            // replace previous job with same key
+            Job<String> previous = commandsMapping.put(job.getKey(), hJob);
+            if(previous != null) {
+                previous.terminate();
+                metrics.meter(MetricRegistry.name(HystrixJobQueue.class, "job.superseded." + hJob.getJobId())).mark();
+            }
             hJob.queue();
-            commandsMapping.put(job.getKey(), job);
             // track max size of the map
-            if(mapMaxSize < commandsMapping.size()) {
-                mapMaxSize = commandsMapping.size();
-            }
+            mapMaxSize.accumulateAndGet(commandsMapping.size(), Math::max);
         }
         else {
+            // removed previous job with same key
+            remove(job);
             super.add(job);
         }
     }
@@ -209,10 +216,9 @@ public class HystrixJobQueue extends JobQueue {
             return;
         }
         if(job instanceof OWSMapLayerJob || job instanceof HystrixJob) {
-            Job<String> existing = commandsMapping.get(job.getKey());
+            Job<String> existing = commandsMapping.remove(job.getKey());
             if (existing != null) {
                 existing.terminate();
-                commandsMapping.remove(job.getKey());
             }
         }
         else {
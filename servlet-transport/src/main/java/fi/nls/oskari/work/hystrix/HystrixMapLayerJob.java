@@ -51,6 +51,10 @@ public class HystrixMapLayerJob extends HystrixJob {
     public String run() {
         setStartTime();
         notifyStart();
+        if(!job.goNext()) {
+            // superseded by a newer job while waiting for a thread
+            return null;
+        }
         HystrixJobValidator validator = new HystrixJobValidator(job);
         boolean valid = validator.validateJob();
         if(validator.isCanceled()) {
@@ -1,44 +1,39 @@
 package fi.nls.oskari.work.hystrix.metrics;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Created by SMAKINEN on 19.3.2015.
  */
 public class TimingGauge {
 
-    protected long maxJobLength = 0;
-    protected long minJobLength = Long.MAX_VALUE;
-    protected long jobCount = 0;
-    protected long avgRuntime = 0;
+    protected final AtomicLong maxJobLength = new AtomicLong();
+    protected final AtomicLong minJobLength = new AtomicLong(Long.MAX_VALUE);
+    protected final LongAdder jobCount = new LongAdder();
+    protected final LongAdder totalRuntime = new LongAdder();
 
     public void setupTimingStatistics(long runTimeMS) {
-        jobCount++;
-        if(runTimeMS > maxJobLength) {
-            maxJobLength = runTimeMS;
-        }
-        if(runTimeMS < minJobLength) {
-            minJobLength = runTimeMS;
-        }
-        if(avgRuntime == 0) {
-            avgRuntime = runTimeMS;
-        }
-        else {
-            avgRuntime = ((avgRuntime * (jobCount -1)) + runTimeMS) / jobCount;
-        }
+        maxJobLength.accumulateAndGet(runTimeMS, Math::max);
+        minJobLength.accumulateAndGet(runTimeMS, Math::min);
+        totalRuntime.add(runTimeMS);
+        jobCount.increment();
     }
 
     public long getMaxJobLength() {
-        return maxJobLength;
+        return maxJobLength.get();
     }
 
     public long getMinJobLength() {
-        return minJobLength;
+        return minJobLength.get();
     }
 
     public long getJobCount() {
-        return jobCount;
+        return jobCount.sum();
     }
 
     public long getAvgRuntime() {
-        return avgRuntime;
+        final long count = jobCount.sum();
+        return count == 0 ? 0 : totalRuntime.sum() / count;
     }
 }
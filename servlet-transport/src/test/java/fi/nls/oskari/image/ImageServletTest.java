@@ -0,0 +1,75 @@
+package fi.nls.oskari.image;
+
+import fi.nls.oskari.wfs.CachedImage;
+import fi.nls.test.control.MockServletOutputStream;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * With transport.image.delivery=url clients load the tiles from ImageServlet
+ */
+public class ImageServletTest {
+
+    private final CachedImage image = CachedImage.fromImage(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB));
+
+    @Test
+    public void testTileIsRevalidated() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+
+        ImageServlet.writeCachedImage(mock(HttpServletRequest.class), response, image);
+
+        verify(response).setHeader("Cache-Control", "private, no-cache");
+        verify(response).setHeader("ETag", image.getETag());
+        verify(response).setContentLength(image.getSize());
+        assertArrayEquals(image.getBytes(), body.toByteArray());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("If-None-Match")).thenReturn(image.getETag());
+
+        ImageServlet.writeCachedImage(request, response, image);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        final CachedImage changed = CachedImage.fromImage(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB));
+        assertNotEquals("Different images should have different ETags", image.getETag(), changed.getETag());
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("If-None-Match")).thenReturn(image.getETag());
+
+        ImageServlet.writeCachedImage(request, response, changed);
+
+        verify(response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertArrayEquals(changed.getBytes(), body.toByteArray());
+    }
+
+    private HttpServletResponse mockResponse(ByteArrayOutputStream body) throws Exception {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new MockServletOutputStream(body));
+        return response;
+    }
+}
@@ -7,6 +7,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
@@ -25,6 +27,25 @@ public class SessionStoreTest {
                         JSONHelper.createJSONObject(jsonResult)));
     }
 
+    @Test
+    public void testCopy() throws IOException {
+        String testJSON = IOHelper.readString(getClass().getResourceAsStream("sessionstore-valid.json"));
+        final SessionStore store = SessionStore.setJSON(testJSON);
+        store.setKeepPrevious(true);
+        final SessionStore copy = store.copy();
+        assertTrue("copy should have the same saved state",
+                JSONHelper.isEqual(
+                        JSONHelper.createJSONObject(store.getAsJSON()),
+                        JSONHelper.createJSONObject(copy.getAsJSON())));
+        assertEquals(3, copy.getVersion());
+        assertFalse("passed parameters shouldn't be copied", copy.isKeepPrevious());
+
+        copy.getLocation().getBbox().set(0, 0d);
+        copy.getLayers().get("216").setVisible(false);
+        assertEquals(509058d, store.getLocation().getLeft(), 0d);
+        assertTrue(store.getLayers().get("216").isVisible());
+    }
+
     @Test(expected = IOException.class)
     public void testJSONIOException() throws IOException {
         String testJSON = IOHelper.readString(getClass().getResourceAsStream("sessionstore-fail.json"));
@@ -0,0 +1,48 @@
+package fi.nls.oskari.transport;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.wfs.CachedImage;
+import fi.nls.oskari.wfs.WFSImage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Persistent WFS tiles are kept in memory. When features of a layer are edited the Oskari server
+ * removes the tiles from Redis and publishes a change for WFSImage_[layer id].
+ */
+public class ImageNearCacheTest {
+
+    private static final String LAYER_ID = "987654";
+    private static final String OTHER_LAYER_ID = "98765";
+    private static final Double[] BBOX = { 0d, 0d, 256d, 256d };
+
+    @After
+    public void tearDown() {
+        JedisManager.delAll(WFSImage.KEY + LAYER_ID);
+        JedisManager.delAll(WFSImage.KEY + OTHER_LAYER_ID);
+    }
+
+    @Test
+    public void testFeatureEditDropsLocalTiles() {
+        final CachedImage image = CachedImage.fromImage(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB));
+        WFSImage.setCache(image, LAYER_ID, WFSImage.STYLE_DEFAULT, "EPSG:3067", BBOX, 5, true);
+        WFSImage.setCache(image, OTHER_LAYER_ID, WFSImage.STYLE_DEFAULT, "EPSG:3067", BBOX, 5, true);
+
+        // what AbstractFeatureHandler.flushLayerTilesCache() does
+        JedisManager.delAll(WFSImage.KEY + LAYER_ID);
+        assertNotNull("Removing from Redis doesn't affect the local tier",
+                WFSImage.getCachedImage(LAYER_ID, WFSImage.STYLE_DEFAULT, "EPSG:3067", BBOX, 5, true));
+        // ... JedisManager.notifyKeyChanged(WFSImage.KEY + LAYER_ID) delivered to this node
+        NearCache.dispatch(WFSImage.KEY + LAYER_ID);
+
+        assertNull("Tile of the edited layer should be dropped",
+                WFSImage.getCachedImage(LAYER_ID, WFSImage.STYLE_DEFAULT, "EPSG:3067", BBOX, 5, true));
+        assertNotNull("Tiles of other layers should be kept",
+                WFSImage.getCachedImage(OTHER_LAYER_ID, WFSImage.STYLE_DEFAULT, "EPSG:3067", BBOX, 5, true));
+    }
+}
@@ -0,0 +1,116 @@
+package fi.nls.oskari.transport;
+
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.cache.JedisSubscriber;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearCacheTest {
+
+    @Test
+    public void testGetAndExpire() throws InterruptedException {
+        NearCache<String> cache = new NearCache<>("Test1_", 50, 10);
+        cache.put("a", "value");
+        assertEquals("value", cache.get("a"));
+        Thread.sleep(100);
+        assertNull("Entry should expire", cache.get("a"));
+    }
+
+    @Test
+    public void testLimit() {
+        NearCache<String> cache = new NearCache<>("Test2_", 60000, 2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void testWeight() {
+        NearCache<String> cache = new NearCache<>("Test4_", 60000, 10, String::length, 10);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        assertEquals(8, cache.getWeight());
+        cache.put("c", "1234");
+        assertEquals("Should evict to stay under max weight", 8, cache.getWeight());
+        assertEquals("1234", cache.get("c"));
+        cache.put("c", "12");
+        assertEquals("Replaced entry weight should be updated", 6, cache.getWeight());
+        cache.put("d", "12345678901");
+        assertNull("Entry heavier than max weight shouldn't be cached", cache.get("d"));
+        cache.remove("c");
+        cache.removeIf(id -> true);
+        assertEquals(0, cache.getWeight());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testChanges() {
+        NearCache<String> cache = new NearCache<>("Test3_", 60000, 10);
+        cache.put("a", "1", 5);
+        cache.put("b", "2", 5);
+
+        NearCache.dispatch("Test3_a|other-node|4");
+        assertEquals("Older version shouldn't drop the entry", "1", cache.get("a"));
+        NearCache.dispatch("Test3_a|" + NearCache.NODE_ID + "|6");
+        assertEquals("Changes from this node should be ignored", "1", cache.get("a"));
+        NearCache.dispatch("Test3_a|other-node|6");
+        assertNull("Newer version should drop the entry", cache.get("a"));
+
+        NearCache.dispatch("Test3_b");
+        assertNull("Change without version should drop the entry", cache.get("b"));
+
+        cache.put("c", "3");
+        NearCache.dispatch("Test3_");
+        assertEquals("Change for prefix should drop all", 0, cache.size());
+    }
+
+    @Test
+    public void testInvalidationRecoversAfterLostSubscription() throws Exception {
+        final BlockingQueue<JedisSubscriber> subscribers = new LinkedBlockingQueue<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final Semaphore connectionLost = new Semaphore(0);
+        final NearCache.Subscription subscription = new NearCache.Subscription((subscriber, channel) -> {
+            if (attempts.incrementAndGet() == 1) {
+                // Redis not available
+                return false;
+            }
+            subscriber.onSubscribe(channel, 1);
+            subscribers.add(subscriber);
+            connectionLost.acquireUninterruptibly();
+            return true;
+        }, 10, 100);
+
+        NearCache<String> cache = new NearCache<>("Test5_", 60000, 10);
+        cache.put("a", "1");
+        subscription.start();
+        final JedisSubscriber first = subscribers.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Should retry until subscribed", first);
+        assertTrue(subscription.isSubscribed());
+        assertNull("Entries cached before subscribing might have missed changes", cache.get("a"));
+        cache.put("b", "2");
+        first.onMessage(JedisManager.CHANNEL_KEY_CHANGED, "Test5_b|other-node|1");
+        assertNull("Change should drop the entry", cache.get("b"));
+
+        cache.put("c", "3");
+        connectionLost.release();
+        final JedisSubscriber second = subscribers.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Should subscribe again", second);
+        assertNull("Entries cached while not subscribed might have missed changes", cache.get("c"));
+        cache.put("d", "4");
+        second.onMessage(JedisManager.CHANNEL_KEY_CHANGED, "Test5_d|other-node|1");
+        assertNull("Change should drop the entry after subscribing again", cache.get("d"));
+        assertEquals(3, attempts.get());
+    }
+}
@@ -0,0 +1,32 @@
+package fi.nls.oskari.wfs;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CachedImageTest {
+
+    @Test
+    public void testMetadataFromHeader() {
+        CachedImage rendered = CachedImage.fromImage(new BufferedImage(256, 128, BufferedImage.TYPE_INT_ARGB));
+        assertTrue("Should be PNG", CachedImage.isPNG(rendered.getBytes()));
+
+        CachedImage cached = new CachedImage(rendered.getBytes());
+        assertEquals(256, cached.getWidth());
+        assertEquals(128, cached.getHeight());
+        assertEquals(rendered.getBytes().length, cached.getSize());
+        assertSame("Bytes should be kept as is", rendered.getBytes(), cached.withoutImage().getBytes());
+        assertEquals(256, cached.getImage().getWidth());
+    }
+
+    @Test
+    public void testNotPNG() {
+        CachedImage cached = new CachedImage(new byte[] {1, 2, 3});
+        assertEquals(-1, cached.getWidth());
+        assertEquals(-1, cached.getHeight());
+    }
+}
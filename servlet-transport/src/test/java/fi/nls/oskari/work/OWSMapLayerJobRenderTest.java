@@ -0,0 +1,159 @@
+package fi.nls.oskari.work;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import fi.nls.oskari.pojo.SessionStore;
+import fi.nls.oskari.wfs.WFSImage;
+import fi.nls.oskari.wfs.WFSParser;
+import fi.nls.oskari.wfs.pojo.WFSLayerStore;
+import org.geotools.feature.FeatureCollection;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tiles of a job are rendered in parallel on the render pool (transport.render.threads) with the same
+ * WFSImage and feature collection. Concurrently rendered tiles should be identical to sequentially rendered ones.
+ */
+public class OWSMapLayerJobRenderTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 10;
+    private static final int FEATURE_COUNT = 500;
+
+    private static final String sessionJSON = "{\"client\":\"test\",\"session\":\"test\",\"language\":\"fi\","
+            + "\"location\":{\"srs\":\"EPSG:3067\",\"bbox\":[508928.0,6857728.0,512000.0,6859776.0],\"zoom\":8},"
+            + "\"grid\":{\"rows\":2,\"columns\":3,\"bounds\":["
+            + "[508928.0,6858752.0,509952.0,6859776.0],[509952.0,6858752.0,510976.0,6859776.0],[510976.0,6858752.0,512000.0,6859776.0],"
+            + "[508928.0,6857728.0,509952.0,6858752.0],[509952.0,6857728.0,510976.0,6858752.0],[510976.0,6857728.0,512000.0,6858752.0]]},"
+            + "\"tileSize\":{\"width\":256,\"height\":256},\"mapSize\":{\"width\":768,\"height\":512},"
+            + "\"layers\":{\"216\":{\"id\":216,\"styleName\":\"default\",\"visible\":true}}}";
+
+    private static final String layerJSON = "{\"layerId\":216,\"maxFeatures\":1000,"
+            + "\"featureNamespace\":\"pkartta\",\"featureNamespaceURI\":\"www.pkartta.fi\",\"featureElement\":\"toimipaikat\","
+            + "\"GMLGeometryProperty\":\"shape\",\"SRSName\":\"EPSG:3067\",\"tileBuffer\":{\"default\":0.5},"
+            + "\"styles\":{\"default\":{\"id\":\"1\",\"name\":\"default\",\"SLDStyle\":\""
+            + "<StyledLayerDescriptor version=\\\"1.0.0\\\" xmlns=\\\"http://www.opengis.net/sld\\\" xmlns:ogc=\\\"http://www.opengis.net/ogc\\\">"
+            + "<NamedLayer><Name>toimipaikat</Name><UserStyle><FeatureTypeStyle><Rule><PointSymbolizer><Graphic><Mark>"
+            + "<WellKnownName>circle</WellKnownName><Fill><CssParameter name=\\\"fill\\\">#FFDE00</CssParameter></Fill>"
+            + "<Stroke><CssParameter name=\\\"stroke\\\">#000000</CssParameter><CssParameter name=\\\"stroke-width\\\">2</CssParameter></Stroke>"
+            + "</Mark><Size>12</Size></Graphic></PointSymbolizer></Rule></FeatureTypeStyle></UserStyle></NamedLayer></StyledLayerDescriptor>"
+            + "\"}}}";
+
+    private static SessionStore session;
+    private static WFSLayerStore layer;
+    private static FeatureCollection<SimpleFeatureType, SimpleFeature> features;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        session = SessionStore.setJSON(sessionJSON);
+        layer = WFSLayerStore.setJSON(layerJSON);
+
+        // points spread over all the tiles, some on tile edges
+        final Random random = new Random(42);
+        final GeometryFactory gf = new GeometryFactory();
+        final List<List<Object>> values = new ArrayList<List<Object>>();
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            final List<Object> item = new ArrayList<Object>();
+            item.add("Place" + i);
+            item.add(i);
+            item.add(gf.createPoint(new Coordinate(
+                    508928.0 + random.nextDouble() * 3072.0,
+                    6857728.0 + random.nextDouble() * 2048.0)));
+            values.add(item);
+        }
+        features = WFSParser.dataToSimpleFeatures("location:String,symbol:Integer,shape:Point", values);
+    }
+
+    @Test
+    public void testConcurrentTilesMatchSequential() throws Exception {
+        final List<List<Double>> grid = session.getGrid().getBounds();
+
+        final RenderJob sequential = new RenderJob();
+        final List<int[]> expected = new ArrayList<int[]>();
+        for (List<Double> bounds : grid) {
+            final BufferedImage image = sequential.render(bounds);
+            assertNotNull(image);
+            expected.add(getPixels(image));
+        }
+        assertTrue("Features should be drawn", hasContent(expected));
+
+        final RenderJob concurrent = new RenderJob();
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                for (final List<Double> bounds : grid) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return getPixels(concurrent.render(bounds));
+                    }));
+                }
+            }
+            // all tiles compete for the same WFSImage, including its lazy creation
+            start.countDown();
+            for (int i = 0; i < results.size(); i++) {
+                assertArrayEquals("Tile " + (i % grid.size()) + " should be identical",
+                        expected.get(i % grid.size()), results.get(i).get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals("Tiles should share one WFSImage", 1, concurrent.imagesCreated.get());
+    }
+
+    /**
+     * Renders tiles like processTile() does on the render pool
+     */
+    private static class RenderJob extends WFSMapLayerJob {
+        final AtomicInteger imagesCreated = new AtomicInteger();
+
+        RenderJob() {
+            super(null, JobType.NORMAL, session, layer);
+            this.features = OWSMapLayerJobRenderTest.features;
+        }
+
+        BufferedImage render(List<Double> bounds) {
+            return renderTile(bounds);
+        }
+
+        @Override
+        protected WFSImage createResponseImage() {
+            imagesCreated.incrementAndGet();
+            return super.createResponseImage();
+        }
+    }
+
+    private static int[] getPixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static boolean hasContent(List<int[]> tiles) {
+        for (int[] pixels : tiles) {
+            for (int argb : pixels) {
+                if ((argb >>> 24) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,169 @@
+package fi.nls.oskari.work.fe;
+
+import fi.nls.oskari.fe.engine.FEEngineManager;
+import fi.nls.oskari.fe.engine.FeatureEngine;
+import fi.nls.oskari.fe.input.XMLInputProcessor;
+import fi.nls.oskari.fe.input.format.gml.StaxGMLInputProcessor;
+import fi.nls.oskari.fe.iri.Resource;
+import fi.nls.oskari.pojo.SessionStore;
+import fi.nls.oskari.wfs.TileCanvas;
+import fi.nls.oskari.wfs.WFSImage;
+import fi.nls.oskari.wfs.pojo.WFSLayerStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.referencing.CRS;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * With transport.fe.stream=true FEMapLayerJob paints the features on the tiles in batches while parsing
+ * (FEOutputProcessor.setBatchListener() -> FEMapLayerJob.onFeatures()) and renderTile() returns the painted
+ * canvas. The result should be the same as drawing the whole collection after parsing.
+ */
+public class FEOutputProcessorStreamingTest {
+
+    private static final String RECIPE = "fi.nls.oskari.fi.rysp.recipe.kanta.RYSP_kanta_Liikennevayla_Parser";
+    // 97 line features
+    private static final String INPUT = "kanta_Liikennevayla.xml";
+    private static final int FEATURE_COUNT = 97;
+
+    private static final String sessionJSON = "{\"client\":\"test\",\"session\":\"test\",\"language\":\"fi\","
+            + "\"location\":{\"srs\":\"EPSG:3067\",\"bbox\":[239000.0,6710800.0,239800.0,6711600.0],\"zoom\":10},"
+            + "\"grid\":{\"rows\":1,\"columns\":1,\"bounds\":[[239000.0,6710800.0,239800.0,6711600.0]]},"
+            + "\"tileSize\":{\"width\":256,\"height\":256},\"mapSize\":{\"width\":256,\"height\":256},"
+            + "\"layers\":{\"4\":{\"id\":\"4\",\"styleName\":\"default\",\"visible\":true}}}";
+
+    // lines only, labels are not deconflicted between batches
+    private static final String layerJSON = "{\"layerId\":4,\"maxFeatures\":5000,"
+            + "\"featureNamespace\":\"kanta\",\"featureNamespaceURI\":\"http://www.paikkatietopalvelu.fi/gml/kantakartta\","
+            + "\"featureElement\":\"Liikennevayla\",\"GMLGeometryProperty\":\"geometry\",\"SRSName\":\"EPSG:3067\","
+            + "\"tileBuffer\":{\"default\":0.5},"
+            + "\"styles\":{\"default\":{\"id\":\"1\",\"name\":\"default\",\"SLDStyle\":\""
+            + "<StyledLayerDescriptor version=\\\"1.0.0\\\" xmlns=\\\"http://www.opengis.net/sld\\\" xmlns:ogc=\\\"http://www.opengis.net/ogc\\\">"
+            + "<NamedLayer><Name>Liikennevayla</Name><UserStyle><FeatureTypeStyle><Rule><LineSymbolizer><Stroke>"
+            + "<CssParameter name=\\\"stroke\\\">#3233ff</CssParameter><CssParameter name=\\\"stroke-width\\\">3</CssParameter>"
+            + "</Stroke></LineSymbolizer></Rule></FeatureTypeStyle></UserStyle></NamedLayer></StyledLayerDescriptor>"
+            + "\"}}}";
+
+    private static SessionStore session;
+    private static WFSLayerStore layer;
+    private static List<Double> bounds;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        session = SessionStore.setJSON(sessionJSON);
+        layer = WFSLayerStore.setJSON(layerJSON);
+        bounds = session.getGrid().getBounds().get(0);
+    }
+
+    @Test
+    public void testStreamedTileMatchesNonStreamed() throws Exception {
+        final WFSImage image = new WFSImage(layer, session.getClient(), "default", null);
+
+        // non-streamed: collect everything, draw after parsing
+        final Parsed collected = parse(null, 0);
+        final SimpleFeatureCollection fc = collected.responseCollections.get(collected.response.getFeatureIri());
+        assertNotNull(fc);
+        assertEquals(FEATURE_COUNT, fc.size());
+        final BufferedImage expected = image.draw(session.getTileSize(), session.getLocation(), bounds, fc);
+        assertNotNull(expected);
+        assertTrue("Features should be drawn", hasContent(expected));
+
+        // streamed: batch boundaries both inside the response and at its end
+        for (int batchSize : new int[] { 1, 10, FEATURE_COUNT, FEATURE_COUNT + 1 }) {
+            final TileCanvas canvas = image.createCanvas(session.getTileSize(), session.getLocation(), bounds);
+            final Parsed streamed = parse(canvas, batchSize);
+
+            final String msg = "batchSize: " + batchSize;
+            assertTrue(msg, streamed.response.isStreamed());
+            assertEquals(msg, FEATURE_COUNT, streamed.response.getStreamedFeatureCount());
+            assertTrue("Streamed features shouldn't be kept", streamed.resultsList.isEmpty());
+            assertEquals(msg, getIds(fc), streamed.ids);
+            assertEquals(msg, collected.resultsList, streamed.values);
+
+            final BufferedImage actual = canvas.getImage();
+            assertEquals(expected.getWidth(), actual.getWidth());
+            assertEquals(expected.getHeight(), actual.getHeight());
+            assertArrayEquals(msg, getPixels(expected), getPixels(actual));
+        }
+    }
+
+    private static class Parsed {
+        final ArrayList<List<Object>> resultsList = new ArrayList<List<Object>>();
+        final Map<Resource, SimpleFeatureCollection> responseCollections = new HashMap<Resource, SimpleFeatureCollection>();
+        final FERequestResponse response = new FERequestResponse();
+        // streamed
+        final List<String> ids = new ArrayList<String>();
+        final List<List<Object>> values = new ArrayList<List<Object>>();
+    }
+
+    /**
+     * Parses the response like FEMapLayerJob.request(), streaming features to the canvas if given
+     */
+    private Parsed parse(final TileCanvas canvas, int batchSize) throws Exception {
+        final Parsed parsed = new Parsed();
+        parsed.response.setResponse(parsed.responseCollections);
+        parsed.response.setLocation(session.getLocation());
+
+        final CoordinateReferenceSystem crs = CRS.decode(session.getLocation().getSrs(), true);
+        final FEOutputProcessor output = new FEOutputProcessor(parsed.resultsList, parsed.responseCollections,
+                crs, parsed.response, new ArrayList<String>(), new HashMap<Resource, Integer>(),
+                CRS.findMathTransform(crs, crs), layer.getGMLGeometryProperty());
+        if (canvas != null) {
+            // what FEMapLayerJob.onFeatures() does
+            output.setBatchListener((features, values) -> {
+                for (SimpleFeature f : features) {
+                    parsed.ids.add(f.getID());
+                }
+                parsed.values.addAll(values);
+                canvas.paint(DataUtilities.collection(features));
+            }, batchSize);
+        }
+
+        final FeatureEngine engine = FEEngineManager.getEngineForRecipe(RECIPE);
+        try (InputStream in = getClass().getResourceAsStream(INPUT)) {
+            final XMLInputProcessor input = new StaxGMLInputProcessor();
+            input.setInput(in);
+            engine.setInputProcessor(input);
+            engine.setOutputProcessor(output);
+            engine.process();
+        } finally {
+            FEEngineManager.releaseEngine(engine);
+        }
+        return parsed;
+    }
+
+    private static List<String> getIds(SimpleFeatureCollection fc) {
+        final List<String> ids = new ArrayList<String>();
+        try (FeatureIterator<SimpleFeature> it = fc.features()) {
+            while (it.hasNext()) {
+                ids.add(it.next().getID());
+            }
+        }
+        return ids;
+    }
+
+    private static int[] getPixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static boolean hasContent(BufferedImage image) {
+        return Arrays.stream(getPixels(image)).anyMatch(argb -> (argb >>> 24) != 0);
+    }
+}
@@ -45,6 +45,30 @@ public class ResourceHelper {
         return null;
     }
 
+    /**
+     * Uses ResourceHelper.class to load a binary resource. Usable for resources in the shared-test-resources package.
+     * @param resourceName
+     * @return resource contents or null if not found
+     */
+    public static byte[] readBytesResource(final String resourceName) {
+        try (InputStream is = ResourceHelper.class.getResourceAsStream(resourceName)) {
+            if (is == null) {
+                return null;
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        catch (IOException ex) {
+            //fail("Couldn't read resource " + resourceName);
+        }
+        return null;
+    }
+
     /**
      * Removes white space including tabs and new lines. The problem with comparing JSON as strings with this
      * is that white spaces are removed inside the JSON as well.